@@ -31,6 +31,8 @@ import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.freixas.gamma.css.value.StyleException;
 import org.freixas.gamma.css.value.Stylesheet;
+import org.freixas.gamma.execution.HCodeCompiler;
+import org.freixas.gamma.execution.HCodeOptimizer;
 import org.freixas.gamma.file.URLFile;
 import org.freixas.gamma.preferences.PreferencesManager;
 import java.io.IOException;
@@ -152,6 +154,9 @@ public final class Gamma extends Application
         options.addOption("h", "help", false, "displays this help message");
         options.addOption("v", "version", false, "displays the version number");
         options.addOption("s", "stylesheet", true, "path to default stylesheet");
+        options.addOption("n", "no-optimize", false, "disables the script optimizer");
+        options.addOption("c", "no-compile", false, "disables compiling frequently executed scripts");
+        options.addOption("d", "verify-compile", false, "runs compiled scripts in the interpreter too and reports any difference");
 
         try {
             CommandLine line = parser.parse(options, args);
@@ -167,6 +172,18 @@ public final class Gamma extends Application
                 System.exit(0);
             }
 
+            if (line.hasOption("no-optimize")) {
+                HCodeOptimizer.ENABLED = false;
+            }
+
+            if (line.hasOption("no-compile")) {
+                HCodeCompiler.ENABLED = false;
+            }
+
+            if (line.hasOption("verify-compile")) {
+                HCodeCompiler.VERIFY = true;
+            }
+
             URLFile cssFile = null;
             if (line.hasOption("stylesheet")) {
                 cssFile = new URLFile(line.getOptionValue("stylesheet"));
@@ -111,6 +111,7 @@ public final class MainWindow extends Stage
     private VBox displayControlArea;
 
     private ScriptPrintDialog scriptPrintDialog = null;
+    private ScriptProfileDialog scriptProfileDialog = null;
 
     private Screen screen;                      // The screen the window originated on
 
@@ -125,7 +126,7 @@ public final class MainWindow extends Stage
     private Slideshow slideshow;                // The associated slideshow
     private SlideshowEngine slideshowEngine;    // The associated slideshow engine
     private Slideshow.Slide slide;              // The associated slide, if any
-    private DiagramEngine diagramEngine;        // The diagram engine
+    private volatile DiagramEngine diagramEngine; // The diagram engine
     private Canvas canvas;                      // The diagram drawing area
 
     // **********************************************************************
@@ -546,6 +547,18 @@ public final class MainWindow extends Stage
         parseAndExecuteMainScript(content);
     }
 
+    /**
+     * Stop the script running in this window, if any. Unlike most methods,
+     * this may be called from any thread. It lets a FileWatcher stop a
+     * script stuck in a loop before asking for the modified script to be
+     * reloaded.
+     */
+    public void cancelScript()
+    {
+        DiagramEngine engine = diagramEngine;
+        if (engine != null) engine.cancel();
+    }
+
     /**
      * Reload the current script file from the whatever was last read and parsed.
      * This method is called when the user asks that the file be reloaded.
@@ -1208,6 +1221,39 @@ public final class MainWindow extends Stage
         if (scriptPrintDialog != null) scriptPrintDialog.clear();
     }
 
+    /**
+     * Show the Script Profile dialog. Scripts are profiled while the dialog
+     * is showing.
+     */
+    public void showScriptProfileDialog()
+    {
+        if (scriptProfileDialog == null) {
+            try {
+                scriptProfileDialog = new ScriptProfileDialog(this);
+            }
+            catch (Exception e) {
+                showTextAreaAlert(
+                        Alert.AlertType.ERROR, "Error", "Error",
+                        "Failed to open a Script Profile dialog: " + e.getLocalizedMessage(), true);
+                return;
+            }
+        }
+        if (diagramEngine != null) diagramEngine.setProfiling(true);
+        scriptProfileDialog.show();
+        scriptProfileDialog.toFront();
+        scriptProfileDialog.refresh();
+    }
+
+    /**
+     * Returns true if scripts run in this window should be profiled.
+     *
+     * @return True if scripts should be profiled.
+     */
+    public boolean isScriptProfiling()
+    {
+        return scriptProfileDialog != null && scriptProfileDialog.isShowing();
+    }
+
     // **********************************************************************
     // *
     // * Manage the window
@@ -75,6 +75,8 @@ public final class MainWindowController implements Initializable
 
     @FXML
     private MenuItem windowMenuNewWindow;
+    @FXML
+    private MenuItem windowMenuScriptProfile;
 
     @FXML
     private Menu helpMenu;
@@ -268,6 +270,18 @@ public final class MainWindowController implements Initializable
         Gamma.newMainWindow(null, false, mainWindow.getDirectoryDefaults());
     }
 
+    /**
+     * Window / Script Profile
+     * <p>
+     * Show the Script Profile dialog. Scripts are profiled while the dialog is
+     * showing.
+     */
+    @FXML
+    private void windowMenuScriptProfile(ActionEvent ignoredEvent)
+    {
+        mainWindow.showScriptProfileDialog();
+    }
+
     /**
      * Help / Sample Scripts
      * <p>
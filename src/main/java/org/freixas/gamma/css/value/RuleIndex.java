@@ -0,0 +1,253 @@
+/*
+ *  Gamma - A Minkowski Spacetime Diagram Generator
+ *  Copyright (C) 2021  by Antonio Freixas
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.css.value;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * An index over the rules of a stylesheet. Each rule is filed under the
+ * most selective part of each of its selectors: the id if there is one,
+ * otherwise the first class, otherwise the command name. Rules with no
+ * selectors match everything and are kept in a separate list.
+ * <p>
+ * Given a command, only the rules filed under its name, its id or one of
+ * its classes can possibly match, so only those need to be scored.
+ *
+ * @author Antonio Freixas
+ */
+final class RuleIndex
+{
+    static private final int[] EMPTY = new int[0];
+
+    private final Rule[] rules;
+    private final int[] universal;
+    private final HashMap<String, int[]> byCommandName;
+    private final HashMap<String, int[]> byId;
+    private final HashMap<String, int[]> byClass;
+
+    // **********************************************************************
+    // *
+    // * Constructors
+    // *
+    // **********************************************************************
+
+    /**
+     * Create an index over a list of rules. The index is not updated if
+     * the list changes.
+     *
+     * @param ruleList The rules to index.
+     */
+    RuleIndex(List<Rule> ruleList)
+    {
+        rules = ruleList.toArray(new Rule[0]);
+
+        ArrayList<Integer> universalList = new ArrayList<>();
+        HashMap<String, ArrayList<Integer>> commandNameLists = new HashMap<>();
+        HashMap<String, ArrayList<Integer>> idLists = new HashMap<>();
+        HashMap<String, ArrayList<Integer>> classLists = new HashMap<>();
+
+        for (int i = 0; i < rules.length; i++) {
+            ArrayList<Selector> selectors = rules[i].getSelectors();
+            if (selectors.isEmpty()) {
+                universalList.add(i);
+                continue;
+            }
+            for (Selector selector : selectors) {
+                if (selector.getId() != null) {
+                    add(idLists, selector.getId(), i);
+                }
+                else if (selector.getClasses() != null) {
+                    add(classLists, selector.getClasses()[0], i);
+                }
+                else if (selector.getCommandName() != null) {
+                    add(commandNameLists, selector.getCommandName(), i);
+                }
+                else {
+                    universalList.add(i);
+                }
+            }
+        }
+
+        universal = toArray(universalList);
+        byCommandName = toArrays(commandNameLists);
+        byId = toArrays(idLists);
+        byClass = toArrays(classLists);
+    }
+
+    static private void add(HashMap<String, ArrayList<Integer>> lists, String key, int i)
+    {
+        ArrayList<Integer> list = lists.computeIfAbsent(key, k -> new ArrayList<>());
+
+        // A rule with two selectors filed under the same key only needs to
+        // appear once
+
+        if (list.isEmpty() || list.get(list.size() - 1) != i) list.add(i);
+    }
+
+    static private int[] toArray(ArrayList<Integer> list)
+    {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) array[i] = list.get(i);
+        return array;
+    }
+
+    static private HashMap<String, int[]> toArrays(HashMap<String, ArrayList<Integer>> lists)
+    {
+        HashMap<String, int[]> arrays = new HashMap<>();
+        lists.forEach((key, list) -> arrays.put(key, toArray(list)));
+        return arrays;
+    }
+
+    // **********************************************************************
+    // *
+    // * Features
+    // *
+    // **********************************************************************
+
+    /**
+     * Get a command's matching rules, sorted by how well they match the
+     * command. Given two rules with the same score, the one that appears
+     * later in the stylesheet will appear later in the list.
+     *
+     * @param commandName The name of the command. This should never be null.
+     * @param id The command's id. This can be null.
+     * @param classes An array of class names. This can be null. If not null,
+     * the classes must be sorted in natural order.
+     *
+     * @return The matching rules, sorted appropriately.
+     */
+    List<Rule> match(String commandName, String id, String[] classes)
+    {
+        long[] keys = matchKeys(commandName, id, classes);
+        Arrays.sort(keys);
+
+        ArrayList<Rule> matched = new ArrayList<>(keys.length);
+        for (long key : keys) {
+            matched.add(getRule(getPosition(key)));
+        }
+        return matched;
+    }
+
+    /**
+     * Score a command's matching rules. Each match is returned as a sort
+     * key that puts the score in the high half and the rule's position in
+     * the low half, so sorting the keys orders the rules by score and then
+     * by position. The keys are not sorted.
+     *
+     * @param commandName The name of the command. This should never be null.
+     * @param id The command's id. This can be null.
+     * @param classes An array of class names. This can be null. If not null,
+     * the classes must be sorted in natural order.
+     *
+     * @return The sort keys of the matching rules.
+     */
+    long[] matchKeys(String commandName, String id, String[] classes)
+    {
+        // Gather the candidates
+
+        int[][] buckets = new int[3 + (classes != null ? classes.length : 0)][];
+        buckets[0] = universal;
+        buckets[1] = byCommandName.getOrDefault(commandName, EMPTY);
+        buckets[2] = id != null ? byId.getOrDefault(id, EMPTY) : EMPTY;
+        for (int i = 3; i < buckets.length; i++) {
+            buckets[i] = byClass.getOrDefault(classes[i - 3], EMPTY);
+        }
+
+        int count = 0;
+        for (int[] bucket : buckets) count += bucket.length;
+        int[] candidates = new int[count];
+        count = 0;
+        for (int[] bucket : buckets) {
+            System.arraycopy(bucket, 0, candidates, count, bucket.length);
+            count += bucket.length;
+        }
+
+        // Score each candidate once
+
+        Arrays.sort(candidates);
+        long[] keys = new long[count];
+        int matches = 0;
+        for (int i = 0; i < count; i++) {
+            if (i > 0 && candidates[i] == candidates[i - 1]) continue;
+            int score = rules[candidates[i]].getMatchScore(commandName, id, classes);
+            if (score > -1) {
+                keys[matches++] = createKey(score, candidates[i]);
+            }
+        }
+        return Arrays.copyOf(keys, matches);
+    }
+
+    /**
+     * Get a rule.
+     *
+     * @param position The position of the rule in the stylesheet.
+     * @return The rule.
+     */
+    Rule getRule(int position)
+    {
+        return rules[position];
+    }
+
+    /**
+     * Get the number of rules in the index.
+     *
+     * @return The number of rules in the index.
+     */
+    int size()
+    {
+        return rules.length;
+    }
+
+    /**
+     * Create a sort key for a matching rule.
+     *
+     * @param score The rule's match score.
+     * @param position The position of the rule.
+     * @return The sort key.
+     */
+    static long createKey(int score, int position)
+    {
+        return ((long)score << 32) | position;
+    }
+
+    /**
+     * Get the rule position from a sort key.
+     *
+     * @param key The sort key.
+     * @return The position of the rule.
+     */
+    static int getPosition(long key)
+    {
+        return (int)key;
+    }
+
+    /**
+     * Get the match score from a sort key.
+     *
+     * @param key The sort key.
+     * @return The match score.
+     */
+    static int getScore(long key)
+    {
+        return (int)(key >>> 32);
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ *  Gamma - A Minkowski Spacetime Diagram Generator
+ *  Copyright (C) 2021  by Antonio Freixas
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.css.value;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache used by stylesheets. When the cache is full, the least
+ * recently used entry is discarded. The cache counts its hits and misses.
+ * <p>
+ * A stylesheet can be used by more than one engine, so access to the cache
+ * is synchronized.
+ *
+ * @param <V> The type of the cached values.
+ *
+ * @author Antonio Freixas
+ */
+final class StyleCache<V>
+{
+    private final LinkedHashMap<String, V> map;
+    private long hits;
+    private long misses;
+
+    /**
+     * Create an empty cache.
+     *
+     * @param maxSize The maximum number of entries in the cache.
+     */
+    StyleCache(int maxSize)
+    {
+        map = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest)
+            {
+                return size() > maxSize;
+            }
+        };
+        hits = 0;
+        misses = 0;
+    }
+
+    /**
+     * Get a cached value.
+     *
+     * @param key The value's key.
+     * @return The value or null if it is not in the cache.
+     */
+    synchronized V get(String key)
+    {
+        V value = map.get(key);
+        if (value != null) {
+            hits++;
+        }
+        else {
+            misses++;
+        }
+        return value;
+    }
+
+    /**
+     * Add a value to the cache.
+     *
+     * @param key The value's key.
+     * @param value The value.
+     */
+    synchronized void put(String key, V value)
+    {
+        map.put(key, value);
+    }
+
+    /**
+     * Get the number of entries in the cache.
+     *
+     * @return The number of entries in the cache.
+     */
+    synchronized int size()
+    {
+        return map.size();
+    }
+
+    /**
+     * Get the number of times a value was found in the cache.
+     *
+     * @return The number of hits.
+     */
+    synchronized long getHits()
+    {
+        return hits;
+    }
+
+    /**
+     * Get the number of times a value was not found in the cache.
+     *
+     * @return The number of misses.
+     */
+    synchronized long getMisses()
+    {
+        return misses;
+    }
+
+}
@@ -21,6 +21,7 @@ import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
 import javafx.scene.text.FontPosture;
 import javafx.scene.text.FontWeight;
+import org.freixas.gamma.ProgrammingException;
 
 /**
  * This class holds all the final style properties used by the Gamma
@@ -38,10 +39,14 @@ import javafx.scene.text.FontWeight;
  * <li>Arrows are StyleProperties.ArrowTypes.
  * <li>Event shapes are StyleProperties.EventShapeTypes.
  * </ul>
+ * <p>
+ * A StyleStruct may be shared by many commands, so drawing code should
+ * treat it as read-only. Code that needs different values should change a
+ * copy.
  *
  * @author Antonio Freixas
  */
-public class StyleStruct
+public class StyleStruct implements Cloneable
 {
     public Color color = Color.BLACK;
     public Color xColor = color;
@@ -112,4 +117,35 @@ public class StyleStruct
     public double arrowHeight = 8.0;
     public double eventDiameter = 5.0;
     public StyleProperties.EventShape eventShape = StyleProperties.EventShape.CIRCLE;
+
+    /**
+     * Create a copy of this structure. All the values are immutable, so a
+     * shallow copy is sufficient.
+     *
+     * @return The copy.
+     */
+    public StyleStruct createCopy()
+    {
+        try {
+            return (StyleStruct)clone();
+        }
+        catch (CloneNotSupportedException e) {
+            throw new ProgrammingException("StyleStruct.createCopy()", e);
+        }
+    }
+
+    /**
+     * Get a structure with the given arrow style. If this structure already
+     * has the arrow style, it is returned; otherwise, a copy is returned.
+     *
+     * @param arrow The arrow style.
+     * @return A structure with the given arrow style.
+     */
+    public StyleStruct withArrow(StyleProperties.Arrow arrow)
+    {
+        if (this.arrow == arrow) return this;
+        StyleStruct styles = createCopy();
+        styles.arrow = arrow;
+        return styles;
+    }
 }
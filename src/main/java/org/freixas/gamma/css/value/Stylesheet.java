@@ -17,7 +17,7 @@
  */
 package org.freixas.gamma.css.value;
 
-import javafx.util.Pair;
+import org.freixas.gamma.ProgrammingException;
 import org.freixas.gamma.css.parser.CSSParser;
 import org.freixas.gamma.execution.ExecutionException;
 import org.freixas.gamma.file.URLFile;
@@ -63,9 +63,11 @@ public final class Stylesheet
      */
     static public Stylesheet USER_STYLESHEET = null;
 
-    // Used to compare match scores
+    // The maximum number of entries in each cache
 
-    static private final Comparator<Pair<Integer, Rule>> scoreComparator = Comparator.comparingInt(Pair::getKey);
+    static private final int STYLE_STRUCT_CACHE_SIZE = 256;
+    static private final int STYLESHEET_CACHE_SIZE = 256;
+    static private final int INLINE_STYLE_CACHE_SIZE = 256;
 
     // Patterns used to match stylesheet IDs and classes
 
@@ -76,12 +78,30 @@ public final class Stylesheet
 
     private final ArrayList<Rule> rules;
 
+    // A layered stylesheet has no rules of its own. It combines the rules
+    // of its layers, from the lowest precedence to the highest, without
+    // copying or changing them
+
+    private final Stylesheet[] layers;
+
+    // This stylesheet layered over the default and user stylesheets
+
+    private Stylesheet layeredStylesheet;
+
+    // An index over the rules, used to match rules to commands. It is
+    // built when first needed and discarded when the rules change
+
+    private RuleIndex index;
+
     // When a stylesheet is matched to a command, we wind up with another
-    // stylesheet. We cache and re-use these stylesheets when we can.
+    // stylesheet. We cache and re-use these stylesheets when we can. We
+    // also cache the parsed inline styles and the StyleStructs created from
+    // both.
 
     private boolean cacheEnabled;
-    private HashMap<String, StyleStruct>styleStructCache;
-    private final HashMap<String, Stylesheet>stylesheetCache;
+    private final StyleCache<StyleStruct> styleStructCache;
+    private final StyleCache<Stylesheet> stylesheetCache;
+    private final StyleCache<Stylesheet> inlineStyleCache;
 
     // **********************************************************************
     // *
@@ -93,16 +113,31 @@ public final class Stylesheet
      * Create a new, empty stylesheet.
      */
     public Stylesheet()
+    {
+        this(null);
+    }
+
+    /**
+     * Create a new stylesheet.
+     *
+     * @param layers The layers of a layered stylesheet, or null to create
+     * an empty stylesheet.
+     */
+    private Stylesheet(Stylesheet[] layers)
     {
         rules = new ArrayList<>();
+        this.layers = layers;
+        layeredStylesheet = null;
+        index = null;
         cacheEnabled = false;
-        styleStructCache = null;
 
-        // We are going to take a chance and always cache stylesheets.
-        // This could pose a problem if a user changes the id's or classes a
-        // lot. It's not a problem if they change style property
+        // The caches are bounded, so a script that changes its ids, classes
+        // or style properties on every execution only pushes out the least
+        // recently used entries
 
-        stylesheetCache = new HashMap<>();
+        styleStructCache = new StyleCache<>(STYLE_STRUCT_CACHE_SIZE);
+        stylesheetCache = new StyleCache<>(STYLESHEET_CACHE_SIZE);
+        inlineStyleCache = new StyleCache<>(INLINE_STYLE_CACHE_SIZE);
     }
 
     // **********************************************************************
@@ -147,12 +182,74 @@ public final class Stylesheet
         return cssParser.parse();
     }
 
+    /**
+     * Create a stylesheet that combines the rules of other stylesheets.
+     * The result is the same as adding the rules of each stylesheet, in
+     * order, to an empty stylesheet, but the stylesheets are neither copied
+     * nor changed. Each layer keeps its own index, so the layers can be
+     * shared.
+     * <p>
+     * A layered stylesheet can't be changed.
+     *
+     * @param layers The layers, from the lowest precedence to the highest.
+     * Null layers are ignored.
+     *
+     * @return The layered stylesheet.
+     */
+    static public Stylesheet createLayeredStylesheet(Stylesheet... layers)
+    {
+        ArrayList<Stylesheet> list = new ArrayList<>();
+        for (Stylesheet layer : layers) {
+            if (layer == null) continue;
+            if (layer.layers != null) {
+                list.addAll(Arrays.asList(layer.layers));
+            }
+            else {
+                list.add(layer);
+            }
+        }
+        return new Stylesheet(list.toArray(new Stylesheet[0]));
+    }
+
     // **********************************************************************
     // *
     // * Getters / Setters
     // *
     // **********************************************************************
 
+    /**
+     * Get this stylesheet layered over the default stylesheet and the
+     * user's default stylesheet, if any.
+     * <p>
+     * The layered stylesheet is kept, so every engine created for the same
+     * script shares it, along with its caches. A new one is created only if
+     * the user's default stylesheet changes.
+     *
+     * @return The layered stylesheet.
+     */
+    public synchronized Stylesheet getLayeredStylesheet()
+    {
+        Stylesheet layered = createLayeredStylesheet(DEFAULT_STYLESHEET, USER_STYLESHEET, this);
+        if (layeredStylesheet == null || !Arrays.equals(layeredStylesheet.layers, layered.layers)) {
+            layeredStylesheet = layered;
+        }
+        return layeredStylesheet;
+    }
+
+    /**
+     * Get the rules in this stylesheet. For a layered stylesheet, this is
+     * the rules of all the layers.
+     *
+     * @return The rules in this stylesheet.
+     */
+    List<Rule> getRules()
+    {
+        if (layers == null) return Collections.unmodifiableList(rules);
+        ArrayList<Rule> list = new ArrayList<>();
+        for (Stylesheet layer : layers) list.addAll(layer.rules);
+        return list;
+    }
+
     @SuppressWarnings("unused")
     public boolean isCacheEnabled()
     {
@@ -160,16 +257,35 @@ public final class Stylesheet
     }
 
     /**
-     * Enable or disable the cache.
+     * Enable or disable the StyleStruct cache.
      *
      * @param cacheEnabled If true, the cache is enabled.
      */
     public void setCacheEnabled(boolean cacheEnabled)
     {
         this.cacheEnabled = cacheEnabled;
-        if (cacheEnabled && styleStructCache == null) {
-            styleStructCache = new HashMap<>();
-        }
+    }
+
+    /**
+     * Get the number of times createStyleStruct() found a StyleStruct in
+     * the cache.
+     *
+     * @return The number of cache hits.
+     */
+    public long getCacheHits()
+    {
+        return styleStructCache.getHits();
+    }
+
+    /**
+     * Get the number of times createStyleStruct() had to create a new
+     * StyleStruct while the cache was enabled.
+     *
+     * @return The number of cache misses.
+     */
+    public long getCacheMisses()
+    {
+        return styleStructCache.getMisses();
     }
 
     // **********************************************************************
@@ -185,7 +301,9 @@ public final class Stylesheet
      */
     public void addRule(Rule rule)
     {
+        checkNotLayered("addRule");
         rules.add(rule);
+        index = null;
     }
 
     /**
@@ -196,8 +314,10 @@ public final class Stylesheet
      */
     public void prefixStylesheet(Stylesheet other)
     {
+        checkNotLayered("prefixStylesheet");
         if (other == null) return;
-        rules.addAll(0, other.rules);
+        rules.addAll(0, other.getRules());
+        index = null;
     }
 
     /**
@@ -208,8 +328,17 @@ public final class Stylesheet
      */
     public void addStylesheet(Stylesheet other)
     {
+        checkNotLayered("addStylesheet");
         if (other == null) return;
-        rules.addAll(other.rules);
+        rules.addAll(other.getRules());
+        index = null;
+    }
+
+    private void checkNotLayered(String method)
+    {
+        if (layers != null) {
+            throw new ProgrammingException("Stylesheet." + method + "(): A layered stylesheet can't be changed");
+        }
     }
 
     // **********************************************************************
@@ -232,11 +361,13 @@ public final class Stylesheet
      */
     public StyleStruct createStyleStruct(URLFile file, String commandName, String id, String cls, String style)
     {
-        // We have two caches:
+        // We have three caches:
         //
         // The stylesheet cache looks for a match with the command name, id (if
         // any), and class (if any).
         //
+        // The inline style cache looks for a match with the style (if any).
+        //
         // The StyleStruct cache looks for a match with the command name, id (if
         // any), class (if any), and style (if any)
         //
@@ -249,7 +380,7 @@ public final class Stylesheet
 
         String styleStructCacheId =  stylesheetCacheId +  (style != null ? "$" + style : "");
 
-        if (styleStructCache != null) {
+        if (cacheEnabled) {
             StyleStruct styleStruct = styleStructCache.get(styleStructCacheId);
             if (styleStruct != null) {
                 // System.err.println("Found styleStruct in cache using ID " + styleStructCacheId);
@@ -295,41 +426,36 @@ public final class Stylesheet
 //                (id != null ? "#" + id + " " : "") +
 //                (classes != null ? "." + String.join(", .", classes) : ""));
 
-            // Check the stylesheet cache. We need to make sure we only cache
-            // or retrieve a copy of the ordered stylesheet
-
-            Stylesheet orderedStylesheet;
-            Stylesheet cachedStylesheet = stylesheetCache.get(stylesheetCacheId);
+            // Check the stylesheet cache
 
-            if (cachedStylesheet != null) {
-                orderedStylesheet = new Stylesheet();
-                orderedStylesheet.addStylesheet(cachedStylesheet);
-//                System.err.println("Found stylesheet in cache using ID " + stylesheetCacheId);
-            }
-            else {
+            Stylesheet orderedStylesheet = stylesheetCache.get(stylesheetCacheId);
+            if (orderedStylesheet == null) {
                 orderedStylesheet = match(commandName, id, classes);
-                cachedStylesheet = new Stylesheet();
-                cachedStylesheet.addStylesheet(orderedStylesheet);
-                stylesheetCache.put(stylesheetCacheId, cachedStylesheet);
+                stylesheetCache.put(stylesheetCacheId, orderedStylesheet);
             }
 
+            Stylesheet localStylesheet = null;
             if (style != null) {
-                CSSParser cssParser = new CSSParser(file, "{" + style + ";}");
-                Stylesheet localStylesheet = cssParser.parse();
-
-                // Add the local stylesheet at the very bottom (the highest priority)
-
-                orderedStylesheet.addStylesheet(localStylesheet);
+                localStylesheet = inlineStyleCache.get(style);
+                if (localStylesheet == null) {
+                    CSSParser cssParser = new CSSParser(file, "{" + style + ";}");
+                    localStylesheet = cssParser.parse();
+                    inlineStyleCache.put(style, localStylesheet);
+                }
             }
 
-            // Apply all the rules
+            // Apply all the rules. The local stylesheet goes at the very
+            // bottom (the highest priority)
 
             StyleStruct styles = new StyleStruct();
-            orderedStylesheet.setStyleStructValues(styles);
+            orderedStylesheet.applyRules(styles);
+            if (localStylesheet != null) localStylesheet.applyRules(styles);
+            StylePropertyDefinition.generateFonts(styles);
 
             // Save the styleStruct in the cache
-            // We're counting on StyleStructs never being permanently changed,
-            // so we don't need to save a copy, just a reference
+            // The StyleStruct is shared with every command that uses the same
+            // styles, so we save a reference. Drawing code never changes a
+            // StyleStruct; it changes a copy (see StyleStruct.createCopy())
 
             if (cacheEnabled) {
                 styleStructCache.put(styleStructCacheId, styles);
@@ -349,15 +475,32 @@ public final class Stylesheet
      */
     public void setStyleStructValues(StyleStruct styles)
     {
-        for (Rule rule : rules) {
-            rule.setStyleStructValues(styles);
-        }
+        applyRules(styles);
 
         // Generate the fonts, if needed, at the very end
 
         StylePropertyDefinition.generateFonts(styles);
     }
 
+    /**
+     * Use the styles in each rule in this stylesheet to set the values in a
+     * StyleStruct, without generating the fonts.
+     *
+     * @param styles The StylesStruct to set.
+     */
+    private void applyRules(StyleStruct styles)
+    {
+        if (layers != null) {
+            for (Stylesheet layer : layers) {
+                layer.applyRules(styles);
+            }
+            return;
+        }
+        for (Rule rule : rules) {
+            rule.setStyleStructValues(styles);
+        }
+    }
+
     /**
      * Gather all of a command's matching rules into a new stylesheet, where
      * the rules are sorted by how well they match the command. Given two
@@ -373,51 +516,60 @@ public final class Stylesheet
      */
     public Stylesheet match(String commandName, String id, String[] classes)
     {
-        LinkedList<Pair<Integer, Rule>> list = new LinkedList<>();
+        Stylesheet orderedSheet = new Stylesheet();
+        if (layers == null) {
+            orderedSheet.rules.addAll(getIndex().match(commandName, id, classes));
+            return orderedSheet;
+        }
 
-        for (Rule rule : rules) {
-            int score = rule.getMatchScore(commandName, id, classes);
-            if (score > -1) {
-                addScoredRule(list, new Pair<>(score, rule));
-            }
+        // Match each layer. Offsetting the positions of a layer's rules by
+        // the number of rules in the layers below it sorts the matches as if
+        // all the rules were in one stylesheet
+
+        RuleIndex[] indexes = new RuleIndex[layers.length];
+        int[] offsets = new int[layers.length + 1];
+        long[][] layerKeys = new long[layers.length][];
+        int count = 0;
+        for (int i = 0; i < layers.length; i++) {
+            indexes[i] = layers[i].getIndex();
+            offsets[i + 1] = offsets[i] + indexes[i].size();
+            layerKeys[i] = indexes[i].matchKeys(commandName, id, classes);
+            count += layerKeys[i].length;
         }
 
-        Stylesheet orderedSheet = new Stylesheet();
-        for (Pair<Integer, Rule> integerRulePair : list) {
-            orderedSheet.addRule(integerRulePair.getValue());
+        long[] keys = new long[count];
+        count = 0;
+        for (int i = 0; i < layers.length; i++) {
+            for (long key : layerKeys[i]) {
+                keys[count++] = RuleIndex.createKey(RuleIndex.getScore(key), RuleIndex.getPosition(key) + offsets[i]);
+            }
+        }
+        Arrays.sort(keys);
+
+        int layer = 0;
+        for (long key : keys) {
+            int position = RuleIndex.getPosition(key);
+            while (position >= offsets[layer + 1]) layer++;
+            while (position < offsets[layer]) layer--;
+            orderedSheet.rules.add(indexes[layer].getRule(position - offsets[layer]));
         }
 
         return orderedSheet;
     }
 
     /**
-     * Add a rule to a linked list such that the rules remain in scored order,
-     * with higher scores being closer to the end of the list.
+     * Get the index over the rules, building it if needed.
      *
-     * @param list A list of paired values.
-     * @param pair A paired value, the first of which is the match score for
-     * a rule and the second being the rule.
+     * @return The index.
      */
-    private void addScoredRule(LinkedList<Pair<Integer, Rule>> list, Pair<Integer, Rule> pair)
+    private RuleIndex getIndex()
     {
-        int index = Collections.binarySearch(list, pair, scoreComparator);
-
-        // We found a match at the index. We need to add the new rule after all
-        // elements with the same score
-
-        if (index > -1) {
-            while (index < list.size() && list.get(index).getKey() == (int)pair.getKey()) {
-                index++;
-            }
-            list.add(index, pair);
-        }
-
-        // We didn't find a match, but we know where to insert the element
-
-        else {
-            index = -(index + 1);
-            list.add(index, pair);
+        RuleIndex ruleIndex = index;
+        if (ruleIndex == null) {
+            ruleIndex = new RuleIndex(rules);
+            index = ruleIndex;
         }
+        return ruleIndex;
     }
 
 }
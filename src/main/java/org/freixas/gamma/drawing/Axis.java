@@ -326,9 +326,10 @@ public class Axis
         }
         boolean drawLabels = labelText != null && labelText.length() > 0;
 
-        // If we don't have tick labels or axis labels, we're done
+        // If we don't have tick labels or axis labels, we're done. Draft
+        // drawings have no labels
 
-        if (!drawTickLabels && !drawLabels) {
+        if ((!drawTickLabels && !drawLabels) || context.isDraft) {
             gc.restore();
             return;
         }
@@ -351,11 +352,10 @@ public class Axis
         Font font;
         LabelStruct labelStruct = new LabelStruct();
 
-        double savedTextPaddingTop = styles.textPaddingTop;
-        double savedTextPaddingBottom = styles.textPaddingBottom;
-        double savedTextPaddingLeft = styles.textPaddingLeft;
-        double savedTextPaddingRight = styles.textPaddingRight;
-        StyleProperties.TextAnchor savedTextAnchor = styles.textAnchor;
+        // The labels change the text padding and anchor. The style structure
+        // may be shared, so we change a copy
+
+        styles = styles.createCopy();
 
         Dimension2D maxTickDimension;
         StyleProperties.TextAnchor anchorPlus;
@@ -761,11 +761,6 @@ public class Axis
         // *** Restore the original graphics context.***
         // *********************************************
 
-        styles.textPaddingTop = savedTextPaddingTop;
-        styles.textPaddingBottom = savedTextPaddingBottom;
-        styles.textPaddingLeft = savedTextPaddingLeft;
-        styles.textPaddingRight = savedTextPaddingRight;
-        styles.textAnchor = savedTextAnchor;
         gc.restore();
     }
 
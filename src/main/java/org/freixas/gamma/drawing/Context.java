@@ -59,6 +59,21 @@ public class Context
      */
     public Bounds bounds;
 
+    /**
+     * True if the diagram is being drawn in draft quality while the user
+     * changes the view. Drawing methods may leave out fine details, which
+     * are restored when the diagram is next drawn in full quality.
+     */
+    public boolean isDraft;
+
+    /**
+     * The unit hyperbola used to draw hypergrids. Its tessellation is cached
+     * and rebuilt as the scale changes, so it is not thread-safe. Each
+     * context has its own, so it is only used by the thread drawing on this
+     * context's canvas.
+     */
+    final UnitHyperbola unitHyperbola;
+
     // **********************************************************************
     // *
     // * Constructors
@@ -83,6 +98,8 @@ public class Context
 
         this.invScale = getCurrentInvScale();
         this.bounds = getCurrentCanvasBounds();
+        this.isDraft = false;
+        this.unitHyperbola = new UnitHyperbola();
     }
 
     /**
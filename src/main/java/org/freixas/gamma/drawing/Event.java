@@ -176,10 +176,7 @@ public class Event
                 // been taken care of)
 
                 if (segment != null) {
-                    StyleProperties.Arrow savedArrow = styles.arrow;
-                    styles.arrow = StyleProperties.Arrow.NONE;
-                    Line.drawRaw(context, segment, styles);
-                    styles.arrow = savedArrow;
+                    Line.drawRaw(context, segment, styles.withArrow(StyleProperties.Arrow.NONE));
                 }
             }
 
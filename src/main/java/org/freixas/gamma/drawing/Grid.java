@@ -120,7 +120,10 @@ public class Grid
                     gc.strokeLine(c1.x, c1.t, c2.x, c2.t);
                     Line.setupLineGc(context, color, lineThickness, lineStyle);
                }
-                else {
+
+                // Draft drawings only have the major lines
+
+                else if (!context.isDraft) {
                     gc.strokeLine(c1.x, c1.t, c2.x, c2.t);
                 }
             }
@@ -154,7 +157,7 @@ public class Grid
                     gc.strokeLine(c1.x, c1.t, c2.x, c2.t);
                     Line.setupLineGc(context, color, lineThickness, lineStyle);
                 }
-                else {
+                else if (!context.isDraft) {
                     gc.strokeLine(c1.x, c1.t, c2.x, c2.t);
                 }
             }
@@ -18,17 +18,53 @@ package org.freixas.gamma.drawing;
 
 import org.freixas.gamma.css.value.StyleStruct;
 import org.freixas.gamma.math.OffsetAcceleration;
+import org.freixas.gamma.math.Util;
 import org.freixas.gamma.value.HyperbolicSegment;
 import javafx.scene.canvas.GraphicsContext;
 
 /**
  * Draw a hyperbolic segment.
+ * <p>
+ * The segment is drawn as a series of straight lines. The segment is
+ * subdivided until no part of the curve is further than a given tolerance
+ * from the lines. Nearly straight parts of the curve therefore use few
+ * lines and tight curves use many.
  *
  * @author Antonio Freixas
  */
 public class Hyperbola
 {
-    public final static double SMOOTHNESS = 5;
+    /**
+     * The maximum distance between the curve and the lines drawn, in screen
+     * units.
+     */
+    public final static double TOLERANCE = 0.5;
+
+    /**
+     * The maximum distance between the curve and the lines drawn, in screen
+     * units, for draft drawings.
+     */
+    public final static double DRAFT_TOLERANCE = 2.0;
+
+    /**
+     * The maximum number of times a segment is subdivided.
+     */
+    final static int MAX_DEPTH = 16;
+
+    /**
+     * Receives the vertices of a tessellated segment.
+     */
+    @FunctionalInterface
+    interface VertexSink
+    {
+        /**
+         * Add a vertex.
+         *
+         * @param x The x coordinate of the vertex.
+         * @param t The t coordinate of the vertex.
+         */
+        void lineTo(double x, double t);
+    }
 
     /**
      * Draw hyperbolic segment. This method sets up the graphics context to
@@ -80,21 +116,74 @@ public class Hyperbola
     {
         GraphicsContext gc = context.gc;
 
-        double tStep = SMOOTHNESS * context.invScale;
-        OffsetAcceleration curve = segment.getCurve();
+        // Draft drawings allow a larger error
 
-        gc.beginPath();
+        double tolerance = (context.isDraft ? DRAFT_TOLERANCE : TOLERANCE) * context.invScale;
 
-        double t = segment.getMin().t;
-        gc.moveTo(segment.getMin().x, t);
+        gc.beginPath();
+        gc.moveTo(segment.getMin().x, segment.getMin().t);
+        tessellate(segment, tolerance, gc::lineTo);
+        gc.stroke();
+    }
 
-        for (t = t + tStep; t <= segment.getMax().t; t += tStep) {
-            double x = curve.tToX(t);
-            gc.lineTo(x, t);
-        }
-        gc.lineTo(segment.getMax().x, segment.getMax().t);
+    /**
+     * Convert a hyperbolic segment to a series of straight lines. The
+     * vertices after the segment's starting point are passed to the sink in
+     * order.
+     *
+     * @param segment The hyperbolic segment.
+     * @param tolerance The maximum distance between the curve and the
+     * lines, in world units.
+     * @param sink The receiver of the vertices.
+     * @return The number of vertices passed to the sink.
+     */
+    static int tessellate(HyperbolicSegment segment, double tolerance, VertexSink sink)
+    {
+        double t0 = segment.getMin().t;
+        double x0 = segment.getMin().x;
+        double t1 = segment.getMax().t;
+        double x1 = segment.getMax().x;
+
+        int count = subdivide(segment.getCurve(), t0, x0, t1, x1, tolerance, MAX_DEPTH, sink);
+        sink.lineTo(x1, t1);
+        return count + 1;
+    }
 
-        gc.stroke();
+    /**
+     * Subdivide the part of a curve between two points until it is within
+     * the tolerance of the line between them. The vertices strictly between
+     * the two points are passed to the sink in order.
+     *
+     * @return The number of vertices passed to the sink.
+     */
+    static private int subdivide(
+        OffsetAcceleration curve,
+        double t0, double x0, double t1, double x1,
+        double tolerance, int depth, VertexSink sink)
+    {
+        double dt = t1 - t0;
+        double dx = x1 - x0;
+        double length = Math.sqrt(dx * dx + dt * dt);
+        if (depth == 0 || length <= tolerance || Util.fuzzyZero(curve.getA())) return 0;
+
+        // A hyperbola has no inflection points, so the point furthest from
+        // the line is the one where the velocity (dx/dt) matches the slope
+        // of the line. If rounding puts that point outside the interval,
+        // use the middle
+
+        double v = dx / dt;
+        double tm = Math.abs(v) < 1.0 ? curve.vToT(v) : Double.NaN;
+        if (!(tm > t0 && tm < t1)) tm = t0 + dt / 2.0;
+        double xm = curve.tToX(tm);
+
+        double error = Math.abs(dx * (tm - t0) - dt * (xm - x0)) / length;
+        if (error <= tolerance) return 0;
+
+        int count = subdivide(curve, t0, x0, tm, xm, tolerance, depth - 1, sink);
+        sink.lineTo(xm, tm);
+        count++;
+        count += subdivide(curve, tm, xm, t1, x1, tolerance, depth - 1, sink);
+        return count;
     }
 
 }
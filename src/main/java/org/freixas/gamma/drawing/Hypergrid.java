@@ -19,14 +19,15 @@ package org.freixas.gamma.drawing;
 import javafx.scene.canvas.GraphicsContext;
 import org.freixas.gamma.css.value.StyleStruct;
 import org.freixas.gamma.execution.lcode.HypergridStruct;
-import org.freixas.gamma.math.OffsetAcceleration;
 import org.freixas.gamma.math.Util;
 import org.freixas.gamma.value.Bounds;
 import org.freixas.gamma.value.Coordinate;
-import org.freixas.gamma.value.HyperbolicSegment;
 
 /**
  * Draw a hypergird.
+ * <p>
+ * Every hypergrid hyperbola is a scaled copy of the unit hyperbola, so the
+ * hyperbolas are all drawn from the context's UnitHyperbola.
  *
  * @author Antonio Freixas
  */
@@ -45,6 +46,7 @@ public class Hypergrid
                             StyleStruct styles)
     {
         GraphicsContext gc = context.gc;
+        UnitHyperbola unitHyperbola = context.unitHyperbola;
 
         // Save the current graphics context
 
@@ -68,6 +70,10 @@ public class Hypergrid
 
         Line.setupLineGc(context, styles);
 
+        // Draft drawings allow a larger error
+
+        double tolerance = (context.isDraft ? Hyperbola.DRAFT_TOLERANCE : Hyperbola.TOLERANCE) * context.invScale;
+
         if (styles.leftQuadrant || styles.rightQuadrant) {
             double[] range = calculateXRange(bounds);
 
@@ -82,13 +88,7 @@ public class Hypergrid
                         if (x < 0 && !styles.leftQuadrant) continue;
                         if (x > 0 && !styles.rightQuadrant) continue;
                         if (Util.fuzzyZero(x)) continue;
-                        double a = 1/x;
-                        OffsetAcceleration curve = new OffsetAcceleration(a, 0, new Coordinate(x, 0.0), 0.0, 0.0);
-                        HyperbolicSegment segment = new HyperbolicSegment(a, bounds.min.t, bounds.max.t, curve);
-                        HyperbolicSegment segment2 = segment.intersect(bounds);
-                        if (segment2 != null) {
-                            Hyperbola.drawRaw(context, segment2);
-                        }
+                        drawHyperbola(gc, unitHyperbola, x, bounds, tolerance);
                     }
                 }
             }
@@ -98,7 +98,10 @@ public class Hypergrid
 
         if (styles.bottomQuadrant || styles.topQuadrant) {
             gc.rotate(90);
-            bounds = context.getCurrentCanvasBounds();
+
+            // After rotating by 90 degrees, what was (x, t) is now (t, -x)
+
+            bounds = new Bounds(bounds.min.t, -bounds.max.x, bounds.max.t, -bounds.min.x);
 
             double[] range = calculateXRange(bounds);
 
@@ -110,13 +113,7 @@ public class Hypergrid
                         if (x < 0 && !styles.bottomQuadrant) continue;
                         if (x > 0 && !styles.topQuadrant) continue;
                         if (Util.fuzzyZero(x)) continue;
-                        double a = 1/x;
-                        OffsetAcceleration curve = new OffsetAcceleration(a, 0, new Coordinate(x, 0.0), 0.0, 0.0);
-                        HyperbolicSegment segment = new HyperbolicSegment(a, bounds.min.t, bounds.max.t, curve);
-                        HyperbolicSegment segment2 = segment.intersect(bounds);
-                        if (segment2 != null) {
-                            Hyperbola.drawRaw(context, segment2);
-                        }
+                        drawHyperbola(gc, unitHyperbola, x, bounds, tolerance);
                     }
                 }
             }
@@ -127,6 +124,36 @@ public class Hypergrid
         gc.restore();
     }
 
+    /**
+     * Draw the part of the hypergrid hyperbola through (x0, 0) that lies
+     * within the x range of the bounds, clipped to the t range of the bounds.
+     *
+     * @param gc The graphics context.
+     * @param unitHyperbola The unit hyperbola.
+     * @param x0 The point at which the hyperbola crosses the x axis.
+     * @param bounds The bounds.
+     * @param tolerance The maximum distance between the curve and the lines
+     * drawn, in world units.
+     */
+    static private void drawHyperbola(GraphicsContext gc, UnitHyperbola unitHyperbola, double x0, Bounds bounds, double tolerance)
+    {
+        // The hyperbola is x^2 - t^2 = x0^2, so it is within the bounds'
+        // x range while |t| <= sqrt(farX^2 - x0^2)
+
+        double farX = x0 > 0 ? bounds.max.x : -bounds.min.x;
+        if (farX <= Math.abs(x0)) return;
+        double range = Math.sqrt(farX * farX - x0 * x0);
+
+        double minT = Math.max(bounds.min.t, -range);
+        double maxT = Math.min(bounds.max.t, range);
+        if (minT >= maxT) return;
+
+        gc.beginPath();
+        gc.moveTo(UnitHyperbola.tToX(x0, minT), minT);
+        unitHyperbola.tessellate(x0, minT, maxT, tolerance, gc::lineTo);
+        gc.stroke();
+    }
+
     /**
      * Calculate which hyperbolas we should draw. We only want the ones that
      * fit inside the bounding box.
@@ -64,6 +64,10 @@ public class Label
     {
         // NOTE: + angle is counterclockwise. - angle is clockwise
 
+        // Draft drawings have no text
+
+        if (context.isDraft) return;
+
         try {
             GraphicsContext gc = context.gc;
 
@@ -44,19 +44,19 @@ public class Line
      */
     static public void draw(Context context, LineStruct struct, StyleStruct styles)
     {
-        StyleProperties.Arrow arrowStyle = styles.arrow;
+        StyleProperties.Arrow arrow = styles.arrow;
 
         // Normal lines are infinite and have no arrowheads
 
         if (struct.line instanceof ConcreteLine) {
-            styles.arrow = StyleProperties.Arrow.NONE;
+            arrow = StyleProperties.Arrow.NONE;
         }
 
         // Bounded lines are allowed arrows on any finite end
 
         else if (struct.line instanceof BoundedLine boundedLine) {
-            if (boundedLine.isInfiniteMinus()) suppressStartArrow(styles);
-            if (boundedLine.isInfinitePlus()) suppressEndArrow(styles);
+            if (boundedLine.isInfiniteMinus()) arrow = suppressStartArrow(arrow);
+            if (boundedLine.isInfinitePlus()) arrow = suppressEndArrow(arrow);
         }
 
         LineSegment segment = struct.line.intersect(context.bounds);
@@ -72,55 +72,58 @@ public class Line
             CurveSegment curve = boundedLine.getCurveSegment();
 
             if (curve instanceof LineSegment lineSegment) {
-                if (!context.bounds.inside(lineSegment.getPoint1())) suppressStartArrow(styles);
-                if (!context.bounds.inside(lineSegment.getPoint2())) suppressEndArrow(styles);
+                if (!context.bounds.inside(lineSegment.getPoint1())) arrow = suppressStartArrow(arrow);
+                if (!context.bounds.inside(lineSegment.getPoint2())) arrow = suppressEndArrow(arrow);
             }
 
             else if (curve instanceof ConcreteLine concreteLine) {
                 if (!concreteLine.isInfiniteMinus() &&
-                    !context.bounds.inside(concreteLine.getCoordinate())) suppressStartArrow(styles);
+                    !context.bounds.inside(concreteLine.getCoordinate())) arrow = suppressStartArrow(arrow);
                 if (!concreteLine.isInfinitePlus() &&
-                    !context.bounds.inside(concreteLine.getCoordinate())) suppressEndArrow(styles);
+                    !context.bounds.inside(concreteLine.getCoordinate())) arrow = suppressEndArrow(arrow);
             }
         }
 
+        // The style structure may be shared, so we draw with a copy if the
+        // arrows changed
+
         if (segment != null) {
-            draw(context, segment, styles);
+            draw(context, segment, styles.withArrow(arrow));
         }
-
-        // Restore the original arrow style
-
-        styles.arrow = arrowStyle;
     }
 
     /**
      * Suppress the start arrow.
      *
-     * @param styles The style properties.
+     * @param arrow The arrow style.
+     * @return The arrow style without a start arrow.
      */
-    static private void suppressStartArrow(StyleStruct styles)
+    static private StyleProperties.Arrow suppressStartArrow(StyleProperties.Arrow arrow)
     {
-        if (styles.arrow == StyleProperties.Arrow.START) {
-            styles.arrow = StyleProperties.Arrow.NONE;
+        if (arrow == StyleProperties.Arrow.START) {
+            return StyleProperties.Arrow.NONE;
         }
-        else if (styles.arrow == StyleProperties.Arrow.BOTH) {
-            styles.arrow = StyleProperties.Arrow.END;
+        else if (arrow == StyleProperties.Arrow.BOTH) {
+            return StyleProperties.Arrow.END;
         }
+        return arrow;
     }
 
     /**
      * Suppress the end arrow.
      *
-     * @param styles The style properties.
+     * @param arrow The arrow style.
+     * @return The arrow style without an end arrow.
      */
-    static private void suppressEndArrow(StyleStruct styles)
+    static private StyleProperties.Arrow suppressEndArrow(StyleProperties.Arrow arrow)
     {
-        if (styles.arrow == StyleProperties.Arrow.END) {
-            styles.arrow = StyleProperties.Arrow.NONE;
+        if (arrow == StyleProperties.Arrow.END) {
+            return StyleProperties.Arrow.NONE;
         }
-        else if (styles.arrow == StyleProperties.Arrow.BOTH) {
-            styles.arrow = StyleProperties.Arrow.START;
+        else if (arrow == StyleProperties.Arrow.BOTH) {
+            return StyleProperties.Arrow.START;
         }
+        return arrow;
     }
 
     /**
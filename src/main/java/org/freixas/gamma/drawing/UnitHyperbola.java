@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2021 Antonio Freixas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.drawing;
+
+import java.util.Arrays;
+
+/**
+ * The unit hyperbola x^2 - t^2 = 1 (x &gt; 0), converted to straight lines
+ * once and shared by every hypergrid hyperbola. The hypergrid hyperbola
+ * through (x0, 0) is x^2 - t^2 = x0^2, which is the unit hyperbola scaled
+ * by |x0| (and mirrored if x0 &lt; 0).
+ * <p>
+ * The unit hyperbola is subdivided the same way Hyperbola subdivides a
+ * segment, and the subdivision is kept as a tree. Each vertex records the
+ * largest tolerance at which it would still be needed. A scaled copy
+ * needs a tolerance that is smaller by the scale factor, so drawing a
+ * hyperbola only walks the part of the tree that is needed for that
+ * tolerance and the visible range of t. No curve needs to be evaluated.
+ * <p>
+ * The tree is only rebuilt when a tolerance finer than the one it was
+ * built for is requested, or when a longer range is needed. Rebuilds use
+ * a tolerance ten times finer than the one requested, so zooming within a
+ * grid spacing decade doesn't cause further rebuilds.
+ *
+ * @author Antonio Freixas
+ */
+final class UnitHyperbola
+{
+    static private final double MIN_TOLERANCE = 1.0E-9;
+    static private final int MAX_DEPTH = 48;
+    static private final int INITIAL_CAPACITY = 256;
+
+    // The tree nodes. Each node is a vertex on the unit hyperbola
+
+    private double[] ts;
+    private double[] xs;
+    private double[] thresholds;
+    private int[] left;
+    private int[] right;
+    private int size;
+    private int root;
+
+    private double builtTolerance;
+    private double range;
+
+    /**
+     * Create a unit hyperbola. Nothing is computed until the first
+     * hyperbola is drawn.
+     */
+    UnitHyperbola()
+    {
+        ts = new double[INITIAL_CAPACITY];
+        xs = new double[INITIAL_CAPACITY];
+        thresholds = new double[INITIAL_CAPACITY];
+        left = new int[INITIAL_CAPACITY];
+        right = new int[INITIAL_CAPACITY];
+        size = 0;
+        root = -1;
+
+        builtTolerance = Double.POSITIVE_INFINITY;
+        range = 0.0;
+    }
+
+    /**
+     * Convert the part of the hypergrid hyperbola through (x0, 0) between
+     * two times to a series of straight lines. The vertices after the
+     * starting point, (tToX(x0, minT), minT), are passed to the sink in
+     * order.
+     *
+     * @param x0 The point at which the hyperbola crosses the x axis. This
+     * must not be 0.
+     * @param minT The starting time.
+     * @param maxT The ending time.
+     * @param tolerance The maximum distance between the curve and the
+     * lines, in world units.
+     * @param sink The receiver of the vertices.
+     * @return The number of vertices passed to the sink.
+     */
+    int tessellate(double x0, double minT, double maxT, double tolerance, Hyperbola.VertexSink sink)
+    {
+        double scale = Math.abs(x0);
+        double unitTolerance = tolerance / scale;
+        double from = minT / scale;
+        double to = maxT / scale;
+
+        build(unitTolerance, Math.max(Math.abs(from), Math.abs(to)));
+
+        int count = visit(root, -range, range, from, to, unitTolerance, x0, scale, sink);
+        sink.lineTo(tToX(x0, maxT), maxT);
+        return count + 1;
+    }
+
+    /**
+     * Get the number of vertices computed for the unit hyperbola.
+     *
+     * @return The number of vertices computed.
+     */
+    int getSize()
+    {
+        return size;
+    }
+
+    /**
+     * Given t, return x for the hypergrid hyperbola through (x0, 0).
+     *
+     * @param x0 The point at which the hyperbola crosses the x axis.
+     * @param t The time.
+     * @return The position.
+     */
+    static double tToX(double x0, double t)
+    {
+        return Math.copySign(Math.sqrt(x0 * x0 + t * t), x0);
+    }
+
+    /**
+     * Rebuild the tree if it doesn't support the given tolerance and range.
+     *
+     * @param unitTolerance The tolerance needed for the unit hyperbola.
+     * @param unitRange The largest absolute value of t needed for the unit
+     * hyperbola.
+     */
+    private void build(double unitTolerance, double unitRange)
+    {
+        boolean isTooCoarse = unitTolerance < builtTolerance && builtTolerance > MIN_TOLERANCE;
+        if (!isTooCoarse && unitRange <= range) return;
+
+        if (isTooCoarse) {
+            builtTolerance = Math.max(unitTolerance / 10.0, MIN_TOLERANCE);
+        }
+        range = Math.max(range, Math.max(2.0 * unitRange, 1.0));
+
+        size = 0;
+        double x = Math.sqrt(1.0 + range * range);
+        root = subdivide(-range, x, range, x, Double.POSITIVE_INFINITY, MAX_DEPTH);
+    }
+
+    /**
+     * Subdivide the part of the unit hyperbola between two points until it
+     * is within the built tolerance of the line between them.
+     *
+     * @return The index of the node for the point at which the part was
+     * split, or -1 if it wasn't split.
+     */
+    private int subdivide(double t0, double x0, double t1, double x1, double parentThreshold, int depth)
+    {
+        double dt = t1 - t0;
+        double dx = x1 - x0;
+        double length = Math.sqrt(dx * dx + dt * dt);
+        if (depth == 0 || length <= builtTolerance) return -1;
+
+        // The point furthest from the line is the one where the slope of
+        // the curve (t / x) matches the slope of the line
+
+        double v = dx / dt;
+        double tm = Math.abs(v) < 1.0 ? v / Math.sqrt(1.0 - v * v) : Double.NaN;
+        if (!(tm > t0 && tm < t1)) tm = t0 + dt / 2.0;
+        double xm = Math.sqrt(1.0 + tm * tm);
+
+        double error = Math.abs(dx * (tm - t0) - dt * (xm - x0)) / length;
+        if (error <= builtTolerance) return -1;
+
+        // A vertex is only needed if the parts containing it are also split
+
+        double threshold = Math.min(error, parentThreshold);
+
+        // The arrays may grow while the children are added, so don't store
+        // the child indices until both have been added
+
+        int node = addNode(tm, xm, threshold);
+        int leftNode = subdivide(t0, x0, tm, xm, threshold, depth - 1);
+        int rightNode = subdivide(tm, xm, t1, x1, threshold, depth - 1);
+        left[node] = leftNode;
+        right[node] = rightNode;
+        return node;
+    }
+
+    private int addNode(double t, double x, double threshold)
+    {
+        if (size == ts.length) {
+            int capacity = size * 2;
+            ts = Arrays.copyOf(ts, capacity);
+            xs = Arrays.copyOf(xs, capacity);
+            thresholds = Arrays.copyOf(thresholds, capacity);
+            left = Arrays.copyOf(left, capacity);
+            right = Arrays.copyOf(right, capacity);
+        }
+        ts[size] = t;
+        xs[size] = x;
+        thresholds[size] = threshold;
+        return size++;
+    }
+
+    /**
+     * Pass the vertices in a subtree that are needed for the given tolerance
+     * and that lie strictly between two times to the sink, in order.
+     *
+     * @return The number of vertices passed to the sink.
+     */
+    private int visit(
+        int node, double lo, double hi, double from, double to,
+        double unitTolerance, double x0, double scale, Hyperbola.VertexSink sink)
+    {
+        // Every vertex in a subtree has a threshold no larger than the
+        // subtree's root, and lies between lo and hi
+
+        if (node < 0 || thresholds[node] <= unitTolerance || hi <= from || lo >= to) return 0;
+
+        double t = ts[node];
+        int count = visit(left[node], lo, t, from, to, unitTolerance, x0, scale, sink);
+        if (t > from && t < to) {
+            sink.lineTo(x0 * xs[node], scale * t);
+            count++;
+        }
+        count += visit(right[node], t, hi, from, to, unitTolerance, x0, scale, sink);
+        return count;
+    }
+
+}
@@ -47,12 +47,14 @@ public class Worldline
         // Save the current graphics context
 
         gc.save();
-        StyleProperties.Arrow savedArrow = styles.arrow;
-        styles.arrow = StyleProperties.Arrow.NONE;
+        // The worldline itself is drawn without arrows. The style structure
+        // may be shared, so we get a copy rather than change it
+
+        StyleStruct lineStyles = styles.withArrow(StyleProperties.Arrow.NONE);
 
         // Set up the gc for line drawing
 
-        Line.setupLineGc(context, styles);
+        Line.setupLineGc(context, lineStyles);
 
         org.freixas.gamma.value.Observer observer = struct.observer;
 
@@ -71,7 +73,7 @@ public class Worldline
                 if (curveSegment instanceof LineSegment lineSegment) {
                     lineSegment = lineSegment.intersect(context.bounds);
                     if (lineSegment != null) {
-                        Line.drawRaw(context, lineSegment, styles);
+                        Line.drawRaw(context, lineSegment, lineStyles);
                     }
                 }
 
@@ -92,7 +94,7 @@ public class Worldline
                 else if (curveSegment instanceof org.freixas.gamma.value.Line line) {
                     LineSegment lineSegment = line.intersect(context.bounds);
                     if (lineSegment != null) {
-                        Line.drawRaw(context, lineSegment, styles);
+                        Line.drawRaw(context, lineSegment, lineStyles);
                     }
                 }
             }
@@ -122,7 +124,7 @@ public class Worldline
                         if (curveSegment instanceof LineSegment lineSegment) {
                             lineSegment = lineSegment.intersect(bounds);
                             if (lineSegment != null) {
-                                Line.drawRaw(context, lineSegment, styles);
+                                Line.drawRaw(context, lineSegment, lineStyles);
                             }
                         }
 
@@ -143,7 +145,7 @@ public class Worldline
                         else if (curveSegment instanceof org.freixas.gamma.value.Line line) {
                             LineSegment lineSegment = line.intersect(bounds);
                             if (lineSegment != null) {
-                                Line.drawRaw(context, lineSegment, styles);
+                                Line.drawRaw(context, lineSegment, lineStyles);
                             }
                         }
                     }
@@ -152,7 +154,6 @@ public class Worldline
                 // We know we drew something because the bounding box isn't null
                 // Add the arrows
 
-                styles.arrow = savedArrow;
                 if (styles.arrow != StyleProperties.Arrow.NONE) {
                     double[] angles = getAngles(min, max);
                     if (styles.arrow == StyleProperties.Arrow.START || styles.arrow == StyleProperties.Arrow.BOTH) {
@@ -172,7 +173,6 @@ public class Worldline
 
         // Restore the original graphics context
 
-        styles.arrow = savedArrow;
         gc.restore();
     }
 
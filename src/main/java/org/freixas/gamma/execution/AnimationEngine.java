@@ -27,9 +27,8 @@ import org.freixas.gamma.value.DynamicVariable;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.Set;
+import java.util.function.BooleanSupplier;
 import javafx.animation.AnimationTimer;
-import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.scene.canvas.Canvas;
@@ -93,6 +92,13 @@ public class AnimationEngine
         @Override
         public void handle(long now)
         {
+            // Wait until the last frame has been drawn. Pulses we skip aren't
+            // counted, so a slow script skips frames to keep up. A pending
+            // display variable update goes first, or a busy runner would
+            // hold it back for as long as the animation runs
+
+            if (animationEngine.runner.isBusy() || animationEngine.isUpdatePending.getAsBoolean()) return;
+
             int frameSkipSize;
             int frameStepSize;
 
@@ -125,13 +131,7 @@ public class AnimationEngine
                     animationEngine.stop();
                 }
 
-                try {
-                    animationEngine.executeFrame(frame);
-                }
-                catch (Throwable e) {
-                    animationEngine.stop();
-                    Platform.runLater(() -> animationEngine.window.getDiagramEngine().handleException(e));
-                }
+                animationEngine.executeFrame(frame);
             }
         }
     }
@@ -144,9 +144,10 @@ public class AnimationEngine
     private final SetStatement setStatement;
     private final Stylesheet stylesheet;
     private final HCodeProgram program;
+    private final ScriptRunner runner;
+    private final BooleanSupplier isUpdatePending;
 
     private DynamicSymbolTable dynamicSymbolTable;
-    private Set<String> symbolNames;
 
     private HCodeEngine hCodeEngine;
     private DiagramAnimationTimer timer;
@@ -178,12 +179,16 @@ public class AnimationEngine
 
     private boolean isClosed;
 
-    public AnimationEngine(MainWindow window, SetStatement setStatement, Stylesheet stylesheet, HCodeProgram program)
+    public AnimationEngine(
+        MainWindow window, SetStatement setStatement, Stylesheet stylesheet, HCodeProgram program,
+        ScriptRunner runner, BooleanSupplier isUpdatePending)
     {
         this.window = window;
         this.setStatement = setStatement;
         this.stylesheet = stylesheet;
         this.program = program;
+        this.runner = runner;
+        this.isUpdatePending = isUpdatePending;
 
         this.hCodeEngine = null;
         this.timer = null;
@@ -305,6 +310,10 @@ public class AnimationEngine
 
     private void toStart()
     {
+        // Nothing can be done until the first frame has been drawn
+
+        if (timer == null) return;
+
         // We can always go to the first frame. This stops the animation
 
         if (absFrame != 0) {
@@ -318,6 +327,10 @@ public class AnimationEngine
 
     private void toEnd()
     {
+        // Nothing can be done until the first frame has been drawn
+
+        if (timer == null) return;
+
         // We can always go to the last frame. This stops the animation
 
         if (absFrame != absMaxFrame) {
@@ -331,6 +344,10 @@ public class AnimationEngine
 
     private void stepBackward()
     {
+        // Nothing can be done until the first frame has been drawn
+
+        if (timer == null) return;
+
         // Only if stopped
 
         if (state != State.PAUSED) return;
@@ -341,6 +358,10 @@ public class AnimationEngine
 
     private void stepForward()
     {
+        // Nothing can be done until the first frame has been drawn
+
+        if (timer == null) return;
+
         // Only if stopped
 
         if (state != State.PAUSED) return;
@@ -413,6 +434,16 @@ public class AnimationEngine
         }
     }
 
+    /**
+     * Get the h-code engine that runs the animation's frames.
+     *
+     * @return The h-code engine or null if the animation hasn't started.
+     */
+    HCodeEngine getHCodeEngine()
+    {
+        return hCodeEngine;
+    }
+
     /**
      * Run the animation.
      */
@@ -435,38 +466,71 @@ public class AnimationEngine
         if (firstTime) {
             // First execution
 
-            hCodeEngine = new HCodeEngine(window, setStatement, stylesheet, program);
-            hCodeEngine.execute();
+            HCodeEngine engine = new HCodeEngine(window, setStatement, stylesheet, program);
+            hCodeEngine = engine;
+            runner.run(
+                engine::evaluate,
+                commands -> {
+                    engine.present(commands);
 
-            // We don't have the animation statement settings or dynamic variables until
-            // after the first execution
+                    // We don't have the animation statement settings or dynamic variables until
+                    // after the first execution
 
-            dynamicSymbolTable = hCodeEngine.getDynamicSymbolTable();
-            symbolNames = dynamicSymbolTable.getSymbolNames();
+                    dynamicSymbolTable = engine.getDynamicSymbolTable();
+                    startAnimation(true);
+                },
+                this::handleException);
         }
 
         else {
-            // Remove all animation variables from the dynamic symbol table
+            HCodeEngine engine = hCodeEngine;
+            removeAnimationVariables();
 
-            Iterator<String> iter = symbolNames.iterator();
-            ArrayList<String> names = new ArrayList<>();
+            // Execute the h-code once to add in any new/changes animation variables
 
-            while (iter.hasNext()) {
-                String name = iter.next();
-                DynamicVariable dynamicVariable = dynamicSymbolTable.getDynamicVariable(name);
-                if (dynamicVariable instanceof AnimationVariable) {
-                    names.add(name);
-                }
-            }
+            runner.run(
+                engine::evaluate,
+                commands -> {
+                    engine.present(commands);
+                    startAnimation(false);
+                },
+                this::handleException);
+        }
+    }
 
-            for (String name : names) {
-                dynamicSymbolTable.remove(name);
+    /**
+     * Remove all animation variables from the dynamic symbol table. Like
+     * every other change to the dynamic variables, this is done on the JavaFX
+     * application thread before the script runner is asked to evaluate the
+     * script.
+     */
+    private void removeAnimationVariables()
+    {
+        Iterator<String> iter = dynamicSymbolTable.getSymbolNames().iterator();
+        ArrayList<String> names = new ArrayList<>();
+
+        while (iter.hasNext()) {
+            String name = iter.next();
+            DynamicVariable dynamicVariable = dynamicSymbolTable.getDynamicVariable(name);
+            if (dynamicVariable instanceof AnimationVariable) {
+                names.add(name);
             }
+        }
 
-            // Execute the h-code once to add in any new/changes animation variables
-
-            hCodeEngine.execute();
+        for (String name : names) {
+            dynamicSymbolTable.remove(name);
         }
+    }
+
+    /**
+     * Start the animation once the first frame has been drawn.
+     *
+     * @param firstTime True if this is the first time the animation is
+     * started.
+     */
+    private void startAnimation(boolean firstTime)
+    {
+        if (isClosed) return;
 
         // Handle the animation statement and animation variables
 
@@ -543,31 +607,60 @@ public class AnimationEngine
 
     }
 
-    private synchronized void executeFrame(int frame)
+    /**
+     * Evaluate a frame on the script runner's worker thread and draw it when
+     * it is ready.
+     *
+     * @param frame The logical frame number.
+     */
+    private void executeFrame(int frame)
     {
         if (isClosed) return;
 
         // Tell all the animation variables to update to match the current
-        // frame value
+        // frame value. This is done here, on the JavaFX application thread,
+        // rather than by the worker, so that the dynamic variables are only
+        // changed on one thread
 
-        for (String symbolName : symbolNames) {
+        for (String symbolName : dynamicSymbolTable.getSymbolNames()) {
             DynamicVariable dynamicVariable = dynamicSymbolTable.getDynamicVariable(symbolName);
             if (dynamicVariable instanceof AnimationVariable var) {
                 var.setCurrentValue(frame);
             }
         }
 
-        // Execute the h-code and l-code again
+        // Execute the h-code again
+
+        HCodeEngine engine = hCodeEngine;
+        runner.run(
+            engine::evaluate,
+            commands -> {
+                // Draw the frame
+
+                engine.present(commands);
 
-        hCodeEngine.execute();
+                // If this is the last frame, report that we're done
 
-        // If this is the last frame, report that we're done
+                if (atEnd()) window.diagramCompleted();
 
-        if (atEnd()) window.diagramCompleted();
+                // Try to see if we can keep the focus while the animation is running
 
-        // Try to see if we can keep the focus while the animation is running
+                canvas.requestFocus();
+            },
+            this::handleException);
+    }
 
-        canvas.requestFocus();
+    /**
+     * Stop the animation and report an error that occurred while executing
+     * or drawing a frame.
+     *
+     * @param e The exception.
+     */
+    private void handleException(Throwable e)
+    {
+        stop();
+        DiagramEngine diagramEngine = window.getDiagramEngine();
+        if (diagramEngine != null) diagramEngine.handleException(e);
     }
 
     private synchronized boolean atEnd()
@@ -586,7 +679,7 @@ public class AnimationEngine
     {
         int maxFrames = -1;
 
-        for (String symbolName : symbolNames) {
+        for (String symbolName : dynamicSymbolTable.getSymbolNames()) {
             DynamicVariable dynamicVariable = dynamicSymbolTable.getDynamicVariable(symbolName);
             if (dynamicVariable instanceof AnimationVariable var) {
                 if (Double.isNaN(var.getFinalValue())) continue;
@@ -652,7 +745,8 @@ public class AnimationEngine
             execute(false);
         }
         else if (state != State.RUNNING) {
-            hCodeEngine.execute();
+            HCodeEngine engine = hCodeEngine;
+            runner.run(engine::evaluate, engine::present, this::handleException);
         }
     }
     /**
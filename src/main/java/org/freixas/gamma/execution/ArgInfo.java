@@ -31,9 +31,51 @@ public class ArgInfo
 {
     public enum Type
     {
-        INTEGER, DOUBLE, STRING, DOUBLE_OR_STRING, W_INITIALIZER, W_SEGMENT, LIMIT_TYPE,
-        OBSERVER, OBSERVER_OR_FRAME, AT_TYPE, LINE, AXIS_TYPE, PATH, PROPERTY, PROPERTY_LIST,
-        PROPERTY_ELEMENT, COORDINATE, ADDRESS, OBJECT_CONTAINER, LINE_OR_OBSERVER, ANY
+        INTEGER(Integer.class),
+        DOUBLE(Double.class),
+        STRING(String.class),
+        DOUBLE_OR_STRING(Double.class, String.class),
+        W_INITIALIZER(WInitializer.class),
+        W_SEGMENT(WSegment.class),
+        LIMIT_TYPE(WorldlineSegment.LimitType.class),
+        OBSERVER(Observer.class),
+        OBSERVER_OR_FRAME(Observer.class, Frame.class),
+        AT_TYPE(Frame.AtType.class),
+        LINE(Line.class),
+        AXIS_TYPE(Line.AxisType.class),
+        PATH(Path.class),
+        PROPERTY(Property.class),
+        PROPERTY_LIST(PropertyList.class),
+        PROPERTY_ELEMENT(PropertyElement.class),
+        COORDINATE(Coordinate.class),
+        ADDRESS(Address.class),
+        OBJECT_CONTAINER(ObjectContainer.class),
+        LINE_OR_OBSERVER(Line.class, Observer.class),
+        ANY();
+
+        private final Class<?>[] classes;
+
+        Type(Class<?>... classes)
+        {
+            this.classes = classes;
+        }
+
+        /**
+         * Returns true if every non-null value of the given class is a
+         * valid argument of this type.
+         *
+         * @param cls The class of the argument or null if it is not known.
+         * @return True if the argument is valid.
+         */
+        public boolean accepts(Class<?> cls)
+        {
+            if (this == ANY) return true;
+            if (cls == null) return false;
+            for (Class<?> c : classes) {
+                if (c.isAssignableFrom(cls)) return true;
+            }
+            return false;
+        }
     }
 
     private final int numberOfArgs;
@@ -140,6 +182,28 @@ public class ArgInfo
         }
     }
 
+    /**
+     * Returns true if arguments of the given classes would always pass
+     * checkTypes(). This is used to skip the check when the argument types
+     * are known before the program executes. Only h-codes and functions
+     * with a fixed number of arguments can be checked this way.
+     *
+     * @param classes The class of each argument. A class is null if it is
+     * not known or if the argument might be null.
+     * @return True if the arguments would always pass checkTypes().
+     */
+    public boolean accepts(List<Class<?>> classes)
+    {
+        if (numberOfArgs == -1 || classes.size() != numberOfArgs) return false;
+
+        int argTypePtr = 0;
+        for (Class<?> cls : classes) {
+            if (!argTypes.get(argTypePtr).accepts(cls)) return false;
+            if (argTypePtr < argTypes.size() - 1) argTypePtr++;
+        }
+        return true;
+    }
+
     private void throwTypeError(String message)
     {
         throw new ExecutionException("Expected " + message);
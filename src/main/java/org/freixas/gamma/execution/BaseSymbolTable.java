@@ -16,20 +16,35 @@
  */
 package org.freixas.gamma.execution;
 
-import java.util.HashMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 /**
  * The base symbol table is the base class for all symbol tables. Symbol table
  * are used to store values associated with and accessed through symbols
  * (variable names).
+ * <p>
+ * Values are stored in an array indexed by the slots assigned by the
+ * program's SymbolIndex. Symbols can be accessed either by name or, when
+ * the slot is already known, directly by slot. Subclasses that change how
+ * values are stored or retrieved override the slot methods; the name
+ * methods always delegate to them.
  *
  * @author Antonio Freixas
  */
 public class BaseSymbolTable
 {
+    /**
+     * Marks a slot that holds no symbol. Null is a valid symbol value.
+     */
+    static private final Object UNDEFINED = new Object();
+
     private final HCodeEngine engine;
-    private final HashMap<String, Object> hashMap;
+    private final SymbolIndex index;
+    private Object[] values;
 
     // **********************************************************************
     // *
@@ -45,7 +60,9 @@ public class BaseSymbolTable
     public BaseSymbolTable(HCodeEngine engine)
     {
         this.engine = engine;
-        this.hashMap = new HashMap<>();
+        this.index = engine.getProgram().getSymbolIndex();
+        this.values = new Object[Math.max(index.size(), 16)];
+        Arrays.fill(values, UNDEFINED);
     }
 
     // **********************************************************************
@@ -64,15 +81,37 @@ public class BaseSymbolTable
         return engine;
     }
 
+    /**
+     * Get the symbol index used to assign slots to symbols.
+     *
+     * @return The symbol index.
+     */
+    public SymbolIndex getSymbolIndex()
+    {
+        return index;
+    }
+
     /**
      * Returns true if the given symbol is in this symbol table.
      *
      * @param name The name of the symbol.
      * @return  True if the given name is in any symbol table.
      */
-    public boolean contains(String name)
+    public final boolean contains(String name)
     {
-        return hashMap.containsKey(name);
+        int slot = index.findSlot(name);
+        return slot != -1 && contains(slot);
+    }
+
+    /**
+     * Returns true if the symbol with the given slot is in this symbol table.
+     *
+     * @param slot The slot of the symbol.
+     * @return  True if the given symbol is in this symbol table.
+     */
+    public boolean contains(int slot)
+    {
+        return isDefined(slot);
     }
 
     /**
@@ -84,9 +123,25 @@ public class BaseSymbolTable
      *
      * @return The symbol's value or null if it is not in any table.
      */
-    public Object get(String name)
+    public final Object get(String name)
     {
-         return hashMap.get(name);
+        int slot = index.findSlot(name);
+        return slot == -1 ? null : get(slot);
+    }
+
+    /**
+     * Get a symbol from the symbol table by slot. Since this always returns
+     * a value, use contains() to ensure the symbol is in the symbol table.
+     *
+     * @param slot The slot of the symbol.
+     *
+     * @return The symbol's value or null if it is not in the table.
+     */
+    public Object get(int slot)
+    {
+        if (slot >= values.length) return null;
+        Object value = values[slot];
+        return value == UNDEFINED ? null : value;
     }
 
     /**
@@ -96,9 +151,26 @@ public class BaseSymbolTable
      * @param symbol The name of the symbol.
      * @param value The symbol's value.
      */
-    public void put(String symbol, Object value)
+    public final void put(String symbol, Object value)
     {
-       hashMap.put(symbol, value);
+        put(index.getSlot(symbol), value);
+    }
+
+    /**
+     * Set the value of a symbol in this symbol table by slot. If the symbol
+     * doesn't exist, create it.
+     *
+     * @param slot The slot of the symbol.
+     * @param value The symbol's value.
+     */
+    public void put(int slot, Object value)
+    {
+        if (slot >= values.length) {
+            int oldLength = values.length;
+            values = Arrays.copyOf(values, Math.max(slot + 1, oldLength * 2));
+            Arrays.fill(values, oldLength, values.length, UNDEFINED);
+        }
+        values[slot] = value;
     }
 
     /**
@@ -106,18 +178,82 @@ public class BaseSymbolTable
      *
      * @param symbol The symbol to remove.
      */
-    public void remove(String symbol)
+    public final void remove(String symbol)
+    {
+        int slot = index.findSlot(symbol);
+        if (slot != -1) remove(slot);
+    }
+
+    /**
+     * Remove a symbol from this symbol table by slot.
+     *
+     * @param slot The slot of the symbol to remove.
+     */
+    public void remove(int slot)
     {
-        hashMap.remove(symbol);
+        if (slot < values.length) values[slot] = UNDEFINED;
     }
 
    /**
-     * Get all the symbols in this symbol table.
+     * Get all the symbols in this symbol table. The set is a view which
+     * reflects later changes to the table.
      *
      * @return All the symbols in the table.
      */
     public Set<String> getSymbolNames()
     {
-        return hashMap.keySet();
+        return new AbstractSet<>()
+        {
+            @Override
+            public Iterator<String> iterator()
+            {
+                return new Iterator<>()
+                {
+                    private int next = findNext(0);
+
+                    @Override
+                    public boolean hasNext()
+                    {
+                        return next < values.length;
+                    }
+
+                    @Override
+                    public String next()
+                    {
+                        if (!hasNext()) throw new NoSuchElementException();
+                        String name = index.getName(next);
+                        next = findNext(next + 1);
+                        return name;
+                    }
+                };
+            }
+
+            @Override
+            public int size()
+            {
+                int size = 0;
+                for (Object value : values) {
+                    if (value != UNDEFINED) size++;
+                }
+                return size;
+            }
+
+            @Override
+            public boolean contains(Object obj)
+            {
+                return obj instanceof String name && isDefined(index.findSlot(name));
+            }
+        };
+    }
+
+    private boolean isDefined(int slot)
+    {
+        return slot >= 0 && slot < values.length && values[slot] != UNDEFINED;
+    }
+
+    private int findNext(int slot)
+    {
+        while (slot < values.length && values[slot] == UNDEFINED) slot++;
+        return slot;
     }
 }
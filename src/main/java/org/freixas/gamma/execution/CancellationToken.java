@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2021 Antonio Freixas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.execution;
+
+/**
+ * A token used to stop a running script. Any thread can cancel the token.
+ * The HCodeEngine checks it whenever a script jumps backwards, so even a
+ * script caught in an infinite loop stops soon after the token is
+ * cancelled.
+ * <p>
+ * Once cancelled, a token stays cancelled.
+ *
+ * @author Antonio Freixas
+ */
+public final class CancellationToken
+{
+    private volatile boolean cancelled;
+
+    /**
+     * Create a token that has not been cancelled.
+     */
+    public CancellationToken()
+    {
+        cancelled = false;
+    }
+
+    /**
+     * Cancel the token.
+     */
+    public void cancel()
+    {
+        cancelled = true;
+    }
+
+    /**
+     * Returns true if the token has been cancelled.
+     *
+     * @return True if the token has been cancelled.
+     */
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+}
@@ -0,0 +1,483 @@
+/*
+ * Copyright (C) 2021 Antonio Freixas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.execution;
+
+import org.freixas.gamma.ProgrammingException;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A minimal writer for JVM class files, just capable enough for the
+ * HCodeCompiler. A class has a no-argument constructor and any number of
+ * other public methods.
+ * <p>
+ * Class files are written with version 49 (Java 5). The JVM verifies these
+ * by type inference, so we don't need to generate stack map frames.
+ *
+ * @author Antonio Freixas
+ */
+class ClassFileWriter
+{
+    static private final int VERSION = 49;
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    private final String className;
+    private final String superName;
+    private final String[] interfaceNames;
+
+    private final ByteArrayOutputStream poolBytes;
+    private final DataOutputStream pool;
+    private final HashMap<String, Integer> poolEntries;
+    private int poolCount;
+
+    private final ArrayList<byte[]> methods;
+
+    /**
+     * Thrown when a class would exceed one of the limits of the class file
+     * format, such as the size of a method. Any other failure is a bug.
+     */
+    @SuppressWarnings("serial")
+    static final class LimitException extends RuntimeException
+    {
+        LimitException(String message)
+        {
+            super(message);
+        }
+    }
+
+    /**
+     * Create a class file writer.
+     *
+     * @param className The internal name of the class (using '/').
+     * @param superName The internal name of the superclass.
+     * @param interfaceNames The internal names of the interfaces the class
+     * implements.
+     */
+    ClassFileWriter(String className, String superName, String... interfaceNames)
+    {
+        this.className = className;
+        this.superName = superName;
+        this.interfaceNames = interfaceNames;
+
+        poolBytes = new ByteArrayOutputStream();
+        pool = new DataOutputStream(poolBytes);
+        poolEntries = new HashMap<>();
+        poolCount = 1;
+
+        methods = new ArrayList<>();
+
+        // Add the default constructor
+
+        Code init = new Code();
+        init.op(Code.ALOAD_0);
+        init.invoke(Code.INVOKESPECIAL, superName, "<init>", "()V");
+        init.op(Code.RETURN);
+        addMethod(ACC_PUBLIC, "<init>", "()V", init, 1, 1);
+    }
+
+    // **********************************************************************
+    // *
+    // * Constant Pool
+    // *
+    // **********************************************************************
+
+    int utf8(String str)
+    {
+        Integer index = poolEntries.get("U" + str);
+        if (index != null) return index;
+        try {
+            pool.writeByte(1);
+            pool.writeUTF(str);
+        }
+        catch (IOException e) {
+            throw new ProgrammingException("ClassFileWriter.utf8()", e);
+        }
+        return addEntry("U" + str, 1);
+    }
+
+    int classRef(String name)
+    {
+        Integer index = poolEntries.get("C" + name);
+        if (index != null) return index;
+        int nameIndex = utf8(name);
+        write(7, nameIndex);
+        return addEntry("C" + name, 1);
+    }
+
+    int memberRef(int tag, String owner, String name, String descriptor)
+    {
+        String key = "M" + tag + owner + "." + name + descriptor;
+        Integer index = poolEntries.get(key);
+        if (index != null) return index;
+        int ownerIndex = classRef(owner);
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        Integer nameAndType = poolEntries.get("N" + name + descriptor);
+        if (nameAndType == null) {
+            write(12, nameIndex, descriptorIndex);
+            nameAndType = addEntry("N" + name + descriptor, 1);
+        }
+        write(tag, ownerIndex, nameAndType);
+        return addEntry(key, 1);
+    }
+
+    int intConstant(int value)
+    {
+        Integer index = poolEntries.get("I" + value);
+        if (index != null) return index;
+        try {
+            pool.writeByte(3);
+            pool.writeInt(value);
+        }
+        catch (IOException e) {
+            throw new ProgrammingException("ClassFileWriter.intConstant()", e);
+        }
+        return addEntry("I" + value, 1);
+    }
+
+    int doubleConstant(double value)
+    {
+        long bits = Double.doubleToRawLongBits(value);
+        Integer index = poolEntries.get("D" + bits);
+        if (index != null) return index;
+        try {
+            pool.writeByte(6);
+            pool.writeLong(bits);
+        }
+        catch (IOException e) {
+            throw new ProgrammingException("ClassFileWriter.doubleConstant()", e);
+        }
+
+        // Doubles take two constant pool entries
+
+        return addEntry("D" + bits, 2);
+    }
+
+    private void write(int tag, int... indices)
+    {
+        try {
+            pool.writeByte(tag);
+            for (int index : indices) pool.writeShort(index);
+        }
+        catch (IOException e) {
+            throw new ProgrammingException("ClassFileWriter.write()", e);
+        }
+    }
+
+    private int addEntry(String key, int size)
+    {
+        int index = poolCount;
+        poolEntries.put(key, index);
+        poolCount += size;
+        if (poolCount > 0xFFFF) {
+            throw new LimitException("The constant pool is too large");
+        }
+        return index;
+    }
+
+    // **********************************************************************
+    // *
+    // * Methods
+    // *
+    // **********************************************************************
+
+    /**
+     * Add a method.
+     *
+     * @param access The method's access flags.
+     * @param name The method's name.
+     * @param descriptor The method's descriptor.
+     * @param code The method's byte code.
+     * @param maxStack The maximum depth of the operand stack.
+     * @param maxLocals The number of local variable slots, including the
+     * arguments and "this".
+     */
+    void addMethod(int access, String name, String descriptor, Code code, int maxStack, int maxLocals)
+    {
+        byte[] bytes = code.toByteArray();
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new LimitException("Method '" + name + "' is too large");
+        }
+
+        ByteArrayOutputStream method = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(method)) {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(1);
+
+            // The Code attribute
+
+            out.writeShort(utf8("Code"));
+            out.writeInt(12 + bytes.length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            out.writeShort(0);      // Exception table
+            out.writeShort(0);      // Attributes
+        }
+        catch (IOException e) {
+            throw new ProgrammingException("ClassFileWriter.addMethod()", e);
+        }
+        methods.add(method.toByteArray());
+    }
+
+    /**
+     * Get the class file.
+     *
+     * @return The bytes of the class file.
+     */
+    byte[] toByteArray()
+    {
+        int thisIndex = classRef(className);
+        int superIndex = classRef(superName);
+        int[] interfaceIndices = new int[interfaceNames.length];
+        for (int i = 0; i < interfaceNames.length; i++) {
+            interfaceIndices[i] = classRef(interfaceNames[i]);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(poolCount);
+            out.write(poolBytes.toByteArray());
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisIndex);
+            out.writeShort(superIndex);
+            out.writeShort(interfaceIndices.length);
+            for (int index : interfaceIndices) out.writeShort(index);
+            out.writeShort(0);      // Fields
+            out.writeShort(methods.size());
+            for (byte[] method : methods) out.write(method);
+            out.writeShort(0);      // Attributes
+        }
+        catch (IOException e) {
+            throw new ProgrammingException("ClassFileWriter.toByteArray()", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // **********************************************************************
+    // *
+    // * Inner Class Code
+    // *
+    // **********************************************************************
+
+    /**
+     * The byte code of a method. Branches go to labels, which are resolved
+     * when the byte code is retrieved.
+     */
+    class Code
+    {
+        static final int ICONST_0 = 0x03;
+        static final int DCONST_0 = 0x0E;
+        static final int DCONST_1 = 0x0F;
+        static final int BIPUSH = 0x10;
+        static final int SIPUSH = 0x11;
+        static final int LDC = 0x12;
+        static final int LDC_W = 0x13;
+        static final int LDC2_W = 0x14;
+        static final int ALOAD_0 = 0x2A;
+        static final int ALOAD_1 = 0x2B;
+        static final int ALOAD_2 = 0x2C;
+        static final int ALOAD_3 = 0x2D;
+        static final int AALOAD = 0x32;
+        static final int DLOAD = 0x18;
+        static final int DSTORE = 0x39;
+        static final int DADD = 0x63;
+        static final int DSUB = 0x67;
+        static final int DMUL = 0x6B;
+        static final int DDIV = 0x6F;
+        static final int DREM = 0x73;
+        static final int DNEG = 0x77;
+        static final int IFEQ = 0x99;
+        static final int IFNE = 0x9A;
+        static final int GOTO = 0xA7;
+        static final int RETURN = 0xB1;
+        static final int INVOKEVIRTUAL = 0xB6;
+        static final int INVOKESPECIAL = 0xB7;
+        static final int INVOKESTATIC = 0xB8;
+        static final int INVOKEINTERFACE = 0xB9;
+        static final int CHECKCAST = 0xC0;
+
+        private byte[] bytes;
+        private int length;
+
+        // Each label is its location, or -1 if it hasn't been placed yet.
+        // Each branch is the location of its opcode and its label
+
+        private int[] labels;
+        private int labelCount;
+        private final ArrayList<int[]> branches;
+
+        Code()
+        {
+            bytes = new byte[256];
+            length = 0;
+            labels = new int[16];
+            labelCount = 0;
+            branches = new ArrayList<>();
+        }
+
+        void op(int opcode)
+        {
+            u1(opcode);
+        }
+
+        void op(int opcode, int operand)
+        {
+            u1(opcode);
+            u1(operand);
+        }
+
+        void pushInt(int value)
+        {
+            if (value >= -1 && value <= 5) {
+                u1(ICONST_0 + value);
+            }
+            else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                u1(BIPUSH);
+                u1(value);
+            }
+            else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                u1(SIPUSH);
+                u2(value);
+            }
+            else {
+                int index = intConstant(value);
+                if (index <= 0xFF) {
+                    u1(LDC);
+                    u1(index);
+                }
+                else {
+                    u1(LDC_W);
+                    u2(index);
+                }
+            }
+        }
+
+        void pushDouble(double value)
+        {
+            if (Double.doubleToRawLongBits(value) == 0L) {
+                u1(DCONST_0);
+            }
+            else if (value == 1.0) {
+                u1(DCONST_1);
+            }
+            else {
+                u1(LDC2_W);
+                u2(doubleConstant(value));
+            }
+        }
+
+        void invoke(int opcode, String owner, String name, String descriptor)
+        {
+            if (opcode == INVOKEINTERFACE) {
+                u1(opcode);
+                u2(memberRef(11, owner, name, descriptor));
+                u1(argumentSlots(descriptor) + 1);
+                u1(0);
+            }
+            else {
+                u1(opcode);
+                u2(memberRef(10, owner, name, descriptor));
+            }
+        }
+
+        // Count the number of local variable slots used by the arguments in
+        // a method descriptor
+
+        private int argumentSlots(String descriptor)
+        {
+            int slots = 0;
+            int i = 1;
+            while (descriptor.charAt(i) != ')') {
+                char c = descriptor.charAt(i);
+                while (c == '[') c = descriptor.charAt(++i);
+                if (c == 'L') i = descriptor.indexOf(';', i);
+                slots += (c == 'D' || c == 'J') && descriptor.charAt(i - 1) != '[' ? 2 : 1;
+                i++;
+            }
+            return slots;
+        }
+
+        void checkCast(String className)
+        {
+            u1(CHECKCAST);
+            u2(classRef(className));
+        }
+
+        int newLabel()
+        {
+            if (labelCount == labels.length) labels = Arrays.copyOf(labels, labelCount * 2);
+            labels[labelCount] = -1;
+            return labelCount++;
+        }
+
+        void placeLabel(int label)
+        {
+            labels[label] = length;
+        }
+
+        void branch(int opcode, int label)
+        {
+            branches.add(new int[] { length, label });
+            u1(opcode);
+            u2(0);
+        }
+
+        byte[] toByteArray()
+        {
+            for (int[] branch : branches) {
+                int location = labels[branch[1]];
+                if (location == -1) {
+                    throw new ProgrammingException("ClassFileWriter.Code: Label was never placed");
+                }
+                int offset = location - branch[0];
+                if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                    throw new LimitException("A branch is too far");
+                }
+                bytes[branch[0] + 1] = (byte)(offset >> 8);
+                bytes[branch[0] + 2] = (byte)offset;
+            }
+            return Arrays.copyOf(bytes, length);
+        }
+
+        private void u1(int value)
+        {
+            if (length == bytes.length) bytes = Arrays.copyOf(bytes, length * 2);
+            bytes[length++] = (byte)value;
+        }
+
+        private void u2(int value)
+        {
+            u1(value >> 8);
+            u1(value);
+        }
+    }
+
+}
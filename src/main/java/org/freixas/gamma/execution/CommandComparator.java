@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2021 Antonio Freixas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.execution;
+
+import org.freixas.gamma.ProgrammingException;
+import org.freixas.gamma.execution.lcode.Command;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Compare the commands created by two executions of a program. Commands
+ * don't implement equals(), so their structures and styles are compared
+ * field by field.
+ * <p>
+ * This is used to check that a compiled program creates the same commands
+ * as the interpreter (see HCodeCompiler.VERIFY). It uses reflection and is
+ * slow, so it isn't used otherwise.
+ *
+ * @author Antonio Freixas
+ */
+final class CommandComparator
+{
+    private CommandComparator()
+    {
+    }
+
+    /**
+     * Find the first difference between two lists of commands.
+     *
+     * @param expected The expected commands.
+     * @param actual The actual commands.
+     * @return The index of the first command that differs, or -1 if the
+     * lists are the same. If one list is a prefix of the other, the index is
+     * the length of the shorter list.
+     */
+    static int findDifference(List<Command> expected, List<Command> actual)
+    {
+        int size = Math.min(expected.size(), actual.size());
+        for (int i = 0; i < size; i++) {
+            Command command1 = expected.get(i);
+            Command command2 = actual.get(i);
+            if (!deepEquals(command1.getCmdStruct(), command2.getCmdStruct(), new IdentityHashMap<>()) ||
+                !deepEquals(command1.getStyles(), command2.getStyles(), new IdentityHashMap<>())) {
+                return i;
+            }
+        }
+        return expected.size() == actual.size() ? -1 : size;
+    }
+
+    /**
+     * Compare two objects. Objects from this application are compared field
+     * by field; anything else is compared with equals().
+     */
+    static private boolean deepEquals(Object obj1, Object obj2, IdentityHashMap<Object, Object> seen)
+    {
+        if (obj1 == obj2) return true;
+        if (obj1 == null || obj2 == null) return false;
+        if (obj1.getClass() != obj2.getClass()) return false;
+        if (seen.get(obj1) == obj2) return true;
+        seen.put(obj1, obj2);
+
+        if (obj1.getClass().isArray()) {
+            int length = Array.getLength(obj1);
+            if (length != Array.getLength(obj2)) return false;
+            for (int i = 0; i < length; i++) {
+                if (!deepEquals(Array.get(obj1, i), Array.get(obj2, i), seen)) return false;
+            }
+            return true;
+        }
+        if (obj1 instanceof Collection<?> c1) {
+            Collection<?> c2 = (Collection<?>)obj2;
+            if (c1.size() != c2.size()) return false;
+            Iterator<?> iter1 = c1.iterator();
+            Iterator<?> iter2 = c2.iterator();
+            while (iter1.hasNext()) {
+                if (!deepEquals(iter1.next(), iter2.next(), seen)) return false;
+            }
+            return true;
+        }
+        if (!obj1.getClass().getName().startsWith("org.freixas.gamma.") || obj1 instanceof Enum) {
+            return obj1.equals(obj2);
+        }
+
+        try {
+            for (Class<?> cls = obj1.getClass(); cls != Object.class; cls = cls.getSuperclass()) {
+                for (Field field : cls.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers())) continue;
+                    field.setAccessible(true);
+                    if (!deepEquals(field.get(obj1), field.get(obj2), seen)) return false;
+                }
+            }
+        }
+        catch (IllegalAccessException e) {
+            throw new ProgrammingException("CommandComparator.deepEquals()", e);
+        }
+        return true;
+    }
+
+}
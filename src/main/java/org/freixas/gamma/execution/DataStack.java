@@ -0,0 +1,324 @@
+/*
+ * Copyright (C) 2021 Antonio Freixas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.execution;
+
+import org.freixas.gamma.ProgrammingException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * The data stack used while executing an HCodeProgram.
+ * <p>
+ * The stack has two lanes. Numbers are stored unboxed in a double lane and
+ * everything else is stored in an object lane. A tag records which lane holds
+ * each entry. Numeric h-codes can read and write the double lane directly, so
+ * arithmetic does not need to allocate a Double for every intermediate
+ * result. A number is only boxed when some h-code asks for it as an Object.
+ * If a number was pushed already boxed, the box is kept and reused.
+ * <p>
+ * H-codes that work on lists of arguments get a Frame, a list view of the
+ * top entries of the stack. Clearing the frame pops the arguments; adding
+ * to it pushes results.
+ *
+ * @author Antonio Freixas
+ */
+public class DataStack
+{
+    static private final int INITIAL_CAPACITY = 64;
+
+    private Object[] objects;
+    private double[] numbers;
+    private boolean[] isNumber;
+    private int size;
+
+    private final Frame frame;
+
+    /**
+     * Create an empty data stack.
+     */
+    public DataStack()
+    {
+        objects = new Object[INITIAL_CAPACITY];
+        numbers = new double[INITIAL_CAPACITY];
+        isNumber = new boolean[INITIAL_CAPACITY];
+        size = 0;
+        frame = new Frame();
+    }
+
+    // **********************************************************************
+    // *
+    // * Stack Operations
+    // *
+    // **********************************************************************
+
+    /**
+     * Get the number of entries on the stack.
+     *
+     * @return The number of entries on the stack.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns true if the stack is empty.
+     *
+     * @return True if the stack is empty.
+     */
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Push a value. Doubles go on the number lane.
+     *
+     * @param obj The value to push (which may be null).
+     */
+    public void push(Object obj)
+    {
+        ensureCapacity(size + 1);
+        if (obj instanceof Double dbl) {
+            numbers[size] = dbl;
+            isNumber[size] = true;
+        }
+        else {
+            isNumber[size] = false;
+        }
+        objects[size] = obj;
+        size++;
+    }
+
+    /**
+     * Push a number without boxing it.
+     *
+     * @param value The number to push.
+     */
+    public void pushNumber(double value)
+    {
+        ensureCapacity(size + 1);
+        numbers[size] = value;
+        isNumber[size] = true;
+        objects[size] = null;
+        size++;
+    }
+
+    /**
+     * Pop the top entry.
+     *
+     * @return The top entry, boxed if it is a number.
+     */
+    public Object pop()
+    {
+        Object obj = get(size - 1);
+        objects[--size] = null;
+        return obj;
+    }
+
+    /**
+     * Pop the top entry, which must be a number, without boxing it.
+     *
+     * @return The top entry.
+     */
+    public double popNumber()
+    {
+        objects[--size] = null;
+        return numbers[size];
+    }
+
+    /**
+     * Pop entries until the stack has the given size.
+     *
+     * @param newSize The new size of the stack.
+     */
+    public void truncate(int newSize)
+    {
+        if (newSize < 0 || newSize > size) {
+            throw new ProgrammingException("DataStack.truncate(): Invalid size");
+        }
+        Arrays.fill(objects, newSize, size, null);
+        size = newSize;
+    }
+
+    // **********************************************************************
+    // *
+    // * Random Access
+    // *
+    // **********************************************************************
+
+    /**
+     * Returns true if the entry at the given index is on the number lane.
+     *
+     * @param index The index of the entry, where 0 is the bottom of the stack.
+     * @return True if the entry is a number.
+     */
+    public boolean isNumber(int index)
+    {
+        return isNumber[index];
+    }
+
+    /**
+     * Get a number from the number lane. Use isNumber() first to make sure
+     * the entry is a number.
+     *
+     * @param index The index of the entry, where 0 is the bottom of the stack.
+     * @return The number.
+     */
+    public double getNumber(int index)
+    {
+        return numbers[index];
+    }
+
+    /**
+     * Replace an entry with a number without boxing it.
+     *
+     * @param index The index of the entry, where 0 is the bottom of the stack.
+     * @param value The number.
+     */
+    public void setNumber(int index, double value)
+    {
+        numbers[index] = value;
+        isNumber[index] = true;
+        objects[index] = null;
+    }
+
+    /**
+     * Get an entry as an object. Numbers are boxed the first time they are
+     * requested.
+     *
+     * @param index The index of the entry, where 0 is the bottom of the stack.
+     * @return The entry.
+     */
+    public Object get(int index)
+    {
+        Object obj = objects[index];
+        if (obj == null && isNumber[index]) {
+            obj = numbers[index];
+            objects[index] = obj;
+        }
+        return obj;
+    }
+
+    /**
+     * Replace an entry.
+     *
+     * @param index The index of the entry, where 0 is the bottom of the stack.
+     * @param obj The new value.
+     */
+    public void set(int index, Object obj)
+    {
+        if (obj instanceof Double dbl) {
+            numbers[index] = dbl;
+            isNumber[index] = true;
+        }
+        else {
+            isNumber[index] = false;
+        }
+        objects[index] = obj;
+    }
+
+    /**
+     * Get a list view of the top entries of the stack. The frame is reused,
+     * so it is only valid until the next call to this method.
+     *
+     * @param numOfArgs The number of entries in the frame.
+     * @return The frame.
+     */
+    public Frame getFrame(int numOfArgs)
+    {
+        frame.base = size - numOfArgs;
+        return frame;
+    }
+
+    private void ensureCapacity(int capacity)
+    {
+        if (capacity <= objects.length) return;
+        int newCapacity = Math.max(capacity, objects.length * 2);
+        objects = Arrays.copyOf(objects, newCapacity);
+        numbers = Arrays.copyOf(numbers, newCapacity);
+        isNumber = Arrays.copyOf(isNumber, newCapacity);
+    }
+
+    // **********************************************************************
+    // *
+    // * Inner Class Frame
+    // *
+    // **********************************************************************
+
+    /**
+     * A list view of the entries at the top of the stack, starting at a
+     * fixed base. The frame grows and shrinks with the stack. Only the last
+     * element of the frame can be removed.
+     */
+    public final class Frame extends AbstractList<Object> implements RandomAccess
+    {
+        private int base;
+
+        private Frame()
+        {
+            base = 0;
+        }
+
+        @Override
+        public Object get(int index)
+        {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return DataStack.this.get(base + index);
+        }
+
+        @Override
+        public Object set(int index, Object obj)
+        {
+            Object old = get(index);
+            DataStack.this.set(base + index, obj);
+            return old;
+        }
+
+        @Override
+        public int size()
+        {
+            return size - base;
+        }
+
+        @Override
+        public boolean add(Object obj)
+        {
+            push(obj);
+            return true;
+        }
+
+        @Override
+        public Object remove(int index)
+        {
+            if (index != size() - 1) {
+                throw new UnsupportedOperationException("Only the last element of a frame can be removed");
+            }
+            return pop();
+        }
+
+        @Override
+        public void clear()
+        {
+            truncate(base);
+        }
+    }
+
+}
@@ -26,16 +26,26 @@ import org.freixas.gamma.ProgrammingException;
 import org.freixas.gamma.css.value.Stylesheet;
 import org.freixas.gamma.execution.hcode.SetStatement;
 import org.freixas.gamma.parser.Parser;
+import org.freixas.gamma.preferences.PreferencesManager;
 
-import java.util.LinkedList;
+import java.util.List;
 
 /**
  * The Diagram Engine controls the overall execution of a user's program,
  * including animation.
  * <p>
- * The diagram engine starts with a h-code program produced by the parser. The
- * diagram engine's job finishes when a non-animated diagram is drawn or when
- * an animation ends or is terminated by the user.
+ * The diagram engine starts with a h-code program produced by the parser and
+ * passed through the h-code optimizer. The diagram engine's job finishes when
+ * a non-animated diagram is drawn or when an animation ends or is terminated
+ * by the user.
+ * <p>
+ * Scripts are evaluated on a worker thread by a ScriptRunner, so a slow
+ * script doesn't freeze the window. Only the drawing is done on the JavaFX
+ * application thread.
+ * <p>
+ * Changes to display variables are passed through a DisplayUpdateScheduler,
+ * so a burst of changes, such as those made while dragging a slider, causes
+ * at most one update per pulse.
  *
  * @author Antonio Freixas
  */
@@ -49,6 +59,8 @@ public class DiagramEngine
     private final SetStatement setStatement;
     private final Stylesheet stylesheet;
 
+    private final ScriptRunner runner;
+    private final DisplayUpdateScheduler updateScheduler;
     private AnimationEngine animationEngine;
     private HCodeEngine hCodeEngine;
 
@@ -71,15 +83,22 @@ public class DiagramEngine
         this.window = window;
         this.parser = parser;
 
-        this.program = new HCodeProgram(parser.getHCodes());
+        this.program = new HCodeProgram(HCodeOptimizer.optimize(parser.getHCodes()));
         this.isAnimated = parser.isAnimated();
         this.setStatement = parser.getSetStatement();
         this.stylesheet = parser.getStylesheet();
+        this.program.setExecutionLimits(
+            PreferencesManager.getScriptTimeLimit() * 1000L,
+            PreferencesManager.getScriptLoopLimit());
 
+        this.runner = new ScriptRunner();
+        this.updateScheduler = new DisplayUpdateScheduler(this::update, runner::isBusy);
         this.animationEngine = null;
         this.hCodeEngine = null;
 
         this.isClosed = false;
+
+        if (window.isScriptProfiling()) setProfiling(true);
     }
 
     // **********************************************************************
@@ -109,15 +128,101 @@ public class DiagramEngine
     }
 
     /**
-     * Get the h-codes associated with this diagram engine.
+     * Get the finalized h-codes associated with this diagram engine.
      *
-     * @return The h-codes associated with this diagram engine.
+     * @return The finalized h-codes associated with this diagram engine.
      */
-    public LinkedList<Object> getHCodes()
+    public List<Object> getHCodes()
     {
         return program.getHCodes();
     }
 
+    /**
+     * Get the profile of the program's executions.
+     *
+     * @return The profile or null if the program isn't being profiled.
+     */
+    public ScriptProfile getProfile()
+    {
+        return program.getProfile();
+    }
+
+    /**
+     * Get the stylesheet used by the script, layered over the default
+     * stylesheets.
+     *
+     * @return The stylesheet used by the script.
+     */
+    public Stylesheet getStylesheet()
+    {
+        return stylesheet.getLayeredStylesheet();
+    }
+
+    /**
+     * Get the number of display variable changes that were collapsed into
+     * the update for another change rather than causing an update of their
+     * own.
+     *
+     * @return The number of display variable updates dropped.
+     */
+    public long getDroppedUpdates()
+    {
+        return updateScheduler.getDroppedUpdates();
+    }
+
+    /**
+     * Get the number of redraws requested by changes to the view, such as
+     * resizes, pans and zooms.
+     *
+     * @return The number of redraws requested.
+     */
+    public long getRequestedRedraws()
+    {
+        LCodeEngine engine = getLCodeEngine();
+        return engine != null ? engine.getRequestedRedraws() : 0;
+    }
+
+    /**
+     * Get the number of redraws requested by changes to the view that were
+     * collapsed into another redraw rather than being performed separately.
+     *
+     * @return The number of redraws coalesced.
+     */
+    public long getCoalescedRedraws()
+    {
+        LCodeEngine engine = getLCodeEngine();
+        return engine != null ? engine.getCoalescedRedraws() : 0;
+    }
+
+    /**
+     * Get the l-code engine that draws the diagram.
+     *
+     * @return The l-code engine or null if nothing has been drawn yet.
+     */
+    private LCodeEngine getLCodeEngine()
+    {
+        HCodeEngine engine = isAnimated ?
+            (animationEngine != null ? animationEngine.getHCodeEngine() : null) :
+            hCodeEngine;
+        return engine != null ? engine.getLCodeEngine() : null;
+    }
+
+    /**
+     * Start or stop profiling the program's executions. Starting a profile
+     * that is already running has no effect.
+     *
+     * @param profiling True to start profiling, false to stop.
+     */
+    public void setProfiling(boolean profiling)
+    {
+        if (!profiling) {
+            program.setProfile(null);
+        }
+        else if (program.getProfile() == null) {
+            program.setProfile(new ScriptProfile(program.getHCodes()));
+        }
+    }
+
     // **********************************************************************
     // *
     // * Control Methods
@@ -133,19 +238,25 @@ public class DiagramEngine
            // Execute animated scripts
 
             if (isAnimated) {
-                animationEngine = new AnimationEngine(window, setStatement, stylesheet, program);
+                animationEngine = new AnimationEngine(window, setStatement, stylesheet, program, runner, updateScheduler::isPending);
                 animationEngine.execute();
             }
 
             // Execute non-animated scripts
 
             else {
-                hCodeEngine = new HCodeEngine(window, setStatement, stylesheet, program);
-                hCodeEngine.execute();
-
-                // Let the main window know that the diagram has been drawn
-
-                window.diagramCompleted();
+                HCodeEngine engine = new HCodeEngine(window, setStatement, stylesheet, program);
+                hCodeEngine = engine;
+                runner.run(
+                    engine::evaluate,
+                    commands -> {
+                        engine.present(commands);
+
+                        // Let the main window know that the diagram has been drawn
+
+                        window.diagramCompleted();
+                    },
+                    this::handleException);
              }
         }
         catch (Throwable e) {
@@ -154,13 +265,27 @@ public class DiagramEngine
     }
 
     /**
-     * This is called when a display variable is changed.If the script is
-     * animated, we let the animation engine handle this. Otherwise, we redraw.
+     * This is called when a display variable is changed. The update is
+     * performed at the next pulse, together with any other changes made
+     * before then.
      *
      * @param restart True if the animation should be restarted when a display
      * variable changes.
      */
     public void updateForDisplayVariable(boolean restart)
+    {
+        if (isClosed) return;
+        updateScheduler.request(restart);
+    }
+
+    /**
+     * Update the diagram after display variables have changed. If the script
+     * is animated, we let the animation engine handle this. Otherwise, we
+     * redraw.
+     *
+     * @param restart True if the animation should be restarted.
+     */
+    private void update(boolean restart)
     {
         if (isClosed) return;
 
@@ -169,7 +294,8 @@ public class DiagramEngine
                 animationEngine.updateForDisplayVariable(restart);
             }
             else {
-                hCodeEngine.execute();
+                HCodeEngine engine = hCodeEngine;
+                runner.run(engine::evaluate, engine::present, this::handleException);
             }
         }
         catch (Throwable e) {
@@ -186,7 +312,12 @@ public class DiagramEngine
      */
     public void handleException(Throwable e)
     {
+        // A script that was cancelled was stopped deliberately, so there is
+        // nothing to report
+
+        boolean cancelled = program.getCancellationToken().isCancelled();
         close();
+        if (cancelled) return;
 
         // e.printStackTrace();
         if (e instanceof GammaRuntimeException gammaRuntimeException) {
@@ -197,8 +328,21 @@ public class DiagramEngine
         }
     }
 
+    /**
+     * Stop any execution of the script that is in progress. This may be
+     * called from any thread. The script stops at its next loop iteration
+     * or the next time it is executed.
+     */
+    public void cancel()
+    {
+        program.getCancellationToken().cancel();
+    }
+
     public void close()
     {
+        cancel();
+        updateScheduler.close();
+        runner.close();
         isClosed = true;
         if (isAnimated) {
             if (animationEngine != null) animationEngine.close();
@@ -223,7 +367,7 @@ public class DiagramEngine
     // **********************************************************
 
 //    @SuppressWarnings("null")
-//    private void debugHCode(LinkedList<Object> hCodes)
+//    private void debugHCode(List<Object> hCodes)
 //    {
 //        try {
 //            File logDir  = new File("D:/users/tony/Documents/Gamma/Logs");
@@ -235,11 +379,10 @@ public class DiagramEngine
 //
 //            FileOutputStream out = new FileOutputStream(log);
 //            try (PrintWriter writer = new PrintWriter(out)) {
-//                ListIterator<Object> iter = hCodes.listIterator();
-//                writer.write("Type, Value\n");
+//                writer.write("Location, Type, Value\n");
 //
-//                while (iter.hasNext()) {
-//                    Object obj = iter.next();
+//                for (int i = 0; i < hCodes.size(); i++) {
+//                    Object obj = hCodes.get(i);
 //                    String type;
 //                    String value;
 //
@@ -255,7 +398,12 @@ public class DiagramEngine
 //                        }
 //                    }
 //
+//                    if (obj instanceof Jump jump) {
+//                        value += " -> " + jump.getJumpLocation();
+//                    }
+//
 //                    writer.write(
+//                        i + "," +
 //                        type + "," +
 //                        value + "\n");
 //                }
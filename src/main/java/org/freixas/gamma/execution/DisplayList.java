@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2021 Antonio Freixas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.execution;
+
+import org.freixas.gamma.execution.lcode.Command;
+import org.freixas.gamma.execution.lcode.CommandExec;
+import org.freixas.gamma.value.Bounds;
+import java.util.List;
+
+/**
+ * The display list holds the commands drawn by the l-code engine, along
+ * with the extent of what each command draws. The extent is computed once,
+ * when the list is created. Each time the diagram is redrawn after a pan,
+ * zoom or resize, the commands whose extent lies outside the viewport are
+ * skipped without executing them.
+ * <p>
+ * An extent is a bounding box in world units plus a padding in screen
+ * units. The padding covers things drawn at a fixed screen size, such as
+ * line thickness, event markers and arrowheads. Its size in world units
+ * depends on the zoom, so it is applied when the list is culled. Commands
+ * whose extent isn't known, such as grids, axes and labels, are always
+ * drawn.
+ * <p>
+ * The display list also records how many of its first commands were
+ * carried over unchanged from the previous display list. These commands
+ * form the static layer, which can be drawn from an image (see
+ * StaticLayer).
+ *
+ * @author Antonio Freixas
+ */
+final class DisplayList
+{
+    private final Command[] commands;
+    private final Bounds[] bounds;
+    private final double[] padding;
+    private final int staticCount;
+
+    /**
+     * Create a display list.
+     *
+     * @param commandList The commands to draw, in drawing order. The
+     * commands must already be relative to the drawing frame.
+     */
+    DisplayList(List<Command> commandList)
+    {
+        this(commandList, null);
+    }
+
+    /**
+     * Create a display list that follows another.
+     *
+     * @param commandList The commands to draw, in drawing order. The
+     * commands must already be relative to the drawing frame.
+     * @param previous The previous display list or null if none.
+     */
+    DisplayList(List<Command> commandList, DisplayList previous)
+    {
+        int size = commandList.size();
+        commands = commandList.toArray(new Command[0]);
+        bounds = new Bounds[size];
+        padding = new double[size];
+
+        for (int i = 0; i < size; i++) {
+            Command command = commands[i];
+            CommandExec cmdExec = command.getCmdExec();
+            bounds[i] = cmdExec.getBounds(command.getCmdStruct(), command.getStyles());
+            if (bounds[i] != null) {
+                padding[i] = cmdExec.getPadding(command.getCmdStruct(), command.getStyles());
+            }
+        }
+
+        // A script execution that doesn't change a command reuses it, so
+        // the commands carried over are the same objects
+
+        int count = 0;
+        if (previous != null) {
+            int max = Math.min(size, previous.commands.length);
+            while (count < max && commands[count] == previous.commands[count]) count++;
+        }
+        staticCount = count;
+    }
+
+    /**
+     * Get the number of commands in the display list.
+     *
+     * @return The number of commands in the display list.
+     */
+    int size()
+    {
+        return commands.length;
+    }
+
+    /**
+     * Get the number of commands at the start of the display list that are
+     * the same as in the previous display list.
+     *
+     * @return The number of static commands.
+     */
+    int getStaticCount()
+    {
+        return staticCount;
+    }
+
+    /**
+     * Get a command.
+     *
+     * @param index The index of the command.
+     * @return The command.
+     */
+    Command get(int index)
+    {
+        return commands[index];
+    }
+
+    /**
+     * Returns true if a command might draw something inside a viewport.
+     *
+     * @param index The index of the command.
+     * @param viewport The viewport, in world units.
+     * @param invScale The inverse scale, used to convert screen units to
+     * world units.
+     *
+     * @return True if the command might draw something inside the
+     * viewport.
+     */
+    boolean isVisible(int index, Bounds viewport, double invScale)
+    {
+        Bounds extent = bounds[index];
+        if (extent == null) return true;
+
+        double pad = padding[index] * invScale;
+        return !(
+            extent.max.x + pad < viewport.min.x ||
+            extent.min.x - pad > viewport.max.x ||
+            extent.max.t + pad < viewport.min.t ||
+            extent.min.t - pad > viewport.max.t
+        );
+    }
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2021 Antonio Freixas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.execution;
+
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import javafx.animation.AnimationTimer;
+
+/**
+ * The display update scheduler collapses bursts of changes to display
+ * variables. Dragging a slider can change a range variable many times
+ * between two frames of the display. Rather than re-evaluating the script
+ * for each change, the scheduler waits for the next pulse and then
+ * performs a single update. Since each change is stored in its variable as
+ * it happens, the update always sees the latest values.
+ * <p>
+ * If the previous update is still being evaluated at the next pulse, the
+ * scheduler waits for a later pulse. A burst of changes therefore causes at
+ * most one update per pulse, and the last update always reflects the final
+ * values. The animation engine doesn't start a new frame while an update is
+ * pending (see isPending()), so a running animation can't hold an update
+ * back.
+ * <p>
+ * The number of changes that were collapsed into another change's update is
+ * kept for diagnostics.
+ * <p>
+ * All methods must be called on the JavaFX application thread.
+ *
+ * @author Antonio Freixas
+ */
+class DisplayUpdateScheduler
+{
+    private final Consumer<Boolean> update;
+    private final BooleanSupplier isBusy;
+    private final AnimationTimer timer;
+
+    private boolean isPending;
+    private boolean restart;
+    private long dropped;
+    private boolean isClosed;
+
+    /**
+     * Create a display update scheduler.
+     *
+     * @param update The update to perform. It is passed true if any of the
+     * changes collapsed into the update asked for the animation to restart.
+     * @param isBusy Returns true while an earlier update is still in
+     * progress.
+     */
+    DisplayUpdateScheduler(Consumer<Boolean> update, BooleanSupplier isBusy)
+    {
+        this.update = update;
+        this.isBusy = isBusy;
+        this.timer = new AnimationTimer()
+        {
+            @Override
+            public void handle(long now)
+            {
+                pulse();
+            }
+        };
+
+        this.isPending = false;
+        this.restart = false;
+        this.dropped = 0;
+        this.isClosed = false;
+    }
+
+    /**
+     * Request an update at the next pulse. If an update is already pending,
+     * this request is collapsed into it.
+     *
+     * @param restart True if the animation should be restarted.
+     */
+    void request(boolean restart)
+    {
+        if (isClosed) return;
+
+        this.restart |= restart;
+        if (isPending) {
+            dropped++;
+        }
+        else {
+            isPending = true;
+            startTimer();
+        }
+    }
+
+    /**
+     * Returns true if an update has been requested but not yet performed.
+     *
+     * @return True if an update is pending.
+     */
+    boolean isPending()
+    {
+        return isPending;
+    }
+
+    /**
+     * Perform the pending update, unless an earlier update is still in
+     * progress. This is called at each pulse while an update is pending.
+     */
+    void pulse()
+    {
+        if (isClosed || !isPending || isBusy.getAsBoolean()) return;
+
+        stopTimer();
+        boolean updateRestart = restart;
+        isPending = false;
+        restart = false;
+        update.accept(updateRestart);
+    }
+
+    /**
+     * Get the number of requested updates that were collapsed into another
+     * update rather than being performed separately.
+     *
+     * @return The number of updates dropped.
+     */
+    long getDroppedUpdates()
+    {
+        return dropped;
+    }
+
+    /**
+     * Cancel any pending update. No further updates will be performed.
+     */
+    void close()
+    {
+        isClosed = true;
+        isPending = false;
+        stopTimer();
+    }
+
+    /**
+     * Start calling pulse() at each pulse.
+     */
+    void startTimer()
+    {
+        timer.start();
+    }
+
+    /**
+     * Stop calling pulse().
+     */
+    void stopTimer()
+    {
+        timer.stop();
+    }
+
+}
@@ -31,6 +31,11 @@ import java.util.*;
  * multiple re-executions of a script. The initial value is set by the script
  * writer, but after that, they are set by the program (through the animation
  * engine or through GUI controls manipulated by the end user).
+ * <p>
+ * The table is shared by the script runner's worker thread, which adds
+ * variables when a script first runs, and the JavaFX application thread,
+ * which reads the variables and removes animation variables. All access is
+ * synchronized, and getSymbolNames() returns a copy rather than a view.
  *
  * @author Antonio Freixas
  */
@@ -48,9 +53,15 @@ public class DynamicSymbolTable extends BaseSymbolTable
     }
 
     @Override
-    public Object get(String name)
+    public synchronized boolean contains(int slot)
+    {
+        return super.contains(slot);
+    }
+
+    @Override
+    public synchronized Object get(int slot)
     {
-        Object var = super.get(name);
+        Object var = super.get(slot);
         if (var == null) return null;
         return ((DynamicVariable)var).getCurrentValue();
     }
@@ -63,9 +74,11 @@ public class DynamicSymbolTable extends BaseSymbolTable
      *
      * @return The dynamic variable.
      */
-    public DynamicVariable getDynamicVariable(String name)
+    public synchronized DynamicVariable getDynamicVariable(String name)
     {
-        Object var = super.get(name);
+        int slot = getSymbolIndex().findSlot(name);
+        if (slot == -1) return null;
+        Object var = super.get(slot);
         if (var == null) return null;
         return (DynamicVariable)var;
     }
@@ -75,11 +88,11 @@ public class DynamicSymbolTable extends BaseSymbolTable
      * <p>
      * The value should always be a DynamicVariable.
      *
-     * @param name The name of the symbol.
+     * @param slot The slot of the symbol.
      * @param value The symbol's value.
      */
     @Override
-    public void put(String name, Object value)
+    public synchronized void put(int slot, Object value)
     {
         if (!(value instanceof DynamicVariable)) {
             throw new ProgrammingException("DynamicSymbolTable.put(): Expected a DynamicVariable");
@@ -88,7 +101,7 @@ public class DynamicSymbolTable extends BaseSymbolTable
         // If the symbol is already here, then it means this is not the initial
         // execution of the script
 
-        if (contains(name)) return;
+        if (contains(slot)) return;
 
         // If the value is a display variable, note that we have display variables
         // and set its display order
@@ -98,7 +111,41 @@ public class DynamicSymbolTable extends BaseSymbolTable
             displayVar.setDisplayOrder(++lastOrderNumber);
         }
 
-        super.put(name, value);
+        super.put(slot, value);
+    }
+
+    @Override
+    public synchronized void remove(int slot)
+    {
+        super.remove(slot);
+    }
+
+    /**
+     * Get all the symbols in this symbol table. Unlike the base class, the
+     * set is a copy, so it can be iterated while another thread changes the
+     * table.
+     *
+     * @return All the symbols in the table.
+     */
+    @Override
+    public synchronized Set<String> getSymbolNames()
+    {
+        return new LinkedHashSet<>(super.getSymbolNames());
+    }
+
+    /**
+     * Get the current value of each dynamic variable.
+     *
+     * @return A map from each variable's name to its current value.
+     */
+    public synchronized HashMap<String, Double> getCurrentValues()
+    {
+        HashMap<String, Double> values = new HashMap<>();
+        for (String name : getSymbolNames()) {
+            DynamicVariable var = getDynamicVariable(name);
+            if (var != null) values.put(name, var.getCurrentValue());
+        }
+        return values;
     }
 
     /**
@@ -0,0 +1,521 @@
+/*
+ * Copyright (C) 2021 Antonio Freixas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.execution;
+
+import org.freixas.gamma.execution.hcode.AddHCode;
+import org.freixas.gamma.execution.hcode.ArgInfoHCode;
+import org.freixas.gamma.execution.hcode.ConstOperandHCode;
+import org.freixas.gamma.execution.hcode.GenericHCode;
+import org.freixas.gamma.execution.hcode.HCode;
+import org.freixas.gamma.execution.hcode.Jump;
+import org.freixas.gamma.execution.hcode.JumpHCode;
+import org.freixas.gamma.execution.hcode.JumpIfFalseHCode;
+import org.freixas.gamma.execution.hcode.JumpIfTrueHCode;
+import org.freixas.gamma.execution.hcode.StackHCode;
+import org.freixas.gamma.execution.hcode.NumericOpHCode;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Modifier;
+
+import static org.freixas.gamma.execution.ClassFileWriter.Code.*;
+
+/**
+ * The h-code compiler translates a finalized HCodeProgram into a JVM class.
+ * Scripts that are executed many times (animations and scripts with
+ * interactive controls) then run as ordinary Java methods, which the JIT
+ * compiler can optimize like any other code.
+ * <p>
+ * The generated code follows the program's instructions one by one, using
+ * the same data stack as the interpreter:
+ * <ul>
+ *     <li>Jumps become JVM branches. Backward jumps first let the engine
+ *     check the program's cancellation token and execution limits.
+ *     <li>Arithmetic and comparisons on numbers are done inline, falling
+ *     back to the h-code when an argument isn't a number.
+ *     <li>The stack fast path of other h-codes is called directly.
+ *     <li>Everything else calls the h-code through the HCodeEngine, just as
+ *     the interpreter does, so commands and functions use their existing
+ *     implementations.
+ * </ul>
+ * <p>
+ * The class is defined as a hidden class, so it can be unloaded with the
+ * program. If a program can't be compiled, compile() throws a
+ * CompileException and the program continues to be interpreted. A program
+ * that is too large for a single JVM method is expected to fail this way.
+ * A class that the JVM rejects is a bug in the compiler, so it is also
+ * logged.
+ * <p>
+ * The compiler can be turned off with ENABLED. With VERIFY, every compiled
+ * execution of a pure program is repeated by the interpreter and the
+ * commands they create are compared, so the compiler can be checked
+ * against real scripts.
+ *
+ * @author Antonio Freixas
+ */
+public class HCodeCompiler
+{
+    /**
+     * When false, programs are never compiled.
+     */
+    static public boolean ENABLED = true;
+
+    /**
+     * When true, each compiled execution of a pure program is repeated by
+     * the interpreter. An error is reported if the commands differ.
+     */
+    static public boolean VERIFY = false;
+
+    /**
+     * The number of times a program is interpreted before it is compiled.
+     */
+    static public final int HOT_EXECUTIONS = 3;
+
+    /**
+     * A compiled program.
+     */
+    interface CompiledProgram
+    {
+        /**
+         * Run the program once.
+         *
+         * @param engine The h-code engine.
+         * @param stack The program's data stack.
+         * @param code The program's finalized h-codes. The compiled program
+         * gets the h-codes (and the data mixed in with them) from here.
+         */
+        void run(HCodeEngine engine, DataStack stack, Object[] code);
+    }
+
+    static private final String PACKAGE = "org/freixas/gamma/execution/";
+    static private final String HCODE_PACKAGE = "org/freixas/gamma/execution/hcode/";
+
+    static private final String ENGINE = PACKAGE + "HCodeEngine";
+    static private final String STACK = PACKAGE + "DataStack";
+    static private final String COMPILER = PACKAGE + "HCodeCompiler";
+    static private final String HCODE = HCODE_PACKAGE + "HCode";
+    static private final String NUMERIC_OP = HCODE_PACKAGE + "NumericOpHCode";
+    static private final String STACK_HCODE = HCODE_PACKAGE + "StackHCode";
+    static private final String UTIL = "org/freixas/gamma/math/Util";
+
+    static private final String HCODE_DESC = "L" + HCODE + ";";
+
+    // The local variables of the run() method
+
+    static private final int ENGINE_VAR = 1;
+    static private final int STACK_VAR = 2;
+    static private final int CODE_VAR = 3;
+    static private final int TEMP_VAR = 4;
+
+    /**
+     * Thrown when a program can't be compiled.
+     */
+    @SuppressWarnings("serial")
+    static final class CompileException extends Exception
+    {
+        CompileException(String message, Throwable cause)
+        {
+            super(message, cause);
+        }
+    }
+
+    private HCodeCompiler()
+    {
+    }
+
+    /**
+     * Compile a finalized program.
+     *
+     * @param program The finalized h-codes.
+     * @param typesProven The locations whose argument types have been
+     * proven correct.
+     *
+     * @return The compiled program.
+     * @throws CompileException If the program can't be compiled.
+     */
+    static CompiledProgram compile(Object[] program, boolean[] typesProven)
+        throws CompileException
+    {
+        byte[] bytes;
+        try {
+            bytes = generate(program, typesProven);
+        }
+        catch (ClassFileWriter.LimitException e) {
+            throw new CompileException("The program is too large to compile: " + e.getMessage(), e);
+        }
+
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            return (CompiledProgram)lookup.lookupClass().getDeclaredConstructor().newInstance();
+        }
+        catch (LinkageError | ReflectiveOperationException e) {
+            CompileException compileException =
+                new CompileException("The compiled program was rejected: " + e, e);
+            System.err.println("HCodeCompiler: " + compileException.getMessage());
+            throw compileException;
+        }
+    }
+
+    /**
+     * Generate the class file for a program.
+     *
+     * @param program The finalized h-codes.
+     * @param typesProven The locations whose argument types have been
+     * proven correct.
+     *
+     * @return The class file.
+     */
+    static byte[] generate(Object[] program, boolean[] typesProven)
+    {
+        ClassFileWriter writer = new ClassFileWriter(
+            PACKAGE + "CompiledHCodeProgram", "java/lang/Object", COMPILER + "$CompiledProgram");
+        ClassFileWriter.Code code = writer.new Code();
+
+        // Each instruction gets a label, plus one for the end of the program
+
+        int[] labels = new int[program.length + 1];
+        for (int i = 0; i < labels.length; i++) labels[i] = code.newLabel();
+
+        for (int i = 0; i < program.length; i++) {
+            code.placeLabel(labels[i]);
+            Object obj = program[i];
+
+            if (!(obj instanceof HCode hCode)) {
+                generatePush(code, obj, i);
+            }
+            else if (hCode instanceof JumpHCode jump) {
+                if (jump.getJumpLocation() <= i) generateBackwardJump(code);
+                code.branch(GOTO, labels[jump.getJumpLocation()]);
+            }
+            else if (hCode instanceof Jump jump) {
+                if (jump.getJumpLocation() <= i) generateBackwardJump(code);
+                generateJump(code, jump, i, typesProven[i], labels[jump.getJumpLocation()]);
+            }
+            else if (hCode instanceof AddHCode) {
+                generateBinaryOp(code, hCode, null, null, i, typesProven[i]);
+            }
+            else if (hCode instanceof ConstOperandHCode constOperand) {
+                HCode.Type type = constOperand.getOp() instanceof NumericOpHCode numericOp ?
+                    numericOp.getType() : null;
+                generateBinaryOp(code, hCode, type, constOperand.getConstant(), i, typesProven[i]);
+            }
+            else if (hCode instanceof NumericOpHCode numericOp) {
+                if (numericOp.isBinary()) {
+                    generateBinaryOp(code, hCode, numericOp.getType(), null, i, typesProven[i]);
+                }
+                else {
+                    generateUnaryOp(code, hCode, numericOp.getType(), i, typesProven[i]);
+                }
+            }
+            else if (hCode instanceof StackHCode) {
+                generateStackHCode(code, hCode, i, typesProven[i]);
+            }
+            else {
+                generateExecute(code, hCode, i, typesProven[i]);
+            }
+        }
+
+        code.placeLabel(labels[program.length]);
+        code.op(RETURN);
+
+        writer.addMethod(
+            ClassFileWriter.ACC_PUBLIC, "run",
+            "(L" + ENGINE + ";L" + STACK + ";[Ljava/lang/Object;)V",
+            code, 8, 8);
+        return writer.toByteArray();
+    }
+
+    /**
+     * Push data onto the data stack. Numbers are pushed as constants.
+     */
+    static private void generatePush(ClassFileWriter.Code code, Object obj, int location)
+    {
+        code.op(ALOAD_2);
+        if (obj instanceof Double dbl) {
+            code.pushDouble(dbl);
+            code.invoke(INVOKEVIRTUAL, STACK, "pushNumber", "(D)V");
+        }
+        else {
+            code.op(ALOAD_3);
+            code.pushInt(location);
+            code.op(AALOAD);
+            code.invoke(INVOKEVIRTUAL, STACK, "push", "(Ljava/lang/Object;)V");
+        }
+    }
+
+    /**
+     * Execute the h-code at the given location. If the h-code's arguments
+     * don't need to be checked, we call the h-code directly, as the engine
+     * would. Otherwise, we let the engine execute it.
+     */
+    static private void generateExecute(ClassFileWriter.Code code, HCode hCode, int location, boolean typesProven)
+    {
+        boolean isPublic = Modifier.isPublic(hCode.getClass().getModifiers());
+        String className = hCode.getClass().getName().replace('.', '/');
+
+        if (hCode instanceof ArgInfoHCode && typesProven && isPublic && hCode.getNumberOfArgs() >= 0) {
+            generateLoadHCode(code, location);
+            code.checkCast(className);
+            code.op(ALOAD_1);
+            code.op(ALOAD_2);
+            code.pushInt(hCode.getNumberOfArgs());
+            code.invoke(INVOKEVIRTUAL, STACK, "getFrame", "(I)L" + STACK + "$Frame;");
+            code.invoke(INVOKEVIRTUAL, className, "execute", "(L" + ENGINE + ";Ljava/util/List;)V");
+        }
+        else if (hCode instanceof GenericHCode && isPublic) {
+            generateLoadHCode(code, location);
+            code.checkCast(className);
+            code.op(ALOAD_1);
+            code.invoke(INVOKEVIRTUAL, className, "execute", "(L" + ENGINE + ";)V");
+        }
+        else {
+            code.op(ALOAD_1);
+            generateLoadHCode(code, location);
+            code.pushInt(typesProven ? 1 : 0);
+            code.invoke(INVOKEVIRTUAL, ENGINE, "executeHCode", "(" + HCODE_DESC + "Z)V");
+        }
+    }
+
+    /**
+     * Try the stack fast path of an h-code that has one and, if that
+     * fails, execute the h-code normally. The fast path is called on the
+     * h-code's own class, so the JIT compiler can inline it.
+     */
+    static private void generateStackHCode(ClassFileWriter.Code code, HCode hCode, int location, boolean typesProven)
+    {
+        int next = code.newLabel();
+
+        String className = Modifier.isPublic(hCode.getClass().getModifiers()) ?
+            hCode.getClass().getName().replace('.', '/') : STACK_HCODE;
+        generateLoadHCode(code, location);
+        code.checkCast(className);
+        code.op(ALOAD_1);
+        code.op(ALOAD_2);
+        code.invoke(
+            className.equals(STACK_HCODE) ? INVOKEINTERFACE : INVOKEVIRTUAL,
+            className, "executeOnStack", "(L" + ENGINE + ";L" + STACK + ";)Z");
+        code.branch(IFNE, next);
+        generateExecute(code, hCode, location, typesProven);
+        code.placeLabel(next);
+    }
+
+    static private void generateLoadHCode(ClassFileWriter.Code code, int location)
+    {
+        code.op(ALOAD_3);
+        code.pushInt(location);
+        code.op(AALOAD);
+        code.checkCast(HCODE);
+    }
+
+    /**
+     * Count a loop iteration, so that the engine can stop a runaway program.
+     */
+    static private void generateBackwardJump(ClassFileWriter.Code code)
+    {
+        code.op(ALOAD_1);
+        code.invoke(INVOKEVIRTUAL, ENGINE, "backwardJump", "()V");
+    }
+
+    /**
+     * A conditional jump. JumpIfFalse and JumpIfTrue test a number inline;
+     * all other cases execute the h-code and branch if the h-code jumped.
+     */
+    static private void generateJump(ClassFileWriter.Code code, Jump jump, int location, boolean typesProven, int target)
+    {
+        int slow = code.newLabel();
+        int next = code.newLabel();
+
+        boolean inline = jump instanceof JumpIfFalseHCode || jump instanceof JumpIfTrueHCode;
+        if (inline) {
+            code.op(ALOAD_2);
+            code.invoke(INVOKESTATIC, COMPILER, "isNumber", "(L" + STACK + ";)Z");
+            code.branch(IFEQ, slow);
+            code.op(ALOAD_2);
+            code.invoke(INVOKEVIRTUAL, STACK, "popNumber", "()D");
+            code.invoke(INVOKESTATIC, UTIL, "fuzzyZero", "(D)Z");
+            code.branch(jump instanceof JumpIfFalseHCode ? IFNE : IFEQ, target);
+            code.branch(GOTO, next);
+        }
+
+        code.placeLabel(slow);
+        code.op(ALOAD_1);
+        generateLoadHCode(code, location);
+        code.pushInt(typesProven ? 1 : 0);
+        code.invoke(INVOKEVIRTUAL, ENGINE, "executeJump", "(" + HCODE_DESC + "Z)Z");
+        code.branch(IFNE, target);
+        code.placeLabel(next);
+    }
+
+    /**
+     * A binary operator. If both arguments are numbers, the operator is
+     * applied inline. Otherwise, the h-code is executed.
+     *
+     * @param type The operator's type, or null for an AddHCode.
+     * @param constant The second argument, if it is a constant folded into a
+     * ConstOperandHCode, or null if it is on the data stack.
+     */
+    static private void generateBinaryOp(ClassFileWriter.Code code, HCode hCode, HCode.Type type, Double constant, int location, boolean typesProven)
+    {
+        int slow = code.newLabel();
+        int next = code.newLabel();
+
+        code.op(ALOAD_2);
+        code.pushInt(constant == null ? 2 : 1);
+        code.invoke(INVOKESTATIC, COMPILER, "areNumbers", "(L" + STACK + ";I)Z");
+        code.branch(IFEQ, slow);
+
+        // Stack: receiver for pushNumber(), first arg, second arg
+
+        code.op(ALOAD_2);
+        if (constant == null) {
+            code.op(ALOAD_2);
+            code.invoke(INVOKEVIRTUAL, STACK, "popNumber", "()D");
+            code.op(DSTORE, TEMP_VAR);
+        }
+        code.op(ALOAD_2);
+        code.invoke(INVOKEVIRTUAL, STACK, "popNumber", "()D");
+        if (constant == null) {
+            code.op(DLOAD, TEMP_VAR);
+        }
+        else {
+            code.pushDouble(constant);
+        }
+
+        if (type == null) {
+            code.op(DADD);
+        }
+        else switch (type) {
+            case SUB -> code.op(DSUB);
+            case MULT -> code.op(DMUL);
+            case DIV -> code.op(DDIV);
+            case REMAINDER -> code.op(DREM);
+            case EXP -> code.invoke(INVOKESTATIC, "java/lang/Math", "pow", "(DD)D");
+            case EQ -> generateCompare(code, "fuzzyEQ");
+            case NE -> generateCompare(code, "fuzzyNE");
+            case LT -> generateCompare(code, "fuzzyLT");
+            case GT -> generateCompare(code, "fuzzyGT");
+            case LE -> generateCompare(code, "fuzzyLE");
+            case GE -> generateCompare(code, "fuzzyGE");
+            default -> {
+                // Use the operator's own implementation
+
+                code.op(DSTORE, TEMP_VAR);
+                code.op(DSTORE, TEMP_VAR + 2);
+                generateLoadNumericOp(code, constant, location);
+                code.op(DLOAD, TEMP_VAR + 2);
+                code.op(DLOAD, TEMP_VAR);
+                code.invoke(INVOKEVIRTUAL, NUMERIC_OP, "apply", "(DD)D");
+            }
+        }
+
+        code.invoke(INVOKEVIRTUAL, STACK, "pushNumber", "(D)V");
+        code.branch(GOTO, next);
+
+        code.placeLabel(slow);
+        generateExecute(code, hCode, location, typesProven);
+        code.placeLabel(next);
+    }
+
+    /**
+     * A unary operator. If the argument is a number, the operator is applied
+     * inline. Otherwise, the h-code is executed.
+     */
+    static private void generateUnaryOp(ClassFileWriter.Code code, HCode hCode, HCode.Type type, int location, boolean typesProven)
+    {
+        int slow = code.newLabel();
+        int next = code.newLabel();
+
+        code.op(ALOAD_2);
+        code.invoke(INVOKESTATIC, COMPILER, "isNumber", "(L" + STACK + ";)Z");
+        code.branch(IFEQ, slow);
+
+        code.op(ALOAD_2);
+        code.op(ALOAD_2);
+        code.invoke(INVOKEVIRTUAL, STACK, "popNumber", "()D");
+
+        switch (type) {
+            case UNARY_MINUS -> code.op(DNEG);
+            case UNARY_PLUS -> { /* DO NOTHING */ }
+            default -> {
+                code.op(DSTORE, TEMP_VAR);
+                generateLoadNumericOp(code, null, location);
+                code.op(DLOAD, TEMP_VAR);
+                code.invoke(INVOKEVIRTUAL, NUMERIC_OP, "apply", "(D)D");
+            }
+        }
+
+        code.invoke(INVOKEVIRTUAL, STACK, "pushNumber", "(D)V");
+        code.branch(GOTO, next);
+
+        code.placeLabel(slow);
+        generateExecute(code, hCode, location, typesProven);
+        code.placeLabel(next);
+    }
+
+    /**
+     * Load the NumericOpHCode at the given location. For a ConstOperandHCode,
+     * this is its operator.
+     */
+    static private void generateLoadNumericOp(ClassFileWriter.Code code, Double constant, int location)
+    {
+        generateLoadHCode(code, location);
+        if (constant != null) {
+            code.checkCast(HCODE_PACKAGE + "ConstOperandHCode");
+            code.invoke(INVOKEVIRTUAL, HCODE_PACKAGE + "ConstOperandHCode", "getOp", "()" + HCODE_DESC);
+        }
+        code.checkCast(NUMERIC_OP);
+    }
+
+    /**
+     * Call a comparison in Util and convert the boolean result to 1.0 or
+     * 0.0.
+     */
+    static private void generateCompare(ClassFileWriter.Code code, String method)
+    {
+        int isFalse = code.newLabel();
+        int done = code.newLabel();
+
+        code.invoke(INVOKESTATIC, UTIL, method, "(DD)Z");
+        code.branch(IFEQ, isFalse);
+        code.op(DCONST_1);
+        code.branch(GOTO, done);
+        code.placeLabel(isFalse);
+        code.op(DCONST_0);
+        code.placeLabel(done);
+    }
+
+    // **********************************************************************
+    // *
+    // * Support Methods Called By Compiled Programs
+    // *
+    // **********************************************************************
+
+    static boolean isNumber(DataStack stack)
+    {
+        int top = stack.size() - 1;
+        return top >= 0 && stack.isNumber(top);
+    }
+
+    static boolean areNumbers(DataStack stack, int count)
+    {
+        int top = stack.size() - 1;
+        if (top < count - 1) return false;
+        for (int i = 0; i < count; i++) {
+            if (!stack.isNumber(top - i)) return false;
+        }
+        return true;
+    }
+
+}
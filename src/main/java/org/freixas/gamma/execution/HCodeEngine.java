@@ -25,7 +25,7 @@ import org.freixas.gamma.execution.hcode.HCodeExecutor;
 import org.freixas.gamma.execution.hcode.HCode;
 import org.freixas.gamma.execution.hcode.ArgInfoHCode;
 import org.freixas.gamma.execution.hcode.GenericHCode;
-import org.freixas.gamma.execution.hcode.Label;
+import org.freixas.gamma.execution.hcode.StackHCode;
 import org.freixas.gamma.execution.hcode.SetStatement;
 import org.freixas.gamma.execution.lcode.Command;
 import org.freixas.gamma.math.Util;
@@ -35,14 +35,34 @@ import org.freixas.gamma.value.Displayable;
 import org.freixas.gamma.value.Frame;
 import org.freixas.gamma.value.WInitializer;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import javafx.application.Platform;
 import org.freixas.gamma.parser.TokenContext;
 
 /**
  * The HCodeEngine controls the execution of a specific HCodeProgram. The
  * program is executed once for a non-animated diagram and multiple times for
  * an animated diagram.
+ * <p>
+ * An execution has two parts. evaluate() runs the h-codes and collects the
+ * commands they create; it doesn't touch the display, so it can run on a
+ * worker thread. present() then draws the commands on the JavaFX
+ * application thread.
+ * <p>
+ * After the first execution, only the top-level statements affected by the
+ * dynamic variables that have changed are executed again. The other
+ * statements are skipped and the commands they created in the previous
+ * execution are reused. For a pure program, the results of recent
+ * executions are also cached by the values of the dynamic variables, so
+ * returning to earlier values doesn't execute the program at all.
+ * <p>
+ * Each backward jump counts as one loop iteration. Every so often, a backward
+ * jump also checks the program's cancellation token and execution limits,
+ * so a script stuck in a loop can be stopped.
  *
  * @author Antonio Freixas
  */
@@ -56,24 +76,53 @@ public class HCodeEngine
             Frame.AtType.TAU,
             0);
 
+    // The program counter while a compiled program executes a jump h-code.
+    // It changes only if the h-code jumps
+
+    static private final int NO_JUMP = Integer.MIN_VALUE;
+
+    // The number of backward jumps between checks of the cancellation token
+    // and the time limit
+
+    static private final int BACKWARD_JUMP_CHECK_INTERVAL = 1024;
+
+    // The number of results kept for pure programs, which create the same
+    // commands whenever their dynamic variables have the same values
+
+    static private final int RESULT_CACHE_SIZE = 16;
+
     private final MainWindow window;
     private final SetStatement setStatement;
     private final Stylesheet stylesheet;
     private final HCodeProgram program;
+    private final DataStack dataStack;
     private int programCounter;
 
+    private long backwardJumps;
+    private int backwardJumpInterval;
+    private int backwardJumpCountdown;
+    private long deadline;
+
     private final StaticSymbolTable staticSymbolTable;
     private final DynamicSymbolTable dynamicTable;
     private int precision;
 
     SymbolTable table;
     private LCodeEngine lCodeEngine;
+    private List<Command> commands;
+
+    private boolean[] statementsToExecute;
+    private int[] statementStarts;
+    private List<Command> lastCommands;
+    private int[] lastStatementStarts;
+    private HashMap<String, Double> lastDynamicValues;
+    private final LinkedHashMap<Map<String, Double>, List<Command>> resultCache;
     private final HCodeExecutor hCodeExecutor;
     private final FunctionExecutor functionExecutor;
 
     TokenContext tokenContext;
 
-    private final boolean isClosed;
+    private volatile boolean isClosed;
 
     public HCodeEngine(MainWindow window, SetStatement setStatement, Stylesheet stylesheet, HCodeProgram program)
     {
@@ -86,18 +135,28 @@ public class HCodeEngine
         // - The factory default stylesheet
         // - The user's default stylesheet, if any
         // - The stylesheet given
+        //
+        // The stylesheets are layered, not merged, so the stylesheet given
+        // isn't changed when an engine is created for the same script again
 
-        this.stylesheet = stylesheet;
-        if (Stylesheet.USER_STYLESHEET != null) this.stylesheet.prefixStylesheet(Stylesheet.USER_STYLESHEET);
-        this.stylesheet.prefixStylesheet(Stylesheet.DEFAULT_STYLESHEET);
-        stylesheet.setCacheEnabled(true);
+        this.stylesheet = stylesheet.getLayeredStylesheet();
+        this.stylesheet.setCacheEnabled(true);
 
         this.program = program;
+        this.dataStack = new DataStack();
 
         this.staticSymbolTable = new StaticSymbolTable(this);
         this.dynamicTable = new DynamicSymbolTable(this);
 
         this.lCodeEngine = null;
+        this.resultCache = new LinkedHashMap<>(RESULT_CACHE_SIZE, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Map<String, Double>, List<Command>> eldest)
+            {
+                return size() > RESULT_CACHE_SIZE;
+            }
+        };
 
         this.hCodeExecutor = new HCodeExecutor(this);
         this.functionExecutor = new FunctionExecutor();
@@ -149,6 +208,51 @@ public class HCodeEngine
         return dynamicTable;
     }
 
+    /**
+     * Get the data stack. Stack h-codes work on it directly.
+     *
+     * @return The data stack.
+     */
+    public DataStack getDataStack()
+    {
+        return dataStack;
+    }
+
+    /**
+     * Get the set of data corresponding to the given h-code. This is not an
+     * arbitrary h-code, but the next h-code in the current execution of the
+     * program.
+     *
+     * @param hCode The h-code whose data we want.
+     *
+     * @return A list of the matching data. While this list contains only the
+     * data for the current h-code, changes to the returned data affect the
+     * data stack. The data should be cleared when done and a result, if any,
+     * should be pushed onto the list.
+     */
+    public List<Object> getData(HCode hCode)
+    {
+        int numOfArgs = hCode.getNumberOfArgs();
+
+        // If the number of args is -1, get the number of args from the stack
+
+        if (numOfArgs == -1) {
+            Object obj = dataStack.pop();                // Remove the count
+            if (!(obj instanceof Integer)) {
+                throw new ProgrammingException("HCodeEngine.getData(): Expected the number of hCode arguments");
+            }
+            numOfArgs = (Integer)obj;
+        }
+
+        // Create a view of just the arguments
+
+        if (dataStack.size() < numOfArgs) {
+            throw new ProgrammingException("HCodeEngine.getData(): Too few elements on the data stack");
+        }
+
+        return dataStack.getFrame(numOfArgs);
+    }
+
     public HCodeExecutor getHCodeExecutor()
     {
         return hCodeExecutor;
@@ -179,18 +283,162 @@ public class HCodeEngine
         return lCodeEngine;
     }
 
+    /**
+     * Print a string in the window's Script Print dialog. The string may be
+     * printed from a worker thread, in which case the dialog is updated on
+     * the JavaFX application thread.
+     *
+     * @param str The string to print.
+     */
     public void print(String str)
     {
-        window.scriptPrint(str);
+        if (Platform.isFxApplicationThread()) {
+            window.scriptPrint(str);
+        }
+        else {
+            Platform.runLater(() -> window.scriptPrint(str));
+        }
     }
 
+    /**
+     * Execute the program and draw the result. This must be called on the
+     * JavaFX application thread.
+     */
     public void execute()
     {
         if (isClosed) return;
+        present(evaluate());
+    }
 
+    /**
+     * Execute the h-code program and collect the commands it creates. Nothing
+     * is drawn, so this may be called on a worker thread. Calls must not
+     * overlap.
+     *
+     * @return The commands created, in the order they were created.
+     */
+    public List<Command> evaluate()
+    {
         // System.err.println("\n\n*******************\nNew execution\n*******************\n");
         tokenContext = new TokenContext(null, "", 0, 0, 0, 0);
 
+        // A pure program that has already run with the current values of its
+        // dynamic variables doesn't need to run again. While profiling, we
+        // always run the whole program
+
+        HashMap<String, Double> dynamicValues = dynamicTable.getCurrentValues();
+        boolean useCache = program.isPure() && program.getProfile() == null;
+        if (useCache) {
+            List<Command> cached = resultCache.get(dynamicValues);
+            if (cached != null) return cached;
+        }
+
+        commands = new ArrayList<>();
+        planStatements(dynamicValues);
+
+        try {
+            runProgram();
+        }
+        catch (Throwable e) {
+            lastCommands = null;
+            throwGammaException(e);
+        }
+
+        rememberStatements(dynamicValues);
+
+        List<Command> result = Collections.unmodifiableList(commands);
+        commands = null;
+
+        // Only cache the result if no dynamic variable changed while the
+        // program ran
+
+        if (useCache && dynamicValues.equals(dynamicTable.getCurrentValues())) {
+            resultCache.put(dynamicValues, result);
+        }
+        return result;
+    }
+
+    /**
+     * Decide which top-level statements to execute. If the previous
+     * execution succeeded and the same dynamic variables exist, only the
+     * statements affected by the variables whose values have changed are
+     * executed. Otherwise, and whenever the program is being profiled, all
+     * statements are executed.
+     *
+     * @param dynamicValues The values of the dynamic variables at the start
+     * of this execution.
+     */
+    private void planStatements(HashMap<String, Double> dynamicValues)
+    {
+        StatementDependencies dependencies = program.getStatementDependencies();
+
+        statementsToExecute = null;
+        statementStarts = null;
+        if (dependencies == null || program.getProfile() != null) return;
+
+        if (lastCommands != null && dynamicValues.keySet().equals(lastDynamicValues.keySet())) {
+            ArrayList<String> changed = new ArrayList<>();
+            for (Map.Entry<String, Double> entry : dynamicValues.entrySet()) {
+                if (!entry.getValue().equals(lastDynamicValues.get(entry.getKey()))) {
+                    changed.add(entry.getKey());
+                }
+            }
+            statementsToExecute = dependencies.slice(changed);
+        }
+        statementStarts = new int[dependencies.size() + 1];
+    }
+
+    /**
+     * Remember the commands each top-level statement created so that they
+     * can be reused by the next execution.
+     *
+     * @param dynamicValues The values of the dynamic variables at the start
+     * of this execution.
+     */
+    private void rememberStatements(HashMap<String, Double> dynamicValues)
+    {
+        if (statementStarts == null) return;
+        statementStarts[statementStarts.length - 1] = commands.size();
+        lastCommands = commands;
+        lastStatementStarts = statementStarts;
+
+        // Dynamic variables created by this execution are remembered with the
+        // values they have now
+
+        lastDynamicValues = dynamicTable.getCurrentValues();
+        lastDynamicValues.putAll(dynamicValues);
+    }
+
+    /**
+     * Start a top-level statement. This is called by the statement's
+     * StatementHCode.
+     *
+     * @param statement The index of the statement.
+     * @return True if the statement should be skipped. Its commands from the
+     * previous execution have been reused.
+     */
+    public boolean startStatement(int statement)
+    {
+        if (statementStarts == null) return false;
+        statementStarts[statement] = commands.size();
+
+        if (statementsToExecute != null && !statementsToExecute[statement]) {
+            commands.addAll(lastCommands.subList(lastStatementStarts[statement], lastStatementStarts[statement + 1]));
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Draw the commands created by evaluate(). This must be called on the
+     * JavaFX application thread.
+     *
+     * @param commands The commands to draw.
+     */
+    public void present(List<Command> commands)
+    {
+        if (isClosed) return;
+
         // Create an LCodeEngine only the first time
 
         boolean firstExecution = false;
@@ -201,97 +449,298 @@ public class HCodeEngine
         else {
             lCodeEngine.removeAllCommands();
         }
+        for (Command command : commands) {
+            lCodeEngine.addCommand(command);
+        }
+        lCodeEngine.setProfile(program.getProfile());
 
-        table = new SymbolTable(this);
+        // Set up the l-code engine for this set of l-codes.
+        // This handles the initial drawing and sets up observers to
+        // handle redraws
 
-        LinkedList<Object> code = program.initialize();
-        programCounter = 0;
+        if (firstExecution) {
+            dynamicTable.addDisplayControls(window);
+            lCodeEngine.setup();
+        }
+        else {
+            lCodeEngine.setUpDrawingFrame();
+            lCodeEngine.execute();
+        }
+    }
 
-        try {
-            while (programCounter < code.size()) {
-//                System.err.print(programCounter + ": ");
-                Object obj = code.get(programCounter);
-                if (!(obj instanceof HCode) && !(obj instanceof Label)) {
-//                    System.err.print("PUSH " + toDisplayableString(obj));
-                    program.pushData(obj);
-                }
-                else if (obj instanceof HCode hCode) {
-                    // Individual HCode using ArgInfo method
+    /**
+     * Run the h-code program once with a new symbol table. Only the h-codes
+     * are executed; the l-codes they create are drawn by present().
+     */
+    void runProgram()
+    {
+        table = new SymbolTable(this);
+        startBudget();
 
-                    if (hCode instanceof ArgInfoHCode argInfoHCode) {
-//                        System.err.print("HCODE " + hCode.getClass().getName());
-//                        if (hCode instanceof Jump jump) {
-//                            System.err.print(" " + jump.getJumpLocation());
-//                        }
+        Object[] code = program.initialize();
+        boolean[] typesProven = program.getTypesProven();
+        dataStack.truncate(0);
 
-                        // Check the arguments
+        // A profiled program is always interpreted. Otherwise, once a program
+        // is hot, it has a compiled form
 
-                        ArgInfo argInfo = argInfoHCode.getArgInfo();
+        ScriptProfile profile = program.getProfile();
+        HCodeCompiler.CompiledProgram compiledProgram =
+            profile == null ? program.getCompiledProgram() : null;
+        if (profile != null) {
+            runProfiledProgram(code, typesProven, dataStack, profile);
+        }
+        else if (compiledProgram != null) {
+            compiledProgram.run(this, dataStack, code);
+            if (HCodeCompiler.VERIFY && program.isPure()) verifyCompiledRun(code, typesProven);
+        }
+        else {
+            interpret(code, typesProven);
+        }
+        if (!dataStack.isEmpty()) {
+            throw new ProgrammingException("HCodeEngine.execute(): Execution ended but the data stack is not empty");
+        }
+    }
 
-                        // Get the number of arguments
+    /**
+     * Interpret the h-code program.
+     *
+     * @param code The finalized program.
+     * @param typesProven The locations whose argument types are proven.
+     */
+    private void interpret(Object[] code, boolean[] typesProven)
+    {
+        programCounter = 0;
 
-                        List<Object> data = program.getData(argInfoHCode);
+        while (programCounter < code.length) {
+//            System.err.print(programCounter + ": ");
+            Object obj = code[programCounter];
+            if (!(obj instanceof HCode hCode)) {
+//                System.err.print("PUSH " + toDisplayableString(obj));
+                dataStack.push(obj);
+            }
+            else {
+                executeHCode(hCode, typesProven[programCounter]);
+            }
+//            System.err.println();
+            programCounter++;
+        }
+    }
 
-                        // Execute the h-code
+    /**
+     * Run the program again in the interpreter after a compiled run and
+     * check that both runs created the same commands. The interpreter's
+     * commands are kept. Only pure programs are checked, since running any
+     * other program twice could give different results or print twice.
+     *
+     * @param code The finalized program.
+     * @param typesProven The locations whose argument types are proven.
+     */
+    private void verifyCompiledRun(Object[] code, boolean[] typesProven)
+    {
+        if (!dataStack.isEmpty()) {
+            throw new ProgrammingException("HCodeEngine.verifyCompiledRun(): The compiled program left data on the data stack");
+        }
+        List<Command> compiledCommands = commands;
+        commands = new ArrayList<>();
+        table = new SymbolTable(this);
+        startBudget();
 
-                        argInfo.checkTypes(data);
-                        argInfoHCode.execute(this, data);
-                    }
+        interpret(code, typesProven);
 
-                    // Generic HCode method
+        int difference = CommandComparator.findDifference(commands, compiledCommands);
+        if (difference != -1) {
+            throw new ProgrammingException(
+                "HCodeEngine.verifyCompiledRun(): The compiled program created different commands than the interpreter, starting with command " +
+                (difference + 1));
+        }
+    }
 
-                    else if (hCode instanceof GenericHCode genericHCode) {
-//                        System.err.print("HCODE " + genericHCode.getType());
-                        genericHCode.execute(this);
-                    }
-//                    else if (obj instanceof Label label) {
-//                        System.err.print("LABEL " + label.getId());
-//                    }
-                }
-//                System.err.println();
-                programCounter++;
+    /**
+     * Interpret the h-code program, timing each h-code. This is kept apart
+     * from the normal interpreter loop so that programs that aren't being
+     * profiled don't pay for it.
+     *
+     * @param code The finalized program.
+     * @param typesProven The locations whose argument types are proven.
+     * @param dataStack The data stack.
+     * @param profile The profile to record the executions in.
+     */
+    private void runProfiledProgram(Object[] code, boolean[] typesProven, DataStack dataStack, ScriptProfile profile)
+    {
+        profile.startExecution();
+        programCounter = 0;
+
+        while (programCounter < code.length) {
+            int location = programCounter;
+            long start = System.nanoTime();
+            Object obj = code[programCounter];
+            if (!(obj instanceof HCode hCode)) {
+                dataStack.push(obj);
             }
-            if (!program.isDataEmpty()) {
-                throw new ProgrammingException("HCodeEngine.execute(): Execution ended but the data stack is not empty");
+            else {
+                executeHCode(hCode, typesProven[programCounter]);
             }
+            profile.record(location, tokenContext, System.nanoTime() - start);
+            programCounter++;
         }
-        catch (Throwable e) {
-            throwGammaException(e);
+    }
+
+    /**
+     * Execute a single h-code using the data on the data stack.
+     *
+     * @param hCode The h-code to execute.
+     */
+    public void executeHCode(HCode hCode)
+    {
+        executeHCode(hCode, false);
+    }
+
+    /**
+     * Execute a single h-code using the data on the data stack.
+     *
+     * @param hCode The h-code to execute.
+     * @param typesProven True if the types of the h-code's arguments are
+     * known to be correct, in which case they aren't checked.
+     */
+    void executeHCode(HCode hCode, boolean typesProven)
+    {
+        // HCode with a fast path on the data stack. If the fast path can't
+        // handle the arguments, fall through to the normal method
+
+        if (hCode instanceof StackHCode stackHCode &&
+            stackHCode.executeOnStack(this, dataStack)) {
+//            System.err.print("STACK " + hCode.getClass().getName());
         }
 
-        // We only enable stylesheet caching on the first execution. If the user
-        // writes an animated script where the style property changes
-        // with each execution, we might put a lot of stuff into the cache that
-        // will never be used
+        // Individual HCode using ArgInfo method
 
-        stylesheet.setCacheEnabled(false);
+        else if (hCode instanceof ArgInfoHCode argInfoHCode) {
+//            System.err.print("HCODE " + argInfoHCode.getClass().getName());
+//            if (argInfoHCode instanceof Jump jump) {
+//                System.err.print(" " + jump.getJumpLocation());
+//            }
 
-        // Execute the lCodes
+            // Check the arguments
 
-        // Set up the l-code engine for this set of l-codes.
-        // This handles the initial drawing and sets up observers to
-        // handle redraws
+            ArgInfo argInfo = argInfoHCode.getArgInfo();
 
-        if (firstExecution) {
-            dynamicTable.addDisplayControls(window);
-            lCodeEngine.setup();
+            // Get the number of arguments
+
+            List<Object> data = getData(argInfoHCode);
+
+            // Execute the h-code
+
+            if (!typesProven) argInfo.checkTypes(data);
+            argInfoHCode.execute(this, data);
         }
-        else {
-            lCodeEngine.setUpDrawingFrame();
-            lCodeEngine.execute();
+
+        // Generic HCode method
+
+        else if (hCode instanceof GenericHCode genericHCode) {
+//            System.err.print("HCODE " + genericHCode.getType());
+            genericHCode.execute(this);
         }
     }
 
+    /**
+     * Execute a jump h-code. This is used by compiled programs, which
+     * handle the jump themselves.
+     *
+     * @param hCode The jump h-code to execute.
+     * @param typesProven True if the types of the h-code's arguments are
+     * known to be correct, in which case they aren't checked.
+     * @return True if the h-code jumped.
+     */
+    boolean executeJump(HCode hCode, boolean typesProven)
+    {
+        programCounter = NO_JUMP;
+        executeHCode(hCode, typesProven);
+        return programCounter != NO_JUMP;
+    }
+
+    /**
+     * Continue execution at the given location.
+     *
+     * @param location An index into the finalized program, as set on a Jump
+     * h-code by the HCodeProgram.
+     */
     public void goTo(int location)
     {
+        if (location <= programCounter) backwardJump();
+
         // The program counter will be incremented after executing a jump
         // instruction, so we decrement the given location by one
 
         programCounter = location - 1;
     }
 
+    // **********************************************************************
+    // *
+    // * Execution Budget
+    // *
+    // **********************************************************************
+
+    /**
+     * Reset the execution budget at the start of an execution.
+     *
+     * @throws ExecutionException If the program has been cancelled.
+     */
+    private void startBudget()
+    {
+        long timeLimit = program.getTimeLimit();
+        deadline = timeLimit > 0 ? System.nanoTime() + timeLimit * 1_000_000L : Long.MAX_VALUE;
+        backwardJumps = 0;
+        backwardJumpInterval = 0;
+        checkBudget();
+    }
+
+    /**
+     * Count a backward jump. Compiled programs call this before each
+     * backward branch.
+     *
+     * @throws ExecutionException If the program has been cancelled or has
+     * exceeded one of its limits.
+     */
+    void backwardJump()
+    {
+        if (--backwardJumpCountdown <= 0) checkBudget();
+    }
+
+    private void checkBudget()
+    {
+        backwardJumps += backwardJumpInterval;
+
+        if (program.getCancellationToken().isCancelled()) {
+            throw new ExecutionException("The script was cancelled");
+        }
+
+        long loopLimit = program.getLoopLimit();
+        if (loopLimit > 0 && backwardJumps > loopLimit) {
+            throw new ExecutionException(
+                "The script exceeded the limit of " + loopLimit +
+                " loop iterations. It may contain an infinite loop");
+        }
+        if (System.nanoTime() > deadline) {
+            throw new ExecutionException(
+                "The script exceeded the time limit of " +
+                Util.toString(program.getTimeLimit() / 1000.0, 1) +
+                " seconds. It may contain an infinite loop");
+        }
+
+        // Check again at the next interval or just past the loop limit,
+        // whichever comes first
+
+        backwardJumpInterval = BACKWARD_JUMP_CHECK_INTERVAL;
+        if (loopLimit > 0) {
+            backwardJumpInterval = (int)Math.min(backwardJumpInterval, loopLimit + 1 - backwardJumps);
+        }
+        backwardJumpCountdown = backwardJumpInterval;
+    }
+
     public void close()
     {
+        isClosed = true;
         if (lCodeEngine != null) lCodeEngine.close();
         lCodeEngine = null;
 
@@ -300,7 +749,7 @@ public class HCodeEngine
 
     public void addCommand(Command command)
     {
-        lCodeEngine.addCommand(command);
+        commands.add(command);
     }
 
     public String toDisplayableString(Object obj)
@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2021 Antonio Freixas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.execution;
+
+import org.freixas.gamma.execution.hcode.AddHCode;
+import org.freixas.gamma.execution.hcode.ConstOperandHCode;
+import org.freixas.gamma.execution.hcode.FetchPropHCode;
+import org.freixas.gamma.execution.hcode.GenericHCode;
+import org.freixas.gamma.execution.hcode.HCode;
+import org.freixas.gamma.execution.hcode.Jump;
+import org.freixas.gamma.execution.hcode.JumpHCode;
+import org.freixas.gamma.execution.hcode.JumpIfFalseHCode;
+import org.freixas.gamma.execution.hcode.JumpIfTrueHCode;
+import org.freixas.gamma.execution.hcode.Label;
+import org.freixas.gamma.execution.hcode.NumericOpHCode;
+import org.freixas.gamma.math.Util;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * The h-code optimizer rewrites the h-codes produced by the parser before
+ * they are given to an HCodeProgram. The parser generates simple stack code;
+ * the optimizer removes work that would otherwise be repeated every time the
+ * program executes (which, for an animation, is once per frame).
+ * <p>
+ * The optimizer:
+ * <ul>
+ *     <li>Folds operators whose arguments are all constant numbers.
+ *     <li>Replaces conditional jumps on a constant with an unconditional
+ *     jump or removes them.
+ *     <li>Removes unconditional jumps to the next instruction and code that
+ *     can't be reached because it follows an unconditional jump.
+ *     <li>Fuses some common pairs of h-codes into superinstructions.
+ * </ul>
+ * <p>
+ * The optimized program produces exactly the same results as the original.
+ * The optimizer can be turned off with ENABLED.
+ *
+ * @author Antonio Freixas
+ */
+public class HCodeOptimizer
+{
+    /**
+     * When false, optimize() returns the h-codes unchanged.
+     */
+    static public boolean ENABLED = true;
+
+    static private final int MAX_PASSES = 10;
+
+    private HCodeOptimizer()
+    {
+    }
+
+    /**
+     * Optimize a list of h-codes, as produced by the parser.
+     *
+     * @param codes The h-codes to optimize. The list is not modified.
+     *
+     * @return The optimized h-codes.
+     */
+    static public List<Object> optimize(List<Object> codes)
+    {
+        if (!ENABLED) return codes;
+
+        List<Object> optimized = new ArrayList<>(codes);
+
+        // Each pass can create new opportunities for the others, so we repeat
+        // until nothing changes
+
+        for (int i = 0; i < MAX_PASSES; i++) {
+            int size = optimized.size();
+            optimized = foldConstants(optimized);
+            optimized = simplifyJumps(optimized);
+            optimized = removeUnreachableCode(optimized);
+            if (optimized.size() == size) break;
+        }
+
+        return fuseInstructions(optimized);
+    }
+
+    // **********************************************************************
+    // *
+    // * Constant Folding
+    // *
+    // **********************************************************************
+
+    /**
+     * Evaluate operators whose arguments are constant numbers. The arguments
+     * must be pushed immediately before the operator, with no label between
+     * them.
+     *
+     * @param codes The h-codes.
+     *
+     * @return The folded h-codes.
+     */
+    static private List<Object> foldConstants(List<Object> codes)
+    {
+        ArrayList<Object> folded = new ArrayList<>(codes.size());
+
+        for (Object code : codes) {
+            int size = folded.size();
+            NumericOpHCode numericOp = toNumericOp(code);
+
+            if (numericOp != null && !numericOp.isBinary() &&
+                size >= 1 &&
+                folded.get(size - 1) instanceof Double d) {
+                folded.set(size - 1, numericOp.apply(d));
+            }
+            else if ((numericOp != null && numericOp.isBinary() || code instanceof AddHCode) &&
+                     size >= 2 &&
+                     folded.get(size - 2) instanceof Double d1 &&
+                     folded.get(size - 1) instanceof Double d2) {
+                folded.remove(size - 1);
+                folded.set(size - 2, numericOp != null ? numericOp.apply(d1, d2) : d1 + d2);
+            }
+            else {
+                folded.add(code);
+            }
+        }
+        return folded;
+    }
+
+    // **********************************************************************
+    // *
+    // * Jump Simplification
+    // *
+    // **********************************************************************
+
+    /**
+     * Simplify jumps. A conditional jump on a constant either always jumps
+     * or never jumps. An unconditional jump to the label that follows it
+     * does nothing.
+     *
+     * @param codes The h-codes.
+     *
+     * @return The simplified h-codes.
+     */
+    static private List<Object> simplifyJumps(List<Object> codes)
+    {
+        ArrayList<Object> simplified = new ArrayList<>(codes.size());
+
+        for (Object code : codes) {
+            int size = simplified.size();
+            if ((code instanceof JumpIfFalseHCode || code instanceof JumpIfTrueHCode) &&
+                size >= 1 &&
+                simplified.get(size - 1) instanceof Double d) {
+                boolean isFalse = Util.fuzzyZero(d);
+                simplified.remove(size - 1);
+                if (isFalse == code instanceof JumpIfFalseHCode) {
+                    simplified.add(new JumpHCode(((Jump)code).getId()));
+                }
+            }
+            else {
+                simplified.add(code);
+            }
+        }
+
+        // Remove unconditional jumps that land on the next instruction
+
+        for (int i = simplified.size() - 1; i >= 0; i--) {
+            if (simplified.get(i) instanceof JumpHCode jump && jumpsToNext(simplified, i, jump.getId())) {
+                simplified.remove(i);
+            }
+        }
+
+        return simplified;
+    }
+
+    static private boolean jumpsToNext(List<Object> codes, int location, int id)
+    {
+        for (int i = location + 1; i < codes.size() && codes.get(i) instanceof Label label; i++) {
+            if (label.getId() == id) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Remove code following an unconditional jump up to the next label that
+     * is the target of some jump. Labels that are no longer the target of any
+     * jump are removed as well.
+     *
+     * @param codes The h-codes.
+     *
+     * @return The h-codes without unreachable code.
+     */
+    static private List<Object> removeUnreachableCode(List<Object> codes)
+    {
+        HashSet<Integer> targets = new HashSet<>();
+        for (Object code : codes) {
+            if (code instanceof Jump jump) targets.add(jump.getId());
+        }
+
+        ArrayList<Object> reachable = new ArrayList<>(codes.size());
+        boolean isReachable = true;
+
+        for (Object code : codes) {
+            if (code instanceof Label label) {
+                if (!targets.contains(label.getId())) continue;
+                isReachable = true;
+            }
+            if (isReachable) reachable.add(code);
+            if (code instanceof JumpHCode) isReachable = false;
+        }
+        return reachable;
+    }
+
+    // **********************************************************************
+    // *
+    // * Superinstructions
+    // *
+    // **********************************************************************
+
+    /**
+     * Fuse pairs of h-codes into superinstructions:
+     * <ul>
+     *     <li>A constant number followed by a binary operator becomes a
+     *     ConstOperandHCode.
+     *     <li>A property name followed by FETCH_PROP becomes a
+     *     FetchPropHCode.
+     * </ul>
+     *
+     * @param codes The h-codes.
+     *
+     * @return The h-codes with superinstructions.
+     */
+    static private List<Object> fuseInstructions(List<Object> codes)
+    {
+        ArrayList<Object> fused = new ArrayList<>(codes.size());
+
+        for (Object code : codes) {
+            int size = fused.size();
+            Object last = size > 0 ? fused.get(size - 1) : null;
+            NumericOpHCode numericOp = toNumericOp(code);
+
+            if (last instanceof Double d && numericOp != null && numericOp.isBinary()) {
+                fused.set(size - 1, new ConstOperandHCode(numericOp, d));
+            }
+            else if (last instanceof Double d && code instanceof AddHCode addHCode) {
+                fused.set(size - 1, new ConstOperandHCode(addHCode, d));
+            }
+            else if (last instanceof String propName &&
+                     code instanceof GenericHCode genericHCode &&
+                     genericHCode.getType() == HCode.Type.FETCH_PROP) {
+                fused.set(size - 1, new FetchPropHCode(propName));
+            }
+            else {
+                fused.add(code);
+            }
+        }
+        return fused;
+    }
+
+    // **********************************************************************
+    // *
+    // * Support
+    // *
+    // **********************************************************************
+
+    static private NumericOpHCode toNumericOp(Object code)
+    {
+        if (code instanceof NumericOpHCode numericOp) return numericOp;
+        if (code instanceof GenericHCode genericHCode &&
+            NumericOpHCode.hasNumericForm(genericHCode.getType())) {
+            return new NumericOpHCode(genericHCode.getType());
+        }
+        return null;
+    }
+
+}
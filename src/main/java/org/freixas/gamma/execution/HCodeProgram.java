@@ -17,11 +17,23 @@
 package org.freixas.gamma.execution;
 
 import org.freixas.gamma.ProgrammingException;
+import org.freixas.gamma.execution.hcode.ArgInfoHCode;
+import org.freixas.gamma.execution.hcode.FetchElementAddressHCode;
+import org.freixas.gamma.execution.hcode.FetchElementHCode;
+import org.freixas.gamma.execution.hcode.FetchSlotAddressHCode;
+import org.freixas.gamma.execution.hcode.FetchSlotHCode;
+import org.freixas.gamma.execution.hcode.FunctionHCode;
+import org.freixas.gamma.execution.hcode.GenericHCode;
 import org.freixas.gamma.execution.hcode.HCode;
 import org.freixas.gamma.execution.hcode.Jump;
 import org.freixas.gamma.execution.hcode.Label;
+import org.freixas.gamma.execution.hcode.NumericOpHCode;
+import org.freixas.gamma.execution.hcode.StaticAssignHCode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.HashSet;
 import java.util.List;
 
 /**
@@ -29,6 +41,43 @@ import java.util.List;
  * it into separate h-code and data stacks. A master copy of the data can be
  * saved if the program will be executed multiple times.
  * <p>
+ * The h-code list produced by the parser is converted once, when the program
+ * is created, into a finalized form: an array of instructions with all labels
+ * removed and all jump locations resolved to array indices. Fetching an
+ * instruction is then a constant-time operation. Generic h-codes for
+ * operators that have a numeric fast path are replaced by NumericOpHCodes.
+ * Variable names that are known when the program is created are resolved
+ * to symbol table slots, so fetching them doesn't require a name lookup.
+ * Array elements are fetched through the array's slot and the element's
+ * index, so the element's name isn't built each time.
+ * <p>
+ * Each engine keeps its data on its own DataStack, which stores numbers
+ * unboxed. The program holds no per-execution state, so it can be shared by
+ * engines running on different threads. The settings that may be changed
+ * while an engine runs the program, such as the profile and the limits, are
+ * volatile, and compilation is synchronized.
+ * <p>
+ * When the program is finalized, the types of the values on the data stack
+ * are inferred wherever they can be. An h-code whose argument types are
+ * proven correct before the program runs doesn't need to have its
+ * arguments checked each time it executes.
+ * <p>
+ * A program that is executed many times is compiled into a JVM class by the
+ * HCodeCompiler.
+ * <p>
+ * Each program has a CancellationToken and, optionally, limits on the time
+ * and the number of loop iterations any one execution may take. These let
+ * a runaway script be stopped.
+ * <p>
+ * The dependencies between the program's top-level statements are found
+ * when the program is finalized. They let the engine re-execute only the
+ * statements affected by a change to a dynamic variable. A program that
+ * doesn't print, call random() or use static variables is pure: the
+ * commands it creates depend only on its dynamic variables.
+ * <p>
+ * A program can be given a ScriptProfile. While it has one, each execution
+ * is timed h-code by h-code, and the program is always interpreted.
+ * <p>
  * One of the main tasks of the HCodeProgram is to fetch the data corresponding
  * to a given h-code.
  *
@@ -36,35 +85,90 @@ import java.util.List;
  */
 public class HCodeProgram
 {
-    private final LinkedList<Object> program;
-    private LinkedList<Object> data;
+    private final Object[] program;
+    private final boolean[] typesProven;
+
+    private int executions;
+    private HCodeCompiler.CompiledProgram compiledProgram;
+    private String compileFailure;
+    private volatile ScriptProfile profile;
+    private final CancellationToken cancellationToken;
+    private volatile long timeLimit;
+    private volatile long loopLimit;
+    private final SymbolIndex symbolIndex;
+    private final StatementDependencies dependencies;
+    private final boolean isPure;
 
-    public HCodeProgram(LinkedList<Object> codes)
+    public HCodeProgram(List<Object> codes)
     {
-        this.program = codes;
+        symbolIndex = new SymbolIndex();
 
-        // Convert labels to program locations. We start by finding all the
-        // labels. We scan backwards in case we have multiple labels in
-        // a sequence. All of them should point to the first non-label item
-        // that follows
+        // Copy everything except labels into the finalized program. Each
+        // label is converted to the location of the first non-label item
+        // that follows it. If we have multiple labels in a sequence, all of
+        // them point to the same location. Numeric operators get their
+        // specialized h-code
 
         HashMap<Integer, Integer> labels = new HashMap<>();
-        int lastNonLabel = codes.size();
+        ArrayList<Object> instructions = new ArrayList<>(codes.size());
+        int lastLabelLocation = -1;
 
-        for (int i = codes.size() - 1; i > -1; i--) {
-            Object code = codes.get(i);
+        for (Object code : codes) {
             if (code instanceof Label label) {
-                labels.put(label.getId(), lastNonLabel);
+                lastLabelLocation = instructions.size();
+                labels.put(label.getId(), lastLabelLocation);
+            }
+
+            // A variable name followed by a FETCH or FETCH_ADDRESS is
+            // resolved to the variable's slot. We can't do this if a jump
+            // lands between the name and the fetch
+
+            else if (code instanceof GenericHCode genericHCode &&
+                     isFetch(genericHCode.getType()) &&
+                     !instructions.isEmpty() &&
+                     instructions.get(instructions.size() - 1) instanceof String name &&
+                     lastLabelLocation != instructions.size()) {
+                int slot = symbolIndex.getSlot(name);
+                instructions.set(
+                    instructions.size() - 1,
+                    genericHCode.getType() == HCode.Type.FETCH ?
+                        new FetchSlotHCode(name, slot) :
+                        new FetchSlotAddressHCode(name, slot));
+            }
+            // An array name followed by a DYNAMIC_NAME and a FETCH or
+            // FETCH_ADDRESS is resolved to the array's slot. The element's
+            // slot is found from the index when the program runs
+
+            else if (code instanceof GenericHCode genericHCode &&
+                     isFetch(genericHCode.getType()) &&
+                     instructions.size() >= 2 &&
+                     instructions.get(instructions.size() - 1) instanceof GenericHCode dynamicName &&
+                     dynamicName.getType() == HCode.Type.DYNAMIC_NAME &&
+                     instructions.get(instructions.size() - 2) instanceof String name &&
+                     lastLabelLocation < instructions.size() - 1) {
+                int slot = symbolIndex.getSlot(name);
+                instructions.remove(instructions.size() - 1);
+                instructions.set(
+                    instructions.size() - 1,
+                    genericHCode.getType() == HCode.Type.FETCH ?
+                        new FetchElementHCode(name, slot) :
+                        new FetchElementAddressHCode(name, slot));
+            }
+            else if (code instanceof GenericHCode genericHCode &&
+                     NumericOpHCode.hasNumericForm(genericHCode.getType())) {
+                instructions.add(new NumericOpHCode(genericHCode.getType()));
             }
             else {
-                lastNonLabel = i;
+                instructions.add(code);
             }
         }
 
+        this.program = instructions.toArray();
+
         // Now that we know where every label's location is, let's find all the
         // Jump instructions and convert their label to a location
 
-        for (Object code : codes) {
+        for (Object code : program) {
             if (code instanceof Jump jump) {
                 Integer id = jump.getId();
                 if (!labels.containsKey(id)) {
@@ -74,74 +178,296 @@ public class HCodeProgram
                 jump.setJumpLocation(location);
             }
         }
+
+        boolean pure = true;
+        for (int i = 0; i < program.length; i++) {
+            if (isImpure(program, i)) pure = false;
+        }
+        this.isPure = pure;
+        this.dependencies = StatementDependencies.create(program);
+        this.typesProven = inferTypes(program);
+
+        this.executions = 0;
+        this.compiledProgram = null;
+        this.compileFailure = null;
+        this.profile = null;
+        this.cancellationToken = new CancellationToken();
+        this.timeLimit = 0;
+        this.loopLimit = 0;
     }
 
-    public LinkedList<Object> getHCodes()
+    /**
+     * Find the h-codes whose argument types can be proven correct before the
+     * program is run.
+     * <p>
+     * We simulate the data stack, recording the class of each value pushed
+     * when it is known. A value's class is known if it is a literal or if it
+     * is the result of an h-code that always returns a non-null value of the
+     * same class. Since we don't follow jumps, everything we know is
+     * forgotten at any location that can be reached by a jump, after a
+     * jump and after any h-code with a variable number of arguments.
+     *
+     * @param program The finalized program.
+     * @return An array with an entry for each program location. The entry is
+     * true if the location holds an ArgInfoHCode whose argument types are
+     * always correct.
+     */
+    static private boolean[] inferTypes(Object[] program)
     {
-        return this.program;
+        boolean[] proven = new boolean[program.length];
+
+        HashSet<Integer> jumpTargets = new HashSet<>();
+        for (Object code : program) {
+            if (code instanceof Jump jump) jumpTargets.add(jump.getJumpLocation());
+        }
+
+        // The classes of the values at the top of the stack. Values below
+        // these are unknown. A null entry is a value of unknown class
+
+        ArrayList<Class<?>> stack = new ArrayList<>();
+
+        for (int i = 0; i < program.length; i++) {
+            if (jumpTargets.contains(i)) stack.clear();
+
+            Object code = program[i];
+            if (!(code instanceof HCode hCode)) {
+                stack.add(code == null ? null : code.getClass());
+                continue;
+            }
+
+            int numOfArgs = hCode.getNumberOfArgs();
+            if (numOfArgs == -1 || hCode instanceof Jump) {
+                stack.clear();
+                continue;
+            }
+
+            // Gather the classes of the arguments
+
+            List<Class<?>> args = new ArrayList<>(numOfArgs);
+            int known = Math.min(numOfArgs, stack.size());
+            for (int j = 0; j < numOfArgs - known; j++) args.add(null);
+            args.addAll(stack.subList(stack.size() - known, stack.size()));
+
+            if (hCode instanceof ArgInfoHCode argInfoHCode) {
+                proven[i] = argInfoHCode.getArgInfo().accepts(args);
+            }
+
+            // Replace the arguments with the results
+
+            stack.subList(stack.size() - known, stack.size()).clear();
+            if (known < numOfArgs) stack.clear();
+            for (int j = 0; j < hCode.getNumberOfReturnedValues(); j++) {
+                stack.add(hCode.getReturnType());
+            }
+        }
+
+        return proven;
+    }
+
+    /**
+     * Returns true if the h-code at the given location makes an execution
+     * depend on more than the program and the values of its dynamic
+     * variables: it prints, calls random() or assigns a static variable
+     * (static variables keep their values from one execution to the next).
+     *
+     * @param program The finalized program.
+     * @param location The location of the h-code.
+     * @return True if the h-code is impure.
+     */
+    static boolean isImpure(Object[] program, int location)
+    {
+        Object code = program[location];
+
+        // The function name is followed by the argument count
+
+        if (code instanceof FunctionHCode) {
+            return !(location > 1 && program[location - 2] instanceof String name) || name.equals("random");
+        }
+        return
+            code instanceof StaticAssignHCode ||
+            code instanceof GenericHCode genericHCode && genericHCode.getType() == HCode.Type.PRINT;
+    }
+
+    static private boolean isFetch(HCode.Type type)
+    {
+        return type == HCode.Type.FETCH || type == HCode.Type.FETCH_ADDRESS;
     }
 
     /**
-     * Reset the program for a new execution. This is called even for the first
+     * Get the symbol index that holds the slots assigned to the program's
+     * variables.
+     *
+     * @return The symbol index.
+     */
+    public SymbolIndex getSymbolIndex()
+    {
+        return symbolIndex;
+    }
+
+    /**
+     * Returns true if the program's results depend only on the values of
+     * its dynamic variables. A pure program always creates the same
+     * commands for the same values.
+     *
+     * @return True if the program is pure.
+     */
+    public boolean isPure()
+    {
+        return isPure;
+    }
+
+    /**
+     * Get the dependencies between the program's top-level statements.
+     *
+     * @return The statement dependencies or null if the program must
+     * always be executed in full.
+     */
+    StatementDependencies getStatementDependencies()
+    {
+        return dependencies;
+    }
+
+    /**
+     * Get the finalized h-codes. Labels have been removed and jump locations
+     * are indices into this list.
+     *
+     * @return A read-only view of the finalized h-codes.
+     */
+    public List<Object> getHCodes()
+    {
+        return Collections.unmodifiableList(Arrays.asList(program));
+    }
+
+    /**
+     * Get the program for a new execution. This is called even for the first
      * execution.
      *
-     * @return The program.
+     * @return The finalized program. The caller must not modify it.
      */
-    public LinkedList<Object> initialize()
+    public Object[] initialize()
     {
-        data = new LinkedList<>();
         return program;
     }
 
-    public void pushData(Object obj)
+    /**
+     * Get the program locations whose argument types have been proven
+     * correct. The argument types of the h-code at such a location don't need
+     * to be checked.
+     *
+     * @return An array with an entry for each location in the finalized
+     * program. The caller must not modify it.
+     */
+    public boolean[] getTypesProven()
     {
-        data.add(obj);
+        return typesProven;
     }
 
     /**
-     * Get the set of data corresponding to the given h-code. This is not an
-     * arbitrary h-code, but the next h-code in the current execution of the
-     * program.
+     * Get the compiled form of the program. Each call counts as an execution
+     * of the program. Once the program has been executed
+     * HCodeCompiler.HOT_EXECUTIONS times, it is compiled.
      *
-     * @param hCode The h-code whose data we want.
+     * @return The compiled program or null if the program should be
+     * interpreted.
+     */
+    synchronized HCodeCompiler.CompiledProgram getCompiledProgram()
+    {
+        if (compiledProgram == null && compileFailure == null && HCodeCompiler.ENABLED &&
+            ++executions >= HCodeCompiler.HOT_EXECUTIONS) {
+            compile();
+        }
+        return compiledProgram;
+    }
+
+    /**
+     * Compile the program now rather than waiting until it is hot. If the
+     * program can't be compiled, the reason is recorded and the program
+     * will be interpreted.
+     */
+    synchronized void compile()
+    {
+        try {
+            compiledProgram = HCodeCompiler.compile(program, typesProven);
+        }
+        catch (HCodeCompiler.CompileException e) {
+            compileFailure = e.getMessage();
+        }
+    }
+
+    /**
+     * Get the reason the program couldn't be compiled.
      *
-     * @return A list of the matching data. While this list contains only the
-     * data for the current h-code, changes to the returned data affect the
-     * data stack. The data should be cleared when done and a result, if any,
-     * should be pushed onto the list.
+     * @return The reason or null if the program hasn't failed to compile.
      */
-    public List<Object> getData(HCode hCode)
+    public synchronized String getCompileFailure()
     {
-        int numOfArgs = hCode.getNumberOfArgs();
+        return compileFailure;
+    }
 
-        // If the number of args is -1, get the number of args from the stack
+    /**
+     * Get the token used to cancel executions of this program.
+     *
+     * @return The cancellation token.
+     */
+    public CancellationToken getCancellationToken()
+    {
+        return cancellationToken;
+    }
 
-        if (numOfArgs == -1) {
-            Object obj = data.removeLast();         // Remove the count
-            if (!(obj instanceof Integer)) {
-                throw new ProgrammingException("HCodeProgram.getData(): Expected the number of hCode arguments");
-            }
-            numOfArgs = (Integer)obj;
-        }
+    /**
+     * Set the limits for a single execution of this program. An execution
+     * that exceeds either limit is stopped with an error.
+     *
+     * @param timeLimit The maximum time, in milliseconds. Use 0 for no limit.
+     * @param loopLimit The maximum number of loop iterations. Use 0 for no
+     * limit.
+     */
+    public void setExecutionLimits(long timeLimit, long loopLimit)
+    {
+        this.timeLimit = Math.max(0, timeLimit);
+        this.loopLimit = Math.max(0, loopLimit);
+    }
 
-        // Create a sublist of just the arguments
+    /**
+     * Get the maximum time a single execution of this program may take.
+     *
+     * @return The time limit, in milliseconds, or 0 if there is no limit.
+     */
+    public long getTimeLimit()
+    {
+        return timeLimit;
+    }
 
-        if (data.size() < numOfArgs) {
-            throw new ProgrammingException("HCodeProgram.getData(): Too few elements on the data stack");
-        }
+    /**
+     * Get the maximum number of loop iterations a single execution of this
+     * program may perform.
+     *
+     * @return The loop limit, or 0 if there is no limit.
+     */
+    public long getLoopLimit()
+    {
+        return loopLimit;
+    }
 
-        return data.subList(data.size() - numOfArgs, data.size());
+    /**
+     * Get the profile that records this program's executions.
+     *
+     * @return The profile or null if the program isn't being profiled.
+     */
+    public ScriptProfile getProfile()
+    {
+        return profile;
     }
 
     /**
-     * Returns true if the data stack is empty, which should occur only after
-     * the last h-code executes.
+     * Start or stop profiling this program.
      *
-     * @return True if the data stack is empty.
+     * @param profile The profile to record executions in, or null to stop
+     * profiling.
      */
-    public boolean isDataEmpty()
+    public void setProfile(ScriptProfile profile)
     {
-        return data.isEmpty();
+        this.profile = profile;
     }
 
 }
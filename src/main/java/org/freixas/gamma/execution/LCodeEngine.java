@@ -21,6 +21,7 @@ import org.freixas.gamma.ProgrammingException;
 import org.freixas.gamma.css.value.StyleStruct;
 import org.freixas.gamma.drawing.Context;
 import org.freixas.gamma.execution.lcode.*;
+import org.freixas.gamma.value.Bounds;
 import org.freixas.gamma.value.Frame;
 import java.util.ArrayList;
 import java.util.ListIterator;
@@ -35,6 +36,7 @@ import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.input.ScrollEvent;
+import javafx.scene.paint.Color;
 import javafx.scene.layout.Region;
 import javafx.scene.transform.Affine;
 import javafx.scene.transform.NonInvertibleTransformException;
@@ -49,7 +51,26 @@ public class LCodeEngine
     static private final double MIN_ZOOM_SCALE = 0.000001;
     static private final double MAX_ZOOM_SCALE = 100.0;
 
+    /**
+     * If true, the static commands are drawn from an image when possible
+     * (see StaticLayer).
+     */
+    static public boolean STATIC_LAYER_ENABLED = true;
+
+    /**
+     * If true, panning shifts an image of the diagram and only draws the
+     * parts of the canvas the shift exposes (see PanLayer).
+     */
+    static public boolean PAN_LAYER_ENABLED = true;
+
     private final ArrayList<Command> commands;
+    private DisplayList displayList;
+    private DisplayList lastDisplayList;
+    private final StaticLayer staticLayer;
+    private final PanLayer panLayer;
+    private DisplayList panDisplayList;
+    private RedrawScheduler redrawScheduler;
+    private ScriptProfile profile;
     private final MainWindow window;
     private Command animationCommand;
     private Command displayCommand;
@@ -71,6 +92,7 @@ public class LCodeEngine
     EventHandler<MouseEvent> mouseExitedEventHandler;
     EventHandler<MouseEvent> mousePressedEventHandler;
     EventHandler<MouseEvent> mouseDraggedEventHandler;
+    EventHandler<MouseEvent> mouseReleasedEventHandler;
     EventHandler<ScrollEvent> scrollEventHandler;
     EventHandler<KeyEvent> keyPressedEventHandler;
 
@@ -89,6 +111,13 @@ public class LCodeEngine
     {
         this.window = window;
         this.commands = new ArrayList<>();
+        this.displayList = null;
+        this.lastDisplayList = null;
+        this.staticLayer = new StaticLayer();
+        this.panLayer = new PanLayer();
+        this.panDisplayList = null;
+        this.redrawScheduler = null;
+        this.profile = null;
 
         this.displayCommand = new Command(new DisplayStruct(), new StyleStruct(), new DisplayCommandExec());
         this.frameCommand = new Command(new FrameStruct(), new StyleStruct(), new FrameCommandExec());
@@ -172,7 +201,7 @@ public class LCodeEngine
      * display, and frame commands.
      * <p>
      * This is a live list. Changes to this list will affect the lcode
-     * execution.
+     * execution once setUpDrawingFrame() is called.
      *
      * @return The list of all commands on the lcode list.
      */
@@ -219,6 +248,7 @@ public class LCodeEngine
         }
         else {
             commands.add(command);
+            discardDisplayList();
         }
     }
 
@@ -229,6 +259,7 @@ public class LCodeEngine
     public void removeAllCommands()
     {
         commands.clear();
+        discardDisplayList();
     }
 
     /**
@@ -285,8 +316,52 @@ public class LCodeEngine
         FrameStruct fStruct = (FrameStruct)frameCommand.getCmdStruct();
         if (!fStruct.frame.equals(HCodeEngine.getDefFrame())) {
             final Frame prime = fStruct.frame;
-            commands.forEach((Command command) -> command.getCmdStruct().relativeTo(prime));
+            commands.forEach((Command command) -> command.relativeTo(prime));
         }
+        discardDisplayList();
+    }
+
+    /**
+     * Discard the display list after the commands change. The next display
+     * list is compared to the last one to find the static commands.
+     */
+    private void discardDisplayList()
+    {
+        if (displayList != null) lastDisplayList = displayList;
+        displayList = null;
+    }
+
+    /**
+     * Get the number of redraws requested by changes to the view, such as
+     * resizes, pans and zooms.
+     *
+     * @return The number of redraws requested.
+     */
+    public long getRequestedRedraws()
+    {
+        return redrawScheduler != null ? redrawScheduler.getRequestedRedraws() : 0;
+    }
+
+    /**
+     * Get the number of redraws requested by changes to the view that were
+     * collapsed into another redraw rather than being performed separately.
+     *
+     * @return The number of redraws coalesced.
+     */
+    public long getCoalescedRedraws()
+    {
+        return redrawScheduler != null ? redrawScheduler.getCoalescedRedraws() : 0;
+    }
+
+    /**
+     * Set the profile in which to record the time spent drawing.
+     *
+     * @param profile The profile or null if the script isn't being
+     * profiled.
+     */
+    void setProfile(ScriptProfile profile)
+    {
+        this.profile = profile;
     }
 
     /**
@@ -299,21 +374,160 @@ public class LCodeEngine
     {
         if (isClosed) return;
 
+        long start = profile != null ? System.nanoTime() : 0L;
+
+        // Any image kept for panning is out of date once we redraw, and
+        // any redraw that is pending has been done
+
+        panLayer.clear();
+        if (redrawScheduler != null && !context.isDraft) redrawScheduler.cancel();
+
         try {
             // Execute the display command
 
-             displayCommand.execute(context);
+            displayCommand.execute(context);
+
+            // The display list is compiled once for each set of commands.
+            // After that, a pan, zoom or resize only needs to skip the
+            // commands outside the new viewport
+
+            if (displayList == null) displayList = new DisplayList(commands, lastDisplayList);
+
+            // Draw the static commands from an image, if we have one for the
+            // current view. Otherwise, draw them and, if the view hasn't
+            // changed since the last time, capture them for the next time.
+            // Draft drawings don't use the image
+
+            int first = 0;
+            Color backgroundColor = displayCommand.getStyles().backgroundColor;
+            boolean isViewStable = staticLayer.checkView(context, backgroundColor);
+            int staticCount = STATIC_LAYER_ENABLED && !context.isDraft ? displayList.getStaticCount() : 0;
+
+            if (staticCount > 0) {
+                if (staticLayer.matches(context, backgroundColor, displayList, staticCount)) {
+                    staticLayer.draw(context);
+                    first = staticCount;
+                }
+                else if (isViewStable) {
+                    if (!drawCommands(0, staticCount, context.bounds)) return;
+                    staticLayer.capture(context, backgroundColor, displayList, staticCount);
+                    first = staticCount;
+                }
+            }
+
+            // Draw the rest
 
-             // Execute normal commands
+            if (!drawCommands(first, displayList.size(), context.bounds)) return;
+
+            if (profile != null) profile.recordDraw(System.nanoTime() - start);
+        }
+        catch (Throwable e) {
+            throwGammaException(e);
+        }
+    }
 
-            for (Command command : commands) {
-                command.execute(context);
-                if (isClosed) return;
+    /**
+     * Redraw the diagram after the view changes.
+     *
+     * @param isDraft True to draw in draft quality.
+     */
+    private void redraw(boolean isDraft)
+    {
+        context.isDraft = isDraft;
+        try {
+            execute();
+        }
+        finally {
+            context.isDraft = false;
+        }
+    }
+
+    /**
+     * Redraw the diagram in draft quality after a pan. The previous drawing
+     * is shifted by the distance panned and only the strips of the canvas
+     * that the shift exposes are drawn. The canvas transform must already
+     * include the pan.
+     * <p>
+     * If the previous drawing can't be used, the whole diagram is redrawn.
+     * The redrawn canvas is captured for the next pan unless the display
+     * list has changed since the last pan in the same drag, as it does on
+     * every frame of an animation. The capture would be out of date before
+     * it could be used.
+     *
+     * @param deltaX The horizontal distance panned, in screen units.
+     * @param deltaY The vertical distance panned, in screen units.
+     */
+    private void pan(double deltaX, double deltaY)
+    {
+        if (isClosed) return;
+
+        Color backgroundColor = displayCommand.getStyles().backgroundColor;
+        context.isDraft = true;
+
+        try {
+            if (!PAN_LAYER_ENABLED || displayList == null || !panLayer.isCaptured()) {
+                execute();
+                if (PAN_LAYER_ENABLED && (panDisplayList == null || panDisplayList == displayList)) {
+                    panLayer.capture(context, backgroundColor);
+                }
+                panDisplayList = displayList;
+                return;
+            }
+
+            GraphicsContext gc = context.gc;
+            panLayer.shift(context, backgroundColor, deltaX, deltaY);
+
+            // Draw each exposed strip with a clip, culling the commands
+            // to the strip's bounds. The commands still lay themselves out
+            // against the whole canvas, so the strips join up with the
+            // shifted image
+
+            context.bounds = context.getCurrentCanvasBounds();
+            Affine transform = gc.getTransform();
+            Affine inverse = transform.createInverse();
+            for (Bounds strip : panLayer.getExposedStrips(context)) {
+                gc.save();
+                gc.setTransform(new Affine());
+                gc.beginPath();
+                gc.rect(strip.min.x, strip.min.t, strip.max.x - strip.min.x, strip.max.t - strip.min.t);
+                gc.clip();
+                gc.setTransform(transform);
+
+                boolean isDone = drawCommands(0, displayList.size(), strip.transform(inverse));
+                gc.restore();
+                if (!isDone) return;
+            }
+
+            if (panLayer.needsCapture(context)) {
+                panLayer.capture(context, backgroundColor);
             }
         }
         catch (Throwable e) {
             throwGammaException(e);
         }
+        finally {
+            context.isDraft = false;
+        }
+    }
+
+    /**
+     * Draw a range of commands from the display list, skipping the ones
+     * outside the given bounds.
+     *
+     * @param from The index of the first command to draw.
+     * @param to The index after the last command to draw.
+     * @param bounds The bounds of the area to draw, in world units.
+     * @return False if the engine was closed while drawing.
+     */
+    private boolean drawCommands(int from, int to, Bounds bounds)
+    {
+        for (int i = from; i < to; i++) {
+            if (displayList.isVisible(i, bounds, context.invScale)) {
+                displayList.get(i).execute(context);
+                if (isClosed) return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -326,6 +540,7 @@ public class LCodeEngine
         if (setupComplete) {
             removeListeners();
         }
+        if (redrawScheduler != null) redrawScheduler.close();
         isClosed = true;
     }
 
@@ -360,6 +575,11 @@ public class LCodeEngine
     {
         final LCodeEngine engine = this;
 
+        // Changes to the view are drawn in draft quality at the next pulse,
+        // so a burst of changes causes at most one redraw per frame
+
+        redrawScheduler = new RedrawScheduler(this::redraw, this::pan);
+
         // ************************************************************
         // *
         // * RESIZE HANDLER
@@ -368,7 +588,7 @@ public class LCodeEngine
 
         widthListener = (ObservableValue<? extends Number> ov, Number oldValue, Number newValue) -> {
             if (engine.lastWidth != canvasParent.getWidth()) {
-                engine.execute();
+                redrawScheduler.requestRedraw();
                 engine.lastWidth = canvasParent.getWidth();
             }
         };
@@ -376,7 +596,7 @@ public class LCodeEngine
 
         heightListener = (ObservableValue<? extends Number> ov, Number oldValue, Number newValue) -> {
             if (engine.lastHeight != canvasParent.getHeight()) {
-                engine.execute();
+                redrawScheduler.requestRedraw();
                 engine.lastHeight = canvasParent.getHeight();
             }
         };
@@ -435,7 +655,7 @@ public class LCodeEngine
                 context.invScale = context.getCurrentInvScale();
                 context.bounds = context.getCurrentCanvasBounds();
 
-                engine.execute();
+                redrawScheduler.requestPan(deltaX, deltaY);
 
                 mouseX = event.getX();
                 mouseY = event.getY();
@@ -446,6 +666,15 @@ public class LCodeEngine
         };
         canvas.addEventHandler(MouseEvent.MOUSE_DRAGGED, mouseDraggedEventHandler);
 
+        // While panning, the diagram is drawn in draft quality and partly
+        // from an image. Redraw it in full quality once the pan is over
+
+        mouseReleasedEventHandler = event -> {
+            panDisplayList = null;
+            redrawScheduler.finish();
+        };
+        canvas.addEventHandler(MouseEvent.MOUSE_RELEASED, mouseReleasedEventHandler);
+
         // ************************************************************
         // *
         // * MOUSE ZOOM HANDLER
@@ -463,7 +692,7 @@ public class LCodeEngine
             Point2D center = new Point2D(event.getX(), event.getY());
             zoom(center, delta);
 
-            engine.execute();
+            redrawScheduler.requestRedraw();
         };
         canvas.addEventHandler(ScrollEvent.ANY, scrollEventHandler);
 
@@ -499,7 +728,7 @@ public class LCodeEngine
                 zoom(center, event.getCode() == KeyCode.MINUS ? +100.0 : -100.0);
            }
 
-            engine.execute();
+            redrawScheduler.requestRedraw();
         };
         canvas.addEventHandler(KeyEvent.KEY_PRESSED, keyPressedEventHandler);
     }
@@ -597,6 +826,7 @@ public class LCodeEngine
         canvas.removeEventHandler(MouseEvent.MOUSE_EXITED, mouseExitedEventHandler);
         canvas.removeEventHandler(MouseEvent.MOUSE_PRESSED, mousePressedEventHandler);
         canvas.removeEventHandler(MouseEvent.MOUSE_DRAGGED, mouseDraggedEventHandler);
+        canvas.removeEventHandler(MouseEvent.MOUSE_RELEASED, mouseReleasedEventHandler);
         canvas.removeEventHandler(ScrollEvent.ANY, scrollEventHandler);
         canvas.removeEventHandler(KeyEvent.KEY_PRESSED, keyPressedEventHandler);
     }
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2021 Antonio Freixas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.execution;
+
+import org.freixas.gamma.drawing.Context;
+import org.freixas.gamma.value.Bounds;
+import java.util.ArrayList;
+import java.util.List;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import javafx.scene.transform.Affine;
+
+/**
+ * The pan layer is an image of the canvas used while the user drags the
+ * diagram. Instead of redrawing every command for each drag event, the
+ * image is shifted by the distance dragged and only the strips of the
+ * canvas that the shift exposes are drawn.
+ * <p>
+ * The strips grow as the drag continues, so the canvas is captured again
+ * once they cover a good part of it. The image is blurred slightly when it
+ * is shifted by a fraction of a pixel, so the diagram should be redrawn
+ * in full when the drag ends.
+ *
+ * @author Antonio Freixas
+ */
+final class PanLayer
+{
+    /**
+     * The fraction of the canvas that the exposed strips can cover before
+     * the canvas is captured again.
+     */
+    static private final double RECAPTURE_FRACTION = 0.25;
+
+    private WritableImage image;
+    private double offsetX;
+    private double offsetY;
+
+    /**
+     * Create an empty pan layer.
+     */
+    PanLayer()
+    {
+        image = null;
+        offsetX = 0.0;
+        offsetY = 0.0;
+    }
+
+    /**
+     * Returns true if the canvas has been captured.
+     *
+     * @return True if the canvas has been captured.
+     */
+    boolean isCaptured()
+    {
+        return image != null;
+    }
+
+    /**
+     * Capture the canvas, which must hold a complete drawing of the diagram.
+     *
+     * @param context The drawing context.
+     * @param backgroundColor The background color of the display.
+     * @return True if the canvas was captured.
+     */
+    boolean capture(Context context, Color backgroundColor)
+    {
+        WritableImage newImage = StaticLayer.snapshot(context.canvas, backgroundColor, image);
+        if (newImage == null) return false;
+        image = newImage;
+        offsetX = 0.0;
+        offsetY = 0.0;
+        return true;
+    }
+
+    /**
+     * Shift the image and draw it on the canvas. The rest of the canvas is
+     * cleared to the background color.
+     *
+     * @param context The drawing context.
+     * @param backgroundColor The background color of the display.
+     * @param deltaX The distance to shift the image horizontally, in screen
+     * units.
+     * @param deltaY The distance to shift the image vertically, in screen
+     * units.
+     */
+    void shift(Context context, Color backgroundColor, double deltaX, double deltaY)
+    {
+        Canvas canvas = context.canvas;
+        GraphicsContext gc = context.gc;
+
+        offsetX += deltaX;
+        offsetY += deltaY;
+
+        gc.save();
+        gc.setTransform(new Affine());
+        gc.setGlobalAlpha(1.0);
+        gc.setFill(backgroundColor);
+        gc.fillRect(0.0, 0.0, canvas.getWidth(), canvas.getHeight());
+        gc.drawImage(image, offsetX, offsetY, canvas.getWidth(), canvas.getHeight());
+        gc.restore();
+    }
+
+    /**
+     * Get the strips of the canvas not covered by the shifted image.
+     *
+     * @param context The drawing context.
+     * @return The exposed strips, in screen units.
+     */
+    List<Bounds> getExposedStrips(Context context)
+    {
+        return getExposedStrips(offsetX, offsetY, context.canvas.getWidth(), context.canvas.getHeight());
+    }
+
+    /**
+     * Returns true if the exposed strips cover enough of the canvas that it
+     * should be captured again.
+     *
+     * @param context The drawing context.
+     * @return True if the canvas should be captured again.
+     */
+    boolean needsCapture(Context context)
+    {
+        double width = context.canvas.getWidth();
+        double height = context.canvas.getHeight();
+        double covered =
+            Math.min(Math.abs(offsetX), width) * height +
+            Math.min(Math.abs(offsetY), height) * width;
+        return covered > RECAPTURE_FRACTION * width * height;
+    }
+
+    /**
+     * Discard the image.
+     */
+    void clear()
+    {
+        image = null;
+        offsetX = 0.0;
+        offsetY = 0.0;
+    }
+
+    /**
+     * Get the strips of a canvas not covered by an image of the canvas
+     * shifted by the given offset. There is at most one vertical strip and
+     * one horizontal strip, and they don't overlap. The strips are extended
+     * to whole pixels so that they cover the image's partially drawn edges.
+     *
+     * @param offsetX The horizontal offset of the image.
+     * @param offsetY The vertical offset of the image.
+     * @param width The width of the canvas.
+     * @param height The height of the canvas.
+     * @return The exposed strips, in screen units.
+     */
+    static List<Bounds> getExposedStrips(double offsetX, double offsetY, double width, double height)
+    {
+        ArrayList<Bounds> strips = new ArrayList<>(2);
+
+        // The vertical strip runs the full height of the canvas
+
+        double minX = 0.0;
+        double maxX = width;
+        if (offsetX > 0.0) {
+            minX = Math.min(Math.ceil(offsetX), width);
+            strips.add(new Bounds(0.0, 0.0, minX, height));
+        }
+        else if (offsetX < 0.0) {
+            maxX = Math.max(Math.floor(width + offsetX), 0.0);
+            strips.add(new Bounds(maxX, 0.0, width, height));
+        }
+
+        // The horizontal strip covers only the part of the canvas the
+        // vertical strip doesn't
+
+        if (minX < maxX) {
+            if (offsetY > 0.0) {
+                strips.add(new Bounds(minX, 0.0, maxX, Math.min(Math.ceil(offsetY), height)));
+            }
+            else if (offsetY < 0.0) {
+                strips.add(new Bounds(minX, Math.max(Math.floor(height + offsetY), 0.0), maxX, height));
+            }
+        }
+
+        return strips;
+    }
+
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2021 Antonio Freixas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.execution;
+
+import javafx.animation.AnimationTimer;
+
+/**
+ * The redraw scheduler collapses bursts of requests to redraw the diagram
+ * after the user changes the view. Resizing the window changes both the
+ * width and the height of the canvas, and spinning the mouse wheel or
+ * dragging the diagram can produce many events between two frames of the
+ * display. Rather than redrawing for each of these, the scheduler waits
+ * for the next pulse and then redraws once. The view is changed as each
+ * event arrives, so the redraw always uses the latest view.
+ * <p>
+ * A pan only needs to draw the parts of the canvas that it exposes (see
+ * PanLayer), so pans are requested separately and the distances panned
+ * are added together. Any request for a full redraw takes precedence.
+ * <p>
+ * While the user is changing the view, the diagram is drawn in draft
+ * quality. Once no change has been requested for a short while, or once
+ * the interaction is finished, the diagram is drawn in full quality.
+ * <p>
+ * The number of requests that were collapsed into another request's
+ * redraw is kept for diagnostics.
+ * <p>
+ * All methods must be called on the JavaFX application thread.
+ *
+ * @author Antonio Freixas
+ */
+class RedrawScheduler
+{
+    /**
+     * The time to wait after the last change before drawing the diagram in
+     * full quality, in nanoseconds.
+     */
+    static private final long IDLE_TIME = 150_000_000L;
+
+    /**
+     * Redraw the whole diagram.
+     */
+    @FunctionalInterface
+    interface Redraw
+    {
+        /**
+         * Redraw the whole diagram.
+         *
+         * @param isDraft True to draw in draft quality.
+         */
+        void redraw(boolean isDraft);
+    }
+
+    /**
+     * Redraw the diagram in draft quality after a pan.
+     */
+    @FunctionalInterface
+    interface Pan
+    {
+        /**
+         * Redraw the diagram in draft quality after a pan.
+         *
+         * @param deltaX The horizontal distance panned, in screen units.
+         * @param deltaY The vertical distance panned, in screen units.
+         */
+        void pan(double deltaX, double deltaY);
+    }
+
+    private final Redraw redraw;
+    private final Pan pan;
+    private final AnimationTimer timer;
+
+    private boolean isPending;
+    private boolean isFullRedraw;
+    private double deltaX;
+    private double deltaY;
+    private boolean isDraftShown;
+    private boolean isFinishing;
+    private long lastDraft;
+    private long requests;
+    private long coalesced;
+    private boolean isClosed;
+
+    /**
+     * Create a redraw scheduler.
+     *
+     * @param redraw Redraw the whole diagram.
+     * @param pan Redraw the diagram after a pan.
+     */
+    RedrawScheduler(Redraw redraw, Pan pan)
+    {
+        this.redraw = redraw;
+        this.pan = pan;
+        this.timer = new AnimationTimer()
+        {
+            @Override
+            public void handle(long now)
+            {
+                pulse(now);
+            }
+        };
+
+        this.isPending = false;
+        this.isFullRedraw = false;
+        this.deltaX = 0.0;
+        this.deltaY = 0.0;
+        this.isDraftShown = false;
+        this.isFinishing = false;
+        this.lastDraft = 0;
+        this.requests = 0;
+        this.coalesced = 0;
+        this.isClosed = false;
+    }
+
+    /**
+     * Request a full redraw at the next pulse. If a redraw is already
+     * pending, this request is collapsed into it.
+     */
+    void requestRedraw()
+    {
+        if (isClosed) return;
+
+        isFullRedraw = true;
+        request();
+    }
+
+    /**
+     * Request a redraw after a pan at the next pulse. If a redraw is already
+     * pending, this request is collapsed into it.
+     *
+     * @param deltaX The horizontal distance panned, in screen units.
+     * @param deltaY The vertical distance panned, in screen units.
+     */
+    void requestPan(double deltaX, double deltaY)
+    {
+        if (isClosed) return;
+
+        this.deltaX += deltaX;
+        this.deltaY += deltaY;
+        request();
+    }
+
+    private void request()
+    {
+        requests++;
+        if (isPending) {
+            coalesced++;
+        }
+        else {
+            isPending = true;
+            timer.start();
+        }
+    }
+
+    /**
+     * Finish the interaction. The diagram is drawn in full quality at the
+     * next pulse, without waiting for the idle time to pass.
+     */
+    void finish()
+    {
+        if (isClosed || (!isPending && !isDraftShown)) return;
+
+        isFinishing = true;
+        timer.start();
+    }
+
+    /**
+     * Cancel any pending redraw. Call this when the diagram has been redrawn
+     * in full quality by other means, since the redraw will have used the
+     * latest view.
+     */
+    void cancel()
+    {
+        if (isPending) coalesced++;
+        timer.stop();
+        reset();
+    }
+
+    private void pulse(long now)
+    {
+        if (isClosed) {
+            timer.stop();
+            return;
+        }
+
+        // Draw changes in draft quality. The timer keeps running so we can
+        // tell when the changes stop
+
+        if (isPending && !isFinishing) {
+            boolean fullRedraw = isFullRedraw;
+            double panX = deltaX;
+            double panY = deltaY;
+            isPending = false;
+            isFullRedraw = false;
+            deltaX = 0.0;
+            deltaY = 0.0;
+            isDraftShown = true;
+            lastDraft = now;
+
+            if (fullRedraw) {
+                redraw.redraw(true);
+            }
+            else {
+                pan.pan(panX, panY);
+            }
+        }
+
+        // Replace the draft with a full quality drawing
+
+        else if (isFinishing || (isDraftShown && now - lastDraft >= IDLE_TIME)) {
+            timer.stop();
+            reset();
+            redraw.redraw(false);
+        }
+
+        else if (!isDraftShown) {
+            timer.stop();
+        }
+    }
+
+    private void reset()
+    {
+        isPending = false;
+        isFullRedraw = false;
+        deltaX = 0.0;
+        deltaY = 0.0;
+        isDraftShown = false;
+        isFinishing = false;
+    }
+
+    /**
+     * Get the number of redraws requested.
+     *
+     * @return The number of redraws requested.
+     */
+    long getRequestedRedraws()
+    {
+        return requests;
+    }
+
+    /**
+     * Get the number of requested redraws that were collapsed into another
+     * redraw rather than being performed separately.
+     *
+     * @return The number of redraws coalesced.
+     */
+    long getCoalescedRedraws()
+    {
+        return coalesced;
+    }
+
+    /**
+     * Cancel any pending redraw. No further redraws will be performed.
+     */
+    void close()
+    {
+        isClosed = true;
+        isPending = false;
+        timer.stop();
+    }
+
+}
@@ -0,0 +1,427 @@
+/*
+ * Copyright (C) 2021 Antonio Freixas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.execution;
+
+import org.freixas.gamma.execution.hcode.ConstOperandHCode;
+import org.freixas.gamma.execution.hcode.FetchElementAddressHCode;
+import org.freixas.gamma.execution.hcode.FetchElementHCode;
+import org.freixas.gamma.execution.hcode.FetchSlotAddressHCode;
+import org.freixas.gamma.execution.hcode.FetchSlotHCode;
+import org.freixas.gamma.execution.hcode.GenericHCode;
+import org.freixas.gamma.execution.hcode.HCode;
+import org.freixas.gamma.execution.hcode.Jump;
+import org.freixas.gamma.file.URLFile;
+import org.freixas.gamma.parser.TokenContext;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A profile of the executions of an HCodeProgram. For each location in the
+ * finalized program, the profile records how many times the h-code at the
+ * location was executed and the total time spent executing it. The same
+ * information is also gathered for each line of the script.
+ * <p>
+ * A profile is only kept while profiling is turned on. When an HCodeProgram
+ * has a profile, the HCodeEngine runs it with a separate, timed
+ * interpreter loop and never uses the program's compiled form. Programs
+ * without a profile pay nothing for it.
+ *
+ * @author Antonio Freixas
+ */
+public class ScriptProfile
+{
+    private final Object[] program;
+    private final long[] counts;
+    private final long[] nanos;
+    private final TokenContext[] contexts;
+    private final IdentityHashMap<TokenContext, long[]> lines;
+    private int executions;
+    private int draws;
+    private long drawNanos;
+
+    /**
+     * Create an empty profile for a program.
+     *
+     * @param program The finalized h-codes of the program to profile.
+     */
+    public ScriptProfile(List<Object> program)
+    {
+        this.program = program.toArray();
+        this.counts = new long[this.program.length];
+        this.nanos = new long[this.program.length];
+        this.contexts = new TokenContext[this.program.length];
+        this.lines = new IdentityHashMap<>();
+        this.executions = 0;
+        this.draws = 0;
+        this.drawNanos = 0;
+    }
+
+    // **********************************************************************
+    // *
+    // * Recording
+    // *
+    // **********************************************************************
+
+    /**
+     * Record the start of an execution of the program.
+     */
+    synchronized void startExecution()
+    {
+        executions++;
+    }
+
+    /**
+     * Record one execution of the h-code at a location.
+     *
+     * @param location The location in the finalized program.
+     * @param context The token context of the statement being executed.
+     * @param elapsed The time spent executing the h-code, in nanoseconds.
+     */
+    synchronized void record(int location, TokenContext context, long elapsed)
+    {
+        counts[location]++;
+        nanos[location] += elapsed;
+        contexts[location] = context;
+
+        long[] line = lines.get(context);
+        if (line == null) {
+            line = new long[2];
+            lines.put(context, line);
+        }
+        line[0]++;
+        line[1] += elapsed;
+    }
+
+    /**
+     * Record one drawing of the diagram.
+     *
+     * @param elapsed The time spent drawing, in nanoseconds.
+     */
+    synchronized void recordDraw(long elapsed)
+    {
+        draws++;
+        drawNanos += elapsed;
+    }
+
+    /**
+     * Discard everything recorded so far.
+     */
+    public synchronized void clear()
+    {
+        Arrays.fill(counts, 0);
+        Arrays.fill(nanos, 0);
+        Arrays.fill(contexts, null);
+        lines.clear();
+        executions = 0;
+        draws = 0;
+        drawNanos = 0;
+    }
+
+    // **********************************************************************
+    // *
+    // * Results
+    // *
+    // **********************************************************************
+
+    /**
+     * Get the number of times the program was executed while being profiled.
+     *
+     * @return The number of executions.
+     */
+    public synchronized int getExecutions()
+    {
+        return executions;
+    }
+
+    /**
+     * Get the number of times the diagram was drawn while being profiled.
+     * The diagram is drawn after each execution and after each pan, zoom or
+     * resize.
+     *
+     * @return The number of times the diagram was drawn.
+     */
+    public synchronized int getDraws()
+    {
+        return draws;
+    }
+
+    /**
+     * Get the average time spent drawing the diagram.
+     *
+     * @return The average drawing time, in milliseconds. This is 0 if the
+     * diagram wasn't drawn.
+     */
+    public synchronized double getAverageDrawMillis()
+    {
+        return draws == 0 ? 0.0 : drawNanos / 1e6 / draws;
+    }
+
+    /**
+     * Get an entry for each script line that executed at least one h-code.
+     * Lines from included files are kept separate from the main script's
+     * lines.
+     *
+     * @return The entries, in the order the lines were first executed.
+     */
+    public synchronized List<Entry> getLineEntries()
+    {
+        // Several statements can share a line, so merge the statements by
+        // file and line number
+
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        for (Map.Entry<TokenContext, long[]> e : lines.entrySet()) {
+            TokenContext context = e.getKey();
+            String file = getFileName(context);
+            int lineNumber = context != null ? context.getLineNumber() : 0;
+            String key = file + ":" + lineNumber;
+
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry(file, lineNumber, -1, "", 0, 0);
+                entries.put(key, entry);
+            }
+            entry.count += e.getValue()[0];
+            entry.totalNanos += e.getValue()[1];
+        }
+        return new ArrayList<>(entries.values());
+    }
+
+    /**
+     * Get an entry for each location in the program that was executed at
+     * least once.
+     *
+     * @return The entries, in program order.
+     */
+    public synchronized List<Entry> getInstructionEntries()
+    {
+        List<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < program.length; i++) {
+            if (counts[i] == 0) continue;
+            TokenContext context = contexts[i];
+            entries.add(new Entry(
+                getFileName(context),
+                context != null ? context.getLineNumber() : 0,
+                i,
+                describe(program[i]),
+                counts[i],
+                nanos[i]));
+        }
+        return entries;
+    }
+
+    /**
+     * Write a list of entries as comma-separated values. The first row holds
+     * the column names.
+     *
+     * @param entries The entries to write.
+     * @param writer The writer to use.
+     * @throws IOException If the entries couldn't be written.
+     */
+    static public void writeCSV(List<Entry> entries, Writer writer) throws IOException
+    {
+        writer.write("File,Line,Location,Instruction,Count,Total ns,Average ns\n");
+        for (Entry entry : entries) {
+            writer.write(
+                quoteCSV(entry.getFile()) + "," +
+                entry.getLine() + "," +
+                (entry.getLocation() < 0 ? "" : entry.getLocation()) + "," +
+                quoteCSV(entry.getInstruction()) + "," +
+                entry.getCount() + "," +
+                entry.getTotalNanos() + "," +
+                Math.round(entry.getAverageNanos()) + "\n");
+        }
+        writer.flush();
+    }
+
+    static private String quoteCSV(String str)
+    {
+        if (str.indexOf(',') < 0 && str.indexOf('"') < 0 && str.indexOf('\n') < 0) {
+            return str;
+        }
+        return "\"" + str.replace("\"", "\"\"") + "\"";
+    }
+
+    static private String getFileName(TokenContext context)
+    {
+        URLFile file = context != null ? context.getURLFile() : null;
+        return file != null ? file.getName() : "";
+    }
+
+    /**
+     * Describe the object at a program location.
+     *
+     * @param obj The h-code or literal at the location.
+     * @return A short description of the object.
+     */
+    static private String describe(Object obj)
+    {
+        if (obj instanceof String str) {
+            return "\"" + str + "\"";
+        }
+        else if (obj instanceof Double) {
+            return obj.toString();
+        }
+        else if (obj instanceof ConstOperandHCode hCode) {
+            return describe(hCode.getOp()) + " " + hCode.getConstant();
+        }
+        else if (obj instanceof GenericHCode hCode) {
+            return hCode.getType().toString();
+        }
+        else if (obj instanceof FetchSlotHCode hCode) {
+            return "FETCH " + hCode.getName();
+        }
+        else if (obj instanceof FetchSlotAddressHCode hCode) {
+            return "FETCH_ADDRESS " + hCode.getName();
+        }
+        else if (obj instanceof FetchElementHCode hCode) {
+            return "FETCH " + hCode.getName() + "[]";
+        }
+        else if (obj instanceof FetchElementAddressHCode hCode) {
+            return "FETCH_ADDRESS " + hCode.getName() + "[]";
+        }
+        else if (obj instanceof HCode hCode) {
+            String name = hCode.getClass().getSimpleName().replaceFirst("HCode$", "");
+            if (hCode instanceof Jump jump) {
+                return name + " " + jump.getJumpLocation();
+            }
+            return name;
+        }
+        else if (obj == null) {
+            return "null";
+        }
+        return obj.getClass().getSimpleName();
+    }
+
+    // **********************************************************************
+    // *
+    // * Inner Class Entry
+    // *
+    // **********************************************************************
+
+    /**
+     * One row of profile results: either a script line or a single program
+     * location.
+     */
+    static public class Entry
+    {
+        private final String file;
+        private final int line;
+        private final int location;
+        private final String instruction;
+        private long count;
+        private long totalNanos;
+
+        private Entry(String file, int line, int location, String instruction, long count, long totalNanos)
+        {
+            this.file = file;
+            this.line = line;
+            this.location = location;
+            this.instruction = instruction;
+            this.count = count;
+            this.totalNanos = totalNanos;
+        }
+
+        /**
+         * Get the name of the file holding the line. This is empty for the
+         * main script.
+         *
+         * @return The name of the file.
+         */
+        public String getFile()
+        {
+            return file;
+        }
+
+        /**
+         * Get the line number.
+         *
+         * @return The line number, or 0 if the line is unknown.
+         */
+        public int getLine()
+        {
+            return line;
+        }
+
+        /**
+         * Get the program location. This is -1 for line entries.
+         *
+         * @return The location in the finalized program.
+         */
+        public int getLocation()
+        {
+            return location;
+        }
+
+        /**
+         * Get a description of the h-code at the location. This is empty for
+         * line entries.
+         *
+         * @return The description of the h-code.
+         */
+        public String getInstruction()
+        {
+            return instruction;
+        }
+
+        /**
+         * Get the number of h-codes executed.
+         *
+         * @return The number of h-codes executed.
+         */
+        public long getCount()
+        {
+            return count;
+        }
+
+        /**
+         * Get the total time spent executing h-codes.
+         *
+         * @return The total time in nanoseconds.
+         */
+        public long getTotalNanos()
+        {
+            return totalNanos;
+        }
+
+        /**
+         * Get the total time spent executing h-codes in milliseconds.
+         *
+         * @return The total time in milliseconds.
+         */
+        public double getTotalMillis()
+        {
+            return totalNanos / 1e6;
+        }
+
+        /**
+         * Get the average time spent executing an h-code.
+         *
+         * @return The average time in nanoseconds.
+         */
+        public double getAverageNanos()
+        {
+            return count == 0 ? 0.0 : (double)totalNanos / count;
+        }
+    }
+
+}
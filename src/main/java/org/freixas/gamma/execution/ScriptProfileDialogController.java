@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2021 Antonio Freixas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.execution;
+
+import org.freixas.gamma.MainWindow;
+import org.freixas.gamma.css.value.Stylesheet;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.ResourceBundle;
+import javafx.collections.FXCollections;
+import javafx.event.ActionEvent;
+import javafx.fxml.FXML;
+import javafx.fxml.Initializable;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.TabPane;
+import javafx.scene.control.TableCell;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.stage.FileChooser;
+import javafx.stage.FileChooser.ExtensionFilter;
+
+/**
+ * FXML Controller class
+ *
+ * @author Antonio Freixas
+ */
+public class ScriptProfileDialogController implements Initializable
+{
+    @FXML
+    private Label summary;
+    @FXML
+    private TabPane tabPane;
+    @FXML
+    private TableView<ScriptProfile.Entry> linesTable;
+    @FXML
+    private TableView<ScriptProfile.Entry> instructionsTable;
+    @FXML
+    private Button refreshButton;
+    @FXML
+    private Button resetButton;
+    @FXML
+    private Button exportButton;
+    @FXML
+    private Button closeButton;
+
+    private MainWindow window;
+
+    /**
+     * Initializes the controller class.
+     */
+    @Override
+    public void initialize(URL url, ResourceBundle rb)
+    {
+        linesTable.getColumns().add(column("File", "file"));
+        linesTable.getColumns().add(column("Line", "line"));
+        addTimingColumns(linesTable);
+
+        instructionsTable.getColumns().add(column("Location", "location"));
+        instructionsTable.getColumns().add(column("Line", "line"));
+        instructionsTable.getColumns().add(column("Instruction", "instruction"));
+        addTimingColumns(instructionsTable);
+    }
+
+    void setWindow(MainWindow window)
+    {
+        this.window = window;
+    }
+
+    /**
+     * Display the latest results of the current script's profile. The
+     * tables keep the sort order chosen by the user.
+     */
+    public void refresh()
+    {
+        ScriptProfile profile = getProfile();
+        if (profile == null) {
+            summary.setText("No script is running");
+            linesTable.getItems().clear();
+            instructionsTable.getItems().clear();
+            return;
+        }
+
+        int executions = profile.getExecutions();
+        long dropped = window.getDiagramEngine().getDroppedUpdates();
+        long redraws = window.getDiagramEngine().getRequestedRedraws();
+        long coalesced = window.getDiagramEngine().getCoalescedRedraws();
+        Stylesheet stylesheet = window.getDiagramEngine().getStylesheet();
+        long styleHits = stylesheet.getCacheHits();
+        long styleLookups = styleHits + stylesheet.getCacheMisses();
+        summary.setText(
+            (executions == 0 ?
+             "The script hasn't run since profiling started. Use Reload to run it again." :
+             "Executions profiled: " + executions) +
+            (dropped == 0 ? "" : "    Display variable updates dropped: " + dropped) +
+            (redraws == 0 ? "" : "    View redraws coalesced: " + coalesced + " of " + redraws) +
+            (styleLookups == 0 ? "" : "    Style cache hits: " + styleHits + " of " + styleLookups) +
+            (profile.getDraws() == 0 ? "" :
+             String.format("    Average draw: %.3f ms", profile.getAverageDrawMillis())));
+
+        linesTable.setItems(FXCollections.observableArrayList(profile.getLineEntries()));
+        linesTable.sort();
+        instructionsTable.setItems(FXCollections.observableArrayList(profile.getInstructionEntries()));
+        instructionsTable.sort();
+    }
+
+    private ScriptProfile getProfile()
+    {
+        DiagramEngine diagramEngine = window.getDiagramEngine();
+        return diagramEngine != null ? diagramEngine.getProfile() : null;
+    }
+
+    // **********************************************************************
+    // *
+    // * Table Columns
+    // *
+    // **********************************************************************
+
+    static private <T> TableColumn<ScriptProfile.Entry, T> column(String title, String property)
+    {
+        TableColumn<ScriptProfile.Entry, T> column = new TableColumn<>(title);
+        column.setCellValueFactory(new PropertyValueFactory<>(property));
+        return column;
+    }
+
+    static private void addTimingColumns(TableView<ScriptProfile.Entry> table)
+    {
+        TableColumn<ScriptProfile.Entry, Long> count = column("Count", "count");
+        TableColumn<ScriptProfile.Entry, Double> total = column("Total (ms)", "totalMillis");
+        TableColumn<ScriptProfile.Entry, Double> average = column("Average (ns)", "averageNanos");
+        total.setCellFactory(c -> new FormattedCell("%.3f"));
+        average.setCellFactory(c -> new FormattedCell("%.0f"));
+
+        table.getColumns().add(count);
+        table.getColumns().add(total);
+        table.getColumns().add(average);
+
+        // Show the most expensive rows first
+
+        total.setSortType(TableColumn.SortType.DESCENDING);
+        table.getSortOrder().add(total);
+        table.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY);
+    }
+
+    static private class FormattedCell extends TableCell<ScriptProfile.Entry, Double>
+    {
+        private final String format;
+
+        FormattedCell(String format)
+        {
+            this.format = format;
+        }
+
+        @Override
+        protected void updateItem(Double value, boolean empty)
+        {
+            super.updateItem(value, empty);
+            setText(empty || value == null ? null : String.format(format, value));
+        }
+    }
+
+    // **********************************************************************
+    // *
+    // * Buttons
+    // *
+    // **********************************************************************
+
+    @FXML
+    private void handleRefresh(ActionEvent event)
+    {
+        refresh();
+    }
+
+    @FXML
+    private void handleReset(ActionEvent event)
+    {
+        ScriptProfile profile = getProfile();
+        if (profile != null) profile.clear();
+        refresh();
+    }
+
+    /**
+     * Export the table on the selected tab as comma-separated values.
+     */
+    @FXML
+    private void handleExport(ActionEvent event)
+    {
+        boolean lines = tabPane.getSelectionModel().getSelectedIndex() == 0;
+        List<ScriptProfile.Entry> entries =
+            lines ? linesTable.getItems() : instructionsTable.getItems();
+
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Export Script Profile");
+        fileChooser.getExtensionFilters().addAll(
+            new ExtensionFilter("CSV Files", "*.csv"),
+            new ExtensionFilter("All Files", "*.*"));
+        fileChooser.setInitialFileName(lines ? "profile-lines.csv" : "profile-instructions.csv");
+
+        File selectedFile = fileChooser.showSaveDialog(exportButton.getScene().getWindow());
+        if (selectedFile == null) return;
+
+        try (Writer writer = Files.newBufferedWriter(selectedFile.toPath(), StandardCharsets.UTF_8)) {
+            ScriptProfile.writeCSV(entries, writer);
+        }
+        catch (IOException e) {
+            new Alert(Alert.AlertType.ERROR, "Failed to export the profile: " + e.getLocalizedMessage()).showAndWait();
+        }
+    }
+
+    @FXML
+    private void handleClose(ActionEvent event)
+    {
+        closeButton.getScene().getWindow().hide();
+    }
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2021 Antonio Freixas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.execution;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import javafx.application.Platform;
+
+/**
+ * The script runner separates the execution of a script from the display
+ * of its results. H-codes are evaluated on a worker thread; the commands
+ * they produce are then handed to the JavaFX application thread, where they
+ * are drawn. A long-running script therefore doesn't stop the window from
+ * repainting or responding to the user.
+ * <p>
+ * Runs are evaluated one at a time, in the order they are requested. When a
+ * new run is requested, any earlier run whose results haven't been
+ * displayed yet is superseded: if it hasn't started, it is skipped, and if
+ * it has, its results are discarded.
+ * <p>
+ * All methods must be called on the JavaFX application thread. The
+ * callbacks are also called on that thread.
+ *
+ * @author Antonio Freixas
+ */
+class ScriptRunner
+{
+    private final ExecutorService executor;
+    private volatile int generation;
+    private int pending;
+    private boolean isClosed;
+
+    /**
+     * Create a script runner with its own worker thread.
+     */
+    ScriptRunner()
+    {
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Gamma Script Runner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.generation = 0;
+        this.pending = 0;
+        this.isClosed = false;
+    }
+
+    /**
+     * Request a run. The results of any earlier run that haven't been
+     * displayed yet will be discarded.
+     *
+     * @param <T> The type of the result of the evaluation.
+     * @param evaluate The evaluation, which is performed on the worker thread.
+     * @param present The display of the evaluation's result, which is
+     * performed on the JavaFX application thread.
+     * @param errorHandler The handler for any exception thrown by the
+     * evaluation or the display.
+     */
+    <T> void run(Supplier<T> evaluate, Consumer<T> present, Consumer<Throwable> errorHandler)
+    {
+        if (isClosed) return;
+
+        int runGeneration = ++generation;
+        pending++;
+
+        executor.execute(() -> {
+            // Skip a run that was superseded before it could start
+
+            if (runGeneration != generation) {
+                Platform.runLater(this::finished);
+                return;
+            }
+
+            T result;
+            try {
+                result = evaluate.get();
+            }
+            catch (Throwable e) {
+                Platform.runLater(() -> {
+                    finished();
+                    if (isCurrent(runGeneration)) errorHandler.accept(e);
+                });
+                return;
+            }
+
+            Platform.runLater(() -> {
+                finished();
+                if (!isCurrent(runGeneration)) return;
+                try {
+                    present.accept(result);
+                }
+                catch (Throwable e) {
+                    errorHandler.accept(e);
+                }
+            });
+        });
+    }
+
+    /**
+     * Returns true if a run has been requested whose results haven't been
+     * handled yet.
+     *
+     * @return True if the runner is busy.
+     */
+    boolean isBusy()
+    {
+        return pending > 0;
+    }
+
+    /**
+     * Discard all pending runs and stop the worker thread once any run in
+     * progress ends. Cancel the program's CancellationToken to end a run in
+     * progress quickly.
+     */
+    void close()
+    {
+        isClosed = true;
+        generation++;
+        executor.shutdown();
+    }
+
+    private void finished()
+    {
+        pending--;
+    }
+
+    private boolean isCurrent(int runGeneration)
+    {
+        return !isClosed && runGeneration == generation;
+    }
+
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2021 Antonio Freixas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.execution;
+
+import org.freixas.gamma.execution.hcode.FetchElementAddressHCode;
+import org.freixas.gamma.execution.hcode.FetchElementHCode;
+import org.freixas.gamma.execution.hcode.FetchSlotAddressHCode;
+import org.freixas.gamma.execution.hcode.FetchSlotHCode;
+import org.freixas.gamma.execution.hcode.GenericHCode;
+import org.freixas.gamma.execution.hcode.HCode;
+import org.freixas.gamma.execution.hcode.Jump;
+import org.freixas.gamma.execution.hcode.LineInfoHCode;
+import org.freixas.gamma.execution.hcode.StatementHCode;
+import org.freixas.gamma.execution.hcode.StaticAssignHCode;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The dependencies between the top-level statements of a finalized program.
+ * These let an execution that follows a change to some dynamic variables
+ * re-execute only the statements affected by the change. The other
+ * statements are skipped and the commands they created in the previous
+ * execution are reused.
+ * <p>
+ * A top-level statement is a run of h-codes starting with a LineInfoHCode
+ * that no jump enters or leaves. For each statement, we record the
+ * variables it reads and the variables it writes. Array elements are
+ * recorded under the array's name. Getting a variable's address counts as
+ * both a read and a write, since the address may be used to check whether
+ * the variable exists.
+ * <p>
+ * A statement is impure if it must be executed every time, even when none
+ * of its inputs change: it prints, calls random() or writes a static
+ * variable (static variables keep their values from one execution to the
+ * next). A statement that creates a frame command is marked, since the
+ * frame changes the coordinates of every other command.
+ * <p>
+ * Some programs can't be analyzed: those that access variables by computed
+ * names or assign to properties (a property assignment can change an
+ * object shared by several variables). For these, and for programs that
+ * don't start with a LineInfoHCode, create() returns null and every
+ * execution runs the whole program.
+ * <p>
+ * Dependency tracking can be turned off with ENABLED.
+ *
+ * @author Antonio Freixas
+ */
+class StatementDependencies
+{
+    /**
+     * When false, programs are always executed in full.
+     */
+    static public boolean ENABLED = true;
+
+    private final ArrayList<Set<String>> reads;
+    private final ArrayList<Set<String>> writes;
+    private final boolean[] impure;
+    private final boolean[] framing;
+
+    private StatementDependencies(
+        ArrayList<Set<String>> reads, ArrayList<Set<String>> writes,
+        boolean[] impure, boolean[] framing)
+    {
+        this.reads = reads;
+        this.writes = writes;
+        this.impure = impure;
+        this.framing = framing;
+    }
+
+    /**
+     * Find the top-level statements of a finalized program and their
+     * dependencies. The LineInfoHCode that starts each statement is replaced
+     * with a StatementHCode. This must be called after jump locations have
+     * been resolved.
+     *
+     * @param program The finalized program. It is modified in place.
+     * @return The statement dependencies or null if the program can't be
+     * analyzed.
+     */
+    static StatementDependencies create(Object[] program)
+    {
+        if (!ENABLED || program.length == 0 || !(program[0] instanceof LineInfoHCode)) {
+            return null;
+        }
+
+        // Find the statement boundaries. A LineInfoHCode starts a top-level
+        // statement unless some jump crosses it: it jumps from before the
+        // LineInfoHCode to after it, or from the LineInfoHCode or after it to
+        // before it
+
+        ArrayList<int[]> jumps = new ArrayList<>();
+        for (int i = 0; i < program.length; i++) {
+            if (program[i] instanceof Jump jump) jumps.add(new int[] { i, jump.getJumpLocation() });
+        }
+
+        ArrayList<Integer> starts = new ArrayList<>();
+        for (int i = 0; i < program.length; i++) {
+            if (program[i] instanceof LineInfoHCode && !isCrossed(jumps, i)) {
+                starts.add(i);
+            }
+        }
+        int count = starts.size();
+
+        // Gather each statement's reads and writes
+
+        ArrayList<Set<String>> reads = new ArrayList<>(count);
+        ArrayList<Set<String>> writes = new ArrayList<>(count);
+        boolean[] impure = new boolean[count];
+        boolean[] framing = new boolean[count];
+        HashSet<String> staticNames = new HashSet<>();
+
+        for (int s = 0; s < count; s++) {
+            HashSet<String> read = new HashSet<>();
+            HashSet<String> write = new HashSet<>();
+            int end = s + 1 < count ? starts.get(s + 1) : program.length;
+
+            for (int i = starts.get(s); i < end; i++) {
+                Object code = program[i];
+                Object previous = i > 0 ? program[i - 1] : null;
+                if (HCodeProgram.isImpure(program, i)) impure[s] = true;
+
+                if (code instanceof FetchSlotHCode fetch) {
+                    read.add(baseName(fetch.getName()));
+                }
+                else if (code instanceof FetchSlotAddressHCode fetch) {
+                    read.add(baseName(fetch.getName()));
+                    write.add(baseName(fetch.getName()));
+                }
+                else if (code instanceof FetchElementHCode fetch) {
+                    read.add(baseName(fetch.getName()));
+                }
+                else if (code instanceof FetchElementAddressHCode fetch) {
+                    read.add(baseName(fetch.getName()));
+                    write.add(baseName(fetch.getName()));
+                }
+                else if (code instanceof StaticAssignHCode) {
+                    staticNames.addAll(write);
+                }
+                else if (code instanceof GenericHCode generic) {
+                    switch (generic.getType()) {
+                        case DYNAMIC_NAME -> {
+                            if (!(previous instanceof String name)) return null;
+                            read.add(baseName(name));
+                        }
+                        case DEFINED -> {
+                            if (previous instanceof String name) {
+                                read.add(baseName(name));
+                            }
+                            else if (!(previous instanceof GenericHCode dynamicName &&
+                                       dynamicName.getType() == HCode.Type.DYNAMIC_NAME)) {
+                                return null;
+                            }
+                        }
+                        case FETCH, FETCH_ADDRESS, FETCH_PROP_ADDRESS -> {
+                            return null;
+                        }
+                        case COMMAND -> {
+                            if ("frame".equals(previous)) framing[s] = true;
+                        }
+                        default -> { }
+                    }
+                }
+            }
+            reads.add(read);
+            writes.add(write);
+        }
+
+        // Writing a static variable changes the next execution
+
+        for (int s = 0; s < count; s++) {
+            if (intersects(writes.get(s), staticNames)) impure[s] = true;
+        }
+
+        // Mark the start of each statement
+
+        for (int s = 0; s < count; s++) {
+            int start = starts.get(s);
+            int end = s + 1 < count ? starts.get(s + 1) : program.length;
+            program[start] = new StatementHCode(((LineInfoHCode)program[start]).getToken(), s, end);
+        }
+
+        return new StatementDependencies(reads, writes, impure, framing);
+    }
+
+    static private boolean isCrossed(ArrayList<int[]> jumps, int location)
+    {
+        for (int[] jump : jumps) {
+            int from = jump[0];
+            int to = jump[1];
+            if ((from < location && to > location) || (from >= location && to < location)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the name under which a variable's dependencies are recorded.
+     * Array elements are recorded under the name of the array.
+     *
+     * @param name The name of a variable.
+     * @return The name of the variable or of its array.
+     */
+    static String baseName(String name)
+    {
+        int i = name.indexOf('$');
+        return i == -1 ? name : name.substring(0, i);
+    }
+
+    static private boolean intersects(Set<String> set, Collection<String> names)
+    {
+        for (String name : names) {
+            if (set.contains(name)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Get the number of top-level statements.
+     *
+     * @return The number of top-level statements.
+     */
+    int size()
+    {
+        return reads.size();
+    }
+
+    /**
+     * Find the statements that must be executed after the given variables
+     * have changed.
+     * <p>
+     * A statement is affected if it is impure or reads a variable that has
+     * changed or that is written by an affected statement. Every affected
+     * statement must be executed, as must every statement that writes a
+     * variable read by a statement being executed.
+     *
+     * @param changed The names of the variables that have changed.
+     * @return An entry for each statement, true if the statement must be
+     * executed. If a statement that creates a frame must be executed, null
+     * is returned; the whole program must be executed.
+     */
+    boolean[] slice(Collection<String> changed)
+    {
+        int count = size();
+        boolean[] execute = new boolean[count];
+
+        HashSet<String> tainted = new HashSet<>();
+        for (String name : changed) tainted.add(baseName(name));
+
+        for (int s = 0; s < count; s++) {
+            if (impure[s] || intersects(reads.get(s), tainted)) {
+                execute[s] = true;
+                tainted.addAll(writes.get(s));
+            }
+        }
+
+        HashSet<String> live = new HashSet<>();
+        for (int s = count - 1; s >= 0; s--) {
+            if (execute[s] || intersects(writes.get(s), live)) {
+                if (framing[s]) return null;
+                execute[s] = true;
+                live.addAll(reads.get(s));
+            }
+        }
+
+        return execute;
+    }
+
+}
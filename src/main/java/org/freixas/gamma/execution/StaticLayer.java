@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2021 Antonio Freixas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.execution;
+
+import org.freixas.gamma.drawing.Context;
+import org.freixas.gamma.execution.lcode.Command;
+import java.util.Arrays;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import javafx.scene.transform.Affine;
+import javafx.scene.transform.Transform;
+import javafx.stage.Window;
+
+/**
+ * The static layer is an image of the canvas after the background and the
+ * static commands of a display list have been drawn. The static commands
+ * are the ones carried over unchanged from the previous execution of the
+ * script. In a typical animation, these are the grids, axes and anything
+ * else that doesn't move.
+ * <p>
+ * The image is only valid for the view it was captured in. A pan, zoom or
+ * resize changes the view, as does a change to the background color. A
+ * change to a static command's styles produces a new command, so it ends
+ * the static layer. The image is only captured when the view is the same
+ * as it was the last time the diagram was drawn. This avoids capturing an
+ * image for every step of a pan or zoom.
+ *
+ * @author Antonio Freixas
+ */
+final class StaticLayer
+{
+    private WritableImage image;
+    private Command[] commands;
+    private double[] view;
+    private Color background;
+
+    private double[] lastView;
+    private Color lastBackground;
+
+    /**
+     * Create an empty static layer.
+     */
+    StaticLayer()
+    {
+        image = null;
+        commands = null;
+        view = null;
+        background = null;
+        lastView = null;
+        lastBackground = null;
+    }
+
+    /**
+     * Check the current view against the view the last time this method
+     * was called. This should be called once each time the diagram is
+     * drawn.
+     *
+     * @param context The drawing context.
+     * @param backgroundColor The background color of the display.
+     * @return True if the view hasn't changed.
+     */
+    boolean checkView(Context context, Color backgroundColor)
+    {
+        double[] currentView = getView(context);
+        boolean isStable =
+            Arrays.equals(currentView, lastView) && backgroundColor.equals(lastBackground);
+        lastView = currentView;
+        lastBackground = backgroundColor;
+        return isStable;
+    }
+
+    /**
+     * Returns true if the image holds the given static commands drawn in
+     * the current view.
+     *
+     * @param context The drawing context.
+     * @param backgroundColor The background color of the display.
+     * @param displayList The display list.
+     * @param count The number of static commands.
+     * @return True if the image can be used.
+     */
+    boolean matches(Context context, Color backgroundColor, DisplayList displayList, int count)
+    {
+        if (image == null || commands.length != count) return false;
+        if (!backgroundColor.equals(background) || !Arrays.equals(getView(context), view)) return false;
+        for (int i = 0; i < count; i++) {
+            if (commands[i] != displayList.get(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Draw the image on the canvas.
+     *
+     * @param context The drawing context.
+     */
+    void draw(Context context)
+    {
+        Canvas canvas = context.canvas;
+        GraphicsContext gc = context.gc;
+
+        gc.save();
+        gc.setTransform(new Affine());
+        gc.setGlobalAlpha(1.0);
+        gc.drawImage(image, 0.0, 0.0, canvas.getWidth(), canvas.getHeight());
+        gc.restore();
+    }
+
+    /**
+     * Capture the canvas, which must hold only the background and the given
+     * static commands.
+     *
+     * @param context The drawing context.
+     * @param backgroundColor The background color of the display.
+     * @param displayList The display list.
+     * @param count The number of static commands.
+     */
+    void capture(Context context, Color backgroundColor, DisplayList displayList, int count)
+    {
+        WritableImage newImage = snapshot(context.canvas, backgroundColor, image);
+        if (newImage == null) return;
+        image = newImage;
+
+        commands = new Command[count];
+        for (int i = 0; i < count; i++) {
+            commands[i] = displayList.get(i);
+        }
+        view = getView(context);
+        background = backgroundColor;
+    }
+
+    /**
+     * Take a snapshot of the canvas at the screen's resolution, so the image
+     * is as sharp as the canvas.
+     *
+     * @param canvas The canvas.
+     * @param backgroundColor The background color of the display.
+     * @param image An image to reuse if it has the right size, or null.
+     * @return The snapshot or null if the canvas can't be captured.
+     */
+    static WritableImage snapshot(Canvas canvas, Color backgroundColor, WritableImage image)
+    {
+        if (canvas.getScene() == null) return null;
+
+        double scaleX = 1.0;
+        double scaleY = 1.0;
+        Window window = canvas.getScene().getWindow();
+        if (window != null) {
+            scaleX = window.getOutputScaleX();
+            scaleY = window.getOutputScaleY();
+        }
+        int width = (int)Math.ceil(canvas.getWidth() * scaleX);
+        int height = (int)Math.ceil(canvas.getHeight() * scaleY);
+        if (width <= 0 || height <= 0) return null;
+
+        SnapshotParameters parameters = new SnapshotParameters();
+        parameters.setTransform(Transform.scale(scaleX, scaleY));
+        parameters.setFill(backgroundColor);
+
+        if (image == null || image.getWidth() != width || image.getHeight() != height) {
+            image = new WritableImage(width, height);
+        }
+        return canvas.snapshot(parameters, image);
+    }
+
+    /**
+     * Discard the image.
+     */
+    void clear()
+    {
+        image = null;
+        commands = null;
+        view = null;
+        background = null;
+    }
+
+    /**
+     * Get the values that define the view: the canvas transform and the
+     * canvas size.
+     *
+     * @param context The drawing context.
+     * @return The values that define the view.
+     */
+    static private double[] getView(Context context)
+    {
+        Affine transform = context.gc.getTransform();
+        return new double[] {
+            transform.getMxx(), transform.getMxy(), transform.getTx(),
+            transform.getMyx(), transform.getMyy(), transform.getTy(),
+            context.canvas.getWidth(), context.canvas.getHeight()
+        };
+    }
+
+}
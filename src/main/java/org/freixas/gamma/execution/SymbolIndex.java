@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2021 Antonio Freixas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.execution;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * The symbol index assigns an integer slot to each symbol (variable name)
+ * used by a program. The symbol tables store their values in arrays indexed
+ * by these slots.
+ * <p>
+ * Names that appear literally in the program are given slots when the
+ * program is created, so the h-codes that use them never need to look up a
+ * name. Names built while the program executes (such as array elements) get
+ * a slot the first time they are used.
+ * <p>
+ * An array element is a symbol whose name is the array's name, a "$" and
+ * the element's index or key. The slots of elements with small, non-negative
+ * integer indices are also kept in a table per array, so finding them takes
+ * an array access rather than building and hashing the element's name.
+ * <p>
+ * The index is shared by every execution of the program. Scripts are
+ * executed on the script runner's thread while the JavaFX application thread
+ * may look up names, so the index is thread-safe. Only assigning a new slot
+ * locks. Looking up a slot or a name that already exists, including an
+ * element's slot, reads the tables without locking: the tables are replaced,
+ * never changed in place, when they grow, and the entries added to them are
+ * published through volatile writes.
+ *
+ * @author Antonio Freixas
+ */
+public class SymbolIndex
+{
+    // Element indices at or above this limit are looked up by name. This
+    // keeps a script that uses a few huge indices from allocating huge tables
+
+    static private final int MAX_INDEXED_ELEMENT = 1 << 16;
+
+    private final ConcurrentHashMap<String, Integer> slots;
+
+    // The name of each slot. Only the first size entries are used
+
+    private volatile String[] names;
+    private volatile int size;
+
+    // Indexed by the array's slot. Each entry maps an element index to the
+    // element's slot plus one, so that 0 means no slot has been assigned
+
+    private volatile AtomicIntegerArray[] elementSlots;
+
+    /**
+     * Create an empty symbol index.
+     */
+    public SymbolIndex()
+    {
+        slots = new ConcurrentHashMap<>();
+        names = new String[16];
+        size = 0;
+        elementSlots = new AtomicIntegerArray[0];
+    }
+
+    /**
+     * Get the slot for a symbol. If the symbol has no slot, one is created.
+     *
+     * @param name The name of the symbol.
+     *
+     * @return The symbol's slot.
+     */
+    public int getSlot(String name)
+    {
+        Integer slot = slots.get(name);
+        if (slot != null) return slot;
+
+        // The name is added to the list before its slot is published, so
+        // anyone who finds the slot can also find the name
+
+        synchronized (this) {
+            return slots.computeIfAbsent(name, this::addName);
+        }
+    }
+
+    /**
+     * Get the slot for an array element with an integer index. If the
+     * element has no slot, one is created.
+     *
+     * @param arraySlot The slot of the array's name.
+     * @param index The index of the element.
+     *
+     * @return The element's slot.
+     */
+    public int getElementSlot(int arraySlot, int index)
+    {
+        AtomicIntegerArray[] tables = elementSlots;
+        if (arraySlot < tables.length && index >= 0) {
+            AtomicIntegerArray elements = tables[arraySlot];
+            if (elements != null && index < elements.length()) {
+                int slot = elements.get(index) - 1;
+                if (slot >= 0) return slot;
+            }
+        }
+        return addElementSlot(arraySlot, index);
+    }
+
+    /**
+     * Get the slot for an array element with a string key. If the element
+     * has no slot, one is created.
+     *
+     * @param arraySlot The slot of the array's name.
+     * @param key The key of the element.
+     *
+     * @return The element's slot.
+     */
+    public int getElementSlot(int arraySlot, String key)
+    {
+        return getSlot(getName(arraySlot) + "$" + key);
+    }
+
+    /**
+     * Find the slot for a symbol without creating one.
+     *
+     * @param name The name of the symbol.
+     *
+     * @return The symbol's slot or -1 if the symbol has no slot.
+     */
+    public int findSlot(String name)
+    {
+        Integer slot = slots.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * Get the name of the symbol assigned to a slot.
+     *
+     * @param slot The slot.
+     *
+     * @return The name of the symbol.
+     */
+    public String getName(int slot)
+    {
+        return names[slot];
+    }
+
+    /**
+     * Get the number of slots assigned so far.
+     *
+     * @return The number of slots assigned so far.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Add a name to the list of names. The caller must hold the lock.
+     *
+     * @param name The name.
+     * @return The name's slot.
+     */
+    private int addName(String name)
+    {
+        String[] newNames = names;
+        if (size == newNames.length) newNames = Arrays.copyOf(newNames, newNames.length * 2);
+        newNames[size] = name;
+        names = newNames;
+        return size++;
+    }
+
+    /**
+     * Find or create the slot for an array element with an integer index,
+     * holding the lock. The element's table is created or grown if needed.
+     *
+     * @param arraySlot The slot of the array's name.
+     * @param index The index of the element.
+     *
+     * @return The element's slot.
+     */
+    private synchronized int addElementSlot(int arraySlot, int index)
+    {
+        if (index < 0 || index >= MAX_INDEXED_ELEMENT) {
+            return getSlot(getName(arraySlot) + "$" + index);
+        }
+
+        AtomicIntegerArray[] tables = elementSlots;
+        AtomicIntegerArray elements = arraySlot < tables.length ? tables[arraySlot] : null;
+        if (elements == null || index >= elements.length()) {
+            int length = elements == null ? 16 : elements.length();
+            while (length <= index) length *= 2;
+            AtomicIntegerArray newElements = new AtomicIntegerArray(length);
+            if (elements != null) {
+                for (int i = 0; i < elements.length(); i++) newElements.set(i, elements.get(i));
+            }
+            elements = newElements;
+
+            tables = Arrays.copyOf(tables, Math.max(tables.length, arraySlot + 1));
+            tables[arraySlot] = elements;
+            elementSlots = tables;
+        }
+
+        int slot = elements.get(index) - 1;
+        if (slot < 0) {
+            slot = getSlot(getName(arraySlot) + "$" + index);
+            elements.set(index, slot + 1);
+        }
+        return slot;
+    }
+
+}
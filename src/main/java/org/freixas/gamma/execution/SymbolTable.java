@@ -17,8 +17,10 @@
 package org.freixas.gamma.execution;
 
 import org.freixas.gamma.ProgrammingException;
+import org.freixas.gamma.value.SymbolTableAddress;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * A symbol table is used to store values associated with and accessed through
@@ -27,6 +29,8 @@ import java.util.ArrayList;
  * This is the master symbol table. It contains only ephemeral variables, those
  * that last for a single execution of a script, but it works in conjunction
  * with the static and dynamic symbol tables.
+ * <p>
+ * Each method can be called with either the symbol's name or its slot.
  * <ul>
  *     <li>The contains() will identify if a symbol exists in any symbol table.
  *     <li>The directContains() will identify if a symbol exists in this symbol table.
@@ -48,6 +52,7 @@ public class SymbolTable extends BaseSymbolTable
 {
     private final StaticSymbolTable staticSymbolTable;
     private final DynamicSymbolTable dynamicSymbolTable;
+    private SymbolTableAddress[] addresses;
 
     // **********************************************************************
     // *
@@ -65,6 +70,7 @@ public class SymbolTable extends BaseSymbolTable
         super(engine);
         this.staticSymbolTable = engine.getStaticSymbolTable();
         this.dynamicSymbolTable = engine.getDynamicSymbolTable();
+        this.addresses = new SymbolTableAddress[16];
     }
 
     // **********************************************************************
@@ -74,17 +80,42 @@ public class SymbolTable extends BaseSymbolTable
     // **********************************************************************
 
     /**
-     * Returns true if the given name is in any symbol table.
+     * Get the address of a variable in this symbol table. Addresses are
+     * immutable, so the same address is reused for the rest of the execution.
+     * The cache belongs to this table rather than to the h-code, since the
+     * h-code may be shared by executions on different threads.
      *
-     * @param name The name of the symbol.
-     * @return  True if the given name is in any symbol table.
+     * @param name The name of the variable.
+     * @param slot The variable's slot.
+     *
+     * @return The variable's address.
+     */
+    public SymbolTableAddress getAddress(String name, int slot)
+    {
+        if (slot >= addresses.length) {
+            addresses = Arrays.copyOf(addresses, Math.max(slot + 1, addresses.length * 2));
+        }
+        SymbolTableAddress address = addresses[slot];
+        if (address == null) {
+            address = new SymbolTableAddress(this, name, slot);
+            addresses[slot] = address;
+        }
+        return address;
+    }
+
+    /**
+     * Returns true if the symbol with the given slot is in any symbol table.
+     *
+     * @param slot The slot of the symbol.
+     * @return  True if the given symbol is in any symbol table.
      */
-    public final boolean contains(String name)
+    @Override
+    public boolean contains(int slot)
     {
         return
-            super.contains(name) ||
-                staticSymbolTable.contains(name) ||
-                dynamicSymbolTable.contains(name);
+            super.contains(slot) ||
+                staticSymbolTable.contains(slot) ||
+                dynamicSymbolTable.contains(slot);
     }
 
     /**
@@ -94,41 +125,54 @@ public class SymbolTable extends BaseSymbolTable
      * @return  True if the given name is in this symbol table.
      */
     public final boolean directContains(String name)
+    {
+        int slot = getSymbolIndex().findSlot(name);
+        return slot != -1 && super.contains(slot);
+    }
+
+    /**
+     * Returns true if the symbol with the given slot is in this symbol table.
+     *
+     * @param slot The slot of the symbol.
+     * @return  True if the given symbol is in this symbol table.
+     */
+    public final boolean directContains(int slot)
     {
         return
-            super.contains(name);
+            super.contains(slot);
     }
 
     /**
      * Get a symbol from any symbol table. Since this always returns a value,
      * use contains() to ensure the symbol is in the symbol table.
      *
-     * @param symbol The name of the symbol.
+     * @param slot The slot of the symbol.
      *
      * @return The symbol's value or null if it is not in any table (but null
      * is also a valid value).
      */
-    public Object get(String symbol)
+    @Override
+    public Object get(int slot)
     {
         Object value;
 
         // If it is a static variable, get the value from the static symbol table
 
-        if (staticSymbolTable.contains(symbol)) {
-        value = staticSymbolTable.get(symbol);
-    }
+        if (staticSymbolTable.contains(slot)) {
+            value = staticSymbolTable.get(slot);
+        }
 
         // If this is a dynamic variable, get the value from the dynamic symbol
         // table
 
-        else if (dynamicSymbolTable.contains(symbol)) {
-            value = dynamicSymbolTable.get(symbol);
+        else if (dynamicSymbolTable.contains(slot)) {
+            value = dynamicSymbolTable.get(slot);
         }
 
         // Otherwise, get it from here
 
         else {
-            value = super.get(symbol);
+            value = super.get(slot);
         }
 
         return value;
@@ -142,19 +186,20 @@ public class SymbolTable extends BaseSymbolTable
      * <p>
      * If the symbol doesn't in either table, create it here.
      *
-     * @param name The name of the symbol.
+     * @param slot The slot of the symbol.
      * @param value The symbol's value.
      */
-    public void put(String name, Object value)
+    @Override
+    public void put(int slot, Object value)
     {
-        if (dynamicSymbolTable.contains(name)) {
+        if (dynamicSymbolTable.contains(slot)) {
             throw new ExecutionException("You cannot change the value of a dynamic variable after it's created");
         }
-        if (staticSymbolTable.contains(name)) {
-            staticSymbolTable.put(name, value);
+        if (staticSymbolTable.contains(slot)) {
+            staticSymbolTable.put(slot, value);
         }
         else {
-            super.put(name, value);
+            super.put(slot, value);
         }
     }
 
@@ -168,20 +213,21 @@ public class SymbolTable extends BaseSymbolTable
      */
     public void directPut(String name, Object value)
     {
-        super.put(name, value);
+        super.put(getSymbolIndex().getSlot(name), value);
     }
 
     /**
      * Remove a symbol from any symbol table. Protected symbols cannot be
      * removed.
      *
-     * @param name The symbol to remove.
+     * @param slot The slot of the symbol to remove.
      */
-    public void remove(String name)
+    @Override
+    public void remove(int slot)
     {
-        staticSymbolTable.remove(name);
-        dynamicSymbolTable.remove(name);
-        super.remove(name);
+        staticSymbolTable.remove(slot);
+        dynamicSymbolTable.remove(slot);
+        super.remove(slot);
     }
 
 }
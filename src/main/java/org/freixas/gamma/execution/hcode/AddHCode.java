@@ -17,6 +17,7 @@
 package org.freixas.gamma.execution.hcode;
 
 import org.freixas.gamma.execution.ArgInfo;
+import org.freixas.gamma.execution.DataStack;
 import org.freixas.gamma.execution.ExecutionException;
 import org.freixas.gamma.execution.HCodeEngine;
 import org.freixas.gamma.math.Util;
@@ -32,7 +33,7 @@ import java.util.List;
  *
  * @author Antonio Freixas
  */
-public class AddHCode extends ArgInfoHCode
+public class AddHCode extends ArgInfoHCode implements NumericHCode
 {
     static private final ArgInfo argInfo;
     static {
@@ -42,6 +43,17 @@ public class AddHCode extends ArgInfoHCode
         argInfo = new ArgInfo(2, argTypes);
     }
 
+    @Override
+    public boolean executeOnStack(HCodeEngine engine, DataStack stack)
+    {
+        int top = stack.size() - 1;
+        if (top < 1 || !stack.isNumber(top) || !stack.isNumber(top - 1)) return false;
+
+        double d2 = stack.popNumber();
+        stack.setNumber(top - 1, stack.getNumber(top - 1) + d2);
+        return true;
+    }
+
     @Override
     public void execute(HCodeEngine engine, List<Object> data)
     {
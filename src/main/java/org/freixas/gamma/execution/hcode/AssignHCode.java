@@ -66,9 +66,9 @@ public class AssignHCode extends ArgInfoHCode
         // are not assigning to a dynamic variable
 
         else if (address.exists()) {
-            String name = ((SymbolTableAddress)address).getName();
-            if (engine.getDynamicSymbolTable().contains(name)) {
-                throw new ExecutionException("You cannot change the value of dynamic variable '" + name + "'");
+            SymbolTableAddress symbolAddress = (SymbolTableAddress)address;
+            if (engine.getDynamicSymbolTable().contains(symbolAddress.getSlot())) {
+                throw new ExecutionException("You cannot change the value of dynamic variable '" + symbolAddress.getName() + "'");
             }
         }
 
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2021 Antonio Freixas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.execution.hcode;
+
+import org.freixas.gamma.ProgrammingException;
+import org.freixas.gamma.execution.ArgInfo;
+import org.freixas.gamma.execution.DataStack;
+import org.freixas.gamma.execution.HCodeEngine;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoubleBinaryOperator;
+
+/**
+ * A superinstruction for a binary operator whose second argument is a
+ * constant number, such as "i + 1" or "x * 2". It replaces the push of the
+ * constant and the operator.
+ * <p>
+ * When the first argument is a number, the operator is applied directly on
+ * the number lane of the data stack. Otherwise, the constant is pushed and
+ * the original operator is executed normally.
+ * <p>
+ * Arg 1 is the first argument of the operator.
+ *
+ * @author Antonio Freixas
+ */
+public class ConstOperandHCode extends ArgInfoHCode implements NumericHCode
+{
+    static private final ArgInfo argInfo;
+
+    static {
+        ArrayList<ArgInfo.Type> argTypes = new ArrayList<>();
+        argTypes.add(ArgInfo.Type.ANY);
+        argInfo = new ArgInfo(1, argTypes);
+    }
+
+    private final HCode op;
+    private final double constant;
+    private final DoubleBinaryOperator numericOp;
+
+    /**
+     * Create a constant operand superinstruction.
+     *
+     * @param op The operator. This must be an AddHCode or a binary
+     * NumericOpHCode.
+     * @param constant The operator's second argument.
+     */
+    public ConstOperandHCode(HCode op, double constant)
+    {
+        this.op = op;
+        this.constant = constant;
+
+        if (op instanceof AddHCode) {
+            numericOp = Double::sum;
+        }
+        else if (op instanceof NumericOpHCode numericOpHCode && numericOpHCode.isBinary()) {
+            numericOp = numericOpHCode::apply;
+        }
+        else {
+            throw new ProgrammingException("ConstOperandHCode(): Invalid operator");
+        }
+    }
+
+    public HCode getOp()
+    {
+        return op;
+    }
+
+    public double getConstant()
+    {
+        return constant;
+    }
+
+    @Override
+    public boolean executeOnStack(HCodeEngine engine, DataStack stack)
+    {
+        int top = stack.size() - 1;
+        if (top < 0 || !stack.isNumber(top)) return false;
+
+        stack.setNumber(top, numericOp.applyAsDouble(stack.getNumber(top), constant));
+        return true;
+    }
+
+    @Override
+    public void execute(HCodeEngine engine, List<Object> data)
+    {
+        data.add(constant);
+        engine.executeHCode(op);
+    }
+
+    @Override
+    public Class<?> getReturnType()
+    {
+        return op instanceof NumericOpHCode ? Double.class : null;
+    }
+
+    @Override
+    public ArgInfo getArgInfo()
+    {
+        return argInfo;
+    }
+
+}
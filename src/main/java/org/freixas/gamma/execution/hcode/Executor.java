@@ -16,12 +16,8 @@
  */
 package org.freixas.gamma.execution.hcode;
 
-import org.freixas.gamma.GammaRuntimeException;
-import org.freixas.gamma.ProgrammingException;
 import org.freixas.gamma.execution.ExecutionException;
 import org.freixas.gamma.execution.HCodeEngine;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.List;
 
 /**
@@ -34,168 +30,48 @@ import java.util.List;
  * LambdaFunction interface.
  * <p>
  * The special classes GenericHCode and GenericFunction manage and contain all
- * various lambdas.
+ * various lambdas. Each lambda is bound once to a LambdaInvoker, which is
+ * what the executor calls.
  *
  * @author Antonio Freixas
  */
 public abstract class Executor
 {
-    static final Class<?>[] noObjects =    { HCodeEngine.class };
-    static final Class<?>[] oneObject =    { HCodeEngine.class, Object.class };
-    static final Class<?>[] twoObjects =   { HCodeEngine.class, Object.class, Object.class };
-    static final Class<?>[] threeObjects = { HCodeEngine.class, Object.class, Object.class, Object.class };
-    static final Class<?>[] fourObjects =  { HCodeEngine.class, Object.class, Object.class, Object.class, Object.class };
-
-    static final Class<?>[] varObjects =   { HCodeEngine.class, Object[].class };
-
-    static final Class<?>[][] objectTypes = { noObjects, oneObject, twoObjects, threeObjects, fourObjects };
-
     /**
      * Execute code that is implemented using the LambdaFunction interface.
      *
      * @param context The object type on which this executor operates.
      * @param engine The h-code engine.
-     * @param func A LambdaFunction class typically created using a lamdba
-     * expression.
+     * @param invoker The invoker bound to the LambdaFunction.
      */
-    public void execute(ExecutorContext context, HCodeEngine engine, LambdaFunction func)
+    public void execute(ExecutorContext context, HCodeEngine engine, LambdaInvoker invoker)
     {
-        // We need to know the number of arguments.
-
         List<Object> args = getData(context);
-        int numOfArgs = args.size();
 
-        boolean isVarArgs = func instanceof VariableArg || func instanceof VariableArgNoRet;
+        // A lambda with a fixed number of arguments must receive exactly that
+        // number
 
-        // Use Reflection to find a method whose signature matches the types
-        // of the data values
-
-        Class<?>[] params;
-        if (isVarArgs) {
-            params = varObjects;
-        }
-        else {
-            params = objectTypes[numOfArgs];
+        int numOfArgs = invoker.getNumberOfArgs();
+        if (numOfArgs != -1 && numOfArgs != args.size()) {
+            throw new ExecutionException("Incorrect number or types of arguments");
         }
-        Method method = getMethod(func, params);
 
-        // Execute the method and return the result
+        // Execute the lambda and return the result
 
-        Object[] reflectionArgs;
-        if (isVarArgs) {
-            reflectionArgs = new Object[] { engine, args.toArray() };
+        Object result;
+        try {
+            result = invoker.invoke(engine, args);
         }
-        else {
-            args.add(0, engine);            // The engine is the first parameter
-            reflectionArgs = args.toArray();
+        catch (ClassCastException e) {
+            throw new ExecutionException("Invalid argument type");
         }
 
-        Object result = executeImpl(method, engine, func, reflectionArgs);
-
         args.clear();
-        if (getNumberOfReturnedValues(context, func) > 0) {
+        if (invoker.getNumberOfReturnedValues() > 0) {
             args.add(result);
         }
     }
 
-    /**
-     * Find a matching execution method. If we don't find one, then we received
-     * values of the wrong type and an exception is thrown.
-     *
-     * @param func A LambdaFunction class typically created using a lamdba
-     * expression.
-     * @param params An array of Object classes. Generic functions wind up
-     * reflecting all their generic arguments as type Object.
-     * @return The method.
-     */
-    private Method getMethod(LambdaFunction func, Class<?>[] params)
-    {
-        Method method;
-        try {
-            method = func.getClass().getMethod("execute", params);
-        }
-        catch (NoSuchMethodException | ClassCastException e) {
-            throw new ExecutionException("Incorrect number or types of arguments");
-        }
-        catch (IllegalArgumentException e) {
-            throw new ExecutionException("Invalid Argument", e);
-        }
-        catch (SecurityException e) {
-            throw new ProgrammingException("Executor.executeImpl(): invoke() failed", e);
-        }
-        return method;
-    }
-
-    /**
-     * Call the execution method.
-     *
-     * @param method The Method to call.
-     * @param args An array of arguments.
-     * @return The Object returned by the Method (which may be null).
-     */
-    private Object executeImpl(Method method, HCodeEngine engine, LambdaFunction func, Object[] args)
-    {
-        Object result = null;
-        try {
-            result = method.invoke(func, args);
-        }
-        catch (IllegalArgumentException e) {
-            throw new ExecutionException("Invalid Argument", e);
-        }
-        catch (InvocationTargetException e) {
-            Throwable ex = e.getCause();
-            if (ex instanceof ClassCastException) ex = new ExecutionException("Invalid argument type");
-            engine.throwGammaException(ex);
-        }
-        catch (SecurityException | IllegalAccessException e) {
-            throw new ProgrammingException("Executor.executeImpl(): invoke() failed", e);
-        }
-        return result;
-    }
-
-    /**
-     * Get the number of arguments required by this LambdaFunction.
-     *
-     * @param context The object type on which this executor operates.
-     * @param func A LambdaFunction class typically created using a lamdba
-     * expression.
-     * @return The number of arguments required by this LambdaFunction.
-     */
-    public int getNumberOfArgs(ExecutorContext context, LambdaFunction func)
-    {
-        int numOfArgs = 0;
-
-        if (func instanceof FunctionalOneArg || func instanceof FunctionalOneArgNoRet) {
-            numOfArgs = 1;
-        }
-        else if (func instanceof FunctionalTwoArg || func instanceof FunctionalTwoArgNoRet) {
-            numOfArgs = 2;
-        }
-        else if (func instanceof FunctionalThreeArg || func instanceof FunctionalThreeArgNoRet) {
-            numOfArgs = 3;
-        }
-        else if (func instanceof FunctionalFourArg || func instanceof FunctionalFourArgNoRet) {
-            numOfArgs = 4;
-        }
-        else if (func instanceof VariableArg || func instanceof VariableArgNoRet) {
-            numOfArgs = -1;
-        }
-        return numOfArgs;
-    }
-
-    public int getNumberOfReturnedValues(ExecutorContext context, LambdaFunction func)
-    {
-        int numOfRets = 1;
-        if (func instanceof FunctionalOneArgNoRet ||
-            func instanceof FunctionalTwoArgNoRet ||
-            func instanceof FunctionalThreeArgNoRet ||
-            func instanceof FunctionalFourArgNoRet ||
-            func instanceof VariableArgNoRet) {
-            numOfRets = 0;
-        }
-        return numOfRets;
-    }
-
     /**
      * Get the data that becomes the arguments the lambda expression works on.
      *
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2021 Antonio Freixas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.execution.hcode;
+
+import org.freixas.gamma.execution.ArgInfo;
+import org.freixas.gamma.execution.DataStack;
+import org.freixas.gamma.execution.HCodeEngine;
+import org.freixas.gamma.execution.SymbolIndex;
+import org.freixas.gamma.execution.SymbolTable;
+import org.freixas.gamma.math.Util;
+import org.freixas.gamma.value.SymbolTableAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fetch the address of an array element. The HCodeProgram replaces an array
+ * name followed by DYNAMIC_NAME and FETCH_ADDRESS h-codes with this h-code.
+ * <p>
+ * The argument is the index, which may be a number or a string. The
+ * element's address is returned.
+ *
+ * @author Antonio Freixas
+ */
+public class FetchElementAddressHCode extends ArgInfoHCode implements StackHCode
+{
+    static private final ArgInfo argInfo;
+
+    static {
+        ArrayList<ArgInfo.Type> argTypes = new ArrayList<>();
+        argTypes.add(ArgInfo.Type.ANY);
+        argInfo = new ArgInfo(1, argTypes);
+    }
+
+    private final String name;
+    private final int slot;
+
+    /**
+     * Create a FetchElementAddressHCode.
+     *
+     * @param name The name of the array.
+     * @param slot The slot of the array's name.
+     */
+    public FetchElementAddressHCode(String name, int slot)
+    {
+        this.name = name;
+        this.slot = slot;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public int getSlot()
+    {
+        return slot;
+    }
+
+    @Override
+    public boolean executeOnStack(HCodeEngine engine, DataStack stack)
+    {
+        int top = stack.size() - 1;
+        if (top < 0 || !stack.isNumber(top)) return false;
+
+        SymbolTable table = engine.getSymbolTable();
+        SymbolIndex index = table.getSymbolIndex();
+        int elementSlot = index.getElementSlot(slot, Util.roundToInt(stack.popNumber()));
+        stack.push(new SymbolTableAddress(table, index.getName(elementSlot), elementSlot));
+        return true;
+    }
+
+    @Override
+    public void execute(HCodeEngine engine, List<Object> data)
+    {
+        SymbolTable table = engine.getSymbolTable();
+        SymbolIndex index = table.getSymbolIndex();
+        int elementSlot = FetchElementHCode.getElementSlot(index, slot, data.get(0));
+        data.clear();
+        data.add(new SymbolTableAddress(table, index.getName(elementSlot), elementSlot));
+    }
+
+    @Override
+    public Class<?> getReturnType()
+    {
+        return SymbolTableAddress.class;
+    }
+
+    @Override
+    public ArgInfo getArgInfo()
+    {
+        return argInfo;
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2021 Antonio Freixas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.execution.hcode;
+
+import org.freixas.gamma.execution.ArgInfo;
+import org.freixas.gamma.execution.DataStack;
+import org.freixas.gamma.execution.ExecutionException;
+import org.freixas.gamma.execution.HCodeEngine;
+import org.freixas.gamma.execution.SymbolIndex;
+import org.freixas.gamma.execution.SymbolTable;
+import org.freixas.gamma.math.Util;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fetch the value of an array element. The HCodeProgram replaces an array
+ * name followed by DYNAMIC_NAME and FETCH h-codes with this h-code, which
+ * finds the element's slot from the array's slot and the index without
+ * building the element's name.
+ * <p>
+ * The argument is the index, which may be a number or a string. The
+ * element's value is returned.
+ *
+ * @author Antonio Freixas
+ */
+public class FetchElementHCode extends ArgInfoHCode implements StackHCode
+{
+    static private final ArgInfo argInfo;
+
+    static {
+        ArrayList<ArgInfo.Type> argTypes = new ArrayList<>();
+        argTypes.add(ArgInfo.Type.ANY);
+        argInfo = new ArgInfo(1, argTypes);
+    }
+
+    private final String name;
+    private final int slot;
+
+    /**
+     * Create a FetchElementHCode.
+     *
+     * @param name The name of the array.
+     * @param slot The slot of the array's name.
+     */
+    public FetchElementHCode(String name, int slot)
+    {
+        this.name = name;
+        this.slot = slot;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public int getSlot()
+    {
+        return slot;
+    }
+
+    @Override
+    public boolean executeOnStack(HCodeEngine engine, DataStack stack)
+    {
+        int top = stack.size() - 1;
+        if (top < 0 || !stack.isNumber(top)) return false;
+
+        SymbolTable table = engine.getSymbolTable();
+        int elementSlot = table.getSymbolIndex().getElementSlot(slot, Util.roundToInt(stack.popNumber()));
+        stack.push(fetch(table, elementSlot));
+        return true;
+    }
+
+    @Override
+    public void execute(HCodeEngine engine, List<Object> data)
+    {
+        SymbolTable table = engine.getSymbolTable();
+        int elementSlot = getElementSlot(table.getSymbolIndex(), slot, data.get(0));
+        data.clear();
+        data.add(fetch(table, elementSlot));
+    }
+
+    private Object fetch(SymbolTable table, int elementSlot)
+    {
+        if (!table.contains(elementSlot)) {
+            throw new ExecutionException("Variable '" + table.getSymbolIndex().getName(elementSlot) + "' is not defined");
+        }
+        return table.get(elementSlot);
+    }
+
+    /**
+     * Get the slot of an array element.
+     *
+     * @param index The symbol index.
+     * @param arraySlot The slot of the array's name.
+     * @param obj The element's index, which should be a number or a string.
+     *
+     * @return The element's slot.
+     */
+    static int getElementSlot(SymbolIndex index, int arraySlot, Object obj)
+    {
+        if (obj instanceof Double dbl) {
+            return index.getElementSlot(arraySlot, Util.roundToInt(dbl));
+        }
+        else if (obj instanceof String str) {
+            return index.getElementSlot(arraySlot, str);
+        }
+        else {
+            throw new ExecutionException("Array index must be a number or a string");
+        }
+    }
+
+    @Override
+    public ArgInfo getArgInfo()
+    {
+        return argInfo;
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2021 Antonio Freixas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.execution.hcode;
+
+import org.freixas.gamma.execution.ArgInfo;
+import org.freixas.gamma.execution.ExecutionException;
+import org.freixas.gamma.execution.HCodeEngine;
+import org.freixas.gamma.value.ObjectContainer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A superinstruction that fetches a property whose name is known when the
+ * program is created. It replaces the push of the property name and the
+ * FETCH_PROP h-code.
+ * <p>
+ * Arg 1 is the object containing the property.
+ *
+ * @author Antonio Freixas
+ */
+public class FetchPropHCode extends ArgInfoHCode
+{
+    static private final ArgInfo argInfo;
+
+    static {
+        ArrayList<ArgInfo.Type> argTypes = new ArrayList<>();
+        argTypes.add(ArgInfo.Type.ANY);
+        argInfo = new ArgInfo(1, argTypes);
+    }
+
+    private final String propName;
+
+    /**
+     * Create a property fetch superinstruction.
+     *
+     * @param propName The name of the property.
+     */
+    public FetchPropHCode(String propName)
+    {
+        this.propName = propName;
+    }
+
+    public String getPropName()
+    {
+        return propName;
+    }
+
+    @Override
+    public void execute(HCodeEngine engine, List<Object> data)
+    {
+        Object obj = data.get(0);
+        data.clear();
+
+        // These are the checks made by the generic FETCH_PROP h-code
+
+        if (obj != null && !(obj instanceof ObjectContainer)) {
+            throw new ExecutionException("Invalid argument type");
+        }
+        ObjectContainer container = (ObjectContainer)obj;
+        if (container == null) throw new ExecutionException("can't dereference a null value");
+        if (!container.hasProperty(propName)) throw new ExecutionException("'" + propName + " is not a valid property");
+
+        data.add(container.getProperty(propName));
+    }
+
+    @Override
+    public ArgInfo getArgInfo()
+    {
+        return argInfo;
+    }
+
+}
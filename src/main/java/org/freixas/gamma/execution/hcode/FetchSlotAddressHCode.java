@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2021 Antonio Freixas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.execution.hcode;
+
+import org.freixas.gamma.execution.ArgInfo;
+import org.freixas.gamma.execution.DataStack;
+import org.freixas.gamma.execution.HCodeEngine;
+import org.freixas.gamma.value.SymbolTableAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fetch the address of a variable whose name is known when the program is
+ * created. The HCodeProgram replaces a variable name followed by a
+ * FETCH_ADDRESS h-code with this h-code.
+ * <p>
+ * The address refers to the variable by its slot. The symbol table caches
+ * the address, so each execution creates it only once.
+ * <p>
+ * There are no arguments. The variable's address is returned.
+ *
+ * @author Antonio Freixas
+ */
+public class FetchSlotAddressHCode extends ArgInfoHCode implements StackHCode
+{
+    static private final ArgInfo argInfo;
+
+    static {
+        ArrayList<ArgInfo.Type> argTypes = new ArrayList<>();
+        argInfo = new ArgInfo(0, argTypes);
+    }
+
+    private final String name;
+    private final int slot;
+
+    /**
+     * Create a FetchSlotAddressHCode.
+     *
+     * @param name The name of the variable.
+     * @param slot The variable's slot.
+     */
+    public FetchSlotAddressHCode(String name, int slot)
+    {
+        this.name = name;
+        this.slot = slot;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public int getSlot()
+    {
+        return slot;
+    }
+
+    @Override
+    public boolean executeOnStack(HCodeEngine engine, DataStack stack)
+    {
+        stack.push(getAddress(engine));
+        return true;
+    }
+
+    @Override
+    public void execute(HCodeEngine engine, List<Object> data)
+    {
+        data.add(getAddress(engine));
+    }
+
+    private SymbolTableAddress getAddress(HCodeEngine engine)
+    {
+        return engine.getSymbolTable().getAddress(name, slot);
+    }
+
+    @Override
+    public Class<?> getReturnType()
+    {
+        return SymbolTableAddress.class;
+    }
+
+    @Override
+    public ArgInfo getArgInfo()
+    {
+        return argInfo;
+    }
+
+}
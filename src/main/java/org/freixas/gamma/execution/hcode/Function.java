@@ -27,6 +27,7 @@ import org.freixas.gamma.value.Interval;
 import org.freixas.gamma.value.IntervalObserver;
 import org.freixas.gamma.value.Line;
 import org.freixas.gamma.value.Observer;
+import java.util.EnumMap;
 import java.util.HashMap;
 
 /**
@@ -399,6 +400,15 @@ public abstract class Function extends ExecutorContext
         map.put(Type.TANH,              tanh);
     }
 
+    // Bind each generic function's lambda to a direct call once, so that executing
+    // it needs no reflection
+
+    static final EnumMap<Type, LambdaInvoker> invokers = new EnumMap<>(Type.class);
+
+    static {
+        map.forEach((type, func) -> invokers.put(type, LambdaInvoker.bind(func)));
+    }
+
     // All functions, generic and otherwise
 
     static final HashMap<String, Function> functions = new HashMap<>();
@@ -20,7 +20,6 @@ import org.freixas.gamma.execution.ArgInfo;
 import org.freixas.gamma.execution.ExecutionException;
 import org.freixas.gamma.execution.HCodeEngine;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 
 /**
@@ -47,9 +46,9 @@ public class FunctionHCode extends ArgInfoHCode
             throw new ExecutionException("Uknown function '" + funcName + "'");
         }
 
-        // The function arguments function name
+        // Remove the function name. What remains are the function arguments
 
-        List<Object> funcData = data.subList(0, data.size() - 1);
+        data.remove(data.size() - 1);
 
         // Execute a Function that uses ArgInfo
 
@@ -64,18 +63,18 @@ public class FunctionHCode extends ArgInfoHCode
 
             int numOfArgs = funcArgInfo.getNumberOfArgs();
 
-            if (numOfArgs == -1) numOfArgs = funcData.size();
-            if (numOfArgs != funcData.size()) {
-                throw new ExecutionException("Incorrect number of arguments for function '" + funcName + "'. Expected " + numOfArgs + ", received " + funcData.size());
+            if (numOfArgs == -1) numOfArgs = data.size();
+            if (numOfArgs != data.size()) {
+                throw new ExecutionException("Incorrect number of arguments for function '" + funcName + "'. Expected " + numOfArgs + ", received " + data.size());
             }
 
-            funcArgInfo.checkTypes(funcData);
+            funcArgInfo.checkTypes(data);
 
             // Execute the function
 
-            Object result = argInfoFunction.execute(engine, funcData);
+            Object result = argInfoFunction.execute(engine, data);
 
-            // Remove all of the function h-code
+            // Remove the arguments
 
             data.clear();
 
@@ -84,13 +83,11 @@ public class FunctionHCode extends ArgInfoHCode
             data.add(result);
         }
 
-        // Execute a generic Function
+        // Execute a generic Function. The executor replaces the arguments
+        // with the result
 
         else if (function instanceof GenericFunction genericFunction) {
-            LinkedList<Object> funcDataCopy = new LinkedList<>(funcData);
-            genericFunction.execute(engine, funcDataCopy);
-            data.clear();
-            data.addAll(funcDataCopy);
+            genericFunction.execute(engine, data);
         }
     }
 
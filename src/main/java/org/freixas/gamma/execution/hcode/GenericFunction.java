@@ -34,8 +34,7 @@ import java.util.List;
  */
 public class GenericFunction extends Function
 {
-    private final LambdaFunction func;
-    private FunctionExecutor functionExecutor;
+    private final LambdaInvoker invoker;
     private List<Object> data;
 
     /**
@@ -45,8 +44,8 @@ public class GenericFunction extends Function
      */
     public GenericFunction(Function.Type type)
     {
-        func = Function.map.get(type);
-        if (func == null) {
+        invoker = Function.invokers.get(type);
+        if (invoker == null) {
             throw new ExecutionException("GenericFunction(): Failed to find '" + type + "'");
         }
     }
@@ -60,8 +59,7 @@ public class GenericFunction extends Function
     public void execute(HCodeEngine engine, List<Object> data)
     {
         this.data = data;
-        this.functionExecutor = engine.getFunctionExecutor();
-        functionExecutor.execute(this, engine, func);
+        engine.getFunctionExecutor().execute(this, engine, invoker);
     }
 
     public List<Object> getData()
@@ -72,12 +70,12 @@ public class GenericFunction extends Function
     @Override
     public int getNumberOfArgs()
     {
-        return functionExecutor.getNumberOfArgs(this, func);
+        return invoker.getNumberOfArgs();
     }
 
     @Override
     public int getNumberOfReturnedValues()
     {
-        return functionExecutor.getNumberOfReturnedValues(this, func);
+        return invoker.getNumberOfReturnedValues();
     }
 }
@@ -33,8 +33,7 @@ import org.freixas.gamma.execution.HCodeEngine;
  */
 public class GenericHCode extends HCode
 {
-    private final LambdaFunction func;
-    private HCodeExecutor hCodeExecutor;
+    private final LambdaInvoker invoker;
     private final HCode.Type type;
 
     /**
@@ -45,8 +44,8 @@ public class GenericHCode extends HCode
     public GenericHCode(HCode.Type type)
     {
         this.type = type;
-        func = HCode.map.get(type);
-        if (func == null) {
+        invoker = HCode.invokers.get(type);
+        if (invoker == null) {
             throw new ProgrammingException("GenericHCode(): Failed to find '" + type + "' hCode");
         }
     }
@@ -64,20 +63,25 @@ public class GenericHCode extends HCode
     public void execute(HCodeEngine engine)
     {
         // System.out.println("Executing " + type);
-        this.hCodeExecutor = engine.getHCodeExecutor();
-        engine.getHCodeExecutor().execute(this, engine, func);
+        engine.getHCodeExecutor().execute(this, engine, invoker);
+    }
+
+    @Override
+    public Class<?> getReturnType()
+    {
+        return HCode.returnTypes.get(type);
     }
 
     @Override
     public int getNumberOfArgs()
     {
-        return hCodeExecutor.getNumberOfArgs(this, func);
+        return invoker.getNumberOfArgs();
     }
 
     @Override
     public int getNumberOfReturnedValues()
     {
-        return hCodeExecutor.getNumberOfReturnedValues(this, func);
+        return invoker.getNumberOfReturnedValues();
     }
 
 }
@@ -18,12 +18,14 @@ package org.freixas.gamma.execution.hcode;
 
 import org.freixas.gamma.ProgrammingException;
 import org.freixas.gamma.execution.ExecutionException;
+import org.freixas.gamma.execution.SymbolIndex;
 import org.freixas.gamma.execution.SymbolTable;
 import org.freixas.gamma.execution.lcode.Command;
 import org.freixas.gamma.execution.lcode.CommandFactory;
 import org.freixas.gamma.math.Util;
 import org.freixas.gamma.value.*;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
 
 /**
@@ -68,16 +70,8 @@ public abstract class HCode extends ExecutorContext
 
     // DYNAMIC_NAME
     static final FunctionalTwoArg<Object, String, String> dynamicName = (engine, obj, baseName) -> {
-        if (obj instanceof Double dbl) {
-            int index = Util.roundToInt(dbl);
-            return baseName + "$" + index;
-        }
-        else if (obj instanceof String str) {
-            return baseName + "$" + str;
-        }
-        else {
-            throw new ExecutionException("Array index must be a number or a string");
-        }
+        SymbolIndex index = engine.getSymbolTable().getSymbolIndex();
+        return index.getName(FetchElementHCode.getElementSlot(index, index.getSlot(baseName), obj));
     };
     // FETCH
     static final FunctionalOneArg<String, Object> fetch = (engine, symbol) -> {
@@ -385,4 +379,74 @@ public abstract class HCode extends ExecutorContext
         map.put(Type.COMMAND, command);
     }
 
+    // Bind each h-code's lambda to a direct call once, so that executing
+    // it needs no reflection
+
+    static final EnumMap<Type, LambdaInvoker> invokers = new EnumMap<>(Type.class);
+
+    static {
+        map.forEach((type, func) -> invokers.put(type, LambdaInvoker.bind(func)));
+    }
+
+    // The class of the value returned by an h-code's lambda, for those
+    // lambdas that always return a non-null value of the same class
+
+    static final EnumMap<Type, Class<?>> returnTypes = new EnumMap<>(Type.class);
+
+    static {
+        returnTypes.put(Type.DYNAMIC_NAME, String.class);
+        returnTypes.put(Type.FETCH_ADDRESS, SymbolTableAddress.class);
+        returnTypes.put(Type.FETCH_PROP_ADDRESS, ObjectPropertyAddress.class);
+        returnTypes.put(Type.DEFINED, Double.class);
+
+        returnTypes.put(Type.NOT, Double.class);
+        returnTypes.put(Type.TO_BOOLEAN, Double.class);
+        returnTypes.put(Type.OR, Double.class);
+        returnTypes.put(Type.AND, Double.class);
+
+        returnTypes.put(Type.EQ, Double.class);
+        returnTypes.put(Type.NE, Double.class);
+        returnTypes.put(Type.LT, Double.class);
+        returnTypes.put(Type.GT, Double.class);
+        returnTypes.put(Type.LE, Double.class);
+        returnTypes.put(Type.GE, Double.class);
+
+        returnTypes.put(Type.UNARY_MINUS, Double.class);
+        returnTypes.put(Type.UNARY_PLUS, Double.class);
+        returnTypes.put(Type.SUB, Double.class);
+        returnTypes.put(Type.MULT, Double.class);
+        returnTypes.put(Type.DIV, Double.class);
+        returnTypes.put(Type.REMAINDER, Double.class);
+        returnTypes.put(Type.EXP, Double.class);
+        returnTypes.put(Type.LORENTZ, Coordinate.class);
+        returnTypes.put(Type.INV_LORENTZ, Coordinate.class);
+
+        returnTypes.put(Type.W_INITIALIZER, WInitializer.class);
+        returnTypes.put(Type.W_SEGMENT, WSegment.class);
+        returnTypes.put(Type.PROPERTY, Property.class);
+        returnTypes.put(Type.PROPERTY_LIST, PropertyList.class);
+
+        returnTypes.put(Type.FRAME, Frame.class);
+        returnTypes.put(Type.OBSERVER_FRAME, Frame.class);
+        returnTypes.put(Type.AXIS_LINE, ConcreteLine.class);
+        returnTypes.put(Type.ANGLE_LINE, ConcreteLine.class);
+        returnTypes.put(Type.ENDPOINT_LINE, ConcreteLine.class);
+        returnTypes.put(Type.PATH, Path.class);
+        returnTypes.put(Type.BOUNDS, Bounds.class);
+        returnTypes.put(Type.INTERVAL, Interval.class);
+        returnTypes.put(Type.COORDINATE, Coordinate.class);
+    }
+
+    /**
+     * Get the class of the value returned by this h-code, if the h-code
+     * always returns a non-null value of the same class. This is used to
+     * check argument types before the program executes.
+     *
+     * @return The class of the returned value or null if it isn't known.
+     */
+    public Class<?> getReturnType()
+    {
+        return null;
+    }
+
 }
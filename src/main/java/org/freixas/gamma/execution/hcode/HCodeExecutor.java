@@ -17,7 +17,6 @@
 package org.freixas.gamma.execution.hcode;
 
 import org.freixas.gamma.execution.HCodeEngine;
-import org.freixas.gamma.execution.HCodeProgram;
 import java.util.List;
 
 /**
@@ -28,17 +27,17 @@ import java.util.List;
  */
 public class HCodeExecutor extends Executor
 {
-    private final HCodeProgram program;
+    private final HCodeEngine engine;
 
     public HCodeExecutor(HCodeEngine engine)
     {
-        this.program = engine.getProgram();
+        this.engine = engine;
     }
 
     @Override
     public List<Object> getData(ExecutorContext context)
     {
-        return program.getData((HCode)context);
+        return engine.getData((HCode)context);
     }
 
 }
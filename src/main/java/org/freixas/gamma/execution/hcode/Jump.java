@@ -32,7 +32,8 @@ public interface Jump
     int getId();
 
     /**
-     * Get the location to jump to.
+     * Get the location to jump to. This is an index into the finalized
+     * program held by the HCodeProgram.
      *
      * @return The location to jump to.
      */
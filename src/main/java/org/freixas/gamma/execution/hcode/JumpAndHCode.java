@@ -17,6 +17,7 @@
 package org.freixas.gamma.execution.hcode;
 
 import org.freixas.gamma.execution.ArgInfo;
+import org.freixas.gamma.execution.DataStack;
 import org.freixas.gamma.execution.HCodeEngine;
 import org.freixas.gamma.math.Util;
 import java.util.ArrayList;
@@ -30,7 +31,7 @@ import java.util.List;
  *
  * @author Antonio Freixas
  */
-public class JumpAndHCode extends ArgInfoHCode implements Jump
+public class JumpAndHCode extends ArgInfoHCode implements Jump, NumericHCode
 {
     static private final ArgInfo argInfo;
 
@@ -67,6 +68,18 @@ public class JumpAndHCode extends ArgInfoHCode implements Jump
         this.jumpLocation = jumpLocation;
     }
 
+    @Override
+    public boolean executeOnStack(HCodeEngine engine, DataStack stack)
+    {
+        int top = stack.size() - 1;
+        if (top < 0 || !stack.isNumber(top)) return false;
+
+        boolean isFalse = Util.fuzzyZero(stack.getNumber(top));
+        if (isFalse) engine.goTo(jumpLocation);
+        stack.setNumber(top, isFalse ? 0.0 : 1.0);
+        return true;
+    }
+
     @Override
     public void execute(HCodeEngine engine, List<Object> data)
     {
@@ -81,6 +94,12 @@ public class JumpAndHCode extends ArgInfoHCode implements Jump
         data.add(isFalse ? 0.0 : 1.0);
     }
 
+    @Override
+    public Class<?> getReturnType()
+    {
+        return Double.class;
+    }
+
     @Override
     public ArgInfo getArgInfo()
     {
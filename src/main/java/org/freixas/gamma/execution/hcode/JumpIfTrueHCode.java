@@ -17,6 +17,7 @@
 package org.freixas.gamma.execution.hcode;
 
 import org.freixas.gamma.execution.ArgInfo;
+import org.freixas.gamma.execution.DataStack;
 import org.freixas.gamma.execution.HCodeEngine;
 import org.freixas.gamma.math.Util;
 import java.util.ArrayList;
@@ -30,7 +31,7 @@ import java.util.List;
  *
  * @author Antonio Freixas
  */
-public class JumpIfTrueHCode extends ArgInfoHCode implements Jump
+public class JumpIfTrueHCode extends ArgInfoHCode implements Jump, NumericHCode
 {
     static private final ArgInfo argInfo;
 
@@ -68,6 +69,16 @@ public class JumpIfTrueHCode extends ArgInfoHCode implements Jump
         this.jumpLocation = jumpLocation;
     }
 
+    @Override
+    public boolean executeOnStack(HCodeEngine engine, DataStack stack)
+    {
+        int top = stack.size() - 1;
+        if (top < 0 || !stack.isNumber(top)) return false;
+
+        if (!Util.fuzzyZero(stack.popNumber())) engine.goTo(jumpLocation);
+        return true;
+    }
+
     @Override
     public void execute(HCodeEngine engine, List<Object> data)
     {
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2021 Antonio Freixas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.execution.hcode;
+
+import org.freixas.gamma.ProgrammingException;
+import org.freixas.gamma.execution.HCodeEngine;
+import java.util.List;
+
+/**
+ * A LambdaInvoker binds a LambdaFunction to a direct call. The binding is
+ * done once per lambda, when the HCode and Function classes are initialized,
+ * so that executing a generic h-code or function needs neither reflection
+ * nor a chain of instanceof tests.
+ * <p>
+ * The invoker also records the number of arguments the lambda requires and
+ * the number of values it returns.
+ *
+ * @author Antonio Freixas
+ */
+public final class LambdaInvoker
+{
+    /**
+     * The direct call to the lambda. The arguments are taken from the given
+     * list, which holds exactly the number of arguments the lambda expects.
+     */
+    @FunctionalInterface
+    private interface Call
+    {
+        Object call(HCodeEngine engine, List<Object> args);
+    }
+
+    private final Call call;
+    private final int numberOfArgs;
+    private final int numberOfReturnedValues;
+
+    private LambdaInvoker(int numberOfArgs, int numberOfReturnedValues, Call call)
+    {
+        this.numberOfArgs = numberOfArgs;
+        this.numberOfReturnedValues = numberOfReturnedValues;
+        this.call = call;
+    }
+
+    /**
+     * Bind a LambdaFunction to an invoker.
+     *
+     * @param func A LambdaFunction class typically created using a lamdba
+     * expression.
+     * @return The invoker.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    static LambdaInvoker bind(LambdaFunction func)
+    {
+        // Generic functions wind up reflecting all their generic arguments as
+        // type Object, so we can safely use the raw interfaces. The lambda
+        // itself casts each argument to its declared type
+
+        if (func instanceof FunctionalNoArg f) {
+            return new LambdaInvoker(0, 1, (engine, args) -> f.execute(engine));
+        }
+        else if (func instanceof FunctionalOneArg f) {
+            return new LambdaInvoker(1, 1, (engine, args) -> f.execute(engine, args.get(0)));
+        }
+        else if (func instanceof FunctionalTwoArg f) {
+            return new LambdaInvoker(2, 1, (engine, args) -> f.execute(engine, args.get(0), args.get(1)));
+        }
+        else if (func instanceof FunctionalThreeArg f) {
+            return new LambdaInvoker(3, 1, (engine, args) -> f.execute(engine, args.get(0), args.get(1), args.get(2)));
+        }
+        else if (func instanceof FunctionalFourArg f) {
+            return new LambdaInvoker(4, 1, (engine, args) -> f.execute(engine, args.get(0), args.get(1), args.get(2), args.get(3)));
+        }
+        else if (func instanceof VariableArg f) {
+            return new LambdaInvoker(-1, 1, (engine, args) -> f.execute(engine, args.toArray()));
+        }
+        else if (func instanceof FunctionalNoArgNoRet f) {
+            return new LambdaInvoker(0, 0, (engine, args) -> { f.execute(engine); return null; });
+        }
+        else if (func instanceof FunctionalOneArgNoRet f) {
+            return new LambdaInvoker(1, 0, (engine, args) -> { f.execute(engine, args.get(0)); return null; });
+        }
+        else if (func instanceof FunctionalTwoArgNoRet f) {
+            return new LambdaInvoker(2, 0, (engine, args) -> { f.execute(engine, args.get(0), args.get(1)); return null; });
+        }
+        else if (func instanceof FunctionalThreeArgNoRet f) {
+            return new LambdaInvoker(3, 0, (engine, args) -> { f.execute(engine, args.get(0), args.get(1), args.get(2)); return null; });
+        }
+        else if (func instanceof FunctionalFourArgNoRet f) {
+            return new LambdaInvoker(4, 0, (engine, args) -> { f.execute(engine, args.get(0), args.get(1), args.get(2), args.get(3)); return null; });
+        }
+        else if (func instanceof VariableArgNoRet f) {
+            return new LambdaInvoker(-1, 0, (engine, args) -> { f.execute(engine, args.toArray()); return null; });
+        }
+        throw new ProgrammingException("LambdaInvoker.bind(): Unknown LambdaFunction type '" + func.getClass().getName() + "'");
+    }
+
+    /**
+     * Call the lambda.
+     *
+     * @param engine The h-code engine.
+     * @param args The arguments. For a variable argument lambda, this is
+     * all the arguments, excluding the count.
+     * @return The Object returned by the lambda (which may be null).
+     */
+    Object invoke(HCodeEngine engine, List<Object> args)
+    {
+        return call.call(engine, args);
+    }
+
+    /**
+     * Get the number of arguments required by the lambda. If the number of
+     * arguments is variable, this is -1.
+     *
+     * @return The number of arguments required by the lambda.
+     */
+    public int getNumberOfArgs()
+    {
+        return numberOfArgs;
+    }
+
+    /**
+     * Get the number of values returned by the lambda. The number will be
+     * either 0 or 1.
+     *
+     * @return The number of values returned by the lambda.
+     */
+    public int getNumberOfReturnedValues()
+    {
+        return numberOfReturnedValues;
+    }
+
+}
@@ -41,6 +41,11 @@ public class LineInfoHCode extends ArgInfoHCode
         this.token = token;
     }
 
+    public Token<?> getToken()
+    {
+        return token;
+    }
+
     @Override
     public void execute(HCodeEngine engine, List<Object> data)
     {
@@ -0,0 +1,29 @@
+/*
+ * Copyright (C) 2021 Antonio Freixas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.execution.hcode;
+
+/**
+ * This interface identifies stack h-codes whose fast path works on the
+ * number lane of the data stack. When all the h-code's arguments are
+ * numbers, it reads and writes unboxed doubles. If any argument is not a
+ * number, the fast path returns false.
+ *
+ * @author Antonio Freixas
+ */
+public interface NumericHCode extends StackHCode
+{
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2021 Antonio Freixas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.execution.hcode;
+
+import org.freixas.gamma.ProgrammingException;
+import org.freixas.gamma.execution.DataStack;
+import org.freixas.gamma.execution.HCodeEngine;
+import org.freixas.gamma.math.Util;
+import java.util.EnumMap;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * A generic h-code for an operator that has a numeric fast path. When all
+ * of the operator's arguments are numbers, the operator is applied directly
+ * to the number lane of the data stack. Otherwise, the h-code executes like
+ * any other generic h-code.
+ * <p>
+ * The HCodeProgram replaces generic h-codes with these when it finalizes a
+ * program.
+ *
+ * @author Antonio Freixas
+ */
+public class NumericOpHCode extends GenericHCode implements NumericHCode
+{
+    static private final EnumMap<Type, DoubleUnaryOperator> unaryOps = new EnumMap<>(Type.class);
+    static private final EnumMap<Type, DoubleBinaryOperator> binaryOps = new EnumMap<>(Type.class);
+
+    static {
+        unaryOps.put(Type.NOT, (d) -> Util.fuzzyZero(d) ? 1.0 : 0.0);
+        unaryOps.put(Type.TO_BOOLEAN, (d) -> Util.fuzzyZero(d) ? 0.0 : 1.0);
+        unaryOps.put(Type.UNARY_MINUS, (d) -> -d);
+        unaryOps.put(Type.UNARY_PLUS, (d) -> +d);
+
+        binaryOps.put(Type.OR, (d1, d2) -> !Util.fuzzyZero(d1) || !Util.fuzzyZero(d2) ? 1.0 : 0.0);
+        binaryOps.put(Type.AND, (d1, d2) -> !Util.fuzzyZero(d1) && !Util.fuzzyZero(d2) ? 1.0 : 0.0);
+
+        binaryOps.put(Type.EQ, (d1, d2) -> Util.fuzzyEQ(d1, d2) ? 1.0 : 0.0);
+        binaryOps.put(Type.NE, (d1, d2) -> Util.fuzzyNE(d1, d2) ? 1.0 : 0.0);
+        binaryOps.put(Type.LT, (d1, d2) -> Util.fuzzyLT(d1, d2) ? 1.0 : 0.0);
+        binaryOps.put(Type.GT, (d1, d2) -> Util.fuzzyGT(d1, d2) ? 1.0 : 0.0);
+        binaryOps.put(Type.LE, (d1, d2) -> Util.fuzzyLE(d1, d2) ? 1.0 : 0.0);
+        binaryOps.put(Type.GE, (d1, d2) -> Util.fuzzyGE(d1, d2) ? 1.0 : 0.0);
+
+        binaryOps.put(Type.SUB, (d1, d2) -> d1 - d2);
+        binaryOps.put(Type.MULT, (d1, d2) -> d1 * d2);
+        binaryOps.put(Type.DIV, (d1, d2) -> d1 / d2);
+        binaryOps.put(Type.REMAINDER, (d1, d2) -> d1 % d2);
+        binaryOps.put(Type.EXP, Math::pow);
+    }
+
+    private final DoubleUnaryOperator unaryOp;
+    private final DoubleBinaryOperator binaryOp;
+
+    /**
+     * Create a numeric operator h-code.
+     *
+     * @param type The operator's type. Use hasNumericForm() to check that
+     * the type has a numeric fast path.
+     */
+    public NumericOpHCode(HCode.Type type)
+    {
+        super(type);
+        unaryOp = unaryOps.get(type);
+        binaryOp = binaryOps.get(type);
+        if (unaryOp == null && binaryOp == null) {
+            throw new ProgrammingException("NumericOpHCode(): '" + type + "' has no numeric form");
+        }
+    }
+
+    /**
+     * Returns true if the given type of generic h-code has a numeric fast
+     * path.
+     *
+     * @param type The h-code type.
+     *
+     * @return True if the type has a numeric fast path.
+     */
+    static public boolean hasNumericForm(HCode.Type type)
+    {
+        return unaryOps.containsKey(type) || binaryOps.containsKey(type);
+    }
+
+    /**
+     * Returns true if the operator takes two arguments.
+     *
+     * @return True if the operator takes two arguments.
+     */
+    public boolean isBinary()
+    {
+        return binaryOp != null;
+    }
+
+    /**
+     * Apply a unary operator to a number.
+     *
+     * @param d The argument.
+     *
+     * @return The result.
+     */
+    public double apply(double d)
+    {
+        return unaryOp.applyAsDouble(d);
+    }
+
+    /**
+     * Apply a binary operator to two numbers.
+     *
+     * @param d1 The first argument.
+     * @param d2 The second argument.
+     *
+     * @return The result.
+     */
+    public double apply(double d1, double d2)
+    {
+        return binaryOp.applyAsDouble(d1, d2);
+    }
+
+    @Override
+    public boolean executeOnStack(HCodeEngine engine, DataStack stack)
+    {
+        int top = stack.size() - 1;
+
+        if (binaryOp != null) {
+            if (top < 1 || !stack.isNumber(top) || !stack.isNumber(top - 1)) return false;
+            double d2 = stack.popNumber();
+            stack.setNumber(top - 1, binaryOp.applyAsDouble(stack.getNumber(top - 1), d2));
+        }
+        else {
+            if (top < 0 || !stack.isNumber(top)) return false;
+            stack.setNumber(top, unaryOp.applyAsDouble(stack.getNumber(top)));
+        }
+        return true;
+    }
+
+}
@@ -76,6 +76,12 @@ public class ObserverHCode extends ArgInfoHCode
         data.add(new ConcreteObserver(initializer, segments));
     }
 
+    @Override
+    public Class<?> getReturnType()
+    {
+        return ConcreteObserver.class;
+    }
+
     @Override
     public ArgInfo getArgInfo()
     {
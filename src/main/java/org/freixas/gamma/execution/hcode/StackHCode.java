@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2021 Antonio Freixas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.execution.hcode;
+
+import org.freixas.gamma.execution.DataStack;
+import org.freixas.gamma.execution.HCodeEngine;
+
+/**
+ * This interface identifies h-codes that have a fast path which works
+ * directly on the data stack. The fast path skips the general argument
+ * handling: it reads its arguments from the stack, if it has any, and pushes
+ * its result. H-codes that take no arguments, such as variable fetches, can
+ * always execute this way.
+ *
+ * @author Antonio Freixas
+ */
+public interface StackHCode
+{
+    /**
+     * Execute the h-code directly on the data stack, if possible. If the
+     * fast path can't handle the arguments, nothing is changed and the
+     * h-code must be executed in the normal way, which also reports any
+     * errors.
+     *
+     * @param engine The HCodeEngine.
+     * @param stack The data stack.
+     *
+     * @return True if the h-code was executed.
+     */
+    boolean executeOnStack(HCodeEngine engine, DataStack stack);
+
+}
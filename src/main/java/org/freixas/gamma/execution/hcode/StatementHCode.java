@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2021 Antonio Freixas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.execution.hcode;
+
+import org.freixas.gamma.execution.HCodeEngine;
+import java.util.List;
+import org.freixas.gamma.parser.Token;
+
+/**
+ * Marks the start of a top-level statement. Like the LineInfoHCode it
+ * replaces, it sets the token context. It also lets the engine skip the
+ * statement: if none of the statement's inputs have changed since the last
+ * execution, the engine reuses the commands the statement created then and
+ * execution continues with the next statement.
+ * <p>
+ * StatementHCodes are created by the HCodeProgram once jump locations are
+ * known. The jump location is the start of the next statement.
+ *
+ * @author Antonio Freixas
+ */
+public class StatementHCode extends LineInfoHCode implements Jump
+{
+    private final int statement;
+    private int jumpLocation;
+
+    /**
+     * Create a statement marker.
+     *
+     * @param token The token that starts the statement.
+     * @param statement The index of the statement.
+     * @param jumpLocation The location of the next statement.
+     */
+    public StatementHCode(Token<?> token, int statement, int jumpLocation)
+    {
+        super(token);
+        this.statement = statement;
+        this.jumpLocation = jumpLocation;
+    }
+
+    /**
+     * Get the index of the statement. Statements are numbered in the order
+     * they appear in the program.
+     *
+     * @return The index of the statement.
+     */
+    public int getStatement()
+    {
+        return statement;
+    }
+
+    /**
+     * A statement marker is never associated with a label.
+     *
+     * @return -1.
+     */
+    @Override
+    public int getId()
+    {
+        return -1;
+    }
+
+    @Override
+    public int getJumpLocation()
+    {
+        return jumpLocation;
+    }
+
+    @Override
+    public void setJumpLocation(int jumpLocation)
+    {
+        this.jumpLocation = jumpLocation;
+    }
+
+    @Override
+    public void execute(HCodeEngine engine, List<Object> data)
+    {
+        super.execute(engine, data);
+
+        if (engine.startStatement(statement)) {
+            engine.goTo(jumpLocation);
+        }
+    }
+
+}
@@ -61,11 +61,12 @@ public class StaticAssignHCode extends ArgInfoHCode
         data.clear();
 
         String name = address.getName();
+        int slot = address.getSlot();
         if (address.exists()) {
 
             // A static variable can't also be a dynamic variable
 
-            if (engine.getDynamicSymbolTable().contains(name)) {
+            if (engine.getDynamicSymbolTable().contains(slot)) {
                 throw new ExecutionException("You cannot change the value of dynamic variable '" + name + "'");
             }
 
@@ -75,8 +76,8 @@ public class StaticAssignHCode extends ArgInfoHCode
             // remove it. It doesn't matter if we lose its current value since
             // we're about to replace the value
 
-            if (symbolTable.contains(name)) {
-                symbolTable.remove(name);
+            if (symbolTable.contains(slot)) {
+                symbolTable.remove(slot);
             }
         }
 
@@ -85,7 +86,7 @@ public class StaticAssignHCode extends ArgInfoHCode
         // the static symbol table, it stores the value there
 
         StaticSymbolTable staticSymbolTable = engine.getStaticSymbolTable();
-        staticSymbolTable.put(name, value);
+        staticSymbolTable.put(slot, value);
     }
 
     @Override
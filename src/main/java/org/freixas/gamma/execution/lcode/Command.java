@@ -19,6 +19,7 @@ package org.freixas.gamma.execution.lcode;
 import javafx.scene.canvas.GraphicsContext;
 import org.freixas.gamma.css.value.StyleStruct;
 import org.freixas.gamma.drawing.Context;
+import org.freixas.gamma.value.Frame;
 
 /**
  *
@@ -29,6 +30,7 @@ public class Command
     private final Struct cmdStruct;
     private final StyleStruct styles;
     private final CommandExec cmdExec;
+    private boolean isRelative;
 
     public Command(Struct cmdStruct, StyleStruct styles, CommandExec cmdExec)
     {
@@ -36,6 +38,7 @@ public class Command
         this.cmdStruct.finalizeValues();
         this.styles = styles;
         this.cmdExec = cmdExec;
+        this.isRelative = false;
     }
 
     public Struct getCmdStruct()
@@ -53,6 +56,21 @@ public class Command
         return cmdExec;
     }
 
+    /**
+     * Make the command's coordinates relative to the given frame. A command
+     * can be drawn more than once when it is reused by a later execution of
+     * the script, but its coordinates are only converted the first time.
+     *
+     * @param prime The frame.
+     */
+    public void relativeTo(Frame prime)
+    {
+        if (!isRelative) {
+            cmdStruct.relativeTo(prime);
+            isRelative = true;
+        }
+    }
+
     public void execute(Context context)
     {
         // Handle the global opacity style at this level
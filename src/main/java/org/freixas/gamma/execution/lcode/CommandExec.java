@@ -18,6 +18,7 @@ package org.freixas.gamma.execution.lcode;
 
 import org.freixas.gamma.css.value.StyleStruct;
 import org.freixas.gamma.drawing.Context;
+import org.freixas.gamma.value.Bounds;
 
 /**
  *
@@ -33,4 +34,43 @@ public abstract class CommandExec
      * @param styles The associated styles
      */
     abstract public void execute(Context context, Struct cmdStruct, StyleStruct styles);
+
+    /**
+     * Get the bounding box, in world units, of everything this command
+     * draws. Things drawn at a fixed screen size are covered by the padding.
+     * The bounding box is used to skip commands that lie outside the
+     * viewport.
+     *
+     * @param cmdStruct The associated structure.
+     * @param styles The associated styles
+     * @return The bounding box or null if the command should always be drawn.
+     */
+    public Bounds getBounds(Struct cmdStruct, StyleStruct styles)
+    {
+        return null;
+    }
+
+    /**
+     * Get the padding, in screen units, needed around the bounding box to
+     * cover things drawn at a fixed screen size.
+     *
+     * @param cmdStruct The associated structure.
+     * @param styles The associated styles
+     * @return The padding.
+     */
+    public double getPadding(Struct cmdStruct, StyleStruct styles)
+    {
+        return 0.0;
+    }
+
+    /**
+     * Get the padding, in screen units, needed for a line with arrowheads.
+     *
+     * @param styles The associated styles
+     * @return The padding.
+     */
+    static protected double getLinePadding(StyleStruct styles)
+    {
+        return Math.max(styles.arrowWidth, styles.arrowHeight) + styles.lineThickness;
+    }
 }
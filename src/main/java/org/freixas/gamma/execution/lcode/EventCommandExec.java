@@ -18,6 +18,8 @@ package org.freixas.gamma.execution.lcode;
 
 import org.freixas.gamma.css.value.StyleStruct;
 import org.freixas.gamma.drawing.Context;
+import org.freixas.gamma.value.Bounds;
+import org.freixas.gamma.value.HyperbolicSegment;
 
 /**
  *
@@ -34,4 +36,45 @@ public class EventCommandExec extends CommandExec
         org.freixas.gamma.drawing.Event.draw(context, struct, styles);
     }
 
+    @Override
+    public Bounds getBounds(Struct cmdStruct, StyleStruct styles)
+    {
+        EventStruct struct = (EventStruct)cmdStruct;
+
+        // We can't tell how much room the text needs without drawing it
+
+        if (struct.text.length() > 0) return null;
+
+        Bounds bounds = new Bounds(struct.location, struct.location);
+        if (struct.boostTo != null && struct.segment != null) {
+            Bounds segmentBounds = struct.segment.getBounds();
+
+            // A hyperbolic boost line that isn't boostX is drawn with x and t
+            // swapped
+
+            if (struct.segment instanceof HyperbolicSegment && !struct.boostX) {
+                segmentBounds = new Bounds(segmentBounds.min.t, segmentBounds.min.x, segmentBounds.max.t, segmentBounds.max.x);
+            }
+            bounds.setTo(
+                Math.min(bounds.min.x, segmentBounds.min.x),
+                Math.min(bounds.min.t, segmentBounds.min.t),
+                Math.max(bounds.max.x, segmentBounds.max.x),
+                Math.max(bounds.max.t, segmentBounds.max.t));
+        }
+        if (struct.boostTo != null && struct.endPoint != null) {
+            bounds.setTo(
+                Math.min(bounds.min.x, struct.endPoint.x),
+                Math.min(bounds.min.t, struct.endPoint.t),
+                Math.max(bounds.max.x, struct.endPoint.x),
+                Math.max(bounds.max.t, struct.endPoint.t));
+        }
+        return bounds;
+    }
+
+    @Override
+    public double getPadding(Struct cmdStruct, StyleStruct styles)
+    {
+        return Math.max(styles.eventDiameter, getLinePadding(styles));
+    }
+
 }
@@ -18,6 +18,7 @@ package org.freixas.gamma.execution.lcode;
 
 import org.freixas.gamma.css.value.StyleStruct;
 import org.freixas.gamma.drawing.Context;
+import org.freixas.gamma.value.Bounds;
 import org.freixas.gamma.drawing.Line;
 
 /**
@@ -35,4 +36,16 @@ public class LineCommandExec extends CommandExec
         Line.draw(context, struct, styles);
     }
 
+    @Override
+    public Bounds getBounds(Struct cmdStruct, StyleStruct styles)
+    {
+        return ((LineStruct)cmdStruct).line.getBounds();
+    }
+
+    @Override
+    public double getPadding(Struct cmdStruct, StyleStruct styles)
+    {
+        return getLinePadding(styles);
+    }
+
 }
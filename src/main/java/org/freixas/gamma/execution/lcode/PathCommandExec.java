@@ -18,6 +18,7 @@ package org.freixas.gamma.execution.lcode;
 
 import org.freixas.gamma.css.value.StyleStruct;
 import org.freixas.gamma.drawing.Context;
+import org.freixas.gamma.value.Bounds;
 
 /**
  *
@@ -34,4 +35,19 @@ public class PathCommandExec extends CommandExec
         org.freixas.gamma.drawing.Path.draw(context, struct, styles);
     }
 
+    @Override
+    public Bounds getBounds(Struct cmdStruct, StyleStruct styles)
+    {
+        return ((PathStruct)cmdStruct).path.getBounds();
+    }
+
+    @Override
+    public double getPadding(Struct cmdStruct, StyleStruct styles)
+    {
+        // A mitered corner can extend up to the miter limit (10) times half
+        // the line thickness
+
+        return 5.0 * styles.lineThickness;
+    }
+
 }
@@ -16,24 +16,12 @@
  */
 package org.freixas.gamma.execution.lcode;
 
-import org.freixas.gamma.GammaRuntimeException;
 import org.freixas.gamma.ProgrammingException;
-import org.freixas.gamma.math.Util;
 import org.freixas.gamma.value.Frame;
-import org.freixas.gamma.value.Observer;
-import org.freixas.gamma.value.Property;
 import org.freixas.gamma.value.PropertyList;
 import org.freixas.gamma.execution.ExecutionException;
 import org.freixas.gamma.execution.HCodeEngine;
-import org.freixas.gamma.value.Displayable;
-import org.freixas.gamma.value.ExecutionMutable;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Set;
 
 /**
  *
@@ -41,45 +29,23 @@ import java.util.Set;
  */
 public abstract class Struct
 {
-    static final HashMap<String, HashMap<String, Field>> allFields = new HashMap<>();
-    static final HashMap<String, HashMap<String, Method>> allMethods = new HashMap<>();
+    static private final HashMap<String, StructBinder> binders = new HashMap<>();
 
     static public final int INT_NOT_SET = -999999999;
 
     static
     {
-        allFields.put("DisplayStruct", getFields(DisplayStruct.class));
-        allMethods.put("DisplayStruct", getMethods(DisplayStruct.class));
-
-        allFields.put("FrameStruct", getFields(FrameStruct.class));
-        allMethods.put("FrameStruct", getMethods(FrameStruct.class));
-
-        allFields.put("AnimationStruct", getFields(AnimationStruct.class));
-        allMethods.put("AnimationStruct", getMethods(AnimationStruct.class));
-
-        allFields.put("AxesStruct", getFields(AxesStruct.class));
-        allMethods.put("AxesStruct", getMethods(AxesStruct.class));
-
-        allFields.put("GridStruct", getFields(GridStruct.class));
-        allMethods.put("GridStruct", getMethods(GridStruct.class));
-
-        allFields.put("HypergridStruct", getFields(HypergridStruct.class));
-        allMethods.put("HypergridStruct", getMethods(HypergridStruct.class));
-
-        allFields.put("EventStruct", getFields(EventStruct.class));
-        allMethods.put("EventStruct", getMethods(EventStruct.class));
-
-        allFields.put("LineStruct", getFields(LineStruct.class));
-        allMethods.put("LineStruct", getMethods(LineStruct.class));
-
-        allFields.put("WorldlineStruct", getFields(WorldlineStruct.class));
-        allMethods.put("WorldlineStruct", getMethods(WorldlineStruct.class));
-
-        allFields.put("PathStruct", getFields(PathStruct.class));
-        allMethods.put("PathStruct", getMethods(PathStruct.class));
-
-        allFields.put("LabelStruct", getFields(LabelStruct.class));
-        allMethods.put("LabelStruct", getMethods(LabelStruct.class));
+        binders.put("display", new StructBinder(DisplayStruct.class));
+        binders.put("frame", new StructBinder(FrameStruct.class));
+        binders.put("animation", new StructBinder(AnimationStruct.class));
+        binders.put("axes", new StructBinder(AxesStruct.class));
+        binders.put("grid", new StructBinder(GridStruct.class));
+        binders.put("hypergrid", new StructBinder(HypergridStruct.class));
+        binders.put("event", new StructBinder(EventStruct.class));
+        binders.put("line", new StructBinder(LineStruct.class));
+        binders.put("worldline", new StructBinder(WorldlineStruct.class));
+        binders.put("path", new StructBinder(PathStruct.class));
+        binders.put("label", new StructBinder(LabelStruct.class));
     }
 
     public String id = null;
@@ -105,40 +71,6 @@ public abstract class Struct
      */
     abstract public void relativeTo(Frame prime);
 
-    /**
-     * Get all the fields in a Struct subclass and put them into a HashMap,
-     * indexed by the field name.
-     *
-     * @param cls The class of the Struct subclass.
-     * @return The fields in a HashMap.
-     */
-    static private HashMap<String, Field> getFields(Class<?> cls)
-    {
-        Field[] fields = cls.getFields();
-        HashMap<String, Field> fieldMap = new HashMap<>();
-        for (Field field : fields) {
-            fieldMap.put(field.getName(), field);
-        }
-        return fieldMap;
-    }
-
-    /**
-     * Get all the methods in a Struct subclass and put them into a HashMap,
-     * indexed by the method name.
-     *
-     * @param cls The class of the Struct subclass.
-     * @return The methods in a HashMap.
-     */
-    static private HashMap<String, Method> getMethods(Class<?> cls)
-    {
-        Method[] methods = cls.getMethods();
-        HashMap<String, Method> methodMap = new HashMap<>();
-        for (Method method : methods) {
-            methodMap.put(method.getName(), method);
-        }
-        return methodMap;
-    }
-
     /**
      * Generic range checking for integer fields.This can be used as a helper
      * method for implementing range checks in subclasses.
@@ -193,26 +125,10 @@ public abstract class Struct
      */
     static public Struct createNewStruct(HCodeEngine engine, String cmdName, PropertyList list)
     {
-        try {
-
-            // Get the Struct class for this command
-
-            String capCmdName = cmdName.substring(0, 1).toUpperCase() + cmdName.substring(1);
-            String cmdStructName = capCmdName + "Struct";
-            Class<?> cmdStructClass = Class.forName("org.freixas.gamma.execution.lcode." + cmdStructName);
-
-            // Call the constructor to create a new instance
-
-            Constructor<?> cmdStructConstructor = cmdStructClass.getConstructor();
-            Struct cmdStruct = (Struct)cmdStructConstructor.newInstance();
-
-            initializeStruct(engine, cmdStruct, cmdName, list);
-
-            return cmdStruct;
-        }
-        catch (ClassNotFoundException | IllegalAccessException | IllegalArgumentException | InstantiationException | NoSuchMethodException | SecurityException | InvocationTargetException e) {
-            throw new ProgrammingException("Struct.createNewStruct()", e);
-        }
+        StructBinder binder = getBinder(cmdName);
+        Struct cmdStruct = binder.newStruct();
+        binder.initialize(engine, cmdStruct, cmdName, list);
+        return cmdStruct;
     }
 
     /**
@@ -226,160 +142,21 @@ public abstract class Struct
      */
     static public void initializeStruct(HCodeEngine engine, Struct cmdStruct, String cmdName, PropertyList list)
     {
-        try {
-            String capCmdName = cmdName.substring(0, 1).toUpperCase() + cmdName.substring(1);
-            String cmdStructName = capCmdName + "Struct";
-
-            // Get all the command struct's fields and methods
-
-            HashMap<String, Field> fieldMap = allFields.get(cmdStructName);
-            HashMap<String, Method> methodMap = allMethods.get(cmdStructName);
-
-            // Get all the style struct's fields
-
-            HashMap<String, Field> styleFieldMap = allFields.get("StyleStruct");
-
-            // Go through the property list
-
-            for (int i = 0; i < list.size(); i++) {
-                Property property = list.getProperty(i);
-                String propertyName = property.getName();
-                if (propertyName.equals("class")) propertyName = "cls";
-
-                // This is a command property, set it
-
-                if (fieldMap.containsKey(propertyName)) {
-                    Field field = fieldMap.get(propertyName);
-                    setValue(engine, cmdStruct, fieldMap, field, property, methodMap);
-                }
-
-                // This is not a command property
-
-                else {
-                    throw new ExecutionException("Invalid property '" + propertyName + "' for command '" + cmdName + "'");
-                }
-            }
-
-            // Check for missing required properties
-            // We have a missing property when a field ending with "Set" is false
-
-            Set<String> fieldNames = fieldMap.keySet();
-            for (String fieldName : fieldNames) {
-                if (fieldName.matches(".*Set$")) {
-                    Field field = fieldMap.get(fieldName);
-                    if (!field.getBoolean(cmdStruct)) {
-                        String realFieldName = fieldName.substring(0, fieldName.length() - 3);
-                        throw new ExecutionException("Required property '" + realFieldName + "' is missing");
-                    }
-                }
-            }
-        }
-        catch (InvocationTargetException e) {
-            Throwable ex = e.getCause();
-            engine.throwGammaException(ex);
-        }
-        catch (IllegalAccessException | IllegalArgumentException e) {
-            throw new ProgrammingException("Struct.initializeStruct()", e);
-        }
+        getBinder(cmdName).initialize(engine, cmdStruct, cmdName, list);
     }
 
-    static private void setValue(
-        HCodeEngine engine,
-        Object instance,
-        HashMap<String, Field> fieldMap, Field field,
-        Property property,
-        HashMap<String, Method> methodMap)
-        throws IllegalArgumentException, IllegalAccessException, InvocationTargetException
+    /**
+     * Get the binder for the structure used by a command.
+     *
+     * @param cmdName The name of the command.
+     * @return The binder.
+     */
+    static private StructBinder getBinder(String cmdName)
     {
-        String propertyName = property.getName();
-        Object propertyValue = property.getValue();
-
-        // The Field and Property are of the same type or the Field is a
-        // super-class of Property
-
-        if (field.getType().isAssignableFrom(propertyValue.getClass())) {
-
-            // If the property value can be changed, we need to store a copy
-
-            if (propertyValue instanceof ExecutionMutable executionMutable) {
-                field.set(instance, executionMutable.createCopy());
-            }
-
-            // If it is immutable (or a primitive), we can store a reference
-
-            else {
-                field.set(instance, propertyValue);
-            }
-        }
-
-        // Field is a string or a subclass of String
-        // Property value can be a Double or any Displayable
-
-        else if (String.class.isAssignableFrom(field.getType())) {
-            if (propertyValue instanceof Double dbl) {
-                field.set(instance, engine.toDisplayableString(dbl));
-            }
-            else if (propertyValue instanceof Displayable displayable) {
-                field.set(instance, displayable.toDisplayableString(engine));
-            }
-            else {
-                throw new ExecutionException("Property " + propertyName + "'s value is of the wrong type");
-            }
-        }
-
-        // Property value is a Double or a subclass of Double
-        // Field can be a double, int, color, or boolean
-
-        else if (Double.class.isAssignableFrom(propertyValue.getClass())) {
-            double dbl = (Double)propertyValue;
-            if (field.getType() == double.class) {
-                field.setDouble(instance, dbl);
-            }
-            else if (field.getType() == int.class) {
-                field.setInt(instance, Util.toInt(dbl));
-            }
-            else if (field.getType() == boolean.class) {
-                field.setBoolean(instance, dbl != 0);
-            }
-            else {
-                throw new ExecutionException("Property " + propertyName + "'s value is of the wrong type");
-            }
-        }
-
-        // Property is an Observer or subclass of Observer
-        // Field can be a Frame
-
-        else if (Observer.class.isAssignableFrom(propertyValue.getClass())) {
-            Observer observer = (Observer)propertyValue;
-            if (field.getType() == Frame.class) {
-                field.set(instance, new Frame(observer));
-            }
-            else {
-                throw new ExecutionException("Property " + propertyName + "'s value is of the wrong type");
-            }
-        }
-
-        else {
-           throw new ExecutionException("Property " + propertyName + "'s value is of the wrong type");
-        }
-
-        // Check to see if this is a required field
-        // If so, mark it off as having been set
-
-        String fieldSetName = propertyName + "Set";
-        if (fieldMap.containsKey(fieldSetName)) {
-            Field fieldSet = fieldMap.get(fieldSetName);
-            fieldSet.setBoolean(instance, true);
-        }
-
-        // For fields of type Integer, Double, we may have to handle
-        // min/max values. Look for methods with the same name as the property
-        // and ending with "CheckRange".
-
-        String methodRangeCheckName = propertyName + "RangeCheck";
-        if (methodMap.containsKey(methodRangeCheckName)) {
-            Method methodRangeCheck = methodMap.get(methodRangeCheckName);
-            methodRangeCheck.invoke(instance);
+        StructBinder binder = binders.get(cmdName);
+        if (binder == null) {
+            throw new ProgrammingException("Struct.getBinder(): No structure for command '" + cmdName + "'");
         }
+        return binder;
     }
 }
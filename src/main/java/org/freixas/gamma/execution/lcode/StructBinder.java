@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2021 Antonio Freixas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.execution.lcode;
+
+import org.freixas.gamma.ProgrammingException;
+import org.freixas.gamma.execution.ExecutionException;
+import org.freixas.gamma.execution.HCodeEngine;
+import org.freixas.gamma.math.Util;
+import org.freixas.gamma.value.Displayable;
+import org.freixas.gamma.value.ExecutionMutable;
+import org.freixas.gamma.value.Frame;
+import org.freixas.gamma.value.Observer;
+import org.freixas.gamma.value.Property;
+import org.freixas.gamma.value.PropertyList;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * A StructBinder creates and initializes the structures of one Struct
+ * subclass. Each public field of the structure is a property that can be
+ * set from a command's property list.
+ * <p>
+ * The binder is built once per Struct subclass. For each field, it chooses
+ * the conversion from a property value to the field's type and binds a
+ * method handle that sets the field. It also binds the field's range check
+ * method, if any, and the "Set" field that records that a required
+ * property was given. Creating and initializing a structure then needs
+ * neither reflection nor name matching.
+ *
+ * @author Antonio Freixas
+ */
+final class StructBinder
+{
+    static private final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    /**
+     * Converts a property value and stores it in a field.
+     */
+    @FunctionalInterface
+    private interface Setter
+    {
+        void set(HCodeEngine engine, Struct struct, String propertyName, Object value) throws Throwable;
+    }
+
+    /**
+     * Everything needed to set one property.
+     */
+    static private final class Binding
+    {
+        final Setter setter;
+        final MethodHandle markSet;
+        final MethodHandle rangeCheck;
+
+        Binding(Setter setter, MethodHandle markSet, MethodHandle rangeCheck)
+        {
+            this.setter = setter;
+            this.markSet = markSet;
+            this.rangeCheck = rangeCheck;
+        }
+    }
+
+    private final MethodHandle constructor;
+    private final HashMap<String, Binding> bindings;
+    private final MethodHandle[] requiredChecks;
+    private final String[] requiredNames;
+
+    /**
+     * Create the binder for a Struct subclass.
+     *
+     * @param cls The Struct subclass.
+     */
+    StructBinder(Class<? extends Struct> cls)
+    {
+        try {
+            constructor = lookup.findConstructor(cls, MethodType.methodType(void.class))
+                .asType(MethodType.methodType(Struct.class));
+
+            HashMap<String, Field> fields = new HashMap<>();
+            for (Field field : cls.getFields()) {
+                if (!Modifier.isStatic(field.getModifiers())) fields.put(field.getName(), field);
+            }
+            HashMap<String, Method> methods = new HashMap<>();
+            for (Method method : cls.getMethods()) {
+                if (method.getParameterCount() == 0) methods.put(method.getName(), method);
+            }
+
+            bindings = new HashMap<>();
+            ArrayList<MethodHandle> checks = new ArrayList<>();
+            ArrayList<String> names = new ArrayList<>();
+
+            for (Field field : fields.values()) {
+                String name = field.getName();
+
+                // A boolean field whose name ends with "Set" marks a required
+                // property
+
+                MethodHandle markSet = null;
+                Field setField = fields.get(name + "Set");
+                if (setField != null && setField.getType() == boolean.class) {
+                    markSet = lookup.unreflectSetter(setField)
+                        .asType(MethodType.methodType(void.class, Struct.class, boolean.class));
+                }
+                if (name.endsWith("Set") && name.length() > 3 && field.getType() == boolean.class) {
+                    checks.add(lookup.unreflectGetter(field)
+                        .asType(MethodType.methodType(boolean.class, Struct.class)));
+                    names.add(name.substring(0, name.length() - 3));
+                }
+
+                // For fields of type int or double, we may have to handle
+                // min/max values. These are checked by a method with the
+                // same name as the property and ending with "RangeCheck"
+
+                MethodHandle rangeCheck = null;
+                Method method = methods.get(name + "RangeCheck");
+                if (method != null) {
+                    rangeCheck = lookup.unreflect(method)
+                        .asType(MethodType.methodType(void.class, Struct.class));
+                }
+
+                bindings.put(name, new Binding(createSetter(field), markSet, rangeCheck));
+            }
+
+            requiredChecks = checks.toArray(new MethodHandle[0]);
+            requiredNames = names.toArray(new String[0]);
+        }
+        catch (IllegalAccessException | NoSuchMethodException e) {
+            throw new ProgrammingException("StructBinder: Can't bind " + cls.getSimpleName(), e);
+        }
+    }
+
+    /**
+     * Create the setter for a field. The conversions are the same for all
+     * fields of the same type, so the choice is made here rather than each
+     * time a property is set.
+     *
+     * @param field The field.
+     * @return The setter.
+     * @throws IllegalAccessException If the field can't be set.
+     */
+    static private Setter createSetter(Field field) throws IllegalAccessException
+    {
+        Class<?> type = field.getType();
+        MethodHandle handle = lookup.unreflectSetter(field);
+
+        // Property value is a Double
+        // Field can be a double, int, or boolean
+
+        if (type == double.class) {
+            MethodHandle set = handle.asType(MethodType.methodType(void.class, Struct.class, double.class));
+            return (engine, struct, propertyName, value) -> {
+                if (!(value instanceof Double dbl)) throw wrongType(propertyName);
+                set.invokeExact(struct, (double)dbl);
+            };
+        }
+        if (type == int.class) {
+            MethodHandle set = handle.asType(MethodType.methodType(void.class, Struct.class, int.class));
+            return (engine, struct, propertyName, value) -> {
+                if (!(value instanceof Double dbl)) throw wrongType(propertyName);
+                set.invokeExact(struct, Util.toInt(dbl));
+            };
+        }
+        if (type == boolean.class) {
+            MethodHandle set = handle.asType(MethodType.methodType(void.class, Struct.class, boolean.class));
+            return (engine, struct, propertyName, value) -> {
+                if (!(value instanceof Double dbl)) throw wrongType(propertyName);
+                set.invokeExact(struct, dbl != 0);
+            };
+        }
+        if (type.isPrimitive()) {
+            return (engine, struct, propertyName, value) -> { throw wrongType(propertyName); };
+        }
+
+        MethodHandle set = handle.asType(MethodType.methodType(void.class, Struct.class, Object.class));
+        boolean isString = String.class.isAssignableFrom(type);
+        boolean isFrame = type == Frame.class;
+
+        return (engine, struct, propertyName, value) -> {
+
+            // The field and the property are of the same type or the field
+            // is a super-class of the property. If the property value can be
+            // changed, we need to store a copy. If it is immutable, we can
+            // store a reference
+
+            if (type.isInstance(value)) {
+                Object stored = value instanceof ExecutionMutable executionMutable ?
+                    executionMutable.createCopy() : value;
+                set.invokeExact(struct, stored);
+            }
+
+            // Field is a string. Property value can be a Double or any
+            // Displayable
+
+            else if (isString) {
+                if (value instanceof Double dbl) {
+                    set.invokeExact(struct, (Object)engine.toDisplayableString(dbl));
+                }
+                else if (value instanceof Displayable displayable) {
+                    set.invokeExact(struct, (Object)displayable.toDisplayableString(engine));
+                }
+                else {
+                    throw wrongType(propertyName);
+                }
+            }
+
+            // Field is a Frame. Property value can be an Observer
+
+            else if (isFrame && value instanceof Observer observer) {
+                set.invokeExact(struct, (Object)new Frame(observer));
+            }
+
+            else {
+                throw wrongType(propertyName);
+            }
+        };
+    }
+
+    static private ExecutionException wrongType(String propertyName)
+    {
+        return new ExecutionException("Property " + propertyName + "'s value is of the wrong type");
+    }
+
+    /**
+     * Create a new structure with its default values.
+     *
+     * @return The new structure.
+     */
+    Struct newStruct()
+    {
+        try {
+            return (Struct)constructor.invokeExact();
+        }
+        catch (RuntimeException | Error e) {
+            throw e;
+        }
+        catch (Throwable e) {
+            throw new ProgrammingException("StructBinder.newStruct()", e);
+        }
+    }
+
+    /**
+     * Initialize a structure using the values in a property list.
+     *
+     * @param engine The h-code engine.
+     * @param struct The structure to initialize.
+     * @param cmdName The name of the command.
+     * @param list The property list used to initialize the structure.
+     */
+    void initialize(HCodeEngine engine, Struct struct, String cmdName, PropertyList list)
+    {
+        try {
+            for (int i = 0; i < list.size(); i++) {
+                Property property = list.getProperty(i);
+                String propertyName = property.getName();
+                if (propertyName.equals("class")) propertyName = "cls";
+
+                Binding binding = bindings.get(propertyName);
+                if (binding == null) {
+                    throw new ExecutionException("Invalid property '" + propertyName + "' for command '" + cmdName + "'");
+                }
+
+                binding.setter.set(engine, struct, property.getName(), property.getValue());
+                if (binding.markSet != null) binding.markSet.invokeExact(struct, true);
+                if (binding.rangeCheck != null) binding.rangeCheck.invokeExact(struct);
+            }
+
+            // Check for missing required properties
+
+            for (int i = 0; i < requiredChecks.length; i++) {
+                if (!(boolean)requiredChecks[i].invokeExact(struct)) {
+                    throw new ExecutionException("Required property '" + requiredNames[i] + "' is missing");
+                }
+            }
+        }
+        catch (RuntimeException | Error e) {
+            throw e;
+        }
+        catch (Throwable e) {
+            throw new ProgrammingException("StructBinder.initialize()", e);
+        }
+    }
+
+}
@@ -18,6 +18,9 @@ package org.freixas.gamma.execution.lcode;
 
 import org.freixas.gamma.css.value.StyleStruct;
 import org.freixas.gamma.drawing.Context;
+import org.freixas.gamma.value.WorldlineEndpoint;
+import org.freixas.gamma.value.IntervalObserver;
+import org.freixas.gamma.value.Bounds;
 import org.freixas.gamma.drawing.Worldline;
 
 /**
@@ -35,4 +38,25 @@ public class WorldlineCommandExec extends CommandExec
         Worldline.draw(context, struct, styles);
     }
 
+    @Override
+    public Bounds getBounds(Struct cmdStruct, StyleStruct styles)
+    {
+        // Only an interval observer is bounded. Nothing moves faster than
+        // light, so the worldline stays within dt of the starting x value
+
+        if (((WorldlineStruct)cmdStruct).observer instanceof IntervalObserver intervalObserver) {
+            WorldlineEndpoint min = intervalObserver.getMin();
+            WorldlineEndpoint max = intervalObserver.getMax();
+            double dt = max.t - min.t;
+            return new Bounds(min.x - dt, min.t, min.x + dt, max.t);
+        }
+        return null;
+    }
+
+    @Override
+    public double getPadding(Struct cmdStruct, StyleStruct styles)
+    {
+        return getLinePadding(styles);
+    }
+
 }
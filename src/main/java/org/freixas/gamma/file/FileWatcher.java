@@ -287,6 +287,10 @@ public class FileWatcher extends Thread
 
                                     if (modTime > lastModTime + 1000) {
                                         // System.err.println("Modified file detected\n");
+                                        // The FX thread may be busy running the
+                                        // old script, so stop it from here
+
+                                        window.cancelScript();
                                         Platform.runLater(window::reloadModifiedMainScript);
                                         lastModTime = modTime;
                                     }
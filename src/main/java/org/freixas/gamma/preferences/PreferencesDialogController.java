@@ -51,6 +51,10 @@ public class PreferencesDialogController implements Initializable
     @FXML
     private TextField editorCommand;
     @FXML
+    private TextField timeLimit;
+    @FXML
+    private TextField loopLimit;
+    @FXML
     private DialogPane dialogPane;
     @FXML
     private CheckBox greetings;
@@ -105,6 +109,38 @@ public class PreferencesDialogController implements Initializable
 
         String cmd = PreferencesManager.getEditorCommand();
         editorCommand.setText(cmd);
+
+        ChangeListener<String> validateCount = (obj, oldText, text) -> {
+            StringProperty prop = (StringProperty)obj;
+            TextField field = (TextField)prop.getBean();
+            if (parseCount(text) >= 0) {
+                field.setStyle("-fx-text-fill: black;");
+            }
+            else {
+                field.setStyle("-fx-text-fill: red;");
+            }
+        };
+        timeLimit.textProperty().addListener(validateCount);
+        loopLimit.textProperty().addListener(validateCount);
+
+        timeLimit.setText(Integer.toString(PreferencesManager.getScriptTimeLimit()));
+        loopLimit.setText(Long.toString(PreferencesManager.getScriptLoopLimit()));
+    }
+
+    /**
+     * Parse a non-negative whole number.
+     *
+     * @param text The text to parse.
+     * @return The number, or -1 if the text isn't a non-negative whole number.
+     */
+    private long parseCount(String text)
+    {
+        try {
+            return Math.max(-1, Long.parseLong(text.trim()));
+        }
+        catch (NumberFormatException e) {
+            return -1;
+        }
     }
 
 
@@ -201,6 +237,12 @@ public class PreferencesDialogController implements Initializable
 
         String cmd = editorCommand.getText();
         PreferencesManager.setEditorCommand(cmd != null && cmd.length() > 0? cmd : "");
+
+        long seconds = parseCount(timeLimit.getText());
+        if (seconds >= 0) PreferencesManager.setScriptTimeLimit((int)Math.min(seconds, Integer.MAX_VALUE));
+
+        long iterations = parseCount(loopLimit.getText());
+        if (iterations >= 0) PreferencesManager.setScriptLoopLimit(iterations);
     }
 
 }
@@ -38,6 +38,9 @@ public class PreferencesManager
     static private final boolean IMAGE_PROGRESSIVE = false;
     static private final int IMAGE_PPI = 96;
 
+    static private final int SCRIPT_TIME_LIMIT = 0;
+    static private final long SCRIPT_LOOP_LIMIT = 10000000;
+
     // **********************************************************************
     // *
     // * Direct Preferences Access
@@ -165,6 +168,30 @@ public class PreferencesManager
         userPreferences.putInt("IMAGE_PPI", dpi);
     }
 
+    // SCRIPT TIME LIMIT
+
+    static public int getScriptTimeLimit()
+    {
+        return userPreferences.getInt("SCRIPT_TIME_LIMIT", SCRIPT_TIME_LIMIT);
+    }
+
+    static public void setScriptTimeLimit(int seconds)
+    {
+        userPreferences.putInt("SCRIPT_TIME_LIMIT", seconds);
+    }
+
+    // SCRIPT LOOP LIMIT
+
+    static public long getScriptLoopLimit()
+    {
+        return userPreferences.getLong("SCRIPT_LOOP_LIMIT", SCRIPT_LOOP_LIMIT);
+    }
+
+    static public void setScriptLoopLimit(long iterations)
+    {
+        userPreferences.putLong("SCRIPT_LOOP_LIMIT", iterations);
+    }
+
     // Other preferences to be added:
     //
     // * Export video format
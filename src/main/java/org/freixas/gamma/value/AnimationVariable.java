@@ -26,7 +26,7 @@ public class AnimationVariable extends DynamicVariable implements ExecutionImmut
     private final double initialValue;
     private final double finalValue;
     private final double stepSize;
-    private double currentValue;
+    private volatile double currentValue;
 
     // **********************************************************************
     // *
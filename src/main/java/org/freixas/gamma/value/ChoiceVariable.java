@@ -33,7 +33,7 @@ public class ChoiceVariable extends DisplayVariable
     private final String[] choices;
     private final String label;
     private final boolean restart;
-    private int currentValue;
+    private volatile int currentValue;
 
     private final DiagramEngine diagramEngine;
 
@@ -31,7 +31,7 @@ public class RangeVariable extends DisplayVariable
     private final double minValue;
     private final double maxValue;
     private final String label;
-    private double currentValue;
+    private volatile double currentValue;
 
     private final DiagramEngine diagramEngine;
 
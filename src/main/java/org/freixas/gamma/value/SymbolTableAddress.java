@@ -19,7 +19,8 @@ package org.freixas.gamma.value;
 import org.freixas.gamma.execution.SymbolTable;
 
 /**
- * This class provides indirect access to a value in the symbol table.
+ * This class provides indirect access to a value in the symbol table. The
+ * value is accessed through the symbol's slot.
  *
  * @author Antonio Freixas
  */
@@ -27,6 +28,7 @@ public class SymbolTableAddress extends Address implements ExecutionImmutable
 {
     private final SymbolTable table;
     private final String name;
+    private final int slot;
 
     // **********************************************************************
     // *
@@ -41,17 +43,40 @@ public class SymbolTableAddress extends Address implements ExecutionImmutable
      * @param name The name of the variable.
      */
     public SymbolTableAddress(SymbolTable table, String name)
+    {
+        this(table, name, table.getSymbolIndex().getSlot(name));
+    }
+
+    /**
+     * Create a symbol table address for a symbol whose slot is known.
+     *
+     * @param table The symbol table.
+     * @param name The name of the variable.
+     * @param slot The slot of the variable.
+     */
+    public SymbolTableAddress(SymbolTable table, String name, int slot)
     {
         this.table = table;
         this.name = name;
+        this.slot = slot;
     }
 
     // **********************************************************************
     // *
-    // * Getter
+    // * Getters
     // *
     // **********************************************************************
 
+    /**
+     * Get the symbol table for which this object is an address.
+     *
+     * @return The symbol table for which this object is an address.
+     */
+    public SymbolTable getSymbolTable()
+    {
+        return table;
+    }
+
     /**
      * Get the name of the symbol for which this object is an address.
      *
@@ -62,6 +87,16 @@ public class SymbolTableAddress extends Address implements ExecutionImmutable
         return name;
     }
 
+    /**
+     * Get the slot of the symbol for which this object is an address.
+     *
+     * @return The slot of the symbol for which this object is an address.
+     */
+    public int getSlot()
+    {
+        return slot;
+    }
+
     // **********************************************************************
     // *
     // * Address Support
@@ -71,18 +106,18 @@ public class SymbolTableAddress extends Address implements ExecutionImmutable
     @Override
     public boolean exists()
     {
-        return table.directContains(name);
+        return table.directContains(slot);
     }
 
     @Override
     public Object getValue()
     {
-        return table.get(name);
+        return table.get(slot);
     }
 
     @Override
     public void setValue(Object value)
     {
-        table.put(name, value);
+        table.put(slot, value);
     }
 }
@@ -30,7 +30,7 @@ public class ToggleVariable extends DisplayVariable
     private final boolean initialValue;
     private final String label;
     private final boolean restart;
-    private boolean currentValue;
+    private volatile boolean currentValue;
 
     private final DiagramEngine diagramEngine;
 
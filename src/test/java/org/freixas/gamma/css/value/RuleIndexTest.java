@@ -0,0 +1,145 @@
+/*
+ *  Gamma - A Minkowski Spacetime Diagram Generator
+ *  Copyright (C) 2021  by Antonio Freixas
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.css.value;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Antonio Freixas
+ */
+public class RuleIndexTest
+{
+    static private final String[] COMMANDS = { "line", "label", "event", "axes" };
+    static private final String[] IDS = { "a", "b", "c" };
+    static private final String[] CLASSES = { "p", "q", "r", "s" };
+
+    public RuleIndexTest()
+    {
+    }
+
+    @BeforeClass
+    static public void setUpClass()
+    {
+    }
+
+    @AfterClass
+    static public void tearDownClass()
+    {
+    }
+
+    @Before
+    public void setUp()
+    {
+    }
+
+    @After
+    public void tearDown()
+    {
+    }
+
+    /**
+     * Test that matching through the index gives the same rules, in the
+     * same order, as scoring every rule.
+     */
+    @Test
+    public void testMatch()
+        throws Exception
+    {
+        System.out.println("match");
+        Random random = new Random(1);
+
+        ArrayList<Rule> rules = new ArrayList<>();
+        rules.add(new Rule());
+        for (int i = 0; i < 300; i++) {
+            Rule rule = new Rule();
+            int numSelectors = 1 + random.nextInt(3);
+            for (int j = 0; j < numSelectors; j++) {
+                rule.addSelector(new Selector(randomSelector(random)));
+            }
+            rules.add(rule);
+        }
+        RuleIndex index = new RuleIndex(rules);
+
+        for (String commandName : COMMANDS) {
+            for (int i = 0; i < 50; i++) {
+                String id = random.nextBoolean() ? IDS[random.nextInt(IDS.length)] : null;
+                String[] classes = null;
+                if (random.nextBoolean()) {
+                    classes = Arrays.stream(CLASSES).filter(c -> random.nextBoolean()).toArray(String[]::new);
+                    if (classes.length == 0) classes = null;
+                }
+                assertEquals(scoreAll(rules, commandName, id, classes), index.match(commandName, id, classes));
+            }
+        }
+    }
+
+    /**
+     * Test that rules with the same score stay in stylesheet order.
+     */
+    @Test
+    public void testStableOrder()
+        throws Exception
+    {
+        System.out.println("stableOrder");
+        ArrayList<Rule> rules = new ArrayList<>();
+        String[] names = { "line.p", "line", ".p", "line.p", "#a", "line" };
+        for (String name : names) {
+            Rule rule = new Rule();
+            rule.addSelector(new Selector(name));
+            rules.add(rule);
+        }
+
+        List<Rule> matched = new RuleIndex(rules).match("line", null, new String[] { "p" });
+        assertEquals(List.of(rules.get(1), rules.get(5), rules.get(2), rules.get(0), rules.get(3)), matched);
+    }
+
+    static private String randomSelector(Random random)
+    {
+        String name = "";
+        int kind = random.nextInt(8);
+        if ((kind & 1) != 0) name += COMMANDS[random.nextInt(COMMANDS.length)];
+        if ((kind & 2) != 0) name += "#" + IDS[random.nextInt(IDS.length)];
+        if ((kind & 4) != 0 || name.isEmpty()) {
+            int numClasses = 1 + random.nextInt(2);
+            for (int i = 0; i < numClasses; i++) name += "." + CLASSES[random.nextInt(CLASSES.length)];
+        }
+        return name;
+    }
+
+    static private List<Rule> scoreAll(List<Rule> rules, String commandName, String id, String[] classes)
+    {
+        ArrayList<Rule> matched = new ArrayList<>();
+        for (int score = 0; score < 2000; score++) {
+            for (Rule rule : rules) {
+                if (rule.getMatchScore(commandName, id, classes) == score) matched.add(rule);
+            }
+        }
+        return matched;
+    }
+
+}
@@ -0,0 +1,203 @@
+/*
+ *  Gamma - A Minkowski Spacetime Diagram Generator
+ *  Copyright (C) 2021  by Antonio Freixas
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.css.value;
+
+import java.util.Random;
+import javafx.scene.paint.Color;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Antonio Freixas
+ */
+public class StylesheetTest
+{
+
+    public StylesheetTest()
+    {
+    }
+
+    @BeforeClass
+    static public void setUpClass()
+    {
+    }
+
+    @AfterClass
+    static public void tearDownClass()
+    {
+    }
+
+    @Before
+    public void setUp()
+    {
+    }
+
+    @After
+    public void tearDown()
+    {
+    }
+
+    /**
+     * Test that a StyleStruct is reused for the same command, id, class and
+     * style, and that the cache counts its hits and misses.
+     */
+    @Test
+    public void testStyleStructCache()
+        throws Exception
+    {
+        System.out.println("styleStructCache");
+        Stylesheet stylesheet = Stylesheet.createStylesheet(null, "line { color: red; } .a { color: blue; }");
+        stylesheet.setCacheEnabled(true);
+
+        StyleStruct styles1 = stylesheet.createStyleStruct(null, "line", null, null, null);
+        StyleStruct styles2 = stylesheet.createStyleStruct(null, "line", null, null, null);
+        StyleStruct styles3 = stylesheet.createStyleStruct(null, "line", null, "a", null);
+
+        assertSame(styles1, styles2);
+        assertEquals(Color.RED, styles1.color);
+        assertEquals(Color.BLUE, styles3.color);
+        assertEquals(1, stylesheet.getCacheHits());
+        assertEquals(2, stylesheet.getCacheMisses());
+    }
+
+    /**
+     * Test that inline styles have the highest priority and that each
+     * distinct inline style gets its own StyleStruct.
+     */
+    @Test
+    public void testInlineStyle()
+        throws Exception
+    {
+        System.out.println("inlineStyle");
+        Stylesheet stylesheet = Stylesheet.createStylesheet(null, "line { color: red; }");
+        stylesheet.setCacheEnabled(true);
+
+        StyleStruct styles1 = stylesheet.createStyleStruct(null, "line", null, null, "color: green");
+        StyleStruct styles2 = stylesheet.createStyleStruct(null, "line", null, null, "color: blue");
+        StyleStruct styles3 = stylesheet.createStyleStruct(null, "line", null, null, "color: green");
+
+        assertEquals(Color.GREEN, styles1.color);
+        assertEquals(Color.BLUE, styles2.color);
+        assertSame(styles1, styles3);
+    }
+
+    /**
+     * Test that changing the arrow style changes a copy and not the
+     * original.
+     */
+    @Test
+    public void testWithArrow()
+    {
+        System.out.println("withArrow");
+        StyleStruct styles = new StyleStruct();
+        styles.arrow = StyleProperties.Arrow.BOTH;
+
+        assertSame(styles, styles.withArrow(StyleProperties.Arrow.BOTH));
+
+        StyleStruct copy = styles.withArrow(StyleProperties.Arrow.NONE);
+        assertNotSame(styles, copy);
+        assertEquals(StyleProperties.Arrow.NONE, copy.arrow);
+        assertEquals(StyleProperties.Arrow.BOTH, styles.arrow);
+        assertSame(styles.color, copy.color);
+    }
+
+    /**
+     * Test that the cache discards the least recently used entry when it is
+     * full.
+     */
+    @Test
+    public void testCacheBounded()
+    {
+        System.out.println("cacheBounded");
+        StyleCache<String> cache = new StyleCache<>(2);
+        cache.put("a", "A");
+        cache.put("b", "B");
+        assertEquals("A", cache.get("a"));
+        cache.put("c", "C");
+
+        assertEquals(2, cache.size());
+        assertEquals("A", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("C", cache.get("c"));
+        assertEquals(3, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    /**
+     * Test that matching a layered stylesheet gives the same rules, in the
+     * same order, as matching a stylesheet with all the layers' rules.
+     */
+    @Test
+    public void testLayeredMatch()
+        throws Exception
+    {
+        System.out.println("layeredMatch");
+        Random random = new Random(2);
+        String[] selectors = { "line", "label", ".p", ".q", "#a", "line.p", "label#a", ".p.q", "line#a.q" };
+
+        Stylesheet[] layers = new Stylesheet[3];
+        Stylesheet flat = new Stylesheet();
+        for (int i = 0; i < layers.length; i++) {
+            layers[i] = new Stylesheet();
+            for (int j = 0; j < 20; j++) {
+                Rule rule = new Rule();
+                rule.addSelector(new Selector(selectors[random.nextInt(selectors.length)]));
+                layers[i].addRule(rule);
+            }
+            flat.addStylesheet(layers[i]);
+        }
+        Stylesheet layered = Stylesheet.createLayeredStylesheet(layers[0], null, Stylesheet.createLayeredStylesheet(layers[1], layers[2]));
+
+        String[][] classLists = { null, { "p" }, { "q" }, { "p", "q" } };
+        for (String commandName : new String[] { "line", "label", "event" }) {
+            for (String id : new String[] { null, "a" }) {
+                for (String[] classes : classLists) {
+                    assertEquals(
+                        flat.match(commandName, id, classes).getRules(),
+                        layered.match(commandName, id, classes).getRules());
+                }
+            }
+        }
+    }
+
+    /**
+     * Test that layering a stylesheet over the default stylesheet doesn't
+     * change it and that the layered stylesheet is reused.
+     */
+    @Test
+    public void testLayeredStylesheet()
+        throws Exception
+    {
+        System.out.println("layeredStylesheet");
+        Stylesheet stylesheet = Stylesheet.createStylesheet(null, "grid { color: red; }");
+
+        Stylesheet layered1 = stylesheet.getLayeredStylesheet();
+        Stylesheet layered2 = stylesheet.getLayeredStylesheet();
+
+        assertSame(layered1, layered2);
+        assertEquals(1, stylesheet.getRules().size());
+        assertEquals(Color.RED, layered1.createStyleStruct(null, "grid", null, null, null).color);
+        assertEquals(Color.web("#3D3"), layered1.createStyleStruct(null, "hypergrid", null, null, null).color);
+    }
+
+}
@@ -0,0 +1,242 @@
+/*
+ *  Gamma - A Minkowski Spacetime Diagram Generator
+ *  Copyright (C) 2021  by Antonio Freixas
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.drawing;
+
+import java.util.ArrayList;
+import org.freixas.gamma.math.OffsetAcceleration;
+import org.freixas.gamma.value.Bounds;
+import org.freixas.gamma.value.Coordinate;
+import org.freixas.gamma.value.HyperbolicSegment;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Ignore;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Antonio Freixas
+ */
+public class HyperbolaTest
+{
+    static private final double CANVAS_SIZE = 1000.0;
+    static private final double[] INV_SCALES = { 0.001, 0.01, 0.1, 1.0, 10.0 };
+    static private final int REPETITIONS = 50;
+
+    public HyperbolaTest()
+    {
+    }
+
+    @BeforeClass
+    static public void setUpClass()
+    {
+    }
+
+    @AfterClass
+    static public void tearDownClass()
+    {
+    }
+
+    @Before
+    public void setUp()
+    {
+    }
+
+    @After
+    public void tearDown()
+    {
+    }
+
+    /**
+     * Test that the lines produced for a segment stay within the tolerance
+     * of the curve.
+     */
+    @Test
+    public void testTessellate()
+    {
+        System.out.println("test tessellate");
+
+        double[] accelerations = { -2.0, -0.1, 0.01, 1.0, 50.0 };
+        for (double a : accelerations) {
+            OffsetAcceleration curve = new OffsetAcceleration(a, 0.3, new Coordinate(2.0, -1.0), 0.0, 0.0);
+            HyperbolicSegment segment = new HyperbolicSegment(a, -40.0, 25.0, curve);
+
+            for (double tolerance : new double[] { 1.0, 0.01, 0.0001 }) {
+                ArrayList<Coordinate> vertices = tessellate(segment, tolerance);
+
+                // The vertices are in order and end at the end of the segment
+
+                for (int i = 1; i < vertices.size(); i++) {
+                    assertTrue(vertices.get(i).t > vertices.get(i - 1).t);
+                }
+                Coordinate last = vertices.get(vertices.size() - 1);
+                assertEquals(segment.getMax().t, last.t, 0.0);
+                assertEquals(segment.getMax().x, last.x, 0.0);
+
+                assertTrue(maxError(curve, vertices) <= tolerance * 1.000001);
+            }
+        }
+    }
+
+    /**
+     * Test that a nearly straight segment uses few lines.
+     */
+    @Test
+    public void testStraightSegment()
+    {
+        System.out.println("test tessellate straight segment");
+
+        OffsetAcceleration curve = new OffsetAcceleration(0.001, 0.0, new Coordinate(0.0, 0.0), 0.0, 0.0);
+        HyperbolicSegment segment = new HyperbolicSegment(0.001, 5000.0, 10000.0, curve);
+        ArrayList<Coordinate> vertices = tessellate(segment, 0.5);
+        assertTrue(vertices.size() < 10);
+    }
+
+    /**
+     * Compare the number of vertices, the time taken to compute them and the
+     * maximum error in screen units for the fixed step tessellation and the
+     * adaptive tessellation, at several zoom levels. This is a benchmark,
+     * not a test, so it is skipped in normal builds. Remove the @Ignore to
+     * run it.
+     */
+    @Test
+    @Ignore("Benchmark; run manually")
+    public void benchmarkTessellation()
+    {
+        System.out.println("benchmark tessellation");
+        System.out.println(String.format("  %-12s %10s %10s %10s %10s %10s %10s",
+            "", "invScale", "fixed", "adaptive", "fixed us", "adapt us", "adapt err"));
+
+        for (double invScale : INV_SCALES) {
+            double half = CANVAS_SIZE / 2.0 * invScale;
+            Bounds bounds = new Bounds(-half, -half, half, half);
+
+            // A single hyperbola through the origin
+
+            OffsetAcceleration curve = new OffsetAcceleration(1.0, 0.0, new Coordinate(0.0, 0.0), 0.0, 0.0);
+            ArrayList<HyperbolicSegment> segments = new ArrayList<>();
+            HyperbolicSegment segment = new HyperbolicSegment(1.0, -half, half, curve).intersect(bounds);
+            if (segment != null) segments.add(segment);
+            report("segment", invScale, segments);
+
+            // The right quadrant of a hypergrid
+
+            segments = new ArrayList<>();
+            double spacing = Math.pow(10, Math.ceil(Math.log10(Hypergrid.MIN_GRID_SIZE * invScale)));
+            for (double x = spacing; x <= half; x += spacing) {
+                double a = 1 / x;
+                OffsetAcceleration gridCurve = new OffsetAcceleration(a, 0, new Coordinate(x, 0.0), 0.0, 0.0);
+                segment = new HyperbolicSegment(a, -half, half, gridCurve).intersect(bounds);
+                if (segment != null) segments.add(segment);
+            }
+            report("hypergrid", invScale, segments);
+        }
+    }
+
+    private void report(String name, double invScale, ArrayList<HyperbolicSegment> segments)
+    {
+        double tolerance = Hyperbola.TOLERANCE * invScale;
+        double step = 5 * invScale;
+        int[] count = new int[1];
+
+        // Warm up both versions
+
+        for (int i = 0; i < REPETITIONS; i++) {
+            for (HyperbolicSegment segment : segments) {
+                fixedStep(segment, step, (x, t) -> count[0]++);
+                Hyperbola.tessellate(segment, tolerance, (x, t) -> count[0]++);
+            }
+        }
+
+        count[0] = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < REPETITIONS; i++) {
+            for (HyperbolicSegment segment : segments) {
+                fixedStep(segment, step, (x, t) -> count[0]++);
+            }
+        }
+        long fixedTime = (System.nanoTime() - start) / REPETITIONS;
+        int fixedCount = count[0] / REPETITIONS;
+
+        count[0] = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < REPETITIONS; i++) {
+            for (HyperbolicSegment segment : segments) {
+                Hyperbola.tessellate(segment, tolerance, (x, t) -> count[0]++);
+            }
+        }
+        long adaptiveTime = (System.nanoTime() - start) / REPETITIONS;
+        int adaptiveCount = count[0] / REPETITIONS;
+
+        double error = 0.0;
+        for (HyperbolicSegment segment : segments) {
+            error = Math.max(error, maxError(segment.getCurve(), tessellate(segment, tolerance)) / invScale);
+        }
+
+        System.out.println(String.format("  %-12s %10g %10d %10d %10d %10d %10.3f",
+            name, invScale, fixedCount, adaptiveCount, fixedTime / 1000, adaptiveTime / 1000, error));
+        assertTrue(error <= Hyperbola.TOLERANCE * 1.000001);
+    }
+
+    /**
+     * The original tessellation, which steps t by a fixed amount.
+     */
+    private void fixedStep(HyperbolicSegment segment, double step, Hyperbola.VertexSink sink)
+    {
+        OffsetAcceleration curve = segment.getCurve();
+        for (double t = segment.getMin().t + step; t <= segment.getMax().t; t += step) {
+            sink.lineTo(curve.tToX(t), t);
+        }
+        sink.lineTo(segment.getMax().x, segment.getMax().t);
+    }
+
+    private ArrayList<Coordinate> tessellate(HyperbolicSegment segment, double tolerance)
+    {
+        ArrayList<Coordinate> vertices = new ArrayList<>();
+        vertices.add(new Coordinate(segment.getMin().x, segment.getMin().t));
+        int count = Hyperbola.tessellate(segment, tolerance, (x, t) -> vertices.add(new Coordinate(x, t)));
+        assertEquals(vertices.size() - 1, count);
+        return vertices;
+    }
+
+    /**
+     * Find the largest distance between the curve and the lines between the
+     * vertices, by sampling the curve.
+     */
+    private double maxError(OffsetAcceleration curve, ArrayList<Coordinate> vertices)
+    {
+        double error = 0.0;
+        for (int i = 1; i < vertices.size(); i++) {
+            Coordinate p0 = vertices.get(i - 1);
+            Coordinate p1 = vertices.get(i);
+            double dx = p1.x - p0.x;
+            double dt = p1.t - p0.t;
+            double length = Math.sqrt(dx * dx + dt * dt);
+            if (length == 0.0) continue;
+            for (int j = 1; j < 20; j++) {
+                double t = p0.t + dt * j / 20.0;
+                double x = curve.tToX(t);
+                error = Math.max(error, Math.abs(dx * (t - p0.t) - dt * (x - p0.x)) / length);
+            }
+        }
+        return error;
+    }
+
+}
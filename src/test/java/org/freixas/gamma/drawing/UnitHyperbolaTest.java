@@ -0,0 +1,243 @@
+/*
+ *  Gamma - A Minkowski Spacetime Diagram Generator
+ *  Copyright (C) 2021  by Antonio Freixas
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.drawing;
+
+import java.util.ArrayList;
+import org.freixas.gamma.math.OffsetAcceleration;
+import org.freixas.gamma.value.Bounds;
+import org.freixas.gamma.value.Coordinate;
+import org.freixas.gamma.value.HyperbolicSegment;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Ignore;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Antonio Freixas
+ */
+public class UnitHyperbolaTest
+{
+    static private final double CANVAS_SIZE = 1000.0;
+    static private final double[] INV_SCALES = { 0.001, 0.01, 0.1, 1.0, 10.0 };
+    static private final int REPETITIONS = 50;
+
+    public UnitHyperbolaTest()
+    {
+    }
+
+    @BeforeClass
+    static public void setUpClass()
+    {
+    }
+
+    @AfterClass
+    static public void tearDownClass()
+    {
+    }
+
+    @Before
+    public void setUp()
+    {
+    }
+
+    @After
+    public void tearDown()
+    {
+    }
+
+    /**
+     * Test that the lines produced for a hypergrid hyperbola stay within the
+     * tolerance of the curve.
+     */
+    @Test
+    public void testTessellate()
+    {
+        System.out.println("test tessellate");
+
+        UnitHyperbola unitHyperbola = new UnitHyperbola();
+        double[] crossings = { -7.5, -0.3, 0.02, 1.0, 400.0 };
+        double[][] ranges = { { -10.0, 10.0 }, { 0.5, 3.0 }, { -1000.0, -2.0 } };
+
+        for (double x0 : crossings) {
+            OffsetAcceleration curve = new OffsetAcceleration(1 / x0, 0.0, new Coordinate(x0, 0.0), 0.0, 0.0);
+            for (double[] range : ranges) {
+                for (double tolerance : new double[] { 1.0, 0.01, 0.0001 }) {
+                    ArrayList<Coordinate> vertices = new ArrayList<>();
+                    vertices.add(new Coordinate(UnitHyperbola.tToX(x0, range[0]), range[0]));
+                    int count = unitHyperbola.tessellate(
+                        x0, range[0], range[1], tolerance, (x, t) -> vertices.add(new Coordinate(x, t)));
+                    assertEquals(vertices.size() - 1, count);
+
+                    // The vertices are on the curve, in order, and end at the
+                    // end of the range
+
+                    for (int i = 1; i < vertices.size(); i++) {
+                        assertTrue(vertices.get(i).t > vertices.get(i - 1).t);
+                        assertEquals(curve.tToX(vertices.get(i).t), vertices.get(i).x, 1.0E-9 * Math.abs(vertices.get(i).x));
+                    }
+                    assertEquals(range[1], vertices.get(vertices.size() - 1).t, 0.0);
+
+                    assertTrue(maxError(curve, vertices) <= tolerance * 1.000001);
+                }
+            }
+        }
+    }
+
+    /**
+     * Test that the unit hyperbola is only rebuilt for a finer tolerance or
+     * a longer range.
+     */
+    @Test
+    public void testRebuild()
+    {
+        System.out.println("test rebuild");
+
+        UnitHyperbola unitHyperbola = new UnitHyperbola();
+        Hyperbola.VertexSink sink = (x, t) -> {};
+
+        unitHyperbola.tessellate(1.0, -5.0, 5.0, 0.01, sink);
+        int size = unitHyperbola.getSize();
+        assertTrue(size > 0);
+
+        // Coarser tolerances, larger hyperbolas and shorter ranges reuse
+        // the same vertices
+
+        unitHyperbola.tessellate(1.0, -5.0, 5.0, 0.05, sink);
+        unitHyperbola.tessellate(3.0, -10.0, 10.0, 0.03, sink);
+        unitHyperbola.tessellate(-1.0, 0.0, 2.0, 0.002, sink);
+        assertEquals(size, unitHyperbola.getSize());
+
+        // A much finer tolerance or a longer range requires a rebuild
+
+        unitHyperbola.tessellate(1.0, -5.0, 5.0, 0.0001, sink);
+        assertTrue(unitHyperbola.getSize() > size);
+        size = unitHyperbola.getSize();
+
+        unitHyperbola.tessellate(1.0, -100.0, 5.0, 0.0001, sink);
+        assertTrue(unitHyperbola.getSize() > size);
+    }
+
+    /**
+     * Compare the number of vertices and the time taken to compute them for
+     * the right quadrant of a hypergrid, drawn from a separate curve for
+     * each hyperbola and drawn from the shared unit hyperbola, at several
+     * zoom levels. This is a benchmark, not a test, so it is skipped in
+     * normal builds. Remove the @Ignore to run it.
+     */
+    @Test
+    @Ignore("Benchmark; run manually")
+    public void benchmarkHypergrid()
+    {
+        System.out.println("benchmark hypergrid");
+        System.out.println(String.format("  %10s %10s %10s %10s %10s",
+            "invScale", "separate", "shared", "separate us", "shared us"));
+
+        UnitHyperbola unitHyperbola = new UnitHyperbola();
+        int[] count = new int[1];
+        Hyperbola.VertexSink sink = (x, t) -> count[0]++;
+
+        for (double invScale : INV_SCALES) {
+            double half = CANVAS_SIZE / 2.0 * invScale;
+            Bounds bounds = new Bounds(-half, -half, half, half);
+            double spacing = Math.pow(10, Math.ceil(Math.log10(Hypergrid.MIN_GRID_SIZE * invScale)));
+            double tolerance = Hyperbola.TOLERANCE * invScale;
+
+            // Warm up both versions
+
+            for (int i = 0; i < REPETITIONS; i++) {
+                drawSeparate(bounds, spacing, tolerance, sink);
+                drawShared(unitHyperbola, bounds, spacing, tolerance, sink);
+            }
+
+            count[0] = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < REPETITIONS; i++) {
+                drawSeparate(bounds, spacing, tolerance, sink);
+            }
+            long separateTime = (System.nanoTime() - start) / REPETITIONS;
+            int separateCount = count[0] / REPETITIONS;
+
+            count[0] = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < REPETITIONS; i++) {
+                drawShared(unitHyperbola, bounds, spacing, tolerance, sink);
+            }
+            long sharedTime = (System.nanoTime() - start) / REPETITIONS;
+            int sharedCount = count[0] / REPETITIONS;
+
+            System.out.println(String.format("  %10g %10d %10d %11d %10d",
+                invScale, separateCount, sharedCount, separateTime / 1000, sharedTime / 1000));
+        }
+    }
+
+    /**
+     * Draw the right quadrant the way the hypergrid used to, with a curve
+     * and a segment for each hyperbola.
+     */
+    private void drawSeparate(Bounds bounds, double spacing, double tolerance, Hyperbola.VertexSink sink)
+    {
+        for (double x = spacing; x <= bounds.max.x; x += spacing) {
+            double a = 1 / x;
+            OffsetAcceleration curve = new OffsetAcceleration(a, 0, new Coordinate(x, 0.0), 0.0, 0.0);
+            HyperbolicSegment segment = new HyperbolicSegment(a, bounds.min.t, bounds.max.t, curve).intersect(bounds);
+            if (segment != null) Hyperbola.tessellate(segment, tolerance, sink);
+        }
+    }
+
+    /**
+     * Draw the right quadrant from the shared unit hyperbola.
+     */
+    private void drawShared(
+        UnitHyperbola unitHyperbola, Bounds bounds, double spacing, double tolerance, Hyperbola.VertexSink sink)
+    {
+        for (double x = spacing; x <= bounds.max.x; x += spacing) {
+            double range = Math.sqrt(bounds.max.x * bounds.max.x - x * x);
+            double minT = Math.max(bounds.min.t, -range);
+            double maxT = Math.min(bounds.max.t, range);
+            if (minT < maxT) unitHyperbola.tessellate(x, minT, maxT, tolerance, sink);
+        }
+    }
+
+    /**
+     * Find the largest distance between the curve and the lines between the
+     * vertices, by sampling the curve.
+     */
+    private double maxError(OffsetAcceleration curve, ArrayList<Coordinate> vertices)
+    {
+        double error = 0.0;
+        for (int i = 1; i < vertices.size(); i++) {
+            Coordinate p0 = vertices.get(i - 1);
+            Coordinate p1 = vertices.get(i);
+            double dx = p1.x - p0.x;
+            double dt = p1.t - p0.t;
+            double length = Math.sqrt(dx * dx + dt * dt);
+            if (length == 0.0) continue;
+            for (int j = 1; j < 20; j++) {
+                double t = p0.t + dt * j / 20.0;
+                double x = curve.tToX(t);
+                error = Math.max(error, Math.abs(dx * (t - p0.t) - dt * (x - p0.x)) / length);
+            }
+        }
+        return error;
+    }
+
+}
@@ -0,0 +1,242 @@
+/*
+ *  Gamma - A Minkowski Spacetime Diagram Generator
+ *  Copyright (C) 2021  by Antonio Freixas
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.execution;
+
+import java.util.LinkedList;
+import java.util.List;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Ignore;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Antonio Freixas
+ */
+public class DataStackTest
+{
+    static private final int ITERATIONS = 2000000;
+
+    public DataStackTest()
+    {
+    }
+
+    @BeforeClass
+    static public void setUpClass()
+    {
+    }
+
+    @AfterClass
+    static public void tearDownClass()
+    {
+    }
+
+    @Before
+    public void setUp()
+    {
+    }
+
+    @After
+    public void tearDown()
+    {
+    }
+
+    @Test
+    public void testLanes()
+    {
+        System.out.println("test lanes");
+        DataStack stack = new DataStack();
+
+        stack.push(1.5);
+        stack.pushNumber(2.5);
+        stack.push("abc");
+        stack.push(null);
+
+        assertEquals(4, stack.size());
+        assertTrue(stack.isNumber(0));
+        assertTrue(stack.isNumber(1));
+        assertFalse(stack.isNumber(2));
+        assertFalse(stack.isNumber(3));
+        assertEquals(2.5, stack.getNumber(1), 0.0);
+        assertEquals(2.5, stack.get(1));
+        assertEquals("abc", stack.get(2));
+        assertNull(stack.pop());
+
+        stack.setNumber(2, 7.0);
+        assertTrue(stack.isNumber(2));
+        assertEquals(7.0, stack.popNumber(), 0.0);
+
+        stack.truncate(0);
+        assertTrue(stack.isEmpty());
+    }
+
+    @Test
+    public void testGrowth()
+    {
+        System.out.println("test growth");
+        DataStack stack = new DataStack();
+
+        for (int i = 0; i < 1000; i++) {
+            if (i % 2 == 0) stack.pushNumber(i);
+            else stack.push(Integer.toString(i));
+        }
+        assertEquals(1000, stack.size());
+        for (int i = 999; i >= 0; i--) {
+            if (i % 2 == 0) assertEquals(i, stack.popNumber(), 0.0);
+            else assertEquals(Integer.toString(i), stack.pop());
+        }
+        assertTrue(stack.isEmpty());
+    }
+
+    @Test
+    public void testFrame()
+    {
+        System.out.println("test frame");
+        DataStack stack = new DataStack();
+
+        stack.push("bottom");
+        stack.pushNumber(1.0);
+        stack.push("two");
+
+        List<Object> frame = stack.getFrame(2);
+        assertEquals(2, frame.size());
+        assertEquals(1.0, frame.get(0));
+        assertEquals("two", frame.get(1));
+
+        assertEquals("two", frame.remove(1));
+        assertEquals(1, frame.size());
+
+        frame.clear();
+        assertEquals(1, stack.size());
+        assertEquals(0, frame.size());
+
+        frame.add(3.0);
+        assertEquals(2, stack.size());
+        assertTrue(stack.isNumber(1));
+        assertEquals("bottom", stack.get(0));
+
+        try {
+            stack.getFrame(2).remove(0);
+            fail("Should have thrown an UnsupportedOperationException");
+        }
+        catch (UnsupportedOperationException ignored) {
+        }
+    }
+
+    /**
+     * Compare the evaluation of "sum = sum + i * 2 - i / 3" with boxed values
+     * on a linked list, as the data stack used to work, against the number
+     * lane of the DataStack. This is a benchmark, not a test, so it is
+     * skipped in normal builds. Remove the @Ignore to run it.
+     */
+    @Test
+    @Ignore("Benchmark; run manually")
+    public void benchmarkNumericLane()
+    {
+        System.out.println("benchmark numeric lane");
+
+        // Warm up both versions
+
+        evaluateBoxed(ITERATIONS / 10);
+        evaluateUnboxed(ITERATIONS / 10);
+
+        long start = System.nanoTime();
+        double boxed = evaluateBoxed(ITERATIONS);
+        long boxedTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        double unboxed = evaluateUnboxed(ITERATIONS);
+        long unboxedTime = System.nanoTime() - start;
+
+        System.out.println("  boxed linked list: " + (boxedTime / 1000000) + " ms");
+        System.out.println("  data stack:        " + (unboxedTime / 1000000) + " ms");
+
+        assertEquals(boxed, unboxed, 0.0);
+    }
+
+    private double evaluateBoxed(int iterations)
+    {
+        LinkedList<Object> data = new LinkedList<>();
+        double sum = 0.0;
+
+        for (int i = 0; i < iterations; i++) {
+            data.add(sum);
+            data.add((double)i);
+            data.add(2.0);
+            binaryBoxed(data, '*');
+            binaryBoxed(data, '+');
+            data.add((double)i);
+            data.add(3.0);
+            binaryBoxed(data, '/');
+            binaryBoxed(data, '-');
+            sum = (Double)data.removeLast();
+        }
+        return sum;
+    }
+
+    private void binaryBoxed(LinkedList<Object> data, char op)
+    {
+        List<Object> args = data.subList(data.size() - 2, data.size());
+        Double d1 = (Double)args.get(0);
+        Double d2 = (Double)args.get(1);
+        args.clear();
+        switch (op) {
+            case '+' -> args.add(d1 + d2);
+            case '-' -> args.add(d1 - d2);
+            case '*' -> args.add(d1 * d2);
+            case '/' -> args.add(d1 / d2);
+        }
+    }
+
+    private double evaluateUnboxed(int iterations)
+    {
+        DataStack stack = new DataStack();
+        double sum = 0.0;
+
+        for (int i = 0; i < iterations; i++) {
+            stack.pushNumber(sum);
+            stack.pushNumber(i);
+            stack.pushNumber(2.0);
+            binaryUnboxed(stack, '*');
+            binaryUnboxed(stack, '+');
+            stack.pushNumber(i);
+            stack.pushNumber(3.0);
+            binaryUnboxed(stack, '/');
+            binaryUnboxed(stack, '-');
+            sum = stack.popNumber();
+        }
+        return sum;
+    }
+
+    private void binaryUnboxed(DataStack stack, char op)
+    {
+        int top = stack.size() - 1;
+        double d2 = stack.popNumber();
+        double d1 = stack.getNumber(top - 1);
+        switch (op) {
+            case '+' -> stack.setNumber(top - 1, d1 + d2);
+            case '-' -> stack.setNumber(top - 1, d1 - d2);
+            case '*' -> stack.setNumber(top - 1, d1 * d2);
+            case '/' -> stack.setNumber(top - 1, d1 / d2);
+        }
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+ *  Gamma - A Minkowski Spacetime Diagram Generator
+ *  Copyright (C) 2021  by Antonio Freixas
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.execution;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.freixas.gamma.css.value.StyleStruct;
+import org.freixas.gamma.execution.lcode.Command;
+import org.freixas.gamma.execution.lcode.EventCommandExec;
+import org.freixas.gamma.execution.lcode.EventStruct;
+import org.freixas.gamma.execution.lcode.LabelCommandExec;
+import org.freixas.gamma.execution.lcode.LabelStruct;
+import org.freixas.gamma.execution.lcode.PathCommandExec;
+import org.freixas.gamma.execution.lcode.PathStruct;
+import org.freixas.gamma.value.Bounds;
+import org.freixas.gamma.value.Coordinate;
+import org.freixas.gamma.value.Path;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Antonio Freixas
+ */
+public class DisplayListTest
+{
+
+    public DisplayListTest()
+    {
+    }
+
+    @BeforeClass
+    static public void setUpClass()
+    {
+    }
+
+    @AfterClass
+    static public void tearDownClass()
+    {
+    }
+
+    @Before
+    public void setUp()
+    {
+    }
+
+    @After
+    public void tearDown()
+    {
+    }
+
+    /**
+     * Test that commands outside the viewport are culled and that commands
+     * with no known extent are always drawn.
+     */
+    @Test
+    public void testIsVisible()
+    {
+        System.out.println("test isVisible");
+
+        ArrayList<Coordinate> coords = new ArrayList<>();
+        coords.add(new Coordinate(10.0, 10.0));
+        coords.add(new Coordinate(12.0, 14.0));
+        PathStruct pathStruct = new PathStruct();
+        pathStruct.path = new Path(coords);
+
+        EventStruct eventStruct = new EventStruct();
+        eventStruct.location = new Coordinate(5.5, 0.0);
+
+        LabelStruct labelStruct = new LabelStruct();
+        labelStruct.location = new Coordinate(100.0, 100.0);
+        labelStruct.text = "far away";
+
+        DisplayList displayList = new DisplayList(List.of(
+            new Command(pathStruct, new StyleStruct(), new PathCommandExec()),
+            new Command(eventStruct, new StyleStruct(), new EventCommandExec()),
+            new Command(labelStruct, new StyleStruct(), new LabelCommandExec())));
+
+        Bounds viewport = new Bounds(-5.0, -5.0, 5.0, 5.0);
+
+        // With an inverse scale of 0.01, the padding is at most a fraction
+        // of a world unit
+
+        assertFalse(displayList.isVisible(0, viewport, 0.01));
+        assertFalse(displayList.isVisible(1, viewport, 0.01));
+        assertTrue(displayList.isVisible(2, viewport, 0.01));
+
+        // Zooming out makes the event marker big enough to reach the viewport
+
+        assertTrue(displayList.isVisible(1, viewport, 1.0));
+
+        // Panning brings the path into the viewport
+
+        Bounds panned = new Bounds(8.0, 8.0, 18.0, 18.0);
+        assertTrue(displayList.isVisible(0, panned, 0.01));
+        assertFalse(displayList.isVisible(1, panned, 0.01));
+    }
+
+    /**
+     * Test that the static count is the number of leading commands shared
+     * with the previous display list.
+     */
+    @Test
+    public void testStaticCount()
+    {
+        System.out.println("test getStaticCount");
+
+        Command first = new Command(new EventStruct(), new StyleStruct(), new EventCommandExec());
+        Command second = new Command(new EventStruct(), new StyleStruct(), new EventCommandExec());
+        Command third = new Command(new EventStruct(), new StyleStruct(), new EventCommandExec());
+        Command other = new Command(new EventStruct(), new StyleStruct(), new EventCommandExec());
+
+        DisplayList previous = new DisplayList(List.of(first, second, third));
+        assertEquals(0, previous.getStaticCount());
+
+        assertEquals(3, new DisplayList(List.of(first, second, third), previous).getStaticCount());
+        assertEquals(2, new DisplayList(List.of(first, second), previous).getStaticCount());
+        assertEquals(3, new DisplayList(List.of(first, second, third, other), previous).getStaticCount());
+
+        // A changed command ends the static layer, even if later commands
+        // are unchanged
+
+        assertEquals(1, new DisplayList(List.of(first, other, third), previous).getStaticCount());
+        assertEquals(0, new DisplayList(List.of(other, second, third), previous).getStaticCount());
+    }
+
+}
@@ -0,0 +1,185 @@
+/*
+ *  Gamma - A Minkowski Spacetime Diagram Generator
+ *  Copyright (C) 2021  by Antonio Freixas
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.execution;
+
+import java.util.ArrayList;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Antonio Freixas
+ */
+public class DisplayUpdateSchedulerTest
+{
+    private ArrayList<Boolean> updates;
+    private boolean isBusy;
+    private TestScheduler scheduler;
+
+    /**
+     * A scheduler whose pulses are generated by the test rather than by an
+     * AnimationTimer.
+     */
+    private class TestScheduler extends DisplayUpdateScheduler
+    {
+        boolean isTimerRunning = false;
+
+        TestScheduler()
+        {
+            super(restart -> updates.add(restart), () -> isBusy);
+        }
+
+        @Override
+        void startTimer()
+        {
+            isTimerRunning = true;
+        }
+
+        @Override
+        void stopTimer()
+        {
+            isTimerRunning = false;
+        }
+    }
+
+    public DisplayUpdateSchedulerTest()
+    {
+    }
+
+    @BeforeClass
+    static public void setUpClass()
+    {
+    }
+
+    @AfterClass
+    static public void tearDownClass()
+    {
+    }
+
+    @Before
+    public void setUp()
+    {
+        updates = new ArrayList<>();
+        isBusy = false;
+        scheduler = new TestScheduler();
+    }
+
+    @After
+    public void tearDown()
+    {
+    }
+
+    /**
+     * Test that a burst of requests causes one update.
+     */
+    @Test
+    public void testCoalescing()
+    {
+        System.out.println("test coalescing");
+
+        assertFalse(scheduler.isPending());
+        scheduler.request(false);
+        scheduler.request(false);
+        scheduler.request(false);
+        assertTrue(scheduler.isPending());
+        assertTrue(scheduler.isTimerRunning);
+        assertTrue(updates.isEmpty());
+
+        scheduler.pulse();
+        assertEquals(1, updates.size());
+        assertFalse(scheduler.isPending());
+        assertFalse(scheduler.isTimerRunning);
+        assertEquals(2, scheduler.getDroppedUpdates());
+
+        // A pulse with nothing pending does nothing
+
+        scheduler.pulse();
+        assertEquals(1, updates.size());
+    }
+
+    /**
+     * Test that an update restarts the animation if any of the requests
+     * collapsed into it asked for a restart.
+     */
+    @Test
+    public void testRestart()
+    {
+        System.out.println("test restart");
+
+        scheduler.request(false);
+        scheduler.request(true);
+        scheduler.request(false);
+        scheduler.pulse();
+        assertEquals(Boolean.TRUE, updates.get(0));
+
+        // The restart flag doesn't carry over to the next update
+
+        scheduler.request(false);
+        scheduler.pulse();
+        assertEquals(Boolean.FALSE, updates.get(1));
+    }
+
+    /**
+     * Test that the update waits while an earlier update is in progress.
+     */
+    @Test
+    public void testBusy()
+    {
+        System.out.println("test busy");
+
+        isBusy = true;
+        scheduler.request(true);
+        scheduler.pulse();
+        scheduler.pulse();
+        assertTrue(updates.isEmpty());
+        assertTrue(scheduler.isPending());
+        assertTrue(scheduler.isTimerRunning);
+
+        // Requests made while waiting are collapsed into the same update
+
+        scheduler.request(false);
+
+        isBusy = false;
+        scheduler.pulse();
+        assertEquals(1, updates.size());
+        assertEquals(Boolean.TRUE, updates.get(0));
+        assertFalse(scheduler.isPending());
+    }
+
+    /**
+     * Test that a closed scheduler performs no updates.
+     */
+    @Test
+    public void testClose()
+    {
+        System.out.println("test close");
+
+        scheduler.request(false);
+        scheduler.close();
+        assertFalse(scheduler.isPending());
+        scheduler.pulse();
+        scheduler.request(false);
+        scheduler.pulse();
+        assertTrue(updates.isEmpty());
+    }
+
+}
@@ -0,0 +1,174 @@
+/*
+ *  Gamma - A Minkowski Spacetime Diagram Generator
+ *  Copyright (C) 2021  by Antonio Freixas
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.execution;
+
+import org.freixas.gamma.GammaRuntimeException;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the execution limits and cancellation of scripts.
+ *
+ * @author Antonio Freixas
+ */
+public class ExecutionLimitsTest
+{
+    static private final String infiniteLoop = """
+        x = 0;
+        while (1) {
+            x = x + 1;
+        }
+        """;
+
+    static private final String finiteLoop = """
+        x = 0;
+        for i = 1 to 100 step 1 {
+            x = x + i;
+        }
+        label (x, 0);
+        """;
+
+    public ExecutionLimitsTest()
+    {
+    }
+
+    @BeforeClass
+    static public void setUpClass()
+    {
+    }
+
+    @AfterClass
+    static public void tearDownClass()
+    {
+    }
+
+    @Before
+    public void setUp()
+    {
+    }
+
+    @After
+    public void tearDown()
+    {
+    }
+
+    /**
+     * Test that the loop limit stops an infinite loop, whether the program
+     * is interpreted or compiled.
+     */
+    @Test
+    public void testLoopLimit()
+        throws Exception
+    {
+        System.out.println("test loop limit");
+        for (boolean compiled : new boolean[] { false, true }) {
+            HCodeEngine engine = TestScripts.createEngine(infiniteLoop, compiled);
+            engine.getProgram().setExecutionLimits(0, 10000);
+            GammaRuntimeException e = executeAndCatch(engine);
+            assertNotNull(e);
+            assertEquals(GammaRuntimeException.Type.EXECUTION, e.getType());
+            assertTrue(e.getMessage().contains("10000 loop iterations"));
+
+            // The error points at the loop
+
+            assertEquals(3, e.getTokenContext().getLineNumber());
+        }
+    }
+
+    /**
+     * Test that a loop within its limit runs to completion.
+     */
+    @Test
+    public void testWithinLimit()
+        throws Exception
+    {
+        System.out.println("test within limit");
+        for (boolean compiled : new boolean[] { false, true }) {
+            HCodeEngine engine = TestScripts.createEngine(finiteLoop, compiled);
+            engine.getProgram().setExecutionLimits(60000, 101);
+            assertEquals(1, engine.evaluate().size());
+            engine.getProgram().setExecutionLimits(60000, 99);
+            assertNotNull(executeAndCatch(engine));
+        }
+    }
+
+    /**
+     * Test that the time limit stops an infinite loop.
+     */
+    @Test
+    public void testTimeLimit()
+        throws Exception
+    {
+        System.out.println("test time limit");
+        for (boolean compiled : new boolean[] { false, true }) {
+            HCodeEngine engine = TestScripts.createEngine(infiniteLoop, compiled);
+            engine.getProgram().setExecutionLimits(50, 0);
+            GammaRuntimeException e = executeAndCatch(engine);
+            assertNotNull(e);
+            assertTrue(e.getMessage().contains("time limit"));
+        }
+    }
+
+    /**
+     * Test that cancelling the token from another thread stops an infinite
+     * loop.
+     */
+    @Test
+    public void testCancel()
+        throws Exception
+    {
+        System.out.println("test cancel");
+        for (boolean compiled : new boolean[] { false, true }) {
+            HCodeEngine engine = TestScripts.createEngine(infiniteLoop, compiled);
+            CancellationToken token = engine.getProgram().getCancellationToken();
+            Thread canceller = new Thread(() -> {
+                try {
+                    Thread.sleep(50);
+                }
+                catch (InterruptedException e) {
+                }
+                token.cancel();
+            });
+            canceller.start();
+            GammaRuntimeException e = executeAndCatch(engine);
+            canceller.join();
+            assertNotNull(e);
+            assertTrue(e.getMessage().contains("cancelled"));
+
+            // A cancelled program doesn't run again
+
+            assertNotNull(executeAndCatch(TestScripts.createEngine(finiteLoop, engine.getProgram())));
+        }
+    }
+
+    private GammaRuntimeException executeAndCatch(HCodeEngine engine)
+    {
+        try {
+            engine.execute();
+        }
+        catch (GammaRuntimeException e) {
+            return e;
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,201 @@
+/*
+ *  Gamma - A Minkowski Spacetime Diagram Generator
+ *  Copyright (C) 2021  by Antonio Freixas
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.execution;
+
+import org.freixas.gamma.execution.lcode.Command;
+import java.util.List;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Differential tests for the h-code compiler. Each script is run by the
+ * interpreter and by the compiled program, and the commands they create
+ * are compared field by field.
+ *
+ * @author Antonio Freixas
+ */
+public class HCodeCompilerTest
+{
+    static private final String[] scripts = {
+        // Arithmetic, comparisons and loops
+
+        """
+        sum = 0;
+        for i = 0 to 200 step 1 {
+            sum = sum + i * 2 - i / 3 + i % 7 + 2 ^ 3;
+            if (i % 50 == 0) event (i, sum), text: "i=" + i + " sum=" + sum;
+        }
+        j = 10;
+        while (j > 0) { j = j - 1; if (j == 5) continue; if (j == 2) break; label (j, -j), text: "j" + j; }
+        k = -(3 - 5) + +2;
+        label (k, 0), text: "k " + !k + !0 + (k >= 4) + (k <= 4) + (k != 4) + (k < 4);
+        """,
+
+        // Short-circuit operators and non-numeric values
+
+        """
+        u = null;
+        s = "s";
+        for i = 0 to 10 step 1 {
+            if (i > 2 && i < 8 || i == 9) event (i, 1);
+            if (u || i == 0) event (i, 2);
+            if (s && !u) label (i, 3), text: s + i;
+        }
+        t = 1 + 2 + s;
+        label (0, 0), text: t;
+        """,
+
+        // Arrays and objects
+
+        """
+        for i = 0 to 20 step 1 { a[i] = i * i; o[i] = [observer origin (i, 0) velocity i / 40]; }
+        b["foo"] = "bar";
+        label (0, 0), text: b["foo"] + defined(a[3]) + defined(a[30]);
+        for i = 0 to 20 step 4 { worldline o[i], style: "color: red"; }
+        c = (1, 2);
+        c.x = 5;
+        label c, text: "c " + c.x + " " + c.t;
+        """
+    };
+
+    public HCodeCompilerTest()
+    {
+    }
+
+    @BeforeClass
+    static public void setUpClass()
+    {
+    }
+
+    @AfterClass
+    static public void tearDownClass()
+    {
+    }
+
+    @Before
+    public void setUp()
+    {
+    }
+
+    @After
+    public void tearDown()
+    {
+        HCodeCompiler.ENABLED = true;
+        HCodeCompiler.VERIFY = false;
+    }
+
+    /**
+     * Test that the programs can be compiled.
+     */
+    @Test
+    public void testCompile()
+        throws Exception
+    {
+        System.out.println("test compile");
+        for (String script : scripts) {
+            HCodeProgram program = TestScripts.createProgram(script);
+            assertNotNull(HCodeCompiler.compile(program.initialize(), program.getTypesProven()));
+        }
+    }
+
+    /**
+     * Test that interpreted and compiled programs create the same commands.
+     */
+    @Test
+    public void testSameCommands()
+        throws Exception
+    {
+        System.out.println("test same commands");
+        HCodeCompiler.ENABLED = false;
+        for (String script : scripts) {
+            List<Command> expected = execute(script, false);
+            List<Command> actual = execute(script, true);
+
+            assertFalse(expected.isEmpty());
+            assertEquals(-1, CommandComparator.findDifference(expected, actual));
+        }
+    }
+
+    /**
+     * Test that a compiled program can be checked against the interpreter
+     * while it runs.
+     */
+    @Test
+    public void testVerify()
+        throws Exception
+    {
+        System.out.println("test verify");
+        HCodeCompiler.VERIFY = true;
+        for (String script : scripts) {
+            HCodeEngine engine = TestScripts.createEngine(script, true);
+            if (!engine.getProgram().isPure()) continue;
+            assertEquals(-1, CommandComparator.findDifference(execute(script, false), engine.evaluate()));
+        }
+    }
+
+    /**
+     * Test that turning the compiler off keeps programs interpreted.
+     */
+    @Test
+    public void testDisabled()
+        throws Exception
+    {
+        System.out.println("test disabled");
+        HCodeCompiler.ENABLED = false;
+        HCodeProgram program = TestScripts.createProgram(scripts[0]);
+        for (int i = 0; i < HCodeCompiler.HOT_EXECUTIONS * 2; i++) {
+            assertNull(program.getCompiledProgram());
+        }
+    }
+
+    /**
+     * Test that a program too large to compile is interpreted and that the
+     * reason is recorded.
+     */
+    @Test
+    public void testTooLarge()
+        throws Exception
+    {
+        System.out.println("test too large");
+        StringBuilder script = new StringBuilder("x = 0;\n");
+        for (int i = 0; i < 5000; i++) script.append("x = x * 2 + ").append(i).append(";\n");
+        HCodeProgram program = TestScripts.createProgram(script.toString());
+        try {
+            HCodeCompiler.compile(program.initialize(), program.getTypesProven());
+            fail("Expected the program to be too large");
+        }
+        catch (HCodeCompiler.CompileException e) {
+            assertTrue(e.getMessage().contains("too large"));
+        }
+
+        program.compile();
+        assertNull(program.getCompiledProgram());
+        assertNotNull(program.getCompileFailure());
+    }
+
+    private List<Command> execute(String script, boolean compiled)
+        throws Exception
+    {
+        return TestScripts.createEngine(script, compiled).evaluate();
+    }
+
+}
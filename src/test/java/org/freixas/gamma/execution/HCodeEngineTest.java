@@ -0,0 +1,137 @@
+/*
+ *  Gamma - A Minkowski Spacetime Diagram Generator
+ *  Copyright (C) 2021  by Antonio Freixas
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.execution;
+
+import org.freixas.gamma.execution.lcode.Command;
+import java.util.List;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the HCodeEngine's cache of results.
+ *
+ * @author Antonio Freixas
+ */
+public class HCodeEngineTest
+{
+    static private final String pure = """
+        animate v = 1 to 100 step 1;
+        label (v, 0), text: "v " + v;
+        label (0, 0), text: "fixed";
+        """;
+
+    static private final String impure = """
+        animate v = 1 to 100 step 1;
+        label (v, 0), text: "r " + random();
+        """;
+
+    public HCodeEngineTest()
+    {
+    }
+
+    @BeforeClass
+    static public void setUpClass()
+    {
+    }
+
+    @AfterClass
+    static public void tearDownClass()
+    {
+    }
+
+    @Before
+    public void setUp()
+    {
+    }
+
+    @After
+    public void tearDown()
+    {
+    }
+
+    /**
+     * Test that returning to earlier values of the dynamic variables returns
+     * the earlier results.
+     */
+    @Test
+    public void testResultCache()
+        throws Exception
+    {
+        System.out.println("test result cache");
+        HCodeEngine engine = TestScripts.createEngine(pure);
+        assertTrue(engine.getProgram().isPure());
+        engine.evaluate();
+
+        TestScripts.setFrame(engine, "v", 4);
+        List<Command> four = engine.evaluate();
+        TestScripts.setFrame(engine, "v", 1);
+        List<Command> one = engine.evaluate();
+        assertNotSame(four, one);
+
+        TestScripts.setFrame(engine, "v", 4);
+        assertSame(four, engine.evaluate());
+        TestScripts.setFrame(engine, "v", 1);
+        assertSame(one, engine.evaluate());
+    }
+
+    /**
+     * Test that the cache only holds the most recently used results.
+     */
+    @Test
+    public void testResultCacheBounded()
+        throws Exception
+    {
+        System.out.println("test result cache bounded");
+        HCodeEngine engine = TestScripts.createEngine(pure);
+        engine.evaluate();
+
+        TestScripts.setFrame(engine, "v", 2);
+        List<Command> two = engine.evaluate();
+        for (int frame = 3; frame < 40; frame++) {
+            TestScripts.setFrame(engine, "v", frame);
+            engine.evaluate();
+        }
+        TestScripts.setFrame(engine, "v", 2);
+        assertNotSame(two, engine.evaluate());
+    }
+
+    /**
+     * Test that the results of programs that call random() aren't cached.
+     */
+    @Test
+    public void testImpureNotCached()
+        throws Exception
+    {
+        System.out.println("test impure not cached");
+        HCodeEngine engine = TestScripts.createEngine(impure);
+        assertFalse(engine.getProgram().isPure());
+        engine.evaluate();
+
+        TestScripts.setFrame(engine, "v", 3);
+        List<Command> first = engine.evaluate();
+        TestScripts.setFrame(engine, "v", 5);
+        engine.evaluate();
+        TestScripts.setFrame(engine, "v", 3);
+        assertNotSame(first, engine.evaluate());
+    }
+
+}
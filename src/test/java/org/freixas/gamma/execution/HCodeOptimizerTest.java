@@ -0,0 +1,192 @@
+/*
+ *  Gamma - A Minkowski Spacetime Diagram Generator
+ *  Copyright (C) 2021  by Antonio Freixas
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.execution;
+
+import org.freixas.gamma.parser.Parser;
+import java.util.List;
+import java.util.TreeMap;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Antonio Freixas
+ */
+public class HCodeOptimizerTest
+{
+    static private final String[] scripts = {
+        // Constant folding
+
+        """
+        x = -4 / 2 + PI * 2;
+        y = 2 ^ 3 % 5 - -(1 + 1);
+        z = !0 + !1 + (3 > 2) + (3 == 3) + (2 != 2) + (1 && 0) + (1 || 0);
+        """,
+
+        // Constant conditions and unreachable code
+
+        """
+        if (1) { a = 1; } else { a = 2; }
+        if (0) { b = 1; } else { b = 2; }
+        while (0) { c = 1; }
+        k = 0;
+        while (1) { k = k + 1; if (k > 5) break; continue; k = 100; }
+        """,
+
+        // Loops and superinstructions
+
+        """
+        sum = 0;
+        for i = 0 to 200 step 1 {
+            sum = sum + i * 2 - i / 3 + i % 7 + 2 ^ 3;
+            if (i % 50 == 0) continue;
+            sum = sum - 1;
+        }
+        n = 3;
+        for j = n to 0 step -1 { last = j * 10; }
+        st = 0.5 * n;
+        for m = 0 to n step st { lastM = m; }
+        """,
+
+        // Mixed types and properties
+
+        """
+        s = "v" + 1 + 2;
+        t = 1 + 2 + "v";
+        u = null;
+        v = !u + (u == null) + ("s" != 1);
+        p = (3, 4);
+        q = p.x * 2 + p.t;
+        a[1] = 5; a[2] = a[1] * 2;
+        w = a[2] + 1;
+        """
+    };
+
+    public HCodeOptimizerTest()
+    {
+    }
+
+    @BeforeClass
+    static public void setUpClass()
+    {
+    }
+
+    @AfterClass
+    static public void tearDownClass()
+    {
+    }
+
+    @Before
+    public void setUp()
+    {
+    }
+
+    @After
+    public void tearDown()
+    {
+        HCodeOptimizer.ENABLED = true;
+    }
+
+    /**
+     * Test that optimized and unoptimized programs produce the same
+     * variables.
+     */
+    @Test
+    public void testSameResults()
+        throws Exception
+    {
+        System.out.println("test same results");
+        for (String script : scripts) {
+            HCodeOptimizer.ENABLED = false;
+            TreeMap<String, String> expected = execute(script);
+            HCodeOptimizer.ENABLED = true;
+            TreeMap<String, String> actual = execute(script);
+
+            assertFalse(expected.isEmpty());
+            assertEquals(expected, actual);
+        }
+    }
+
+    /**
+     * Test that the optimizer removes h-codes.
+     */
+    @Test
+    public void testFewerHCodes()
+        throws Exception
+    {
+        System.out.println("test fewer h-codes");
+        for (String script : scripts) {
+            HCodeOptimizer.ENABLED = false;
+            int unoptimized = optimize(script).size();
+            HCodeOptimizer.ENABLED = true;
+            int optimized = optimize(script).size();
+
+            assertTrue(optimized < unoptimized);
+        }
+    }
+
+    /**
+     * Test that turning the optimizer off leaves the h-codes unchanged.
+     */
+    @Test
+    public void testDisabled()
+        throws Exception
+    {
+        System.out.println("test disabled");
+        HCodeOptimizer.ENABLED = false;
+        Parser parser = new Parser(null, scripts[0]);
+        parser.parse();
+        List<Object> codes = parser.getHCodes();
+        assertSame(codes, HCodeOptimizer.optimize(codes));
+    }
+
+    private List<Object> optimize(String script)
+        throws Exception
+    {
+        Parser parser = new Parser(null, script);
+        parser.parse();
+        return HCodeOptimizer.optimize(parser.getHCodes());
+    }
+
+    private TreeMap<String, String> execute(String script)
+        throws Exception
+    {
+        HCodeEngine engine = TestScripts.createEngine(script);
+        engine.runProgram();
+
+        // Collect the value of every variable
+
+        TreeMap<String, String> variables = new TreeMap<>();
+        SymbolTable table = engine.getSymbolTable();
+        for (String name : table.getSymbolNames()) {
+            Object value = table.get(name);
+            if (value == null || value instanceof Double) {
+                variables.put(name, String.valueOf(value));
+            }
+            else {
+                variables.put(name, engine.toDisplayableString(value));
+            }
+        }
+        return variables;
+    }
+
+}
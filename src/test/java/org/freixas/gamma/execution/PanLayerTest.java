@@ -0,0 +1,106 @@
+/*
+ *  Gamma - A Minkowski Spacetime Diagram Generator
+ *  Copyright (C) 2021  by Antonio Freixas
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.execution;
+
+import java.util.List;
+import org.freixas.gamma.value.Bounds;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Antonio Freixas
+ */
+public class PanLayerTest
+{
+
+    public PanLayerTest()
+    {
+    }
+
+    @BeforeClass
+    static public void setUpClass()
+    {
+    }
+
+    @AfterClass
+    static public void tearDownClass()
+    {
+    }
+
+    @Before
+    public void setUp()
+    {
+    }
+
+    @After
+    public void tearDown()
+    {
+    }
+
+    /**
+     * Test the strips exposed by shifting an image of the canvas.
+     */
+    @Test
+    public void testGetExposedStrips()
+    {
+        System.out.println("test getExposedStrips");
+
+        // No shift, no strips
+
+        assertTrue(PanLayer.getExposedStrips(0.0, 0.0, 100.0, 50.0).isEmpty());
+
+        // A shift to the right exposes the left edge
+
+        List<Bounds> strips = PanLayer.getExposedStrips(10.0, 0.0, 100.0, 50.0);
+        assertEquals(1, strips.size());
+        assertStrip(strips.get(0), 0.0, 0.0, 10.0, 50.0);
+
+        // A shift up exposes the bottom edge. Partial pixels are covered
+
+        strips = PanLayer.getExposedStrips(0.0, -4.5, 100.0, 50.0);
+        assertEquals(1, strips.size());
+        assertStrip(strips.get(0), 0.0, 45.0, 100.0, 50.0);
+
+        // A diagonal shift exposes two strips that don't overlap
+
+        strips = PanLayer.getExposedStrips(-20.0, 5.0, 100.0, 50.0);
+        assertEquals(2, strips.size());
+        assertStrip(strips.get(0), 80.0, 0.0, 100.0, 50.0);
+        assertStrip(strips.get(1), 0.0, 0.0, 80.0, 5.0);
+
+        // A shift larger than the canvas exposes all of it
+
+        strips = PanLayer.getExposedStrips(150.0, 80.0, 100.0, 50.0);
+        assertEquals(1, strips.size());
+        assertStrip(strips.get(0), 0.0, 0.0, 100.0, 50.0);
+    }
+
+    private void assertStrip(Bounds strip, double minX, double minY, double maxX, double maxY)
+    {
+        assertEquals(minX, strip.min.x, 0.0);
+        assertEquals(minY, strip.min.t, 0.0);
+        assertEquals(maxX, strip.max.x, 0.0);
+        assertEquals(maxY, strip.max.t, 0.0);
+    }
+
+}
@@ -0,0 +1,180 @@
+/*
+ *  Gamma - A Minkowski Spacetime Diagram Generator
+ *  Copyright (C) 2021  by Antonio Freixas
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.execution;
+
+import java.io.StringWriter;
+import java.util.List;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the script profiler.
+ *
+ * @author Antonio Freixas
+ */
+public class ScriptProfileTest
+{
+    static private final String script = """
+        sum = 0;
+        for i = 1 to 10 step 1 {
+            sum = sum + i;
+        }
+        label (0, 0), text: "sum, " + sum;
+        """;
+
+    public ScriptProfileTest()
+    {
+    }
+
+    @BeforeClass
+    static public void setUpClass()
+    {
+    }
+
+    @AfterClass
+    static public void tearDownClass()
+    {
+    }
+
+    @Before
+    public void setUp()
+    {
+    }
+
+    @After
+    public void tearDown()
+    {
+    }
+
+    /**
+     * Test that each line and each location is counted.
+     */
+    @Test
+    public void testCounts()
+        throws Exception
+    {
+        System.out.println("test counts");
+        HCodeProgram program = TestScripts.createProgram(script);
+        ScriptProfile profile = new ScriptProfile(program.getHCodes());
+        program.setProfile(profile);
+        HCodeEngine engine = TestScripts.createEngine(script, program);
+        engine.evaluate();
+        engine.evaluate();
+
+        assertEquals(2, profile.getExecutions());
+
+        // The loop body runs 10 times per execution
+
+        List<ScriptProfile.Entry> lines = profile.getLineEntries();
+        ScriptProfile.Entry line1 = findLine(lines, 1);
+        ScriptProfile.Entry line3 = findLine(lines, 3);
+        assertNotNull(line1);
+        assertNotNull(line3);
+        assertEquals(0, line3.getCount() % 20);
+        assertTrue(line3.getCount() > line1.getCount());
+
+        // Every h-code executed is counted once per line and once per location
+
+        long lineTotal = 0;
+        for (ScriptProfile.Entry entry : lines) {
+            lineTotal += entry.getCount();
+            assertEquals(-1, entry.getLocation());
+        }
+        long locationTotal = 0;
+        for (ScriptProfile.Entry entry : profile.getInstructionEntries()) {
+            locationTotal += entry.getCount();
+            assertTrue(entry.getLocation() >= 0);
+            assertFalse(entry.getInstruction().isEmpty());
+        }
+        assertEquals(lineTotal, locationTotal);
+
+        profile.clear();
+        assertEquals(0, profile.getExecutions());
+        assertTrue(profile.getLineEntries().isEmpty());
+        assertTrue(profile.getInstructionEntries().isEmpty());
+    }
+
+    /**
+     * Test that a profiled program is never compiled.
+     */
+    @Test
+    public void testNotCompiled()
+        throws Exception
+    {
+        System.out.println("test not compiled");
+        HCodeProgram program = TestScripts.createProgram(script);
+        program.setProfile(new ScriptProfile(program.getHCodes()));
+        HCodeEngine engine = TestScripts.createEngine(script, program);
+        for (int i = 0; i < HCodeCompiler.HOT_EXECUTIONS * 2; i++) {
+            engine.evaluate();
+        }
+        assertEquals(HCodeCompiler.HOT_EXECUTIONS * 2, program.getProfile().getExecutions());
+
+        // Each engine caches its results, so we need a new one for each
+        // execution
+
+        program.setProfile(null);
+        for (int i = 0; i < HCodeCompiler.HOT_EXECUTIONS; i++) {
+            TestScripts.createEngine(script, program).evaluate();
+        }
+        assertEquals(HCodeCompiler.ENABLED, program.getCompiledProgram() != null);
+    }
+
+    /**
+     * Test the CSV export.
+     */
+    @Test
+    public void testWriteCSV()
+        throws Exception
+    {
+        System.out.println("test write CSV");
+        HCodeProgram program = TestScripts.createProgram(script);
+        ScriptProfile profile = new ScriptProfile(program.getHCodes());
+        program.setProfile(profile);
+        TestScripts.createEngine(script, program).evaluate();
+
+        List<ScriptProfile.Entry> entries = profile.getInstructionEntries();
+        StringWriter writer = new StringWriter();
+        ScriptProfile.writeCSV(entries, writer);
+        String[] rows = writer.toString().split("\n");
+
+        assertEquals(entries.size() + 1, rows.length);
+        assertEquals("File,Line,Location,Instruction,Count,Total ns,Average ns", rows[0]);
+
+        // The string literal holds a comma, so it must be quoted
+
+        boolean found = false;
+        for (String row : rows) {
+            if (row.contains("\"\"\"sum, \"\"\"")) found = true;
+        }
+        assertTrue(found);
+    }
+
+    private ScriptProfile.Entry findLine(List<ScriptProfile.Entry> entries, int line)
+    {
+        for (ScriptProfile.Entry entry : entries) {
+            if (entry.getLine() == line) return entry;
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,199 @@
+/*
+ *  Gamma - A Minkowski Spacetime Diagram Generator
+ *  Copyright (C) 2021  by Antonio Freixas
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.execution;
+
+import org.freixas.gamma.execution.lcode.Command;
+import org.freixas.gamma.execution.lcode.LabelStruct;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the re-execution of only the statements affected by a change
+ * to a dynamic variable.
+ *
+ * @author Antonio Freixas
+ */
+public class StatementDependenciesTest
+{
+    static private final String simple = """
+        animate v = 1 to 10 step 1;
+        a = 2;
+        b = a * v;
+        label (0, 0), text: "a " + a;
+        label (1, 1), text: "b " + b;
+        c = a + 1;
+        label (2, 2), text: "c " + c;
+        """;
+
+    static private final String complex = """
+        animate v = 1 to 10 step 1;
+        animate w = 5 to 0 step -1;
+        n = 4;
+        for i = 0 to n step 1 { sq[i] = i * i + v; }
+        total = 0;
+        for i = 0 to n step 1 { total = total + sq[i]; }
+        label (0, 0), text: "total " + total;
+        if (w > 2) { label (1, 1), text: "big " + w; } else { label (1, 1), text: "small " + w; }
+        k = 10;
+        while (k > 0) { k = k - 3; if (k == 4) continue; label (k, 2), text: "k " + k; }
+        x = n * 2;
+        label (3, 3), text: "x " + x + " " + defined(sq[2]) + " " + defined(q);
+        q = v + w;
+        label (4, 4), text: "q " + q;
+        """;
+
+    public StatementDependenciesTest()
+    {
+    }
+
+    @BeforeClass
+    static public void setUpClass()
+    {
+    }
+
+    @AfterClass
+    static public void tearDownClass()
+    {
+    }
+
+    @Before
+    public void setUp()
+    {
+    }
+
+    @After
+    public void tearDown()
+    {
+        StatementDependencies.ENABLED = true;
+    }
+
+    /**
+     * Test that the commands of statements that don't depend on a changed
+     * variable are reused and that the others are created again.
+     */
+    @Test
+    public void testReuse()
+        throws Exception
+    {
+        System.out.println("test reuse");
+        for (boolean compiled : new boolean[] { false, true }) {
+            HCodeEngine engine = TestScripts.createEngine(simple, compiled);
+            assertNotNull(engine.getProgram().getStatementDependencies());
+
+            List<Command> first = engine.evaluate();
+            assertEquals(3, first.size());
+            assertTrue(getText(first.get(1)).startsWith("b 2"));
+
+            TestScripts.setFrame(engine, "v", 4);
+            List<Command> second = engine.evaluate();
+            assertEquals(3, second.size());
+            assertSame(first.get(0), second.get(0));
+            assertNotSame(first.get(1), second.get(1));
+            assertSame(first.get(2), second.get(2));
+            assertTrue(getText(second.get(1)).startsWith("b 8"));
+
+            // Nothing changed, so nothing is created again
+
+            List<Command> third = engine.evaluate();
+            for (int i = 0; i < 3; i++) {
+                assertSame(second.get(i), third.get(i));
+            }
+        }
+    }
+
+    /**
+     * Test that executing only the affected statements produces the same
+     * commands as executing the whole program.
+     */
+    @Test
+    public void testMatchesFullExecution()
+        throws Exception
+    {
+        System.out.println("test matches full execution");
+        for (boolean compiled : new boolean[] { false, true }) {
+            HCodeEngine engine = TestScripts.createEngine(complex, compiled);
+            StatementDependencies.ENABLED = false;
+            HCodeEngine fullEngine = TestScripts.createEngine(complex, compiled);
+            StatementDependencies.ENABLED = true;
+            assertNotNull(engine.getProgram().getStatementDependencies());
+            assertNull(fullEngine.getProgram().getStatementDependencies());
+
+            engine.evaluate();
+            fullEngine.evaluate();
+
+            int[][] frames = { { 1, 1 }, { 2, 1 }, { 2, 4 }, { 2, 4 }, { 7, 2 }, { 3, 6 } };
+            for (int[] frame : frames) {
+                TestScripts.setFrame(engine, "v", frame[0]);
+                TestScripts.setFrame(engine, "w", frame[1]);
+                TestScripts.setFrame(fullEngine, "v", frame[0]);
+                TestScripts.setFrame(fullEngine, "w", frame[1]);
+                assertEquals(getTexts(fullEngine.evaluate()), getTexts(engine.evaluate()));
+            }
+        }
+    }
+
+    /**
+     * Test that statements that call random() are always executed.
+     */
+    @Test
+    public void testImpure()
+        throws Exception
+    {
+        System.out.println("test impure");
+        HCodeEngine engine = TestScripts.createEngine("r = random();\nlabel (0, 0), text: \"r \" + r;\nlabel (1, 1), text: \"one\";\n", false);
+        List<Command> first = engine.evaluate();
+        List<Command> second = engine.evaluate();
+        assertNotSame(first.get(0), second.get(0));
+        assertSame(first.get(1), second.get(1));
+    }
+
+    /**
+     * Test that programs that assign properties are always executed in full.
+     */
+    @Test
+    public void testPropertyAssignment()
+        throws Exception
+    {
+        System.out.println("test property assignment");
+        HCodeEngine engine = TestScripts.createEngine("animate v = 1 to 10 step 1;\nc = (1, 2);\nc.x = 5;\nlabel c, text: \"c\";\n", false);
+        assertNull(engine.getProgram().getStatementDependencies());
+        List<Command> first = engine.evaluate();
+        TestScripts.setFrame(engine, "v", 2);
+        List<Command> second = engine.evaluate();
+        assertNotSame(first.get(0), second.get(0));
+    }
+
+    private String getText(Command command)
+    {
+        return ((LabelStruct)command.getCmdStruct()).text;
+    }
+
+    private List<String> getTexts(List<Command> commands)
+    {
+        ArrayList<String> texts = new ArrayList<>();
+        for (Command command : commands) texts.add(getText(command));
+        return texts;
+    }
+
+}
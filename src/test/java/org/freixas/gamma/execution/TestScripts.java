@@ -0,0 +1,122 @@
+/*
+ *  Gamma - A Minkowski Spacetime Diagram Generator
+ *  Copyright (C) 2021  by Antonio Freixas
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.freixas.gamma.execution;
+
+import org.freixas.gamma.parser.Parser;
+import org.freixas.gamma.value.AnimationVariable;
+
+/**
+ * Helpers that parse a script and create the h-code program and engine used
+ * by the execution tests.
+ *
+ * @author Antonio Freixas
+ */
+final class TestScripts
+{
+    private TestScripts()
+    {
+    }
+
+    /**
+     * Create the program for a script.
+     *
+     * @param script The script.
+     * @return The program, which is optimized but not compiled.
+     * @throws Exception If the script has errors.
+     */
+    static HCodeProgram createProgram(String script)
+        throws Exception
+    {
+        return createProgram(script, false);
+    }
+
+    /**
+     * Create the program for a script.
+     *
+     * @param script The script.
+     * @param compiled True to compile the program.
+     * @return The program.
+     * @throws Exception If the script has errors.
+     */
+    static HCodeProgram createProgram(String script, boolean compiled)
+        throws Exception
+    {
+        Parser parser = new Parser(null, script);
+        parser.parse();
+        HCodeProgram program = new HCodeProgram(HCodeOptimizer.optimize(parser.getHCodes()));
+        if (compiled) program.compile();
+        return program;
+    }
+
+    /**
+     * Create an engine for a script.
+     *
+     * @param script The script.
+     * @return The engine, whose program is not compiled.
+     * @throws Exception If the script has errors.
+     */
+    static HCodeEngine createEngine(String script)
+        throws Exception
+    {
+        return createEngine(script, false);
+    }
+
+    /**
+     * Create an engine for a script.
+     *
+     * @param script The script.
+     * @param compiled True to compile the engine's program.
+     * @return The engine.
+     * @throws Exception If the script has errors.
+     */
+    static HCodeEngine createEngine(String script, boolean compiled)
+        throws Exception
+    {
+        return createEngine(script, createProgram(script, compiled));
+    }
+
+    /**
+     * Create an engine for a script that runs the given program.
+     *
+     * @param script The script, which is parsed for its set statement and
+     * stylesheet.
+     * @param program The program to run.
+     * @return The engine.
+     * @throws Exception If the script has errors.
+     */
+    static HCodeEngine createEngine(String script, HCodeProgram program)
+        throws Exception
+    {
+        Parser parser = new Parser(null, script);
+        parser.parse();
+        return new HCodeEngine(null, parser.getSetStatement(), parser.getStylesheet(), program);
+    }
+
+    /**
+     * Set the current value of an animation variable.
+     *
+     * @param engine The engine.
+     * @param name The name of the animation variable.
+     * @param frame The variable's value.
+     */
+    static void setFrame(HCodeEngine engine, String name, int frame)
+    {
+        ((AnimationVariable)engine.getDynamicSymbolTable().getDynamicVariable(name)).setCurrentValue(frame);
+    }
+
+}